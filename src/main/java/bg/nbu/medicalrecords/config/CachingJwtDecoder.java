@@ -0,0 +1,90 @@
+package bg.nbu.medicalrecords.config;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps a {@link JwtDecoder} and remembers tokens that already passed signature and claim validation.
+ * Entries are keyed by the SHA-256 of the raw token (the token itself is never kept as a key)
+ * and are only served until the token's {@code exp} claim. The cache never grows past {@code maxEntries}.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+    private final int maxEntries;
+    private final Clock clock;
+    private final Map<String, Jwt> verifiedTokens = new ConcurrentHashMap<>();
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries) {
+        this(delegate, maxEntries, Clock.systemUTC());
+    }
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries, Clock clock) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String key = hash(token);
+        Jwt cached = verifiedTokens.get(key);
+        if (cached != null) {
+            if (isStillValid(cached)) {
+                return cached;
+            }
+            verifiedTokens.remove(key, cached);
+        }
+
+        Jwt jwt = delegate.decode(token);
+        remember(key, jwt);
+        return jwt;
+    }
+
+    public int size() {
+        return verifiedTokens.size();
+    }
+
+    private void remember(String key, Jwt jwt) {
+        // Tokens without an expiry cannot be bounded in time, so they are always verified again
+        if (jwt.getExpiresAt() == null || !isStillValid(jwt)) {
+            return;
+        }
+        if (verifiedTokens.size() >= maxEntries) {
+            evictExpired();
+        }
+        // When the cache is still full the token is simply not remembered; the next call verifies it again
+        if (verifiedTokens.size() < maxEntries) {
+            verifiedTokens.put(key, jwt);
+        }
+    }
+
+    private void evictExpired() {
+        verifiedTokens.values().removeIf(jwt -> !isStillValid(jwt));
+    }
+
+    private boolean isStillValid(Jwt jwt) {
+        Instant expiresAt = jwt.getExpiresAt();
+        return expiresAt != null && clock.instant().isBefore(expiresAt);
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = digest.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hashed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package bg.nbu.medicalrecords.config;
+
+import bg.nbu.medicalrecords.service.IdempotencyService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Honours an {@code Idempotency-Key} header on the clinical write endpoints ({@code POST /appointments} and the
+ * sick leave, diagnosis, treatment and prescription endpoints under it), so that a client retrying over a flaky
+ * network does not create the record twice.
+ * <p>
+ * The key is checked with {@link IdempotencyService} before the request reaches the controller. A retry of a
+ * finished request gets the stored response, marked with {@code Idempotent-Replayed: true}; a retry of one still
+ * running gets 409, and a key reused for a different body gets 422. Responses below 500 are stored; after a server
+ * error the key is released, so the retry runs again. A response that ran but could not be stored keeps the key
+ * reserved instead. Runs after Spring Security, so keys are scoped to the caller.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "medical-records.idempotency.enabled", havingValue = "true", matchIfMissing = true)
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final Pattern WRITE_ENDPOINTS = Pattern.compile(
+            "/appointments(/\\d+/(sick-leave|diagnosis|diagnosis/\\d+/treatment|treatments/\\d+/prescriptions))?/?");
+
+    private final IdempotencyService idempotencyService;
+
+    public IdempotencyFilter(IdempotencyService idempotencyService) {
+        this.idempotencyService = idempotencyService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.POST.matches(request.getMethod())
+                || request.getHeader(IDEMPOTENCY_KEY) == null
+                || !WRITE_ENDPOINTS.matcher(path(request)).matches();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String key = request.getHeader(IDEMPOTENCY_KEY).trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), IDEMPOTENCY_KEY + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        byte[] body = request.getInputStream().readAllBytes();
+        String principal = principal();
+        IdempotencyService.Decision decision = idempotencyService.begin(principal, key, hash(request, body));
+        switch (decision.outcome()) {
+            case REPLAY -> {
+                replay(decision.response(), response);
+                return;
+            }
+            case IN_PROGRESS -> {
+                response.sendError(HttpStatus.CONFLICT.value(), "A request with this " + IDEMPOTENCY_KEY + " is still being processed");
+                return;
+            }
+            case MISMATCH -> {
+                response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(), "This " + IDEMPOTENCY_KEY + " was already used for a different request");
+                return;
+            }
+            case PROCEED -> {
+                // Handled below
+            }
+        }
+
+        ContentCachingResponseWrapper captured = new ContentCachingResponseWrapper(response);
+        boolean handled = false;
+        try {
+            filterChain.doFilter(new CachedBodyRequest(request, body), captured);
+            handled = captured.getStatus() < HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            if (handled) {
+                store(principal, key, captured);
+            } else {
+                release(principal, key);
+            }
+            captured.copyBodyToResponse();
+        }
+    }
+
+    private void store(String principal, String key, ContentCachingResponseWrapper captured) {
+        try {
+            idempotencyService.complete(principal, key, new IdempotencyService.StoredResponse(captured.getStatus(),
+                    captured.getContentType(), new String(captured.getContentAsByteArray(), StandardCharsets.UTF_8)));
+        } catch (RuntimeException e) {
+            // The write is done; the key stays IN_PROGRESS so retries get 409 until its lease runs out, never a second write
+            log.warn("Could not store the response for {} {}, keeping the key reserved", IDEMPOTENCY_KEY, key, e);
+        }
+    }
+
+    private void release(String principal, String key) {
+        try {
+            idempotencyService.release(principal, key);
+        } catch (RuntimeException e) {
+            log.warn("Could not release {} {}", IDEMPOTENCY_KEY, key, e);
+        }
+    }
+
+    private static void replay(IdempotencyService.StoredResponse stored, HttpServletResponse response) throws IOException {
+        response.setStatus(stored.status());
+        response.setHeader(REPLAYED, "true");
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        if (stored.body() != null) {
+            byte[] body = stored.body().getBytes(StandardCharsets.UTF_8);
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "anonymous";
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    // The same key must come with the same method, path and body
+    private static String hash(HttpServletRequest request, byte[] body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((request.getMethod() + ' ' + path(request) + '\n').getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Hands the already read body to the controller.
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return input.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
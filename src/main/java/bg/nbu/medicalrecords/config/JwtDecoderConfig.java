@@ -0,0 +1,94 @@
+package bg.nbu.medicalrecords.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * JWT decoding for the resource server.
+ * Replaces the lazy issuer-uri discovery with a JWK set fetched at startup, kept fresh by a
+ * refresh-ahead cache that keeps serving the last good key set while Keycloak is unreachable.
+ * Verified tokens are remembered until they expire, so repeated requests skip the RSA check.
+ */
+@Slf4j
+@Configuration
+public class JwtDecoderConfig {
+
+    @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
+    private String issuerUri;
+
+    @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri:${spring.security.oauth2.resourceserver.jwt.issuer-uri}/protocol/openid-connect/certs}")
+    private String jwkSetUri;
+
+    @Value("${medical-records.security.jwk-cache.ttl-ms:900000}")
+    private long jwkCacheTtlMs;
+
+    @Value("${medical-records.security.jwk-cache.refresh-timeout-ms:15000}")
+    private long jwkRefreshTimeoutMs;
+
+    @Value("${medical-records.security.jwk-cache.refresh-ahead-ms:60000}")
+    private long jwkRefreshAheadMs;
+
+    @Value("${medical-records.security.jwk-cache.outage-ttl-ms:14400000}")
+    private long jwkOutageTtlMs;
+
+    @Value("${medical-records.security.token-cache.max-entries:10000}")
+    private int tokenCacheMaxEntries;
+
+    @Bean
+    public JWKSource<SecurityContext> jwkSource() throws MalformedURLException {
+        return JWKSourceBuilder.<SecurityContext>create(new URL(jwkSetUri))
+                .cache(jwkCacheTtlMs, jwkRefreshTimeoutMs)
+                .refreshAheadCache(jwkRefreshAheadMs, true)
+                .outageTolerant(jwkOutageTtlMs)
+                .retrying(true)
+                .build();
+    }
+
+    @Bean
+    public JwtDecoder jwtDecoder(JWKSource<SecurityContext> jwkSource) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSource));
+        // Claims are validated by Spring's validators below
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+
+        NimbusJwtDecoder nimbusJwtDecoder = new NimbusJwtDecoder(jwtProcessor);
+        nimbusJwtDecoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuerUri));
+        return new CachingJwtDecoder(nimbusJwtDecoder, tokenCacheMaxEntries);
+    }
+
+    /**
+     * Fetch the JWK set once all singletons are created, before the web server accepts requests,
+     * so the first authenticated request does not pay for the round trip to Keycloak.
+     */
+    @Bean
+    public SmartInitializingSingleton jwkSetWarmUp(JWKSource<SecurityContext> jwkSource) {
+        return () -> {
+            try {
+                int keys = jwkSource.get(new JWKSelector(new JWKMatcher.Builder().build()), null).size();
+                log.info("Loaded {} signing key(s) from {}", keys, jwkSetUri);
+            } catch (KeySourceException e) {
+                // Not fatal: the key set is fetched again on the first request
+                log.warn("Could not pre-load the JWK set from {}: {}", jwkSetUri, e.getMessage());
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+package bg.nbu.medicalrecords.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * HTTP client for the Keycloak Admin API. Bounded timeouts keep a slow Keycloak from holding
+ * request threads (or, with virtual threads, database permits) indefinitely.
+ */
+@Configuration
+public class KeycloakClientConfig {
+
+    @Value("${medical-records.keycloak.connect-timeout-ms:2000}")
+    private long connectTimeoutMs;
+
+    @Value("${medical-records.keycloak.read-timeout-ms:5000}")
+    private long readTimeoutMs;
+
+    @Bean
+    public RestTemplate keycloakRestTemplate(RestTemplateBuilder restTemplateBuilder) {
+        // HttpURLConnection: the JDK HttpClient factory Boot picks by default closes the response body early when a
+        // read timeout is set (Spring Framework 6.2.0)
+        return restTemplateBuilder
+                .requestFactory(SimpleClientHttpRequestFactory.class)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .readTimeout(Duration.ofMillis(readTimeoutMs))
+                .build();
+    }
+}
@@ -0,0 +1,19 @@
+package bg.nbu.medicalrecords.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Turns on the @Scheduled jobs: the booking campaign flush, the domain event and role change dispatchers, the
+ * appointment stream heartbeat, the clinical search commit, the availability cache eviction, the archive run and its
+ * watermark refresh, partition maintenance, the domain event and idempotency key purges, and the Keycloak user sync
+ * (only with medical-records.keycloak-sync.enabled). spring.task.scheduling.pool.size gives each of them a thread, so
+ * a slow job does not delay the frequent ones.
+ * Disabled with medical-records.scheduling.enabled=false, e.g. in tests.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "medical-records.scheduling.enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
@@ -5,13 +5,20 @@ import bg.nbu.medicalrecords.domain.Prescription;
 import bg.nbu.medicalrecords.domain.SickLeave;
 import bg.nbu.medicalrecords.dto.*;
 import bg.nbu.medicalrecords.service.*;
+import bg.nbu.medicalrecords.util.BatchUtils;
+import bg.nbu.medicalrecords.util.ETagUtils;
 import bg.nbu.medicalrecords.util.MappingUtils;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -29,25 +36,73 @@ public class AppointmentController {
     private final TreatmentService treatmentService;
 
     private final PrescriptionService prescriptionService;
+    private final AppointmentVersionService appointmentVersionService;
+    private final AppointmentEventStream appointmentEventStream;
+    private final int maxBatchIds;
 
-    public AppointmentController(AppointmentService appointmentService, SickLeaveService sickLeaveService, DiagnosisService diagnosisService, TreatmentService treatmentService, PrescriptionService prescriptionService) {
+    public AppointmentController(AppointmentService appointmentService, SickLeaveService sickLeaveService, DiagnosisService diagnosisService, TreatmentService treatmentService, PrescriptionService prescriptionService,
+                                 AppointmentVersionService appointmentVersionService, AppointmentEventStream appointmentEventStream,
+                                 @Value("${medical-records.batch.max-ids:100}") int maxBatchIds) {
         this.appointmentService = appointmentService;
         this.sickLeaveService = sickLeaveService;
         this.diagnosisService = diagnosisService;
         this.treatmentService = treatmentService;
         this.prescriptionService = prescriptionService;
+        this.appointmentVersionService = appointmentVersionService;
+        this.appointmentEventStream = appointmentEventStream;
+        this.maxBatchIds = maxBatchIds;
     }
 
+    /**
+     * {@code view=summary} returns only what a calendar needs and skips the clinical tables; the default is the full appointment.
+     * Answers 304 when the client's {@code If-None-Match} still matches, without loading any appointment.
+     */
     @GetMapping("/getAppointmentsForLoggedInUser")
     @PreAuthorize("hasAnyAuthority('patient', 'admin', 'doctor')")
-    public ResponseEntity<List<AppointmentDto>> findAllForLoggedInUser() {
-        return ResponseEntity.ok(appointmentService.findAllForLoggedInUser());
+    public ResponseEntity<List<?>> findAllForLoggedInUser(@RequestParam(defaultValue = "full") String view, WebRequest request) {
+        AppointmentView appointmentView = AppointmentView.fromParameter(view);
+        String etag = ETagUtils.etag(appointmentVersionService.versionTokenForLoggedInUser(), appointmentView.name());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+
+        List<?> appointments = appointmentView == AppointmentView.SUMMARY
+                ? appointmentService.findSummariesForLoggedInUser()
+                : appointmentService.findAllForLoggedInUser();
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
+                .body(appointments);
+    }
+
+    /**
+     * Server-sent events for changes to the logged-in user's appointments, so clients can stop polling
+     * {@code getAppointmentsForLoggedInUser}. Reconnects send {@code Last-Event-ID} to get what they missed.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyAuthority('patient', 'admin', 'doctor')")
+    public SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return appointmentEventStream.subscribe(lastEventId);
+    }
+
+    /**
+     * Multi-get, e.g. {@code /appointments/batch?ids=1,2,3}; ids that do not exist or may not be read are listed instead of failing the request.
+     */
+    @GetMapping("/batch")
+    @PreAuthorize("hasAnyAuthority('patient', 'admin', 'doctor')")
+    public ResponseEntity<BatchResultDto<AppointmentDto>> findAllByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(appointmentService.findAllByIds(BatchUtils.distinctIds(ids, maxBatchIds)));
     }
 
+    /**
+     * The patient's appointments, e.g. {@code /appointments/7/appointments?from=2025-01-01T00:00:00}; without {@code from}
+     * the whole history, archived appointments included.
+     */
     @GetMapping("/{patientId}/appointments")
     @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
-    public ResponseEntity<List<AppointmentDto>> findAllForPatient(@PathVariable @NotNull Long patientId) {
-        return ResponseEntity.ok(appointmentService.findAllForPatient(patientId));
+    public ResponseEntity<List<AppointmentDto>> findAllForPatient(@PathVariable @NotNull Long patientId,
+                                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from) {
+        return ResponseEntity.ok(appointmentService.findAllForPatient(patientId, from));
     }
 
     @PostMapping
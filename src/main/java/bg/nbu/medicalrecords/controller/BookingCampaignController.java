@@ -0,0 +1,45 @@
+package bg.nbu.medicalrecords.controller;
+
+import bg.nbu.medicalrecords.dto.BookingCampaignDto;
+import bg.nbu.medicalrecords.dto.CampaignBookingDto;
+import bg.nbu.medicalrecords.dto.CreateBookingCampaignDto;
+import bg.nbu.medicalrecords.dto.CreateCampaignBookingDto;
+import bg.nbu.medicalrecords.service.BookingCampaignService;
+import jakarta.validation.Valid;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/campaigns")
+public class BookingCampaignController {
+
+    private final BookingCampaignService bookingCampaignService;
+
+    public BookingCampaignController(BookingCampaignService bookingCampaignService) {
+        this.bookingCampaignService = bookingCampaignService;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor', 'patient')")
+    public ResponseEntity<List<BookingCampaignDto>> findAll() {
+        return ResponseEntity.ok(bookingCampaignService.findAll());
+    }
+
+    @PostMapping
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<BookingCampaignDto> create(@RequestBody @Valid CreateBookingCampaignDto dto) {
+        return ResponseEntity.ok(bookingCampaignService.create(dto));
+    }
+
+    /**
+     * 202: the place is held, the appointment itself is written shortly after.
+     */
+    @PostMapping("/{id}/bookings")
+    @PreAuthorize("hasAuthority('patient')")
+    public ResponseEntity<CampaignBookingDto> book(@PathVariable Long id, @RequestBody(required = false) CreateCampaignBookingDto dto) {
+        return ResponseEntity.accepted().body(bookingCampaignService.book(id, dto == null ? null : dto.getSlotStart()));
+    }
+}
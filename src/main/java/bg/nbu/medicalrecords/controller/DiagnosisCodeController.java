@@ -0,0 +1,44 @@
+package bg.nbu.medicalrecords.controller;
+
+import bg.nbu.medicalrecords.dto.DiagnosisCodeDto;
+import bg.nbu.medicalrecords.dto.UpdateDiagnosisCodeDto;
+import bg.nbu.medicalrecords.service.DiagnosisCodeService;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/diagnosis-codes")
+public class DiagnosisCodeController {
+
+    private final DiagnosisCodeService diagnosisCodeService;
+
+    public DiagnosisCodeController(DiagnosisCodeService diagnosisCodeService) {
+        this.diagnosisCodeService = diagnosisCodeService;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
+    public ResponseEntity<List<DiagnosisCodeDto>> findAll() {
+        return ResponseEntity.ok(diagnosisCodeService.findAll());
+    }
+
+    @PutMapping("/{id}")
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<DiagnosisCodeDto> update(@PathVariable @NotNull Integer id, @Valid @RequestBody UpdateDiagnosisCodeDto dto) {
+        return ResponseEntity.ok(diagnosisCodeService.update(id, dto.getCode(), dto.getLabel()));
+    }
+
+    /**
+     * Fold a duplicate entry (e.g. "Influenza") into the one to keep (e.g. "Flu"), together with its diagnoses.
+     */
+    @PostMapping("/{id}/merge/{sourceId}")
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<DiagnosisCodeDto> merge(@PathVariable @NotNull Integer id, @PathVariable @NotNull Integer sourceId) {
+        return ResponseEntity.ok(diagnosisCodeService.merge(id, sourceId));
+    }
+}
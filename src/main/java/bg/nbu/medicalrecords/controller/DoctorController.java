@@ -2,29 +2,66 @@ package bg.nbu.medicalrecords.controller;
 
 import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.dto.AvailableSlotDto;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
+import bg.nbu.medicalrecords.dto.DoctorDto;
+import bg.nbu.medicalrecords.service.CatalogResponseCache;
+import bg.nbu.medicalrecords.service.DoctorAvailabilityService;
 import bg.nbu.medicalrecords.service.DoctorService;
 import bg.nbu.medicalrecords.service.PatientService;
+import bg.nbu.medicalrecords.util.BatchUtils;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDate;
 import java.util.List;
+
 @RestController
 @RequestMapping("/doctors")
 public class DoctorController {
 
     private final DoctorService doctorService;
+    private final CatalogResponseCache catalogResponseCache;
+    private final DoctorAvailabilityService doctorAvailabilityService;
+    private final int maxBatchIds;
 
-    public DoctorController(DoctorService doctorService) {
+    public DoctorController(DoctorService doctorService, CatalogResponseCache catalogResponseCache,
+                            DoctorAvailabilityService doctorAvailabilityService,
+                            @Value("${medical-records.batch.max-ids:100}") int maxBatchIds) {
         this.doctorService = doctorService;
+        this.catalogResponseCache = catalogResponseCache;
+        this.doctorAvailabilityService = doctorAvailabilityService;
+        this.maxBatchIds = maxBatchIds;
     }
 
+    /**
+     * Doctor list as DTO JSON served from {@link CatalogResponseCache}; 304 while the list is unchanged.
+     */
     @GetMapping
     @PreAuthorize("hasAnyAuthority('admin', 'doctor', 'patient')")
-    public ResponseEntity<List<Doctor>> findAll() {
-        return ResponseEntity.ok(doctorService.findAll());
+    public ResponseEntity<byte[]> findAll(WebRequest request,
+                                          @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        CatalogResponseCache.SerializedCatalog doctors = catalogResponseCache.doctors();
+        if (request.checkNotModified(doctors.etag())) {
+            return null;
+        }
+        return SerializedCatalogResponses.toResponse(doctors, acceptEncoding);
+    }
+
+    /**
+     * Multi-get, e.g. {@code /doctors?ids=1,2,3}; unknown ids are listed as missing.
+     */
+    @GetMapping(params = "ids")
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
+    public ResponseEntity<BatchResultDto<DoctorDto>> findAllByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(doctorService.findAllByIds(BatchUtils.distinctIds(ids, maxBatchIds)));
     }
 
     @PostMapping
@@ -53,6 +90,17 @@ public class DoctorController {
         return ResponseEntity.ok(doctorService.findById(id));
     }
 
+    /**
+     * Open slots between two dates (inclusive), e.g. {@code /doctors/1/availability?from=2025-03-10&to=2025-03-16}.
+     */
+    @GetMapping("/{id}/availability")
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor', 'patient')")
+    public ResponseEntity<List<AvailableSlotDto>> findAvailability(@PathVariable @NotNull Long id,
+                                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                   @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(doctorAvailabilityService.findAvailableSlots(id, from, to));
+    }
+
     @GetMapping("/doctor")
     @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
     public ResponseEntity<Doctor> findByPrincipal() {
@@ -0,0 +1,26 @@
+package bg.nbu.medicalrecords.controller;
+
+import bg.nbu.medicalrecords.dto.DomainEventLagDto;
+import bg.nbu.medicalrecords.service.DomainEventDispatcher;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/domain-events")
+public class DomainEventController {
+
+    private final DomainEventDispatcher domainEventDispatcher;
+
+    public DomainEventController(DomainEventDispatcher domainEventDispatcher) {
+        this.domainEventDispatcher = domainEventDispatcher;
+    }
+
+    @GetMapping("/lag")
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<DomainEventLagDto> lag() {
+        return ResponseEntity.ok(domainEventDispatcher.lag());
+    }
+}
@@ -1,13 +1,24 @@
 package bg.nbu.medicalrecords.controller;
 
-import bg.nbu.medicalrecords.domain.Medication;
-import bg.nbu.medicalrecords.service.MedicationService;
+import bg.nbu.medicalrecords.dto.MedicationDto;
+import bg.nbu.medicalrecords.dto.MedicationImportResultDto;
+import bg.nbu.medicalrecords.service.CatalogResponseCache;
+import bg.nbu.medicalrecords.service.MedicationImportService;
+import bg.nbu.medicalrecords.service.MedicationSuggestIndex;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -15,17 +26,49 @@ import java.util.List;
 
 public class MedicationController {
 
-    private final MedicationService medicationService;
+    private final CatalogResponseCache catalogResponseCache;
+    private final MedicationSuggestIndex medicationSuggestIndex;
+    private final MedicationImportService medicationImportService;
 
-    public MedicationController(MedicationService medicationService) {
-        this.medicationService = medicationService;
+    public MedicationController(CatalogResponseCache catalogResponseCache, MedicationSuggestIndex medicationSuggestIndex,
+                                MedicationImportService medicationImportService) {
+        this.catalogResponseCache = catalogResponseCache;
+        this.medicationSuggestIndex = medicationSuggestIndex;
+        this.medicationImportService = medicationImportService;
     }
 
+    /**
+     * Medication list as DTO JSON served from {@link CatalogResponseCache}; 304 while the list is unchanged.
+     */
     @GetMapping
     @PreAuthorize("hasAnyAuthority( 'admin', 'doctor')")
-    public ResponseEntity<List<Medication>> getAllMedications() {
-        return ResponseEntity.ok(medicationService.getAll());
+    public ResponseEntity<byte[]> getAllMedications(WebRequest request,
+                                                    @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        CatalogResponseCache.SerializedCatalog medications = catalogResponseCache.medications();
+        if (request.checkNotModified(medications.etag())) {
+            return null;
+        }
+        return SerializedCatalogResponses.toResponse(medications, acceptEncoding);
     }
 
+    /**
+     * Autocomplete while prescribing, e.g. {@code /medications/suggest?q=amox 500}; every word must start a word of the name, form or strength.
+     */
+    @GetMapping("/suggest")
+    @PreAuthorize("hasAnyAuthority( 'admin', 'doctor')")
+    public ResponseEntity<List<MedicationDto>> suggest(@RequestParam @NotNull String q,
+                                                       @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(medicationSuggestIndex.suggest(q, limit));
+    }
 
+    /**
+     * Syncs the catalog with a registry CSV body ({@code medicationName,dosageForm,strength,sideEffect}), read as a stream;
+     * {@code dryRun=true} reports the changes without applying them.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<MedicationImportResultDto> importRegistry(InputStream body,
+                                                                    @RequestParam(defaultValue = "false") boolean dryRun) {
+        return ResponseEntity.ok(medicationImportService.importCsv(body, dryRun));
+    }
 }
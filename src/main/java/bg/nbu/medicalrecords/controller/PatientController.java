@@ -1,16 +1,28 @@
 package bg.nbu.medicalrecords.controller;
 
+import bg.nbu.medicalrecords.dto.BatchResultDto;
 import bg.nbu.medicalrecords.dto.CreatePatientDto;
+import bg.nbu.medicalrecords.dto.ExportFormat;
 import bg.nbu.medicalrecords.dto.PatientDto;
+import bg.nbu.medicalrecords.dto.PatientImportResultDto;
+import bg.nbu.medicalrecords.dto.PatientSearchHitDto;
 import bg.nbu.medicalrecords.dto.UpdatePatientDto;
+import bg.nbu.medicalrecords.service.PatientExportService;
+import bg.nbu.medicalrecords.service.PatientImportService;
 import bg.nbu.medicalrecords.service.PatientService;
 import bg.nbu.medicalrecords.service.StatisticsService;
 import jakarta.validation.Valid;
+import bg.nbu.medicalrecords.util.BatchUtils;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -19,10 +31,18 @@ import java.util.Map;
 public class PatientController {
     private final PatientService patientService;
     private final StatisticsService statisticsService;
+    private final PatientExportService patientExportService;
+    private final PatientImportService patientImportService;
+    private final int maxBatchIds;
 
-    public PatientController(PatientService patientService, StatisticsService statisticsService) {
+    public PatientController(PatientService patientService, StatisticsService statisticsService, PatientExportService patientExportService,
+                             PatientImportService patientImportService,
+                             @Value("${medical-records.batch.max-ids:100}") int maxBatchIds) {
         this.patientService = patientService;
         this.statisticsService = statisticsService;
+        this.patientExportService = patientExportService;
+        this.patientImportService = patientImportService;
+        this.maxBatchIds = maxBatchIds;
     }
 
     @PostMapping
@@ -31,6 +51,15 @@ public class PatientController {
         return ResponseEntity.ok(patientService.createPatient(dto));
     }
 
+    /**
+     * Bulk create/update from a CSV body ({@code egn,name,healthInsurancePaid,primaryDoctorId}), read as a stream.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE})
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<PatientImportResultDto> importPatients(InputStream body) {
+        return ResponseEntity.ok(patientImportService.importCsv(body));
+    }
+
     @PutMapping("/{id}")
     @PreAuthorize("hasAuthority('admin')")
     public ResponseEntity<PatientDto> update(@PathVariable @NotNull String id, @Valid @RequestBody UpdatePatientDto dto) {
@@ -50,6 +79,25 @@ public class PatientController {
         return ResponseEntity.ok(patientService.findAll());
     }
 
+    /**
+     * Multi-get, e.g. {@code /patients?ids=1,2,3}; ids that do not exist or may not be read are listed instead of failing the request.
+     */
+    @GetMapping(params = "ids")
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor', 'patient')")
+    public ResponseEntity<BatchResultDto<PatientDto>> findAllByIds(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(patientService.findAllByIds(BatchUtils.distinctIds(ids, maxBatchIds)));
+    }
+
+    /**
+     * Autocomplete by partial name or EGN, e.g. {@code /patients/search?q=ivan pet}; every word must match the start of a name word or the EGN.
+     */
+    @GetMapping("/search")
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
+    public ResponseEntity<List<PatientSearchHitDto>> search(@RequestParam @NotNull String q,
+                                                            @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(patientService.search(q, limit));
+    }
+
 
     @GetMapping("/searchByDiagnosis")
     @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
@@ -93,4 +141,20 @@ public class PatientController {
     public ResponseEntity<PatientDto> findByKeycloakUserId(@PathVariable @NotNull String keycloakUserId) {
         return ResponseEntity.ok(patientService.findByKeycloakUserId(keycloakUserId));
     }
+
+    /**
+     * Stream the patient's whole record history as NDJSON or CSV, e.g. when moving to another provider.
+     */
+    @GetMapping("/{id}/export")
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
+    public ResponseEntity<StreamingResponseBody> exportHistory(@PathVariable @NotNull Long id,
+                                                               @RequestParam(defaultValue = "ndjson") String format) {
+        ExportFormat exportFormat = ExportFormat.fromParameter(format);
+        StreamingResponseBody body = patientExportService.exportPatientHistory(id, exportFormat);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"patient-" + id + "-history." + exportFormat.getFileExtension() + "\"")
+                .body(body);
+    }
 }
@@ -0,0 +1,38 @@
+package bg.nbu.medicalrecords.controller;
+
+import bg.nbu.medicalrecords.dto.ClinicalSearchHitDto;
+import bg.nbu.medicalrecords.service.ClinicalSearchService;
+import jakarta.validation.constraints.NotNull;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/search")
+public class SearchController {
+
+    private final ClinicalSearchService clinicalSearchService;
+
+    public SearchController(ClinicalSearchService clinicalSearchService) {
+        this.clinicalSearchService = clinicalSearchService;
+    }
+
+    /**
+     * Ranked search over diagnoses, treatments, prescriptions and sick leaves, e.g. {@code ?q=pneumon "bed rest"}.
+     */
+    @GetMapping("/clinical")
+    @PreAuthorize("hasAnyAuthority('admin', 'doctor')")
+    public ResponseEntity<List<ClinicalSearchHitDto>> searchClinical(@RequestParam @NotNull String q,
+                                                                     @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(clinicalSearchService.search(q, limit));
+    }
+
+    @PostMapping("/rebuild")
+    @PreAuthorize("hasAuthority('admin')")
+    public ResponseEntity<Map<String, Long>> rebuild() {
+        return ResponseEntity.ok(Map.of("indexed", clinicalSearchService.rebuild()));
+    }
+}
@@ -2,6 +2,7 @@ package bg.nbu.medicalrecords.controller;
 
 import bg.nbu.medicalrecords.dto.*;
 import bg.nbu.medicalrecords.service.PatientService;
+import bg.nbu.medicalrecords.service.StatisticsReportRunner;
 import bg.nbu.medicalrecords.service.StatisticsService;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -10,6 +11,8 @@ import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/statistics")
@@ -18,22 +21,24 @@ public class StatisticsController {
 
     private final StatisticsService statisticsService;
     private final PatientService patientService;
+    private final StatisticsReportRunner statisticsReportRunner;
 
 
-    public StatisticsController(StatisticsService statisticsService, PatientService patientService) {
+    public StatisticsController(StatisticsService statisticsService, PatientService patientService, StatisticsReportRunner statisticsReportRunner) {
         this.statisticsService = statisticsService;
         this.patientService = patientService;
+        this.statisticsReportRunner = statisticsReportRunner;
     }
 
     @GetMapping("/diagnoses/unique")
-    public ResponseEntity<List<String>> getUniqueDiagnosis() {
-        return ResponseEntity.ok(statisticsService.getUniqueDiagnosis());
+    public CompletableFuture<ResponseEntity<List<String>>> getUniqueDiagnosis() {
+        return report(statisticsService::getUniqueDiagnosis);
     }
 
 
     @GetMapping("/diagnoses/leaderboard")
-    public ResponseEntity<DiagnosisStatisticsDto> getDiagnosisLeaderboard() {
-        return ResponseEntity.ok(statisticsService.getDiagnosisLeaderboard());
+    public CompletableFuture<ResponseEntity<DiagnosisStatisticsDto>> getDiagnosisLeaderboard() {
+        return report(statisticsService::getDiagnosisLeaderboard);
     }
 
     @GetMapping("/patients/byDoctor/{doctorId}")
@@ -46,37 +51,43 @@ public class StatisticsController {
 
 
     @GetMapping("/doctors-with-patient-count")
-    public ResponseEntity<List<DoctorPatientCountDto>> getDoctorsWithPatientCount() {
-        return ResponseEntity.ok(statisticsService.getDoctorsWithPatientCount());
+    public CompletableFuture<ResponseEntity<List<DoctorPatientCountDto>>> getDoctorsWithPatientCount() {
+        return report(statisticsService::getDoctorsWithPatientCount);
     }
 
 
 
 
     @GetMapping("/doctors-with-appointments-count")
-    public ResponseEntity<List<DoctorAppointmentsCount>> getDoctorsWithAppointmentsCount() {
-        return ResponseEntity.ok(statisticsService.getDoctorsWithAppointmentsCount());
+    public CompletableFuture<ResponseEntity<List<DoctorAppointmentsCount>>> getDoctorsWithAppointmentsCount() {
+        return report(statisticsService::getDoctorsWithAppointmentsCount);
     }
 
 
 
     @GetMapping("/doctors-with-appointments-in-period")
-    public ResponseEntity<List<DoctorsThatHaveAppointmentsInPeriod>> getDoctorsWithAppointmentsInPeriod(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-                                                                                                        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-        return ResponseEntity.ok(statisticsService.getDoctorsWithAppointmentsInPeriod(startDate, endDate));
+    public CompletableFuture<ResponseEntity<List<DoctorsThatHaveAppointmentsInPeriod>>> getDoctorsWithAppointmentsInPeriod(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+                                                                                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return report(() -> statisticsService.getDoctorsWithAppointmentsInPeriod(startDate, endDate));
     }
 
 
 
     @GetMapping("/most-sick-leaves-month-data")
-    public ResponseEntity<MostSickLeavesMonthData> getMostSickLeavesMonthData() {
-        return ResponseEntity.ok(statisticsService.getMostSickLeavesMonthData());
+    public CompletableFuture<ResponseEntity<MostSickLeavesMonthData>> getMostSickLeavesMonthData() {
+        return report(statisticsService::getMostSickLeavesMonthData);
     }
 
 
     @GetMapping("/doctors-sick-leaves-leaderboard")
-    public ResponseEntity<List<DoctorsSickLeavesLeaderboardDto>> getDoctorsSickLeavesLeaderboard() {
-        List<DoctorsSickLeavesLeaderboardDto> leaderboard = statisticsService.getDoctorsSickLeavesLeaderboard();
-        return ResponseEntity.ok(leaderboard);
+    public CompletableFuture<ResponseEntity<List<DoctorsSickLeavesLeaderboardDto>>> getDoctorsSickLeavesLeaderboard() {
+        return report(statisticsService::getDoctorsSickLeavesLeaderboard);
+    }
+
+    /**
+     * The request thread is released as soon as the report is handed to the statistics pool.
+     */
+    private <T> CompletableFuture<ResponseEntity<T>> report(Supplier<T> report) {
+        return statisticsReportRunner.run(report).thenApply(ResponseEntity::ok);
     }
 }
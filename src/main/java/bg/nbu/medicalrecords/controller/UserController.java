@@ -3,7 +3,7 @@ package bg.nbu.medicalrecords.controller;
 
 import bg.nbu.medicalrecords.dto.KeycloakUserDto;
 import bg.nbu.medicalrecords.service.KeycloakService;
-import bg.nbu.medicalrecords.service.LocalSyncService;
+import bg.nbu.medicalrecords.service.RoleChangeService;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -18,11 +18,11 @@ import java.util.List;
 public class UserController {
 
     private final KeycloakService keycloakService;
-    private final LocalSyncService localSyncService;
+    private final RoleChangeService roleChangeService;
 
-    public UserController(KeycloakService keycloakService, LocalSyncService localSyncService) {
+    public UserController(KeycloakService keycloakService, RoleChangeService roleChangeService) {
         this.keycloakService = keycloakService;
-        this.localSyncService = localSyncService;
+        this.roleChangeService = roleChangeService;
     }
 
 
@@ -37,7 +37,8 @@ public class UserController {
     }
 
     /**
-     * Update a user's realm role by ID
+     * Update a user's realm role by ID.
+     * The local records change immediately; Keycloak is updated in the background (202 Accepted).
      */
     @PutMapping("/{userId}/role")
     @PreAuthorize("hasAuthority('admin')")
@@ -45,10 +46,9 @@ public class UserController {
             @PathVariable @NotNull String userId,
             @RequestBody @Valid RoleRequest request
     ) {
-        keycloakService.updateUserRole(userId, request.role());
-        localSyncService.handleRoleChange(userId, request.role());
+        roleChangeService.requestRoleChange(userId, request.role());
 
-        return ResponseEntity.ok().build();
+        return ResponseEntity.accepted().build();
     }
 
     /**
@@ -14,6 +14,8 @@ import java.util.List;
 @Data
 public class Appointment {
 
+    public static final int DEFAULT_DURATION_MINUTES = 30;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -48,16 +50,36 @@ public class Appointment {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    @Version
+    private Long version;
+
     private LocalDateTime appointmentDateTime;
 
+    private Integer durationMinutes;
+
+    // Derived from the start and the duration; indexed together with the doctor for the overlap check
+    private LocalDateTime appointmentEndDateTime;
+
+    // Set when the appointment was booked through a BookingCampaign
+    private Long campaignId;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
+        updateEndDateTime();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        updateEndDateTime();
+    }
+
+    private void updateEndDateTime() {
+        if (durationMinutes == null) {
+            durationMinutes = DEFAULT_DURATION_MINUTES;
+        }
+        appointmentEndDateTime = appointmentDateTime == null ? null : appointmentDateTime.plusMinutes(durationMinutes);
     }
 
 
@@ -0,0 +1,57 @@
+package bg.nbu.medicalrecords.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A vaccination or screening drive: a fixed set of slots of one doctor, each taking up to
+ * {@code capacityPerSlot} patients. Bookings become appointments with {@code campaign_id} set.
+ */
+@Entity
+@Table(name = "booking_campaigns")
+@Data
+public class BookingCampaign {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String name;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Doctor doctor;
+
+    @Column(nullable = false)
+    private Integer durationMinutes;
+
+    @Column(nullable = false)
+    private Integer capacityPerSlot;
+
+    // Patients turned away once every slot is full wait here, up to this many
+    @Column(nullable = false)
+    private Integer waitlistCapacity;
+
+    @ElementCollection
+    @CollectionTable(name = "booking_campaign_slots", joinColumns = @JoinColumn(name = "campaign_id"))
+    @Column(name = "slot_start", nullable = false)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private List<LocalDateTime> slotStarts = new ArrayList<>();
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
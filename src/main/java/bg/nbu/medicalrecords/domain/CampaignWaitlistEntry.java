@@ -0,0 +1,33 @@
+package bg.nbu.medicalrecords.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A patient waiting for a place in a booking campaign. Kept until the patient gets a place, so the waitlist
+ * survives a restart; the order of the ids is the order of the waitlist.
+ */
+@Entity
+@Table(name = "campaign_waitlist")
+@Data
+public class CampaignWaitlistEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "campaign_id", nullable = false)
+    private Long campaignId;
+
+    @Column(name = "patient_keycloak_user_id", nullable = false)
+    private String patientKeycloakUserId;
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
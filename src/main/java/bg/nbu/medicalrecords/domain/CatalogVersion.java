@@ -0,0 +1,20 @@
+package bg.nbu.medicalrecords.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+/**
+ * Shared version of one cached catalog (doctors, patients, medications); see CatalogVersionService.
+ */
+@Entity
+@Table(name = "catalog_versions")
+@Data
+public class CatalogVersion {
+
+    @Id
+    @Column(length = 32)
+    private String catalog;
+
+    @Column(nullable = false)
+    private long version;
+}
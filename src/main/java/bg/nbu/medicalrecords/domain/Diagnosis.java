@@ -3,6 +3,7 @@ package bg.nbu.medicalrecords.domain;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
 import java.time.LocalDateTime;
@@ -26,6 +27,9 @@ public class Diagnosis {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    @Version
+    private Long version;
+
     // Many diagnoses belong to one appointment
     @ManyToOne
     @JoinColumn(name = "appointment_id", nullable = false)
@@ -33,6 +37,14 @@ public class Diagnosis {
     @ToString.Exclude
     private Appointment appointment;
 
+    // Dictionary entry the statement is coded to; statistics group by it instead of the free text
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "diagnosis_code_id")
+    @JsonIgnore
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private DiagnosisCode code;
+
     // One diagnosis can have many treatments
     @OneToMany(mappedBy = "diagnosis", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonIgnore
@@ -0,0 +1,46 @@
+package bg.nbu.medicalrecords.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Dictionary entry that diagnoses are coded to, so "Flu", "flu " and "Influenza" count as one diagnosis.
+ * Synonyms are stored normalised (see DiagnosisCodeService#normalize) and each belongs to exactly one entry.
+ */
+@Entity
+@Table(name = "diagnosis_codes")
+@Data
+public class DiagnosisCode {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    // e.g. an ICD-10 code such as "J11"; empty until someone assigns one
+    @Column(unique = true, length = 20)
+    private String code;
+
+    // Canonical name shown in statistics
+    @Column(nullable = false)
+    private String label;
+
+    @ElementCollection
+    @CollectionTable(name = "diagnosis_code_synonyms", joinColumns = @JoinColumn(name = "diagnosis_code_id"))
+    @Column(name = "synonym", nullable = false, unique = true)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private Set<String> synonyms = new HashSet<>();
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,39 @@
+package bg.nbu.medicalrecords.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A domain event (appointment booked, diagnosis recorded, role changed, ...) written in the same transaction as
+ * the change it describes and read by the DomainEventDispatcher of every instance; the row itself is never updated.
+ */
+@Entity
+@Table(name = "domain_event_outbox")
+@Data
+public class DomainEventOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String eventType;
+
+    @Column(nullable = false)
+    private String aggregateType;
+
+    private String aggregateId;
+
+    // The event as JSON
+    @Column(nullable = false)
+    private String payload;
+
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
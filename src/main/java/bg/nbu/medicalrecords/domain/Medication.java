@@ -19,6 +19,9 @@ public class Medication {
     private String strength;      // e.g., "500mg", "10mg/5ml"
     private String sideEffect;    // e.g., "drowsiness, nausea"
 
+    // Dropped from the national registry: kept for existing prescriptions, no longer offered for new ones
+    private boolean retired;
+
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
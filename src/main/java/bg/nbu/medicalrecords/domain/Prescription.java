@@ -39,6 +39,9 @@ public class Prescription {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    @Version
+    private Long version;
+
 
     @PrePersist
     protected void onCreate() {
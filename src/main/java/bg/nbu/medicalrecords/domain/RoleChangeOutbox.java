@@ -0,0 +1,49 @@
+package bg.nbu.medicalrecords.domain;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A role change that is already applied locally and still has to be pushed to Keycloak.
+ * Written in the same transaction as the local change and consumed by the RoleChangeDispatcher.
+ */
+@Entity
+@Table(name = "role_change_outbox")
+@Data
+public class RoleChangeOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "keycloak_user_id", nullable = false)
+    private String keycloakUserId;
+
+    @Column(nullable = false)
+    private String role;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private RoleChangeStatus status;
+
+    private int attempts;
+
+    private LocalDateTime nextAttemptAt;
+
+    private String lastError;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
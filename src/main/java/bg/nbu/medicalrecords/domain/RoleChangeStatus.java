@@ -0,0 +1,8 @@
+package bg.nbu.medicalrecords.domain;
+
+public enum RoleChangeStatus {
+    PENDING,     // waiting to be pushed to Keycloak
+    DONE,        // Keycloak has the new role
+    SUPERSEDED,  // a newer role change for the same user replaced this one
+    FAILED       // gave up after the maximum number of attempts
+}
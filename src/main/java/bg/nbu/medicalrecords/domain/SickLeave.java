@@ -35,6 +35,9 @@ public class SickLeave {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    @Version
+    private Long version;
+
 
     @PrePersist
     protected void onCreate() {
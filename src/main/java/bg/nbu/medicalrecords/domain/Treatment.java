@@ -29,6 +29,9 @@ public class Treatment {
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
+    @Version
+    private Long version;
+
     private LocalDate startDate;
     private LocalDate endDate;
 
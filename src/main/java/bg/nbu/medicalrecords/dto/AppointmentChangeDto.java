@@ -0,0 +1,17 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Data of an {@code appointment-changed} event on {@code /appointments/stream}; the client reloads the appointment it names.
+ */
+@Value
+public class AppointmentChangeDto implements Serializable {
+    Long appointmentId;
+    String subject;
+    String action;
+    LocalDateTime occurredAt;
+}
@@ -44,4 +44,9 @@ public class AppointmentDto implements Serializable {
     @NotNull(message = "Appointment date and time cannot be null")
     @FutureOrPresent(message = "Appointment date and time must be in the future or present")
     LocalDateTime appointmentDateTime;
+
+    Integer durationMinutes;
+
+    // Send it back with an update, so a change made since the read is not overwritten
+    Long version;
 }
@@ -0,0 +1,20 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Calendar view of an {@link bg.nbu.medicalrecords.domain.Appointment}, without any clinical data.
+ */
+@Value
+public class AppointmentSummaryDto implements Serializable {
+    Long id;
+    LocalDateTime appointmentDateTime;
+    Integer durationMinutes;
+    Long doctorId;
+    String doctorName;
+    Long patientId;
+    String patientName;
+}
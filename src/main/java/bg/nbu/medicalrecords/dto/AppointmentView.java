@@ -0,0 +1,21 @@
+package bg.nbu.medicalrecords.dto;
+
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+
+/**
+ * How much of an appointment to return: {@code SUMMARY} is enough for a calendar and never reads the
+ * clinical child tables, {@code FULL} includes diagnoses, treatments, prescriptions and sick leaves.
+ */
+public enum AppointmentView {
+    SUMMARY,
+    FULL;
+
+    public static AppointmentView fromParameter(String value) {
+        for (AppointmentView view : values()) {
+            if (view.name().equalsIgnoreCase(value)) {
+                return view;
+            }
+        }
+        throw new InvalidInputException("Unsupported view: " + value + " (expected summary or full)");
+    }
+}
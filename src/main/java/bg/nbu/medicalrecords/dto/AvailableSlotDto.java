@@ -0,0 +1,15 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * An open slot in a doctor's working hours that can be booked with {@code POST /appointments}.
+ */
+@Value
+public class AvailableSlotDto implements Serializable {
+    LocalDateTime start;
+    LocalDateTime end;
+}
@@ -0,0 +1,17 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Answer of a multi-get: the records that were found, in request order, plus the ids that do not exist
+ * and the ids the caller is not allowed to read.
+ */
+@Value
+public class BatchResultDto<T> implements Serializable {
+    List<T> found;
+    List<Long> missing;
+    List<Long> forbidden;
+}
@@ -0,0 +1,20 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * DTO for {@link bg.nbu.medicalrecords.domain.BookingCampaign}, with the live remaining capacity of each slot.
+ */
+@Value
+public class BookingCampaignDto implements Serializable {
+    Long id;
+    String name;
+    Long doctorId;
+    Integer durationMinutes;
+    Integer capacityPerSlot;
+    List<CampaignSlotDto> slots;
+    int waitlisted;
+}
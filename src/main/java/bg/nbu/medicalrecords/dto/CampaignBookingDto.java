@@ -0,0 +1,23 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a campaign booking. A CONFIRMED slot is held for the patient at once and shows up as an
+ * appointment within moments; WAITLISTED patients are given the next slot that is freed.
+ */
+@Value
+public class CampaignBookingDto implements Serializable {
+
+    public enum Status {
+        CONFIRMED, WAITLISTED
+    }
+
+    Long campaignId;
+    Status status;
+    LocalDateTime slotStart;
+    Integer waitlistPosition;
+}
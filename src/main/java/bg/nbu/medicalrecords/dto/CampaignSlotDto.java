@@ -0,0 +1,12 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+@Value
+public class CampaignSlotDto implements Serializable {
+    LocalDateTime start;
+    int remaining;
+}
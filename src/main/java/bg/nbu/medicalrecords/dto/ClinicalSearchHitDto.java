@@ -0,0 +1,20 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * One clinical record matching a full-text search, best match first.
+ * {@code type} is diagnosis, treatment, prescription or sickLeave; {@code text} is the matched free text as stored now.
+ */
+@Value
+public class ClinicalSearchHitDto implements Serializable {
+    String type;
+    Long id;
+    Long appointmentId;
+    Long patientId;
+    String patientName;
+    String text;
+    float score;
+}
@@ -2,6 +2,7 @@ package bg.nbu.medicalrecords.dto;
 
 import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -20,4 +21,8 @@ public class CreateAppointmentDto {
     @NotNull(message = "Appointment date cannot be null")
     @Future(message = "Appointment date must be in the future")
     private LocalDateTime date;
+
+    // Defaults to Appointment.DEFAULT_DURATION_MINUTES
+    @Positive(message = "Duration must be positive")
+    private Integer durationMinutes;
 }
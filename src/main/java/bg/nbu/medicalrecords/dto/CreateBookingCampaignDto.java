@@ -0,0 +1,33 @@
+package bg.nbu.medicalrecords.dto;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * For opening a booking campaign.
+ */
+@Data
+public class CreateBookingCampaignDto {
+    @NotBlank(message = "Name cannot be blank")
+    private String name;
+
+    @NotNull(message = "Doctor ID cannot be null")
+    private Long doctorId;
+
+    @NotNull(message = "Duration cannot be null")
+    @Positive(message = "Duration must be positive")
+    private Integer durationMinutes;
+
+    @NotNull(message = "Capacity per slot cannot be null")
+    @Positive(message = "Capacity per slot must be positive")
+    private Integer capacityPerSlot;
+
+    @PositiveOrZero(message = "Waitlist capacity cannot be negative")
+    private Integer waitlistCapacity;
+
+    @NotEmpty(message = "At least one slot is required")
+    private List<@NotNull @Future LocalDateTime> slotStarts;
+}
@@ -0,0 +1,13 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * For booking a campaign slot; without a slot start the earliest one with room is taken.
+ */
+@Data
+public class CreateCampaignBookingDto {
+    private LocalDateTime slotStart;
+}
@@ -0,0 +1,17 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * DTO for {@link bg.nbu.medicalrecords.domain.DiagnosisCode}; synonyms are in their normalised form.
+ */
+@Value
+public class DiagnosisCodeDto implements Serializable {
+    Integer id;
+    String code;
+    String label;
+    List<String> synonyms;
+}
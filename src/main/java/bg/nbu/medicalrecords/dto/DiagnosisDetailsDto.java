@@ -10,6 +10,12 @@ import java.time.LocalDateTime;
 @Data
 public class DiagnosisDetailsDto {
 
+        private Integer diagnosisCodeId;
+
+        // dictionary code such as "J11", if one has been assigned
+        private String code;
+
+        // canonical label of the diagnosis code
         @NotBlank(message = "Statement cannot be blank")
         private String statement;
 
@@ -34,4 +34,7 @@ public class DiagnosisDto implements Serializable {
 
     @Valid
     List<TreatmentDto> treatments;
+
+    // Send it back with an update, so a change made since the read is not overwritten
+    Long version;
 }
@@ -0,0 +1,19 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * How far the domain event dispatcher is behind: undelivered and given-up events, the age of the oldest
+ * undelivered one and when the last batch went out.
+ */
+@Value
+public class DomainEventLagDto implements Serializable {
+    long pending;
+    long failed;
+    Long oldestPendingAgeSeconds;
+    long deliveredSinceStart;
+    LocalDateTime lastDeliveredAt;
+}
@@ -0,0 +1,15 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * A registry row that was not imported; {@code line} counts the header as line 1.
+ */
+@Value
+public class MedicationImportErrorDto implements Serializable {
+    long line;
+    String medicationName;
+    String message;
+}
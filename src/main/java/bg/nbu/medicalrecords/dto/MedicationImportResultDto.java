@@ -0,0 +1,22 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Outcome of {@code POST /medications/import}. With {@code dryRun} the counts are what the import would have done.
+ * {@code errors} lists the first failed rows only; {@code failed} counts all of them.
+ */
+@Value
+public class MedicationImportResultDto implements Serializable {
+    long rows;
+    long inserted;
+    long updated;
+    long unchanged;
+    long retired;
+    long failed;
+    boolean dryRun;
+    List<MedicationImportErrorDto> errors;
+}
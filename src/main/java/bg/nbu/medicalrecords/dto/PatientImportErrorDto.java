@@ -0,0 +1,15 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * A CSV row that was not imported; {@code line} counts the header as line 1.
+ */
+@Value
+public class PatientImportErrorDto implements Serializable {
+    long line;
+    String egn;
+    String message;
+}
@@ -0,0 +1,19 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Outcome of {@code POST /patients/import}. {@code errors} lists the first failed rows only; {@code failed}
+ * counts all of them.
+ */
+@Value
+public class PatientImportResultDto implements Serializable {
+    long rows;
+    long created;
+    long updated;
+    long failed;
+    List<PatientImportErrorDto> errors;
+}
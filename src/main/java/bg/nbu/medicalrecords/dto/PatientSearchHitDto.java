@@ -0,0 +1,15 @@
+package bg.nbu.medicalrecords.dto;
+
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * One patient suggested by the name/EGN autocomplete.
+ */
+@Value
+public class PatientSearchHitDto implements Serializable {
+    Long id;
+    String name;
+    String egn;
+}
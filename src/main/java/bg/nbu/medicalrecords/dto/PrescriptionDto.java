@@ -36,4 +36,7 @@ public class PrescriptionDto implements Serializable {
 
     @NotNull(message = "Updated date cannot be null")
     LocalDateTime updatedAt;
+
+    // Send it back with an update, so a change made since the read is not overwritten
+    Long version;
 }
@@ -37,4 +37,7 @@ public class SickLeaveDto implements Serializable {
     LocalDateTime createdAt;
 
     LocalDateTime updatedAt;
+
+    // Send it back with an update, so a change made since the read is not overwritten
+    Long version;
 }
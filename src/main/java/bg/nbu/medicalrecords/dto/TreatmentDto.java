@@ -41,4 +41,7 @@ public class TreatmentDto implements Serializable {
 
     @NotBlank(message = "Description cannot be blank")
     String description;
+
+    // Send it back with an update, so a change made since the read is not overwritten
+    Long version;
 }
@@ -3,6 +3,7 @@ package bg.nbu.medicalrecords.dto;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.validation.constraints.Future;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.Data;
 import lombok.Value;
 
@@ -22,4 +23,11 @@ public class UpdateAppointmentDto implements Serializable {
 
     @NotNull(message = "Appointment date and time cannot be null")
     LocalDateTime appointmentDateTime;
+
+    // Keeps the current duration when null
+    @Positive(message = "Duration must be positive")
+    Integer durationMinutes;
+
+    // Version the edit is based on; a stale one is rejected with 409 Conflict, a missing one is not checked
+    Long version;
 }
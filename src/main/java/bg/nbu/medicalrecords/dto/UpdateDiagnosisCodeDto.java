@@ -0,0 +1,14 @@
+package bg.nbu.medicalrecords.dto;
+
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class UpdateDiagnosisCodeDto {
+    // an empty string removes the code
+    @Size(max = 20, message = "Code cannot exceed 20 characters")
+    private String code;
+
+    @Size(max = 255, message = "Label cannot exceed 255 characters")
+    private String label;
+}
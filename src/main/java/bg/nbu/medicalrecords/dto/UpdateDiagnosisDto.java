@@ -21,4 +21,7 @@ public class UpdateDiagnosisDto implements Serializable {
 
     @NotNull(message = "Diagnosed date cannot be null")
     LocalDateTime diagnosedDate;
+
+    // Version the edit is based on; a stale one is rejected with 409 Conflict, a missing one is not checked
+    Long version;
 }
@@ -24,4 +24,7 @@ public class UpdatePrescriptionDto implements Serializable {
     @NotNull(message = "Duration cannot be null")
     @Min(value = 1, message = "Duration must be at least 1 day")
     Integer duration;
+
+    // Version the edit is based on; a stale one is rejected with 409 Conflict, a missing one is not checked
+    Long version;
 }
@@ -22,4 +22,7 @@ public class UpdateSickLeaveDto {
 
     @NotNull(message = "End date cannot be null")
     private LocalDate endDate;
+
+    // Version the edit is based on; a stale one is rejected with 409 Conflict, a missing one is not checked
+    private Long version;
 }
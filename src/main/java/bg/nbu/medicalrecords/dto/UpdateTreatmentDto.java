@@ -26,4 +26,7 @@ public class UpdateTreatmentDto implements Serializable {
 
     @NotBlank(message = "Description cannot be blank")
     String description;
+
+    // Version the edit is based on; a stale one is rejected with 409 Conflict, a missing one is not checked
+    Long version;
 }
@@ -0,0 +1,7 @@
+package bg.nbu.medicalrecords.exception;
+
+public class AppointmentConflictException extends RuntimeException {
+    public AppointmentConflictException(String message) {
+        super(message);
+    }
+}
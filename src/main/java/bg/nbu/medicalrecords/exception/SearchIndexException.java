@@ -0,0 +1,7 @@
+package bg.nbu.medicalrecords.exception;
+
+public class SearchIndexException extends RuntimeException {
+    public SearchIndexException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
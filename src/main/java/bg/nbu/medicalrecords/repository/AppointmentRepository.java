@@ -1,8 +1,15 @@
 package bg.nbu.medicalrecords.repository;
 
 import bg.nbu.medicalrecords.domain.Appointment;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
@@ -12,5 +19,79 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
 
     List<Appointment> findByPatient_Id(Long id);
 
+    List<Appointment> findByPatient_IdAndAppointmentDateTimeGreaterThanEqual(Long id, LocalDateTime from);
+
     List<Appointment> findByDoctor_Id(Long id);
-}
\ No newline at end of file
+
+    /**
+     * The doctor's appointments starting strictly between {@code start} and {@code end}. Like every period read, the
+     * range is on {@code appointment_date_time}, so MySQL only opens the partitions of the years it spans.
+     */
+    @Query("SELECT a FROM Appointment a WHERE a.doctor.id = :doctorId " +
+            "AND a.appointmentDateTime > :start AND a.appointmentDateTime < :end ORDER BY a.appointmentDateTime")
+    List<Appointment> findByDoctorInPeriod(@Param("doctorId") Long doctorId,
+                                           @Param("start") LocalDateTime start,
+                                           @Param("end") LocalDateTime end);
+
+    @Query("SELECT a FROM Appointment a WHERE a.appointmentDateTime >= :start AND a.appointmentDateTime < :end")
+    List<Appointment> findInPeriod(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @Query("SELECT DISTINCT a.doctor.id FROM Appointment a WHERE a.appointmentDateTime > :start AND a.appointmentDateTime < :end")
+    List<Long> findDoctorIdsInPeriod(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
+
+    @EntityGraph(attributePaths = {"doctor", "patient"})
+    List<Appointment> findByIdIn(Collection<Long> ids);
+
+    @Query("SELECT a.id AS id, a.appointmentDateTime AS appointmentDateTime, a.durationMinutes AS durationMinutes, d.id AS doctorId, d.name AS doctorName, " +
+            "p.id AS patientId, p.name AS patientName " +
+            "FROM Appointment a JOIN a.doctor d JOIN a.patient p " +
+            "WHERE d.keycloakUserId = :keycloakUserId ORDER BY a.appointmentDateTime")
+    List<AppointmentSummary> findSummariesByDoctorKeycloakUserId(@Param("keycloakUserId") String keycloakUserId);
+
+    @Query("SELECT a.id AS id, a.appointmentDateTime AS appointmentDateTime, a.durationMinutes AS durationMinutes, d.id AS doctorId, d.name AS doctorName, " +
+            "p.id AS patientId, p.name AS patientName " +
+            "FROM Appointment a JOIN a.doctor d JOIN a.patient p " +
+            "WHERE p.keycloakUserId = :keycloakUserId ORDER BY a.appointmentDateTime")
+    List<AppointmentSummary> findSummariesByPatientKeycloakUserId(@Param("keycloakUserId") String keycloakUserId);
+
+    /**
+     * Whether the doctor has an appointment overlapping [start, end). Appointments are never longer than the
+     * maximum duration, so only those starting after {@code earliestStart} (start minus that maximum) can overlap,
+     * which keeps the lookup a bounded range scan of the (doctor_id, appointment_date_time) index. Appointments of
+     * {@code campaignId} (when not null) share their slots by design and are not counted.
+     */
+    @Query("SELECT COUNT(a) > 0 FROM Appointment a WHERE a.doctor.id = :doctorId " +
+            "AND a.appointmentDateTime > :earliestStart AND a.appointmentDateTime < :end " +
+            "AND a.appointmentEndDateTime > :start AND (:excludeId IS NULL OR a.id <> :excludeId) " +
+            "AND (:campaignId IS NULL OR a.campaignId IS NULL OR a.campaignId <> :campaignId)")
+    boolean existsOverlapping(@Param("doctorId") Long doctorId,
+                              @Param("earliestStart") LocalDateTime earliestStart,
+                              @Param("start") LocalDateTime start,
+                              @Param("end") LocalDateTime end,
+                              @Param("excludeId") Long excludeId,
+                              @Param("campaignId") Long campaignId);
+
+    /**
+     * The doctor's appointments starting in (earliestStart, end), read from the (doctor_id, appointment_date_time)
+     * index; callers pass a window start minus the maximum duration so that appointments running into it are included.
+     */
+    @Query("SELECT a.appointmentDateTime AS appointmentDateTime, a.appointmentEndDateTime AS appointmentEndDateTime " +
+            "FROM Appointment a WHERE a.doctor.id = :doctorId " +
+            "AND a.appointmentDateTime > :earliestStart AND a.appointmentDateTime < :end ORDER BY a.appointmentDateTime")
+    List<BookedInterval> findBookedIntervals(@Param("doctorId") Long doctorId,
+                                             @Param("earliestStart") LocalDateTime earliestStart,
+                                             @Param("end") LocalDateTime end);
+
+    @Query("SELECT a.appointmentDateTime AS appointmentDateTime, p.keycloakUserId AS patientKeycloakUserId " +
+            "FROM Appointment a JOIN a.patient p WHERE a.campaignId = :campaignId")
+    List<CampaignBooking> findCampaignBookings(@Param("campaignId") Long campaignId);
+
+    /**
+     * Bumps {@code updated_at} without loading the appointment; the version column is left alone on purpose, so a
+     * change to a diagnosis or sick leave does not make a concurrent edit of the appointment itself fail.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Appointment a SET a.updatedAt = :updatedAt WHERE a.id = :id")
+    int touch(@Param("id") Long id, @Param("updatedAt") LocalDateTime updatedAt);
+}
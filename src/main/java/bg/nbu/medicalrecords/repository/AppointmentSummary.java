@@ -0,0 +1,22 @@
+package bg.nbu.medicalrecords.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of the appointment columns needed for a calendar; selected with a single join on doctor and patient.
+ */
+public interface AppointmentSummary {
+    Long getId();
+
+    LocalDateTime getAppointmentDateTime();
+
+    Integer getDurationMinutes();
+
+    Long getDoctorId();
+
+    String getDoctorName();
+
+    Long getPatientId();
+
+    String getPatientName();
+}
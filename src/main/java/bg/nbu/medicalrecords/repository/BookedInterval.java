@@ -0,0 +1,12 @@
+package bg.nbu.medicalrecords.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Start and end of one of a doctor's appointments; all the free-slot finder needs from the row.
+ */
+public interface BookedInterval {
+    LocalDateTime getAppointmentDateTime();
+
+    LocalDateTime getAppointmentEndDateTime();
+}
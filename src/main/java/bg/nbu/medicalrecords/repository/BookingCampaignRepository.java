@@ -0,0 +1,28 @@
+package bg.nbu.medicalrecords.repository;
+
+import bg.nbu.medicalrecords.domain.BookingCampaign;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface BookingCampaignRepository extends JpaRepository<BookingCampaign, Long> {
+
+    @EntityGraph(attributePaths = {"doctor", "slotStarts"})
+    @Query("SELECT c FROM BookingCampaign c")
+    List<BookingCampaign> findAllWithSlots();
+
+    /**
+     * The doctor's campaign slots starting in (earliestStart, end); like
+     * {@link AppointmentRepository#findBookedIntervals}, callers pass a window start minus the maximum duration.
+     */
+    @Query("SELECT c.id AS campaignId, s AS appointmentDateTime, c.durationMinutes AS durationMinutes " +
+            "FROM BookingCampaign c JOIN c.slotStarts s WHERE c.doctor.id = :doctorId " +
+            "AND s > :earliestStart AND s < :end ORDER BY s")
+    List<CampaignSlot> findSlots(@Param("doctorId") Long doctorId,
+                                 @Param("earliestStart") LocalDateTime earliestStart,
+                                 @Param("end") LocalDateTime end);
+}
@@ -0,0 +1,12 @@
+package bg.nbu.medicalrecords.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * A confirmed campaign booking as stored: the appointment's slot and its patient.
+ */
+public interface CampaignBooking {
+    LocalDateTime getAppointmentDateTime();
+
+    String getPatientKeycloakUserId();
+}
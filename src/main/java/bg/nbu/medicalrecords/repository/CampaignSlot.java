@@ -0,0 +1,17 @@
+package bg.nbu.medicalrecords.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * One slot of a booking campaign as it takes up the doctor's calendar, booked or not.
+ */
+public interface CampaignSlot extends BookedInterval {
+    Long getCampaignId();
+
+    Integer getDurationMinutes();
+
+    @Override
+    default LocalDateTime getAppointmentEndDateTime() {
+        return getAppointmentDateTime().plusMinutes(getDurationMinutes());
+    }
+}
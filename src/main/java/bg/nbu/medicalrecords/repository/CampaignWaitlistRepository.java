@@ -0,0 +1,23 @@
+package bg.nbu.medicalrecords.repository;
+
+import bg.nbu.medicalrecords.domain.CampaignWaitlistEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface CampaignWaitlistRepository extends JpaRepository<CampaignWaitlistEntry, Long> {
+
+    List<CampaignWaitlistEntry> findAllByOrderByIdAsc();
+
+    @Modifying
+    @Query("DELETE FROM CampaignWaitlistEntry w WHERE w.campaignId = :campaignId AND w.patientKeycloakUserId = :patientKeycloakUserId")
+    int deleteEntry(@Param("campaignId") Long campaignId, @Param("patientKeycloakUserId") String patientKeycloakUserId);
+
+    // campaign_waitlist has no foreign key, so nothing cascades from booking_campaigns
+    @Modifying
+    @Query("DELETE FROM CampaignWaitlistEntry w WHERE w.campaignId IN (SELECT c.id FROM BookingCampaign c WHERE c.doctor.id = :doctorId)")
+    int deleteForDoctor(@Param("doctorId") Long doctorId);
+}
@@ -0,0 +1,19 @@
+package bg.nbu.medicalrecords.repository;
+
+import bg.nbu.medicalrecords.domain.CatalogVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface CatalogVersionRepository extends JpaRepository<CatalogVersion, String> {
+
+    @Query("SELECT c.version FROM CatalogVersion c WHERE c.catalog = :catalog")
+    Optional<Long> findVersion(@Param("catalog") String catalog);
+
+    @Modifying
+    @Query("UPDATE CatalogVersion c SET c.version = c.version + 1 WHERE c.catalog = :catalog")
+    int increment(@Param("catalog") String catalog);
+}
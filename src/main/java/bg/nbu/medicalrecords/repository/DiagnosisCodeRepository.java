@@ -0,0 +1,17 @@
+package bg.nbu.medicalrecords.repository;
+
+import bg.nbu.medicalrecords.domain.DiagnosisCode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface DiagnosisCodeRepository extends JpaRepository<DiagnosisCode, Integer> {
+
+    // Primary-key lookup on diagnosis_code_synonyms; the argument must already be normalised
+    @Query("SELECT c FROM DiagnosisCode c JOIN c.synonyms s WHERE s = :synonym")
+    Optional<DiagnosisCode> findBySynonym(@Param("synonym") String synonym);
+
+    Optional<DiagnosisCode> findByCode(String code);
+}
@@ -0,0 +1,22 @@
+package bg.nbu.medicalrecords.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of one diagnosis code's aggregates, computed by the database with a single GROUP BY on the code id.
+ */
+public interface DiagnosisCodeStatistics {
+    Integer getCodeId();
+
+    String getCode();
+
+    String getLabel();
+
+    Long getDiagnosisCount();
+
+    Long getPatientCount();
+
+    LocalDateTime getFirstDiagnosedDate();
+
+    LocalDateTime getLastDiagnosedDate();
+}
@@ -1,8 +1,11 @@
 package bg.nbu.medicalrecords.repository;
 
 import bg.nbu.medicalrecords.domain.Diagnosis;
+import bg.nbu.medicalrecords.domain.DiagnosisCode;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 
@@ -11,4 +14,26 @@ public interface DiagnosisRepository extends JpaRepository<Diagnosis, Long> {
     List<String> findDistinctStatements();
 
     List<Diagnosis> findByStatementIgnoreCase(String statement);
-}
\ No newline at end of file
+
+    List<Diagnosis> findByCode_Id(Integer codeId);
+
+    @Query("SELECT DISTINCT c.label FROM Diagnosis d JOIN d.code c")
+    List<String> findDistinctCodeLabels();
+
+    @Query("SELECT c.id AS codeId, c.code AS code, c.label AS label, COUNT(d) AS diagnosisCount, " +
+            "COUNT(DISTINCT a.patient.id) AS patientCount, MIN(d.diagnosedDate) AS firstDiagnosedDate, MAX(d.diagnosedDate) AS lastDiagnosedDate " +
+            "FROM Diagnosis d JOIN d.code c JOIN d.appointment a " +
+            "GROUP BY c.id, c.code, c.label " +
+            "ORDER BY COUNT(d) DESC")
+    List<DiagnosisCodeStatistics> findCodeStatistics();
+
+    @Query("SELECT c.id AS codeId, doc.name AS doctorName " +
+            "FROM Diagnosis d JOIN d.code c JOIN d.appointment a JOIN a.doctor doc " +
+            "WHERE d.diagnosedDate = (SELECT MIN(d2.diagnosedDate) FROM Diagnosis d2 WHERE d2.code = c) " +
+            "ORDER BY d.id")
+    List<FirstDiagnosisDoctor> findFirstDiagnosisDoctors();
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Diagnosis d SET d.code = :target WHERE d.code = :source")
+    int recode(@Param("source") DiagnosisCode source, @Param("target") DiagnosisCode target);
+}
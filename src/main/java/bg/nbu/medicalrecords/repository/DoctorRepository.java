@@ -1,7 +1,13 @@
 package bg.nbu.medicalrecords.repository;
 
 import bg.nbu.medicalrecords.domain.Doctor;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
 
 public interface DoctorRepository extends JpaRepository<Doctor, Long> {
     Doctor findByKeycloakUserId(String keycloakUserId);
@@ -10,4 +16,11 @@ public interface DoctorRepository extends JpaRepository<Doctor, Long> {
     boolean existsByKeycloakUserId(String uniqueIdentifier);
 
     void deleteByKeycloakUserId(String userId);
+
+    /**
+     * Row lock on the doctor, held until the surrounding transaction ends; serialises bookings per doctor.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Doctor d WHERE d.id = :id")
+    Optional<Doctor> lockById(@Param("id") Long id);
 }
@@ -0,0 +1,27 @@
+package bg.nbu.medicalrecords.repository;
+
+import bg.nbu.medicalrecords.domain.DomainEventOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface DomainEventOutboxRepository extends JpaRepository<DomainEventOutbox, Long> {
+
+    // A plain read, no lock: every instance reads every row
+    List<DomainEventOutbox> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+    DomainEventOutbox findFirstByIdGreaterThanOrderByIdAsc(long id);
+
+    long countByIdGreaterThan(long id);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM DomainEventOutbox e WHERE e.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
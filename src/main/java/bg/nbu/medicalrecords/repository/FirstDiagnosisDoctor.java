@@ -0,0 +1,10 @@
+package bg.nbu.medicalrecords.repository;
+
+/**
+ * Projection of the doctor who made the earliest diagnosis of a code.
+ */
+public interface FirstDiagnosisDoctor {
+    Integer getCodeId();
+
+    String getDoctorName();
+}
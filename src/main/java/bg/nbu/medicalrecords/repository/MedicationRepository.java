@@ -3,5 +3,9 @@ package bg.nbu.medicalrecords.repository;
 import bg.nbu.medicalrecords.domain.Medication;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+
 public interface MedicationRepository extends JpaRepository<Medication, Long> {
+
+    List<Medication> findByRetiredFalse();
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package bg.nbu.medicalrecords.repository;
 import bg.nbu.medicalrecords.domain.Patient;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,4 +15,6 @@ public interface PatientRepository extends JpaRepository<Patient, Long> {
 
     List<Patient> findByPrimaryDoctor_Id(Long id);
 
+    List<Patient> findByKeycloakUserIdIn(Collection<String> keycloakUserIds);
+
 }
@@ -0,0 +1,28 @@
+package bg.nbu.medicalrecords.repository;
+
+import bg.nbu.medicalrecords.domain.RoleChangeOutbox;
+import bg.nbu.medicalrecords.domain.RoleChangeStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface RoleChangeOutboxRepository extends JpaRepository<RoleChangeOutbox, Long> {
+
+    // FOR UPDATE SKIP LOCKED, so several application instances never push the same row
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT r FROM RoleChangeOutbox r WHERE r.status = :status AND r.nextAttemptAt <= :now ORDER BY r.id")
+    List<RoleChangeOutbox> findDue(@Param("status") RoleChangeStatus status, @Param("now") LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE RoleChangeOutbox r SET r.status = :superseded WHERE r.keycloakUserId = :keycloakUserId AND r.id < :id AND r.status = :pending")
+    int supersedeOlder(@Param("keycloakUserId") String keycloakUserId,
+                       @Param("id") Long id,
+                       @Param("pending") RoleChangeStatus pending,
+                       @Param("superseded") RoleChangeStatus superseded);
+}
@@ -4,6 +4,9 @@ import bg.nbu.medicalrecords.domain.Patient;
 import bg.nbu.medicalrecords.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
+
 public interface UserRepository extends JpaRepository<User, Long> {
     User findByKeycloakUserId(String keycloakUserId);
 
@@ -11,4 +14,6 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     boolean existsByKeycloakUserId(String userId);
 
+    List<User> findByKeycloakUserIdIn(Collection<String> keycloakUserIds);
+
 }
\ No newline at end of file
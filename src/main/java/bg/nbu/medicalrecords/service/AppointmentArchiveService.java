@@ -0,0 +1,292 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.*;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.util.MappingUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Hot/cold split of the appointment history.
+ * <p>
+ * A scheduled job moves closed appointments, with their diagnoses, treatments, prescriptions and sick leaves, from
+ * the hot tables into the {@code *_archive} tables, {@code batch-size} appointments per transaction. An appointment
+ * is closed once it lies more than {@code horizon-days} in the past and none of its treatments or sick leaves
+ * runs past that horizon. Rows keep their ids, so references held by clients stay valid. Each batch records an
+ * {@code APPOINTMENT_ARCHIVED} domain event per appointment, so the search index, which only covers the hot tables,
+ * drops them.
+ * <p>
+ * Reads that cover the whole history, or reach back past the horizon, add the archived appointments through
+ * {@link #findForPatient}; everything else only touches the hot tables. Archived records cannot be edited, so their
+ * DTOs carry no version.
+ */
+@Slf4j
+@Service
+public class AppointmentArchiveService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DoctorRepository doctorRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${medical-records.archive.horizon-days:730}")
+    private int horizonDays;
+
+    @Value("${medical-records.archive.batch-size:500}")
+    private int batchSize;
+
+    // Newest archived appointment; covers rows archived earlier under a shorter horizon
+    private volatile LocalDateTime archivedUpTo;
+
+    public AppointmentArchiveService(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                     DoctorRepository doctorRepository, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.doctorRepository = doctorRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Re-read the newest archived appointment, which another instance's job may have moved on.
+     */
+    @Scheduled(fixedDelayString = "${medical-records.archive.watermark-refresh-ms:60000}")
+    public void refreshArchivedUpTo() {
+        archivedUpTo = jdbcTemplate.queryForObject("SELECT MAX(appointment_date_time) FROM appointments_archive",
+                new MapSqlParameterSource(), LocalDateTime.class);
+    }
+
+    /**
+     * Appointments before this moment may be archived.
+     */
+    public LocalDateTime cutoff() {
+        return LocalDate.now().minusDays(horizonDays).atStartOfDay();
+    }
+
+    /**
+     * Whether a read of the appointments from {@code from} on (null for the whole history) can hit the archive.
+     */
+    public boolean reachesArchive(LocalDateTime from) {
+        if (from == null || from.isBefore(cutoff())) {
+            return true;
+        }
+        LocalDateTime upTo = archivedUpTo;
+        return upTo != null && !from.isAfter(upTo);
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.archive.interval-ms:3600000}",
+            initialDelayString = "${medical-records.archive.initial-delay-ms:600000}")
+    public void archiveClosedAppointments() {
+        LocalDateTime cutoff = cutoff();
+        long archived = 0;
+        Integer moved;
+        do {
+            moved = transactionTemplate.execute(status -> archiveBatch(cutoff));
+            archived += moved != null ? moved : 0;
+        } while (moved != null && moved == batchSize);
+        if (archived > 0) {
+            log.info("Archived {} appointments from before {}", archived, cutoff);
+        }
+    }
+
+    /**
+     * Move one batch of closed appointments from before {@code cutoff} into the archive. Returns the number moved.
+     */
+    int archiveBatch(LocalDateTime cutoff) {
+        // FOR UPDATE keeps a concurrent edit of these appointments waiting until they are gone from the hot tables
+        List<Long> ids = jdbcTemplate.queryForList("""
+                        SELECT a.id FROM appointments a
+                        WHERE a.appointment_date_time < :cutoff
+                          AND NOT EXISTS (SELECT 1 FROM sick_leaves s WHERE s.appointment_id = a.id AND s.end_date >= :cutoffDate)
+                          AND NOT EXISTS (SELECT 1 FROM treatments t JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                                          WHERE dg.appointment_id = a.id AND t.end_date >= :cutoffDate)
+                        ORDER BY a.id
+                        LIMIT :limit
+                        FOR UPDATE""",
+                new MapSqlParameterSource("cutoff", cutoff)
+                        .addValue("cutoffDate", cutoff.toLocalDate())
+                        .addValue("limit", batchSize),
+                Long.class);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("ids", ids).addValue("now", LocalDateTime.now());
+        jdbcTemplate.update("""
+                INSERT INTO appointments_archive (id, patient_id, doctor_id, created_at, updated_at, appointment_date_time,
+                                                  version, duration_minutes, appointment_end_date_time, campaign_id, archived_at)
+                SELECT id, patient_id, doctor_id, created_at, updated_at, appointment_date_time,
+                       version, duration_minutes, appointment_end_date_time, campaign_id, :now
+                FROM appointments WHERE id IN (:ids)""", parameters);
+        jdbcTemplate.update("""
+                INSERT INTO diagnoses_archive (id, statement, diagnosed_date, appointment_id, diagnosis_code_id, created_at, updated_at, version)
+                SELECT id, statement, diagnosed_date, appointment_id, diagnosis_code_id, created_at, updated_at, version
+                FROM diagnoses WHERE appointment_id IN (:ids)""", parameters);
+        jdbcTemplate.update("""
+                INSERT INTO treatments_archive (id, diagnosis_id, start_date, end_date, description, created_at, updated_at, version)
+                SELECT t.id, t.diagnosis_id, t.start_date, t.end_date, t.description, t.created_at, t.updated_at, t.version
+                FROM treatments t JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                WHERE dg.appointment_id IN (:ids)""", parameters);
+        jdbcTemplate.update("""
+                INSERT INTO prescriptions_archive (id, treatment_id, medication_id, dosage, duration, created_at, updated_at, version)
+                SELECT p.id, p.treatment_id, p.medication_id, p.dosage, p.duration, p.created_at, p.updated_at, p.version
+                FROM prescriptions p JOIN treatments t ON t.id = p.treatment_id JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                WHERE dg.appointment_id IN (:ids)""", parameters);
+        jdbcTemplate.update("""
+                INSERT INTO sick_leaves_archive (id, appointment_id, reason, today_date, start_date, end_date, created_at, updated_at, version)
+                SELECT id, appointment_id, reason, today_date, start_date, end_date, created_at, updated_at, version
+                FROM sick_leaves WHERE appointment_id IN (:ids)""", parameters);
+
+        // Children first, so no delete depends on the ON DELETE CASCADE of the hot foreign keys
+        jdbcTemplate.update("""
+                DELETE FROM prescriptions WHERE treatment_id IN (
+                    SELECT t.id FROM treatments t JOIN diagnoses dg ON dg.id = t.diagnosis_id WHERE dg.appointment_id IN (:ids))""",
+                parameters);
+        jdbcTemplate.update("DELETE FROM treatments WHERE diagnosis_id IN (SELECT dg.id FROM diagnoses dg WHERE dg.appointment_id IN (:ids))",
+                parameters);
+        jdbcTemplate.update("DELETE FROM sick_leaves WHERE appointment_id IN (:ids)", parameters);
+        jdbcTemplate.update("DELETE FROM diagnoses WHERE appointment_id IN (:ids)", parameters);
+        jdbcTemplate.update("DELETE FROM appointments WHERE id IN (:ids)", parameters);
+        // Recorded in this transaction, so the outbox rows commit with the move
+        eventPublisher.publishEvent(AppointmentsRemovedEvent.of(ids, AppointmentsRemovedEvent.Reason.ARCHIVED));
+
+        LocalDateTime newest = jdbcTemplate.queryForObject(
+                "SELECT MAX(appointment_date_time) FROM appointments_archive WHERE id IN (:ids)", parameters, LocalDateTime.class);
+        LocalDateTime upTo = archivedUpTo;
+        if (newest != null && (upTo == null || newest.isAfter(upTo))) {
+            archivedUpTo = newest;
+        }
+        return ids.size();
+    }
+
+    /**
+     * The patient's archived appointments from {@code from} on (all of them when null), oldest first, with their
+     * clinical records; one query per record type.
+     */
+    public List<AppointmentDto> findForPatient(Patient patient, User patientUser, LocalDateTime from) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource("patientId", patient.getId()).addValue("from", from);
+        String sql = "SELECT id, doctor_id, created_at, updated_at, appointment_date_time, duration_minutes"
+                + " FROM appointments_archive WHERE patient_id = :patientId"
+                + (from != null ? " AND appointment_date_time >= :from" : "")
+                + " ORDER BY appointment_date_time, id";
+        List<ArchivedAppointment> appointments = jdbcTemplate.query(sql, parameters,
+                (rs, rowNum) -> new ArchivedAppointment(rs.getLong("id"), rs.getLong("doctor_id"), dateTime(rs, "created_at"),
+                        dateTime(rs, "updated_at"), dateTime(rs, "appointment_date_time"), (Integer) rs.getObject("duration_minutes")));
+        if (appointments.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> appointmentIds = appointments.stream().map(ArchivedAppointment::id).toList();
+        MapSqlParameterSource ids = new MapSqlParameterSource("ids", appointmentIds);
+
+        Map<Long, List<PrescriptionDto>> prescriptionsByTreatment = new HashMap<>();
+        jdbcTemplate.query("""
+                        SELECT p.id, p.treatment_id, p.dosage, p.duration, p.created_at, p.updated_at,
+                               m.id AS medication_id, m.medication_name, m.dosage_form, m.strength, m.side_effect,
+                               m.created_at AS medication_created_at, m.updated_at AS medication_updated_at
+                        FROM prescriptions_archive p
+                        JOIN medications m ON m.id = p.medication_id
+                        JOIN treatments_archive t ON t.id = p.treatment_id
+                        JOIN diagnoses_archive dg ON dg.id = t.diagnosis_id
+                        WHERE dg.appointment_id IN (:ids)
+                        ORDER BY p.id""",
+                ids,
+                (ResultSet rs) -> {
+                    MedicationDto medication = new MedicationDto(rs.getLong("medication_id"), rs.getString("medication_name"),
+                            rs.getString("dosage_form"), rs.getString("strength"), rs.getString("side_effect"),
+                            dateTime(rs, "medication_created_at"), dateTime(rs, "medication_updated_at"));
+                    prescriptionsByTreatment.computeIfAbsent(rs.getLong("treatment_id"), id -> new ArrayList<>())
+                            .add(new PrescriptionDto(rs.getLong("id"), medication, rs.getString("dosage"),
+                                    (Integer) rs.getObject("duration"), dateTime(rs, "created_at"), dateTime(rs, "updated_at"), null));
+                });
+
+        Map<Long, List<TreatmentDto>> treatmentsByDiagnosis = new HashMap<>();
+        jdbcTemplate.query("""
+                        SELECT t.id, t.diagnosis_id, t.start_date, t.end_date, t.description, t.created_at, t.updated_at
+                        FROM treatments_archive t
+                        JOIN diagnoses_archive dg ON dg.id = t.diagnosis_id
+                        WHERE dg.appointment_id IN (:ids)
+                        ORDER BY t.id""",
+                ids,
+                (ResultSet rs) -> {
+                    long id = rs.getLong("id");
+                    treatmentsByDiagnosis.computeIfAbsent(rs.getLong("diagnosis_id"), diagnosisId -> new ArrayList<>())
+                            .add(new TreatmentDto(id, dateTime(rs, "created_at"), dateTime(rs, "updated_at"),
+                                    date(rs, "start_date"), date(rs, "end_date"),
+                                    prescriptionsByTreatment.getOrDefault(id, List.of()), rs.getString("description"), null));
+                });
+
+        Map<Long, List<DiagnosisDto>> diagnosesByAppointment = new HashMap<>();
+        jdbcTemplate.query("""
+                        SELECT id, appointment_id, statement, diagnosed_date, created_at, updated_at
+                        FROM diagnoses_archive
+                        WHERE appointment_id IN (:ids)
+                        ORDER BY id""",
+                ids,
+                (ResultSet rs) -> {
+                    long id = rs.getLong("id");
+                    diagnosesByAppointment.computeIfAbsent(rs.getLong("appointment_id"), appointmentId -> new ArrayList<>())
+                            .add(new DiagnosisDto(id, rs.getString("statement"), dateTime(rs, "diagnosed_date"),
+                                    dateTime(rs, "created_at"), dateTime(rs, "updated_at"),
+                                    treatmentsByDiagnosis.getOrDefault(id, List.of()), null));
+                });
+
+        Map<Long, List<SickLeaveDto>> sickLeavesByAppointment = new HashMap<>();
+        jdbcTemplate.query("""
+                        SELECT id, appointment_id, reason, today_date, start_date, end_date, created_at, updated_at
+                        FROM sick_leaves_archive
+                        WHERE appointment_id IN (:ids)
+                        ORDER BY id""",
+                ids,
+                (ResultSet rs) -> {
+                    sickLeavesByAppointment.computeIfAbsent(rs.getLong("appointment_id"), appointmentId -> new ArrayList<>())
+                            .add(new SickLeaveDto(rs.getLong("id"), rs.getString("reason"), date(rs, "today_date"),
+                                    date(rs, "start_date"), date(rs, "end_date"), dateTime(rs, "created_at"), dateTime(rs, "updated_at"), null));
+                });
+
+        Set<Long> doctorIds = appointments.stream().map(ArchivedAppointment::doctorId).collect(Collectors.toSet());
+        Map<Long, DoctorDto> doctors = doctorRepository.findAllById(doctorIds).stream()
+                .map(MappingUtils::mapToDoctorDto)
+                .collect(Collectors.toMap(DoctorDto::getId, Function.identity()));
+        PatientDto patientDto = MappingUtils.mapToPatientDto(patient, patientUser);
+
+        return appointments.stream()
+                .map(appointment -> new AppointmentDto(appointment.id(), patientDto, doctors.get(appointment.doctorId()),
+                        diagnosesByAppointment.getOrDefault(appointment.id(), List.of()),
+                        sickLeavesByAppointment.getOrDefault(appointment.id(), List.of()),
+                        appointment.createdAt(), appointment.updatedAt(), appointment.appointmentDateTime(),
+                        appointment.durationMinutes(), null))
+                .toList();
+    }
+
+    private static LocalDateTime dateTime(ResultSet rs, String column) throws SQLException {
+        Timestamp timestamp = rs.getTimestamp(column);
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    private static LocalDate date(ResultSet rs, String column) throws SQLException {
+        Date date = rs.getDate(column);
+        return date != null ? date.toLocalDate() : null;
+    }
+
+    private record ArchivedAppointment(long id, long doctorId, LocalDateTime createdAt, LocalDateTime updatedAt,
+                                       LocalDateTime appointmentDateTime, Integer durationMinutes) {
+    }
+}
@@ -0,0 +1,51 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.domain.Doctor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published by the services that write an appointment or its clinical records; delivered to the
+ * appointment's doctor and patient by {@link AppointmentEventStream} once the write has committed. When the
+ * appointment was handed to another doctor, the previous doctor is carried as well so they hear about it too.
+ */
+public record AppointmentChangedEvent(Long appointmentId,
+                                      Long doctorId,
+                                      String doctorKeycloakUserId,
+                                      String patientKeycloakUserId,
+                                      Long previousDoctorId,
+                                      String previousDoctorKeycloakUserId,
+                                      Subject subject,
+                                      Action action,
+                                      LocalDateTime occurredAt) {
+
+    public enum Subject {
+        APPOINTMENT, DIAGNOSIS, TREATMENT, PRESCRIPTION, SICK_LEAVE
+    }
+
+    public enum Action {
+        CREATED, UPDATED, DELETED
+    }
+
+    public static AppointmentChangedEvent of(Appointment appointment, Subject subject, Action action) {
+        return of(appointment, null, subject, action);
+    }
+
+    /**
+     * @param previousDoctor the doctor the appointment was taken from, or {@code null} when it kept its doctor
+     */
+    public static AppointmentChangedEvent of(Appointment appointment, Doctor previousDoctor, Subject subject, Action action) {
+        return new AppointmentChangedEvent(
+                appointment.getId(),
+                appointment.getDoctor() != null ? appointment.getDoctor().getId() : null,
+                appointment.getDoctor() != null ? appointment.getDoctor().getKeycloakUserId() : null,
+                appointment.getPatient() != null ? appointment.getPatient().getKeycloakUserId() : null,
+                previousDoctor != null ? previousDoctor.getId() : null,
+                previousDoctor != null ? previousDoctor.getKeycloakUserId() : null,
+                subject,
+                action,
+                LocalDateTime.now()
+        );
+    }
+}
@@ -0,0 +1,137 @@
+package bg.nbu.medicalrecords.service;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Set-based deletes of appointments with their diagnoses, treatments, prescriptions and sick leaves.
+ * <p>
+ * The partitioned appointment and diagnosis tables have no foreign keys on MySQL, so nothing cascades in the
+ * database; and the JPA cascades load every record of an appointment to delete it row by row. Instead, each record
+ * type goes in one {@code DELETE ... WHERE ... IN (subquery)}, children first, so deleting a patient with years of
+ * history takes five DELETE statements. Pending changes are flushed before and the persistence context is cleared
+ * after, so no managed entity still points at a deleted row.
+ * <p>
+ * For the future appointments among them (the ones a calendar, a booking campaign or a live stream cares about),
+ * campaign slots are released and {@link AppointmentChangedEvent}s published. Past history is reported with a single
+ * {@link AppointmentsRemovedEvent}, which nobody is notified about but still removes it from the search index.
+ */
+@Slf4j
+@Service
+public class AppointmentDeletionService {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final BookingCampaignService bookingCampaignService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public AppointmentDeletionService(NamedParameterJdbcTemplate jdbcTemplate, EntityManager entityManager,
+                                      BookingCampaignService bookingCampaignService, ApplicationEventPublisher eventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManager = entityManager;
+        this.bookingCampaignService = bookingCampaignService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Delete one appointment and its records; the caller publishes the event and releases the campaign slot.
+     */
+    @Transactional
+    public int deleteAppointment(Long appointmentId) {
+        return delete(Owner.APPOINTMENT, appointmentId);
+    }
+
+    /**
+     * Delete all appointments of the patient, ahead of deleting the patient.
+     */
+    @Transactional
+    public int deleteForPatient(Long patientId) {
+        LocalDateTime now = LocalDateTime.now();
+        notifyUpcoming(Owner.PATIENT, patientId, now);
+        recordPast(Owner.PATIENT, patientId, now);
+        return delete(Owner.PATIENT, patientId);
+    }
+
+    /**
+     * Delete all appointments with the doctor, ahead of deleting the doctor. The doctor's booking campaigns go with
+     * the doctor, so they are closed once this commits.
+     */
+    @Transactional
+    public int deleteForDoctor(Long doctorId) {
+        LocalDateTime now = LocalDateTime.now();
+        notifyUpcoming(Owner.DOCTOR, doctorId, now);
+        recordPast(Owner.DOCTOR, doctorId, now);
+        bookingCampaignService.closeForDoctor(doctorId);
+        return delete(Owner.DOCTOR, doctorId);
+    }
+
+    private int delete(Owner owner, Long id) {
+        entityManager.flush();
+        MapSqlParameterSource parameters = new MapSqlParameterSource("id", id);
+        String appointments = "SELECT a.id FROM appointments a WHERE a." + owner.column + " = :id";
+
+        jdbcTemplate.update("DELETE FROM prescriptions WHERE treatment_id IN (SELECT t.id FROM treatments t "
+                + "JOIN diagnoses dg ON dg.id = t.diagnosis_id WHERE dg.appointment_id IN (" + appointments + "))", parameters);
+        jdbcTemplate.update("DELETE FROM treatments WHERE diagnosis_id IN (SELECT dg.id FROM diagnoses dg "
+                + "WHERE dg.appointment_id IN (" + appointments + "))", parameters);
+        jdbcTemplate.update("DELETE FROM sick_leaves WHERE appointment_id IN (" + appointments + ")", parameters);
+        jdbcTemplate.update("DELETE FROM diagnoses WHERE appointment_id IN (" + appointments + ")", parameters);
+        int deleted = jdbcTemplate.update("DELETE FROM appointments WHERE " + owner.column + " = :id", parameters);
+
+        entityManager.clear();
+        if (owner != Owner.APPOINTMENT && deleted > 0) {
+            log.info("Deleted {} appointments with {} {}", deleted, owner.column, id);
+        }
+        return deleted;
+    }
+
+    private void notifyUpcoming(Owner owner, Long id, LocalDateTime now) {
+        List<AppointmentChangedEvent> events = jdbcTemplate.query("""
+                        SELECT a.id, a.doctor_id, d.keycloak_user_id AS doctor_keycloak_user_id,
+                               p.keycloak_user_id AS patient_keycloak_user_id, a.campaign_id, a.appointment_date_time
+                        FROM appointments a
+                        JOIN doctors d ON d.id = a.doctor_id
+                        JOIN patients p ON p.id = a.patient_id
+                        WHERE a.""" + owner.column + " = :id AND a.appointment_date_time >= :now",
+                new MapSqlParameterSource("id", id).addValue("now", now),
+                (rs, rowNum) -> {
+                    long campaignId = rs.getLong("campaign_id");
+                    if (!rs.wasNull()) {
+                        Timestamp slotStart = rs.getTimestamp("appointment_date_time");
+                        bookingCampaignService.release(campaignId, slotStart.toLocalDateTime(), rs.getString("patient_keycloak_user_id"));
+                    }
+                    return new AppointmentChangedEvent(rs.getLong("id"), rs.getLong("doctor_id"),
+                            rs.getString("doctor_keycloak_user_id"), rs.getString("patient_keycloak_user_id"), null, null,
+                            AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.DELETED, LocalDateTime.now());
+                });
+        events.forEach(eventPublisher::publishEvent);
+    }
+
+    private void recordPast(Owner owner, Long id, LocalDateTime now) {
+        List<Long> appointmentIds = jdbcTemplate.queryForList(
+                "SELECT a.id FROM appointments a WHERE a." + owner.column + " = :id AND a.appointment_date_time < :now",
+                new MapSqlParameterSource("id", id).addValue("now", now), Long.class);
+        if (!appointmentIds.isEmpty()) {
+            eventPublisher.publishEvent(AppointmentsRemovedEvent.of(appointmentIds, AppointmentsRemovedEvent.Reason.DELETED));
+        }
+    }
+
+    private enum Owner {
+        APPOINTMENT("id"), PATIENT("patient_id"), DOCTOR("doctor_id");
+
+        private final String column;
+
+        Owner(String column) {
+            this.column = column;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.AppointmentChangeDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Server-sent event feed behind {@code /appointments/stream}. Committed {@link AppointmentChangedEvent}s are
+ * fanned out to the subscribed doctor and patient of the appointment, and to the doctor it was taken from on a
+ * reassignment (admins receive everything).
+ * <p>
+ * Every subscriber has a bounded queue drained by a small sender pool, so a slow client never holds up the
+ * request that made the change. A subscriber whose queue overflows is disconnected; it reconnects with
+ * {@code Last-Event-ID} and the missed events are replayed from a ring buffer of the most recent events.
+ * When the buffer no longer reaches back that far (or the id comes from before a restart) the client gets
+ * a {@code reset} event and should reload its appointment list once.
+ */
+@Slf4j
+@Component
+public class AppointmentEventStream implements DisposableBean {
+
+    static final String CHANGE_EVENT = "appointment-changed";
+    static final String RESET_EVENT = "reset";
+
+    private final AuthenticationService authenticationService;
+    private final ThreadPoolTaskExecutor sender = new ThreadPoolTaskExecutor();
+    private final int bufferSize;
+    private final int clientQueueCapacity;
+    private final long timeoutMs;
+
+    // Event ids are "<epoch>-<sequence>"; a different epoch means the id was issued before a restart
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Object lock = new Object();
+    // guarded by lock
+    private final ArrayDeque<BufferedEvent> recent = new ArrayDeque<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private long sequence;
+
+    public AppointmentEventStream(AuthenticationService authenticationService,
+                                  @Value("${medical-records.appointment-stream.buffer-size:1000}") int bufferSize,
+                                  @Value("${medical-records.appointment-stream.client-queue-capacity:100}") int clientQueueCapacity,
+                                  @Value("${medical-records.appointment-stream.timeout-ms:1800000}") long timeoutMs,
+                                  @Value("${medical-records.appointment-stream.sender-pool-size:4}") int senderPoolSize) {
+        this.authenticationService = authenticationService;
+        this.bufferSize = bufferSize;
+        this.clientQueueCapacity = clientQueueCapacity;
+        this.timeoutMs = timeoutMs;
+        sender.setCorePoolSize(senderPoolSize);
+        sender.setMaxPoolSize(senderPoolSize);
+        sender.setThreadNamePrefix("appointment-stream-");
+        sender.initialize();
+    }
+
+    /**
+     * Subscribe the logged-in user, first replaying what they missed after {@code lastEventId} (may be null).
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        User currentUser = authenticationService.getCurrentUser();
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, currentUser.getKeycloakUserId(),
+                "admin".equals(currentUser.getRole()), clientQueueCapacity);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+
+        synchronized (lock) {
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                replay(subscriber, lastEventId.trim());
+            }
+            subscribers.add(subscriber);
+        }
+        scheduleSend(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Runs after the publishing transaction commits, or straight away when the write was not transactional.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAppointmentChanged(AppointmentChangedEvent event) {
+        List<Subscriber> recipients = new ArrayList<>();
+        synchronized (lock) {
+            BufferedEvent buffered = new BufferedEvent(++sequence, event);
+            recent.addLast(buffered);
+            if (recent.size() > bufferSize) {
+                recent.removeFirst();
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.isInterestedIn(event)) {
+                    subscriber.enqueue(toMessage(buffered));
+                    recipients.add(subscriber);
+                }
+            }
+        }
+        recipients.forEach(this::scheduleSend);
+    }
+
+    /**
+     * Keeps idle connections open through proxies and notices clients that went away.
+     */
+    @Scheduled(fixedDelayString = "${medical-records.appointment-stream.heartbeat-interval-ms:20000}")
+    public void sendHeartbeats() {
+        List<Subscriber> current;
+        synchronized (lock) {
+            current = new ArrayList<>(subscribers);
+        }
+        for (Subscriber subscriber : current) {
+            // a full queue is already being drained, so a dropped heartbeat does not matter
+            subscriber.queue.offer(Message.HEARTBEAT);
+            scheduleSend(subscriber);
+        }
+    }
+
+    int subscriberCount() {
+        synchronized (lock) {
+            return subscribers.size();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        List<Subscriber> current;
+        synchronized (lock) {
+            current = new ArrayList<>(subscribers);
+            subscribers.clear();
+        }
+        current.forEach(subscriber -> subscriber.emitter.complete());
+        sender.shutdown();
+    }
+
+    // Called with the lock held, so no event can be published between the replay and the registration
+    private void replay(Subscriber subscriber, String lastEventId) {
+        long lastSequence = parseSequence(lastEventId);
+        BufferedEvent oldest = recent.peekFirst();
+        boolean bufferReachesBack = lastSequence >= 0 && lastSequence <= sequence
+                && (oldest == null || oldest.sequence() <= lastSequence + 1);
+        if (!bufferReachesBack) {
+            subscriber.enqueue(new Message(currentId(), RESET_EVENT, ""));
+            return;
+        }
+        List<BufferedEvent> missed = new ArrayList<>();
+        for (BufferedEvent buffered : recent) {
+            if (buffered.sequence() > lastSequence && subscriber.isInterestedIn(buffered.event())) {
+                missed.add(buffered);
+            }
+        }
+        if (missed.size() >= clientQueueCapacity) {
+            // more than the client could take at once; reloading the list is cheaper than replaying it
+            subscriber.enqueue(new Message(currentId(), RESET_EVENT, ""));
+            return;
+        }
+        missed.forEach(buffered -> subscriber.enqueue(toMessage(buffered)));
+    }
+
+    private long parseSequence(String eventId) {
+        int separator = eventId.lastIndexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String currentId() {
+        return epoch + "-" + sequence;
+    }
+
+    private Message toMessage(BufferedEvent buffered) {
+        AppointmentChangedEvent event = buffered.event();
+        return new Message(epoch + "-" + buffered.sequence(), CHANGE_EVENT, new AppointmentChangeDto(
+                event.appointmentId(),
+                event.subject().name(),
+                event.action().name(),
+                event.occurredAt()
+        ));
+    }
+
+    private void scheduleSend(Subscriber subscriber) {
+        if (!subscriber.sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(() -> drain(subscriber));
+        } catch (TaskRejectedException e) {
+            subscriber.sending.set(false);
+            disconnect(subscriber);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Message message;
+            while (!subscriber.overflowed && (message = subscriber.queue.poll()) != null) {
+                subscriber.emitter.send(message.toEvent());
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client has gone away; the container completes the emitter
+            remove(subscriber);
+            return;
+        } finally {
+            subscriber.sending.set(false);
+        }
+
+        if (subscriber.overflowed) {
+            log.debug("Disconnecting appointment stream subscriber {}: client queue overflowed", subscriber.keycloakUserId);
+            disconnect(subscriber);
+        } else if (!subscriber.queue.isEmpty()) {
+            // a message arrived between the last poll and releasing the flag
+            scheduleSend(subscriber);
+        }
+    }
+
+    private void disconnect(Subscriber subscriber) {
+        remove(subscriber);
+        subscriber.emitter.complete();
+    }
+
+    private void remove(Subscriber subscriber) {
+        synchronized (lock) {
+            subscribers.remove(subscriber);
+        }
+    }
+
+    private record BufferedEvent(long sequence, AppointmentChangedEvent event) {
+    }
+
+    private record Message(String id, String name, Object data) {
+
+        static final Message HEARTBEAT = new Message(null, null, null);
+
+        SseEmitter.SseEventBuilder toEvent() {
+            if (name == null) {
+                return SseEmitter.event().comment("keep-alive");
+            }
+            return SseEmitter.event().id(id).name(name).data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private static class Subscriber {
+        private final SseEmitter emitter;
+        private final String keycloakUserId;
+        private final boolean admin;
+        private final BlockingQueue<Message> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean overflowed;
+
+        Subscriber(SseEmitter emitter, String keycloakUserId, boolean admin, int queueCapacity) {
+            this.emitter = emitter;
+            this.keycloakUserId = keycloakUserId;
+            this.admin = admin;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        boolean isInterestedIn(AppointmentChangedEvent event) {
+            return admin
+                    || keycloakUserId.equals(event.doctorKeycloakUserId())
+                    || keycloakUserId.equals(event.previousDoctorKeycloakUserId())
+                    || keycloakUserId.equals(event.patientKeycloakUserId());
+        }
+
+        void enqueue(Message message) {
+            if (!queue.offer(message)) {
+                overflowed = true;
+            }
+        }
+    }
+}
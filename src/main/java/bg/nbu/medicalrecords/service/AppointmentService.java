@@ -3,16 +3,22 @@ package bg.nbu.medicalrecords.service;
 import bg.nbu.medicalrecords.dto.UpdateAppointmentDto;
 import bg.nbu.medicalrecords.domain.*;
 import bg.nbu.medicalrecords.dto.AppointmentDto;
+import bg.nbu.medicalrecords.dto.AppointmentSummaryDto;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
 import bg.nbu.medicalrecords.dto.CreateAppointmentDto;
 import bg.nbu.medicalrecords.exception.*;
 import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.AppointmentSummary;
 import bg.nbu.medicalrecords.repository.PatientRepository;
 import bg.nbu.medicalrecords.util.MappingUtils;
+import bg.nbu.medicalrecords.util.VersionUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,15 +29,28 @@ public class AppointmentService {
     private final PatientService patientService;
     private final DoctorService doctorService;
     private final UserService userService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DoctorScheduleService doctorScheduleService;
+    private final BookingCampaignService bookingCampaignService;
+    private final AppointmentArchiveService appointmentArchiveService;
+    private final AppointmentDeletionService appointmentDeletionService;
 
     public AppointmentService(AppointmentRepository appointmentRepository, AuthenticationService authenticationService,
-                              PatientRepository patientRepository, PatientService patientService, DoctorService doctorService, UserService userService) {
+                              PatientRepository patientRepository, PatientService patientService, DoctorService doctorService, UserService userService,
+                              ApplicationEventPublisher eventPublisher, DoctorScheduleService doctorScheduleService,
+                              BookingCampaignService bookingCampaignService, AppointmentArchiveService appointmentArchiveService,
+                              AppointmentDeletionService appointmentDeletionService) {
         this.appointmentRepository = appointmentRepository;
         this.authenticationService = authenticationService;
         this.patientRepository = patientRepository;
         this.patientService = patientService;
         this.doctorService = doctorService;
         this.userService = userService;
+        this.eventPublisher = eventPublisher;
+        this.doctorScheduleService = doctorScheduleService;
+        this.bookingCampaignService = bookingCampaignService;
+        this.appointmentArchiveService = appointmentArchiveService;
+        this.appointmentDeletionService = appointmentDeletionService;
     }
 
     public List<AppointmentDto> findAllForLoggedInUser() {
@@ -45,6 +64,51 @@ public class AppointmentService {
         return appointments.stream().map(appointment -> MappingUtils.mapToAppointmentDto(appointment, currentUser)).collect(Collectors.toList());
     }
 
+    /**
+     * Same scope as {@link #findAllForLoggedInUser()}, but reads only the appointment, doctor and patient rows.
+     */
+    public List<AppointmentSummaryDto> findSummariesForLoggedInUser() {
+        User currentUser = authenticationService.getCurrentUser();
+        List<AppointmentSummary> summaries;
+        if (currentUser.getRole().contains("doctor")) {
+            summaries = appointmentRepository.findSummariesByDoctorKeycloakUserId(currentUser.getKeycloakUserId());
+        } else {
+            summaries = appointmentRepository.findSummariesByPatientKeycloakUserId(currentUser.getKeycloakUserId());
+        }
+        return summaries.stream().map(MappingUtils::mapToAppointmentSummaryDto).collect(Collectors.toList());
+    }
+
+    /**
+     * Multi-get: appointments with their doctor and patient in one IN-query, the patients' users in a second one;
+     * diagnoses and sick leaves are initialised in batches. A patient may only read their own appointments.
+     */
+    public BatchResultDto<AppointmentDto> findAllByIds(List<Long> ids) {
+        User currentUser = authenticationService.getCurrentUser();
+        Map<Long, Appointment> appointments = appointmentRepository.findByIdIn(ids).stream()
+                .collect(Collectors.toMap(Appointment::getId, Function.identity()));
+        Map<String, User> patientUsers = userService.findAllByKeycloakUserIds(appointments.values().stream()
+                .map(appointment -> appointment.getPatient().getKeycloakUserId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        List<AppointmentDto> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        List<Long> forbidden = new ArrayList<>();
+        for (Long id : ids) {
+            Appointment appointment = appointments.get(id);
+            if (appointment == null) {
+                missing.add(id);
+            } else if ("patient".equals(currentUser.getRole())
+                    && !Objects.equals(appointment.getPatient().getKeycloakUserId(), currentUser.getKeycloakUserId())) {
+                forbidden.add(id);
+            } else {
+                found.add(MappingUtils.mapToAppointmentDto(appointment, patientUsers.get(appointment.getPatient().getKeycloakUserId())));
+            }
+        }
+        return new BatchResultDto<>(found, missing, forbidden);
+    }
+
+    @Transactional
     public AppointmentDto createAppointment(CreateAppointmentDto dto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = new Appointment();
@@ -56,7 +120,10 @@ public class AppointmentService {
         appointment.setDoctor(doctor);
 
         appointment.setAppointmentDateTime(dto.getDate());
-        return MappingUtils.mapToAppointmentDto(appointmentRepository.save(appointment), currentUser);
+        appointment.setDurationMinutes(doctorScheduleService.reserve(doctor.getId(), dto.getDate(), dto.getDurationMinutes(), null));
+        Appointment saved = appointmentRepository.save(appointment);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(saved, AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.CREATED));
+        return MappingUtils.mapToAppointmentDto(saved, currentUser);
     }
 
     public Appointment findById(Long appointmentId) {
@@ -68,9 +135,18 @@ public class AppointmentService {
         appointmentRepository.save(appointment);
     }
 
+    /**
+     * Marks the appointment as changed after one of its clinical records was written.
+     */
+    public void touch(Long appointmentId) {
+        appointmentRepository.touch(appointmentId, LocalDateTime.now());
+    }
+
+    @Transactional
     public AppointmentDto updateAppointment(Long appointmentId, UpdateAppointmentDto updateAppointmentDto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = findById(appointmentId);
+        Doctor previousDoctor = appointment.getDoctor();
 
         if (currentUser.getRole().equals("doctor")) {
             Doctor doctor = doctorService.findByPrincipal();
@@ -80,11 +156,34 @@ public class AppointmentService {
         } else if (currentUser.getRole().equals("admin") && updateAppointmentDto.getDoctorId() != null) {
             appointment.setDoctor(doctorService.findById(updateAppointmentDto.getDoctorId()));
         }
+        VersionUtils.checkVersion(Appointment.class, appointmentId, updateAppointmentDto.getVersion(), appointment.getVersion());
+        boolean reassigned = !previousDoctor.getId().equals(appointment.getDoctor().getId());
+
+        // A campaign appointment moved elsewhere leaves the campaign and frees its place there
+        Long campaignId = appointment.getCampaignId();
+        LocalDateTime campaignSlot = appointment.getAppointmentDateTime();
+        boolean leavesCampaign = campaignId != null && !campaignSlot.equals(updateAppointmentDto.getAppointmentDateTime());
 
+        Integer durationMinutes = updateAppointmentDto.getDurationMinutes() != null
+                ? updateAppointmentDto.getDurationMinutes() : appointment.getDurationMinutes();
+        appointment.setDurationMinutes(doctorScheduleService.reserve(appointment.getDoctor().getId(),
+                updateAppointmentDto.getAppointmentDateTime(), durationMinutes, appointment.getId(),
+                leavesCampaign ? null : campaignId));
+        if (leavesCampaign) {
+            appointment.setCampaignId(null);
+        }
         appointment.setAppointmentDateTime(updateAppointmentDto.getAppointmentDateTime());
-        return MappingUtils.mapToAppointmentDto(appointmentRepository.save(appointment), currentUser);
+        // flushed so the returned DTO carries the new version
+        Appointment saved = appointmentRepository.saveAndFlush(appointment);
+        if (leavesCampaign) {
+            bookingCampaignService.release(campaignId, campaignSlot, saved.getPatient().getKeycloakUserId());
+        }
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(saved, reassigned ? previousDoctor : null,
+                AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.UPDATED));
+        return MappingUtils.mapToAppointmentDto(saved, currentUser);
     }
 
+    @Transactional
     public void deleteAppointment(Long appointmentId) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = findById(appointmentId);
@@ -95,17 +194,32 @@ public class AppointmentService {
                 throw new DoctorNotAssignedException("Doctor is not assigned to this appointment");
             }
         }
-        appointmentRepository.delete(appointment);
+        appointmentDeletionService.deleteAppointment(appointment.getId());
+        if (appointment.getCampaignId() != null) {
+            bookingCampaignService.release(appointment.getCampaignId(), appointment.getAppointmentDateTime(),
+                    appointment.getPatient().getKeycloakUserId());
+        }
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.DELETED));
     }
 
     public List<AppointmentDto> findAllForPatient(Long patientId) {
+        return findAllForPatient(patientId, null);
+    }
+
+    /**
+     * The patient's appointments from {@code from} on, or all of them when null. Archived appointments come
+     * first, and are only read when {@code from} reaches back past the archive horizon.
+     */
+    public List<AppointmentDto> findAllForPatient(Long patientId, LocalDateTime from) {
         User currentUser = authenticationService.getCurrentUser();
 
         if (!currentUser.getRole().contains("admin") && !currentUser.getRole().contains("doctor")) {
             throw new UnauthorizedAccessException("You are not allowed to view this patient's appointments");
         }
 
-        List<Appointment> appointments = appointmentRepository.findByPatient_Id(patientId);
+        List<Appointment> appointments = from == null
+                ? appointmentRepository.findByPatient_Id(patientId)
+                : appointmentRepository.findByPatient_IdAndAppointmentDateTimeGreaterThanEqual(patientId, from);
         Optional<Patient> patient = patientRepository.findById(patientId);
 
         String patientKeycloakUserId = patient.map(Patient::getKeycloakUserId).orElse(null);
@@ -114,7 +228,13 @@ public class AppointmentService {
         }
 
         User patientUser = userService.findByKeycloakUserId(patientKeycloakUserId);
-        return appointments.stream().map(appointment -> MappingUtils.mapToAppointmentDto(appointment, patientUser)).collect(Collectors.toList());
+        List<AppointmentDto> hot = appointments.stream().map(appointment -> MappingUtils.mapToAppointmentDto(appointment, patientUser)).collect(Collectors.toList());
+        if (!appointmentArchiveService.reachesArchive(from)) {
+            return hot;
+        }
+        List<AppointmentDto> all = new ArrayList<>(appointmentArchiveService.findForPatient(patient.get(), patientUser, from));
+        all.addAll(hot);
+        return all;
     }
 
     public List<Appointment> findAllByDoctorId(Long id) {
@@ -122,9 +242,8 @@ public class AppointmentService {
     }
 
     public List<AppointmentDto> getAppointmentsForDoctorInPeriod(Long doctorId, LocalDateTime startDate, LocalDateTime endDate) {
-        List<Appointment> appointments = appointmentRepository.findByDoctor_Id(doctorId);
+        List<Appointment> appointments = appointmentRepository.findByDoctorInPeriod(doctorId, startDate, endDate);
         return appointments.stream()
-                .filter(appointment -> appointment.getAppointmentDateTime().isAfter(startDate) && appointment.getAppointmentDateTime().isBefore(endDate))
                 .map(appointment -> MappingUtils.mapToAppointmentDto(appointment, userService.findByKeycloakUserId(appointment.getPatient().getKeycloakUserId())))
                 .collect(Collectors.toList());
     }
@@ -132,4 +251,18 @@ public class AppointmentService {
     public List<Appointment> findAll() {
         return appointmentRepository.findAll();
     }
+
+    /**
+     * Appointments starting in [start, end).
+     */
+    public List<Appointment> findAllInPeriod(LocalDateTime start, LocalDateTime end) {
+        return appointmentRepository.findInPeriod(start, end);
+    }
+
+    /**
+     * Ids of the doctors with an appointment starting strictly between start and end.
+     */
+    public List<Long> findDoctorIdsWithAppointmentsInPeriod(LocalDateTime start, LocalDateTime end) {
+        return appointmentRepository.findDoctorIdsInPeriod(start, end);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.User;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cheap version fingerprint of everything {@code /appointments/getAppointmentsForLoggedInUser} returns,
+ * so polling clients can be answered with 304 without loading or serializing any appointment.
+ */
+@Service
+public class AppointmentVersionService {
+
+    private static final String FINGERPRINT_SQL = """
+            SELECT COUNT(*), MAX(last_modified) FROM (
+                SELECT COALESCE(a.updated_at, a.created_at) AS last_modified
+                FROM appointments a JOIN %1$s o ON o.id = a.%2$s
+                WHERE o.keycloak_user_id = ?
+                UNION ALL
+                SELECT COALESCE(dg.updated_at, dg.created_at)
+                FROM diagnoses dg JOIN appointments a ON a.id = dg.appointment_id JOIN %1$s o ON o.id = a.%2$s
+                WHERE o.keycloak_user_id = ?
+                UNION ALL
+                SELECT COALESCE(t.updated_at, t.created_at)
+                FROM treatments t JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                JOIN appointments a ON a.id = dg.appointment_id JOIN %1$s o ON o.id = a.%2$s
+                WHERE o.keycloak_user_id = ?
+                UNION ALL
+                SELECT COALESCE(p.updated_at, p.created_at)
+                FROM prescriptions p JOIN treatments t ON t.id = p.treatment_id JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                JOIN appointments a ON a.id = dg.appointment_id JOIN %1$s o ON o.id = a.%2$s
+                WHERE o.keycloak_user_id = ?
+                UNION ALL
+                SELECT COALESCE(s.updated_at, s.created_at)
+                FROM sick_leaves s JOIN appointments a ON a.id = s.appointment_id JOIN %1$s o ON o.id = a.%2$s
+                WHERE o.keycloak_user_id = ?
+            ) changes""";
+
+    private static final String DOCTOR_SCOPE_SQL = FINGERPRINT_SQL.formatted("doctors", "doctor_id");
+    private static final String PATIENT_SCOPE_SQL = FINGERPRINT_SQL.formatted("patients", "patient_id");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuthenticationService authenticationService;
+    private final CatalogVersionService catalogVersionService;
+
+    public AppointmentVersionService(JdbcTemplate jdbcTemplate, AuthenticationService authenticationService,
+                                     CatalogVersionService catalogVersionService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.authenticationService = authenticationService;
+        this.catalogVersionService = catalogVersionService;
+    }
+
+    /**
+     * Row count and latest change over the user's appointments and their clinical records, plus the
+     * doctor and patient catalog versions (names and insurance status are part of the response too).
+     * Uses the same doctor/patient scope as {@link AppointmentService#findAllForLoggedInUser()}.
+     */
+    public String versionTokenForLoggedInUser() {
+        User currentUser = authenticationService.getCurrentUser();
+        String keycloakUserId = currentUser.getKeycloakUserId();
+        String sql = currentUser.getRole().contains("doctor") ? DOCTOR_SCOPE_SQL : PATIENT_SCOPE_SQL;
+
+        String fingerprint = jdbcTemplate.queryForObject(sql,
+                (rs, rowNum) -> rs.getLong(1) + "@" + rs.getTimestamp(2),
+                keycloakUserId, keycloakUserId, keycloakUserId, keycloakUserId, keycloakUserId);
+
+        return String.join("/", keycloakUserId, fingerprint,
+                catalogVersionService.versionToken(CatalogVersionService.Catalog.DOCTORS),
+                catalogVersionService.versionToken(CatalogVersionService.Catalog.PATIENTS));
+    }
+}
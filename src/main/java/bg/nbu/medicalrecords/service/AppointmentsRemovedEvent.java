@@ -0,0 +1,20 @@
+package bg.nbu.medicalrecords.service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Published when appointments leave the hot tables in bulk, without an {@link AppointmentChangedEvent} per appointment
+ * (nobody is notified about them). Recorded as one domain event per appointment, so consumers that mirror the hot
+ * tables, like the search index, drop them.
+ */
+public record AppointmentsRemovedEvent(List<Long> appointmentIds, Reason reason, LocalDateTime occurredAt) {
+
+    public enum Reason {
+        ARCHIVED, DELETED
+    }
+
+    public static AppointmentsRemovedEvent of(List<Long> appointmentIds, Reason reason) {
+        return new AppointmentsRemovedEvent(appointmentIds, reason, LocalDateTime.now());
+    }
+}
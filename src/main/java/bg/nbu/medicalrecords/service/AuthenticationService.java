@@ -34,4 +34,15 @@ public class AuthenticationService {
             throw new UnauthorizedAccessException("Principal is not a JWT instance");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Keycloak id of the caller, taken from the token alone; for hot paths that do not need the users row.
+     */
+    public String getCurrentKeycloakUserId() {
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        if (principal instanceof Jwt jwt) {
+            return jwt.getSubject();
+        }
+        throw new UnauthorizedAccessException("Principal is not a JWT instance");
+    }
+}
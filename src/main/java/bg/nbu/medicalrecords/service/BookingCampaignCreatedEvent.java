@@ -0,0 +1,7 @@
+package bg.nbu.medicalrecords.service;
+
+/**
+ * Published once a booking campaign is stored; its slots are taken in the doctor's calendar from then on.
+ */
+public record BookingCampaignCreatedEvent(Long campaignId, Long doctorId) {
+}
@@ -0,0 +1,417 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.domain.BookingCampaign;
+import bg.nbu.medicalrecords.domain.CampaignWaitlistEntry;
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.dto.BookingCampaignDto;
+import bg.nbu.medicalrecords.dto.CampaignBookingDto;
+import bg.nbu.medicalrecords.dto.CampaignSlotDto;
+import bg.nbu.medicalrecords.dto.CreateBookingCampaignDto;
+import bg.nbu.medicalrecords.exception.AppointmentConflictException;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.exception.PatientNotFoundException;
+import bg.nbu.medicalrecords.exception.ResourceNotFoundException;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.BookingCampaignRepository;
+import bg.nbu.medicalrecords.repository.CampaignBooking;
+import bg.nbu.medicalrecords.repository.CampaignWaitlistRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import bg.nbu.medicalrecords.util.TransactionUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Campaign mode for vaccination and screening drives, where thousands of patients book a fixed set of slots
+ * within minutes.
+ * <p>
+ * Each campaign's remaining capacity is held in memory, one counter per slot, and a booking takes a place with a
+ * compare-and-set; there is no lock, and the only query on the request path is an index lookup that the caller has a
+ * patient record, so no place is confirmed that could not be stored. A taken place is answered as confirmed
+ * straight away and queued; the queue is written as appointments in batches, one transaction per batch. When all
+ * slots are full a patient joins the bounded waitlist, or is turned away once that is full too; a freed place goes
+ * to the head of the waitlist. Counters are rebuilt from the stored appointments at startup, so confirmations still
+ * queued when the process dies are lost; {@link #destroy()} writes them out on a normal shutdown. The waitlist is
+ * stored as it is joined and reloaded in its order.
+ * <p>
+ * The counters are not shared between processes, so campaign mode needs the application to run as a single
+ * instance: a second one would sell the same places again.
+ */
+@Slf4j
+@Service
+public class BookingCampaignService implements DisposableBean {
+
+    private final BookingCampaignRepository bookingCampaignRepository;
+    private final CampaignWaitlistRepository campaignWaitlistRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final PatientRepository patientRepository;
+    private final DoctorRepository doctorRepository;
+    private final AuthenticationService authenticationService;
+    private final DoctorScheduleService doctorScheduleService;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${medical-records.campaigns.batch-size:500}")
+    private int batchSize;
+
+    private final Map<Long, Inventory> inventories = new ConcurrentHashMap<>();
+    private final BlockingQueue<PendingBooking> confirmations = new LinkedBlockingQueue<>();
+
+    public BookingCampaignService(BookingCampaignRepository bookingCampaignRepository,
+                                  CampaignWaitlistRepository campaignWaitlistRepository, AppointmentRepository appointmentRepository,
+                                  PatientRepository patientRepository, DoctorRepository doctorRepository,
+                                  AuthenticationService authenticationService, DoctorScheduleService doctorScheduleService,
+                                  TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher) {
+        this.bookingCampaignRepository = bookingCampaignRepository;
+        this.campaignWaitlistRepository = campaignWaitlistRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.patientRepository = patientRepository;
+        this.doctorRepository = doctorRepository;
+        this.authenticationService = authenticationService;
+        this.doctorScheduleService = doctorScheduleService;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInventories() {
+        Map<Long, List<String>> waitlists = campaignWaitlistRepository.findAllByOrderByIdAsc().stream()
+                .collect(Collectors.groupingBy(CampaignWaitlistEntry::getCampaignId,
+                        Collectors.mapping(CampaignWaitlistEntry::getPatientKeycloakUserId, Collectors.toList())));
+        for (BookingCampaign campaign : bookingCampaignRepository.findAllWithSlots()) {
+            inventories.put(campaign.getId(), new Inventory(campaign, appointmentRepository.findCampaignBookings(campaign.getId()),
+                    waitlists.getOrDefault(campaign.getId(), List.of())));
+        }
+        log.info("Loaded {} booking campaigns", inventories.size());
+    }
+
+    public BookingCampaignDto create(CreateBookingCampaignDto dto) {
+        Doctor doctor = doctorRepository.findById(dto.getDoctorId())
+                .orElseThrow(() -> new ResourceNotFoundException("Doctor not found with id: " + dto.getDoctorId()));
+
+        BookingCampaign campaign = new BookingCampaign();
+        campaign.setName(dto.getName());
+        campaign.setDoctor(doctor);
+        campaign.setDurationMinutes(dto.getDurationMinutes());
+        campaign.setCapacityPerSlot(dto.getCapacityPerSlot());
+        campaign.setWaitlistCapacity(dto.getWaitlistCapacity() == null ? 0 : dto.getWaitlistCapacity());
+        campaign.setSlotStarts(new ArrayList<>(new TreeSet<>(dto.getSlotStarts())));
+        // Every slot has to be free in the doctor's calendar; later bookings of the campaign share it
+        BookingCampaign saved = transactionTemplate.execute(status -> {
+            for (LocalDateTime slotStart : campaign.getSlotStarts()) {
+                doctorScheduleService.reserve(doctor.getId(), slotStart, campaign.getDurationMinutes(), null);
+            }
+            return bookingCampaignRepository.save(campaign);
+        });
+        eventPublisher.publishEvent(new BookingCampaignCreatedEvent(saved.getId(), doctor.getId()));
+
+        Inventory inventory = new Inventory(saved, List.of(), List.of());
+        inventories.put(saved.getId(), inventory);
+        return inventory.toDto();
+    }
+
+    public List<BookingCampaignDto> findAll() {
+        return inventories.values().stream()
+                .sorted(Comparator.comparing(inventory -> inventory.campaignId))
+                .map(Inventory::toDto)
+                .toList();
+    }
+
+    /**
+     * Books the caller into the campaign: the requested slot, or the earliest one with room when
+     * {@code slotStart} is null.
+     */
+    public CampaignBookingDto book(Long campaignId, LocalDateTime slotStart) {
+        Inventory inventory = inventories.get(campaignId);
+        if (inventory == null) {
+            throw new ResourceNotFoundException("Booking campaign not found with id: " + campaignId);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        int requested = -1;
+        if (slotStart != null) {
+            requested = Arrays.binarySearch(inventory.slotStarts, slotStart);
+            if (requested < 0 || !slotStart.isAfter(now)) {
+                throw new InvalidInputException(slotStart + " is not an open slot of this campaign");
+            }
+        }
+
+        String patientKeycloakUserId = authenticationService.getCurrentKeycloakUserId();
+        if (!patientRepository.existsByKeycloakUserId(patientKeycloakUserId)) {
+            throw new PatientNotFoundException("No patient record for the current user");
+        }
+        if (!inventory.patients.add(patientKeycloakUserId)) {
+            throw new AppointmentConflictException("You are already booked or waitlisted in this campaign");
+        }
+
+        int slot = requested >= 0 ? (inventory.tryTake(requested) ? requested : -1) : inventory.takeFirstFree(now);
+        if (slot >= 0) {
+            confirm(inventory, slot, patientKeycloakUserId, false);
+            return new CampaignBookingDto(campaignId, CampaignBookingDto.Status.CONFIRMED, inventory.slotStarts[slot], null);
+        }
+
+        int position = inventory.joinWaitlist(patientKeycloakUserId);
+        if (position > 0) {
+            CampaignWaitlistEntry entry = new CampaignWaitlistEntry();
+            entry.setCampaignId(campaignId);
+            entry.setPatientKeycloakUserId(patientKeycloakUserId);
+            try {
+                campaignWaitlistRepository.save(entry);
+            } catch (RuntimeException e) {
+                inventory.leaveWaitlist(patientKeycloakUserId);
+                inventory.patients.remove(patientKeycloakUserId);
+                throw e;
+            }
+            return new CampaignBookingDto(campaignId, CampaignBookingDto.Status.WAITLISTED, null, position);
+        }
+        inventory.patients.remove(patientKeycloakUserId);
+        throw new AppointmentConflictException(requested >= 0 ? "This slot is fully booked" : "This campaign is fully booked");
+    }
+
+    /**
+     * Gives a campaign place back, e.g. when its appointment is cancelled or moved: the next waitlisted patient
+     * gets it, otherwise it becomes free again. Inside a transaction this happens once it commits, so a rolled back
+     * cancellation never hands out a place that is still taken.
+     */
+    public void release(Long campaignId, LocalDateTime slotStart, String patientKeycloakUserId) {
+        TransactionUtils.afterCommit(() -> giveBack(campaignId, slotStart, patientKeycloakUserId));
+    }
+
+    /**
+     * Closes the doctor's campaigns ahead of deleting the doctor, which deletes them too: their waitlists go in
+     * this transaction, the inventories once it commits.
+     */
+    public void closeForDoctor(Long doctorId) {
+        campaignWaitlistRepository.deleteForDoctor(doctorId);
+        TransactionUtils.afterCommit(() -> inventories.values().removeIf(inventory -> inventory.doctorId.equals(doctorId)));
+    }
+
+    private void giveBack(Long campaignId, LocalDateTime slotStart, String patientKeycloakUserId) {
+        Inventory inventory = inventories.get(campaignId);
+        if (inventory == null) {
+            return;
+        }
+        if (patientKeycloakUserId != null) {
+            inventory.patients.remove(patientKeycloakUserId);
+        }
+        int slot = Arrays.binarySearch(inventory.slotStarts, slotStart);
+        if (slot < 0) {
+            return;
+        }
+        String next = slotStart.isAfter(LocalDateTime.now()) ? inventory.pollWaitlist() : null;
+        if (next != null) {
+            confirm(inventory, slot, next, true);
+        } else {
+            inventory.remaining.incrementAndGet(slot);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.campaigns.flush-interval-ms:200}")
+    public void flushConfirmations() {
+        List<PendingBooking> batch = new ArrayList<>(batchSize);
+        while (confirmations.drainTo(batch, batchSize) > 0) {
+            persist(List.copyOf(batch));
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        flushConfirmations();
+    }
+
+    private void confirm(Inventory inventory, int slot, String patientKeycloakUserId, boolean fromWaitlist) {
+        confirmations.add(new PendingBooking(inventory.campaignId, inventory.doctorId, patientKeycloakUserId,
+                inventory.slotStarts[slot], inventory.durationMinutes, fromWaitlist));
+    }
+
+    private void persist(List<PendingBooking> batch) {
+        List<PendingBooking> withoutPatient = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<String, Patient> patients = patientRepository.findByKeycloakUserIdIn(batch.stream()
+                                .map(PendingBooking::patientKeycloakUserId)
+                                .collect(Collectors.toSet())).stream()
+                        .collect(Collectors.toMap(Patient::getKeycloakUserId, Function.identity(), (first, second) -> first));
+
+                List<Appointment> appointments = new ArrayList<>(batch.size());
+                for (PendingBooking booking : batch) {
+                    Patient patient = patients.get(booking.patientKeycloakUserId());
+                    if (patient == null) {
+                        withoutPatient.add(booking);
+                        continue;
+                    }
+                    Appointment appointment = new Appointment();
+                    appointment.setPatient(patient);
+                    appointment.setDoctor(doctorRepository.getReferenceById(booking.doctorId()));
+                    appointment.setAppointmentDateTime(booking.slotStart());
+                    appointment.setDurationMinutes(booking.durationMinutes());
+                    appointment.setCampaignId(booking.campaignId());
+                    appointments.add(appointment);
+                    // Off the waitlist in the same transaction that gives the patient their appointment
+                    if (booking.fromWaitlist()) {
+                        campaignWaitlistRepository.deleteEntry(booking.campaignId(), booking.patientKeycloakUserId());
+                    }
+                }
+                for (Appointment appointment : appointmentRepository.saveAll(appointments)) {
+                    eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment,
+                            AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.CREATED));
+                }
+            });
+        } catch (RuntimeException e) {
+            // One bad row (e.g. a doctor deleted meanwhile) must not cost the rest of the batch their places
+            if (batch.size() > 1) {
+                log.warn("Could not store {} campaign bookings together, storing them one by one", batch.size(), e);
+                batch.forEach(booking -> persist(List.of(booking)));
+            } else {
+                PendingBooking booking = batch.get(0);
+                log.error("Could not store the booking of user {} in campaign {}, releasing the place",
+                        booking.patientKeycloakUserId(), booking.campaignId(), e);
+                drop(booking);
+            }
+            return;
+        }
+        for (PendingBooking booking : withoutPatient) {
+            log.warn("No patient record for user {}, releasing their place in campaign {}",
+                    booking.patientKeycloakUserId(), booking.campaignId());
+            drop(booking);
+        }
+    }
+
+    private void drop(PendingBooking booking) {
+        if (booking.fromWaitlist()) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        campaignWaitlistRepository.deleteEntry(booking.campaignId(), booking.patientKeycloakUserId()));
+            } catch (RuntimeException e) {
+                log.error("Could not remove user {} from the waitlist of campaign {}",
+                        booking.patientKeycloakUserId(), booking.campaignId(), e);
+            }
+        }
+        giveBack(booking.campaignId(), booking.slotStart(), booking.patientKeycloakUserId());
+    }
+
+    private record PendingBooking(Long campaignId, Long doctorId, String patientKeycloakUserId,
+                                  LocalDateTime slotStart, Integer durationMinutes, boolean fromWaitlist) {
+    }
+
+    private static final class Inventory {
+        private final Long campaignId;
+        private final String name;
+        private final Long doctorId;
+        private final Integer durationMinutes;
+        private final Integer capacityPerSlot;
+        private final LocalDateTime[] slotStarts;
+        private final AtomicIntegerArray remaining;
+        private final int waitlistCapacity;
+        private final AtomicInteger waitlistSize = new AtomicInteger();
+        private final Queue<String> waitlist = new ConcurrentLinkedQueue<>();
+        // Booked or waitlisted, so nobody holds two places
+        private final Set<String> patients = ConcurrentHashMap.newKeySet();
+
+        Inventory(BookingCampaign campaign, List<CampaignBooking> bookings, List<String> waitlisted) {
+            this.campaignId = campaign.getId();
+            this.name = campaign.getName();
+            this.doctorId = campaign.getDoctor().getId();
+            this.durationMinutes = campaign.getDurationMinutes();
+            this.capacityPerSlot = campaign.getCapacityPerSlot();
+            this.waitlistCapacity = campaign.getWaitlistCapacity();
+            this.slotStarts = campaign.getSlotStarts().stream().sorted().distinct().toArray(LocalDateTime[]::new);
+            this.remaining = new AtomicIntegerArray(slotStarts.length);
+            for (int i = 0; i < slotStarts.length; i++) {
+                remaining.set(i, capacityPerSlot);
+            }
+            for (CampaignBooking booking : bookings) {
+                patients.add(booking.getPatientKeycloakUserId());
+                int slot = Arrays.binarySearch(slotStarts, booking.getAppointmentDateTime());
+                if (slot >= 0) {
+                    remaining.decrementAndGet(slot);
+                }
+            }
+            for (String patientKeycloakUserId : waitlisted) {
+                if (patients.add(patientKeycloakUserId)) {
+                    waitlist.add(patientKeycloakUserId);
+                    waitlistSize.incrementAndGet();
+                }
+            }
+        }
+
+        boolean tryTake(int slot) {
+            while (true) {
+                int left = remaining.get(slot);
+                if (left <= 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(slot, left, left - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        int takeFirstFree(LocalDateTime now) {
+            for (int slot = 0; slot < slotStarts.length; slot++) {
+                if (slotStarts[slot].isAfter(now) && tryTake(slot)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the position on the waitlist, or -1 when it is full
+         */
+        int joinWaitlist(String patientKeycloakUserId) {
+            while (true) {
+                int size = waitlistSize.get();
+                if (size >= waitlistCapacity) {
+                    return -1;
+                }
+                if (waitlistSize.compareAndSet(size, size + 1)) {
+                    waitlist.add(patientKeycloakUserId);
+                    return size + 1;
+                }
+            }
+        }
+
+        void leaveWaitlist(String patientKeycloakUserId) {
+            if (waitlist.remove(patientKeycloakUserId)) {
+                waitlistSize.decrementAndGet();
+            }
+        }
+
+        String pollWaitlist() {
+            String next = waitlist.poll();
+            if (next != null) {
+                waitlistSize.decrementAndGet();
+            }
+            return next;
+        }
+
+        BookingCampaignDto toDto() {
+            List<CampaignSlotDto> slots = new ArrayList<>(slotStarts.length);
+            for (int i = 0; i < slotStarts.length; i++) {
+                slots.add(new CampaignSlotDto(slotStarts[i], Math.max(remaining.get(i), 0)));
+            }
+            return new BookingCampaignDto(campaignId, name, doctorId, durationMinutes, capacityPerSlot, slots, waitlistSize.get());
+        }
+    }
+}
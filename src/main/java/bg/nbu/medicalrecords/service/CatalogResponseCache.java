@@ -0,0 +1,98 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.util.ETagUtils;
+import bg.nbu.medicalrecords.util.MappingUtils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Holds the doctor and medication lists as ready-to-send JSON bytes (plain and gzip).
+ * A snapshot is rebuilt only when the catalog version in {@link CatalogVersionService} has moved on,
+ * so a regular hit is a lookup and a byte copy, with no query and no serialization.
+ */
+@Service
+public class CatalogResponseCache {
+
+    public record SerializedCatalog(String versionToken, String etag, byte[] json, byte[] gzip) {
+    }
+
+    private final DoctorService doctorService;
+    private final MedicationService medicationService;
+    private final CatalogVersionService catalogVersionService;
+    private final ObjectMapper objectMapper;
+
+    private final Map<CatalogVersionService.Catalog, SerializedCatalog> snapshots = new ConcurrentHashMap<>();
+    private final Map<CatalogVersionService.Catalog, Object> rebuildLocks = new EnumMap<>(CatalogVersionService.Catalog.class);
+
+    public CatalogResponseCache(DoctorService doctorService, MedicationService medicationService,
+                                CatalogVersionService catalogVersionService, ObjectMapper objectMapper) {
+        this.doctorService = doctorService;
+        this.medicationService = medicationService;
+        this.catalogVersionService = catalogVersionService;
+        this.objectMapper = objectMapper;
+        for (CatalogVersionService.Catalog catalog : CatalogVersionService.Catalog.values()) {
+            rebuildLocks.put(catalog, new Object());
+        }
+    }
+
+    public SerializedCatalog doctors() {
+        return snapshot(CatalogVersionService.Catalog.DOCTORS,
+                () -> doctorService.findAll().stream().map(MappingUtils::mapToDoctorDto).toList());
+    }
+
+    public SerializedCatalog medications() {
+        return snapshot(CatalogVersionService.Catalog.MEDICATIONS,
+                () -> medicationService.getAll().stream().map(MappingUtils::mapToMedicationDto).toList());
+    }
+
+    private SerializedCatalog snapshot(CatalogVersionService.Catalog catalog, Supplier<List<?>> loader) {
+        String versionToken = catalogVersionService.versionToken(catalog);
+        SerializedCatalog cached = snapshots.get(catalog);
+        if (cached != null && cached.versionToken().equals(versionToken)) {
+            return cached;
+        }
+
+        // One rebuild at a time per catalog; concurrent readers of the same version reuse its result
+        synchronized (rebuildLocks.get(catalog)) {
+            versionToken = catalogVersionService.versionToken(catalog);
+            cached = snapshots.get(catalog);
+            if (cached != null && cached.versionToken().equals(versionToken)) {
+                return cached;
+            }
+            // The version is read before loading, so a write racing with the rebuild only causes another rebuild
+            SerializedCatalog rebuilt = serialize(versionToken, loader.get());
+            snapshots.put(catalog, rebuilt);
+            return rebuilt;
+        }
+    }
+
+    private SerializedCatalog serialize(String versionToken, List<?> entries) {
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(entries);
+            return new SerializedCatalog(versionToken, ETagUtils.etag(versionToken), json, gzip(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize catalog", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+}
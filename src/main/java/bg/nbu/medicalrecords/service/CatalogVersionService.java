@@ -0,0 +1,85 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.CatalogVersion;
+import bg.nbu.medicalrecords.repository.CatalogVersionRepository;
+import bg.nbu.medicalrecords.util.TransactionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versions of the reference data lists (doctors, patients, medications), kept in the catalog_versions table so
+ * that every instance hands out the same ETag. Each write bumps the row; an instance re-reads it at most every
+ * {@code refresh-ms}, so a write on another instance shows up within that time and its own writes at once.
+ * Writes that bypass the services (SQL scripts, migrations) have to bump the row themselves:
+ * {@code UPDATE catalog_versions SET version = version + 1 WHERE catalog = 'MEDICATIONS'}.
+ */
+@Service
+public class CatalogVersionService {
+
+    public enum Catalog {
+        DOCTORS, PATIENTS, MEDICATIONS
+    }
+
+    private final CatalogVersionRepository catalogVersionRepository;
+    private final TransactionTemplate newTransaction;
+    private final Map<Catalog, ReadVersion> readVersions = new ConcurrentHashMap<>();
+
+    @Value("${medical-records.catalog-versions.refresh-ms:1000}")
+    private long refreshMs;
+
+    public CatalogVersionService(CatalogVersionRepository catalogVersionRepository, PlatformTransactionManager transactionManager) {
+        this.catalogVersionRepository = catalogVersionRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public long currentVersion(Catalog catalog) {
+        long now = System.currentTimeMillis();
+        ReadVersion read = readVersions.get(catalog);
+        if (read != null && now - read.readAt() < refreshMs) {
+            return read.version();
+        }
+        long version = catalogVersionRepository.findVersion(catalog.name()).orElse(0L);
+        readVersions.put(catalog, new ReadVersion(version, now));
+        return version;
+    }
+
+    /**
+     * Token that changes whenever the catalog does; read it before loading the data it describes.
+     */
+    public String versionToken(Catalog catalog) {
+        return catalog.name().toLowerCase() + "-" + currentVersion(catalog);
+    }
+
+    /**
+     * Bump the version once the surrounding transaction commits (immediately when there is none),
+     * so a reader can never pair the new version with data that is not visible yet.
+     */
+    public void markChanged(Catalog catalog) {
+        TransactionUtils.afterCommit(() -> bump(catalog));
+    }
+
+    private void bump(Catalog catalog) {
+        // A transaction of its own: after commit the caller's one can no longer write
+        Long version = newTransaction.execute(status -> {
+            if (catalogVersionRepository.increment(catalog.name()) == 0) {
+                // The rows come with the Liquibase changeset; a schema generated by Hibernate starts without them
+                CatalogVersion created = new CatalogVersion();
+                created.setCatalog(catalog.name());
+                created.setVersion(1);
+                catalogVersionRepository.save(created);
+            }
+            return catalogVersionRepository.findVersion(catalog.name()).orElse(0L);
+        });
+        readVersions.put(catalog, new ReadVersion(version, System.currentTimeMillis()));
+    }
+
+    private record ReadVersion(long version, long readAt) {
+    }
+}
@@ -0,0 +1,414 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.dto.ClinicalSearchHitDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.exception.SearchIndexException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over the clinical free text: diagnosis statements, treatment descriptions,
+ * prescriptions (medication name and dosage) and sick leave reasons.
+ * <p>
+ * The text lives in an embedded Lucene index on local disk. It is updated per appointment from the domain event
+ * outbox, off the request path (see {@link DomainEventDispatcher}), and can be rebuilt from the database at any time. Each
+ * instance keeps its own index; the id of the last event it holds is committed with it, so a restart picks up there. Searches
+ * only take ids and scores from the index; the records themselves are read back with one IN-query per
+ * record type, so a hit always shows the current text and records deleted in the meantime drop out.
+ */
+@Slf4j
+@Service
+public class ClinicalSearchService implements DomainEventConsumer, DisposableBean {
+
+    static final int MAX_LIMIT = 100;
+
+    private static final String KEY = "key";
+    private static final String TYPE = "type";
+    private static final String ID = "id";
+    private static final String APPOINTMENT_ID = "appointmentId";
+    private static final String TEXT = "text";
+    private static final String LAST_EVENT_ID = "lastEventId";
+    private static final int MAX_QUERY_TERMS = 10;
+    private static final Pattern PHRASE = Pattern.compile("\"([^\"]+)\"");
+
+    private static final List<Source> SOURCES = List.of(
+            new Source("diagnosis", "dg", """
+                    SELECT dg.id AS id, dg.appointment_id AS appointmentId, a.patient_id AS patientId, pt.name AS patientName,
+                           dg.statement AS text
+                    FROM diagnoses dg
+                    JOIN appointments a ON a.id = dg.appointment_id
+                    JOIN patients pt ON pt.id = a.patient_id"""),
+            new Source("treatment", "t", """
+                    SELECT t.id AS id, dg.appointment_id AS appointmentId, a.patient_id AS patientId, pt.name AS patientName,
+                           t.description AS text
+                    FROM treatments t
+                    JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                    JOIN appointments a ON a.id = dg.appointment_id
+                    JOIN patients pt ON pt.id = a.patient_id"""),
+            new Source("prescription", "p", """
+                    SELECT p.id AS id, dg.appointment_id AS appointmentId, a.patient_id AS patientId, pt.name AS patientName,
+                           CONCAT(COALESCE(m.medication_name, ''), ' ', COALESCE(p.dosage, '')) AS text
+                    FROM prescriptions p
+                    LEFT JOIN medications m ON m.id = p.medication_id
+                    JOIN treatments t ON t.id = p.treatment_id
+                    JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                    JOIN appointments a ON a.id = dg.appointment_id
+                    JOIN patients pt ON pt.id = a.patient_id"""),
+            new Source("sickLeave", "s", """
+                    SELECT s.id AS id, s.appointment_id AS appointmentId, a.patient_id AS patientId, pt.name AS patientName,
+                           s.reason AS text
+                    FROM sick_leaves s
+                    JOIN appointments a ON a.id = s.appointment_id
+                    JOIN patients pt ON pt.id = a.patient_id""")
+    );
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final QueryBuilder queryBuilder = new QueryBuilder(analyzer);
+    private final Directory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+    private final Object rebuildLock = new Object();
+    private volatile long lastEventId;
+
+    @Value("${medical-records.export.fetch-size:500}")
+    private int fetchSize;
+
+    public ClinicalSearchService(NamedParameterJdbcTemplate jdbcTemplate,
+                                 @Value("${medical-records.search.index-dir:data/clinical-index}") String indexDir) throws IOException {
+        this.jdbcTemplate = jdbcTemplate;
+        // An empty directory setting keeps the index in memory (tests); it is then rebuilt on every start
+        if (indexDir == null || indexDir.isBlank()) {
+            this.directory = new ByteBuffersDirectory();
+        } else {
+            Path path = Path.of(indexDir);
+            Files.createDirectories(path);
+            this.directory = FSDirectory.open(path);
+        }
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer).setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+        Iterable<Map.Entry<String, String>> commitData = writer.getLiveCommitData();
+        if (commitData != null) {
+            for (Map.Entry<String, String> entry : commitData) {
+                if (LAST_EVENT_ID.equals(entry.getKey())) {
+                    lastEventId = Long.parseLong(entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranked search. Every word has to match, either exactly, as a prefix (3+ letters) or with a typo or two
+     * (4+ letters); exact matches rank highest. Text in double quotes has to appear as that phrase.
+     */
+    public List<ClinicalSearchHitDto> search(String q, int limit) {
+        Query query = buildQuery(q);
+        List<Hit> hits = new ArrayList<>();
+        try {
+            IndexSearcher searcher = searcherManager.acquire();
+            try {
+                TopDocs topDocs = searcher.search(query, Math.min(Math.max(limit, 1), MAX_LIMIT));
+                StoredFields storedFields = searcher.storedFields();
+                for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                    Document document = storedFields.document(scoreDoc.doc);
+                    hits.add(new Hit(document.get(TYPE), Long.parseLong(document.get(ID)), scoreDoc.score));
+                }
+            } finally {
+                searcherManager.release(searcher);
+            }
+        } catch (IOException e) {
+            throw new SearchIndexException("Clinical search failed", e);
+        }
+        return loadHits(hits);
+    }
+
+    /**
+     * Drop the index and index every clinical record again, streaming them from the database.
+     *
+     * @return the number of indexed records
+     */
+    public long rebuild() {
+        synchronized (rebuildLock) {
+            try {
+                // Events up to here are covered by what is read below
+                long upTo = jdbcTemplate.getJdbcOperations().queryForObject(
+                        "SELECT COALESCE(MAX(id), 0) FROM domain_event_outbox", Long.class);
+                writer.deleteAll();
+                long indexed = 0;
+                for (Source source : SOURCES) {
+                    indexed += indexAll(source);
+                }
+                remember(upTo);
+                writer.commit();
+                searcherManager.maybeRefresh();
+                log.info("Clinical search index rebuilt with {} records", indexed);
+                return indexed;
+            } catch (IOException e) {
+                throw new SearchIndexException("Rebuilding the clinical search index failed", e);
+            }
+        }
+    }
+
+    /**
+     * Replace everything indexed for one appointment with what the database holds now.
+     */
+    public void reindexAppointment(Long appointmentId) {
+        List<Document> documents = new ArrayList<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource("appointmentId", appointmentId);
+        for (Source source : SOURCES) {
+            jdbcTemplate.query(source.sql() + " WHERE a.id = :appointmentId", parameters,
+                    (ResultSet rs) -> {
+                        documents.add(toDocument(source.type(), rs));
+                    });
+        }
+        try {
+            writer.updateDocuments(new Term(APPOINTMENT_ID, appointmentId.toString()), documents);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new SearchIndexException("Updating the clinical search index failed for appointment " + appointmentId, e);
+        }
+    }
+
+    /**
+     * Drop everything indexed for these appointments, without asking the database.
+     */
+    public void removeAppointments(Collection<Long> appointmentIds) {
+        Term[] terms = appointmentIds.stream().map(id -> new Term(APPOINTMENT_ID, id.toString())).toArray(Term[]::new);
+        try {
+            writer.deleteDocuments(terms);
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            throw new SearchIndexException("Removing " + appointmentIds.size() + " appointments from the clinical search index failed", e);
+        }
+    }
+
+    /**
+     * Reindexes each appointment touched by the batch once and drops the archived or deleted ones. A failure is thrown back so
+     * the dispatcher retries.
+     */
+    @Override
+    public void onEvents(List<DomainEvent> events) {
+        Set<Long> appointmentIds = new LinkedHashSet<>();
+        Set<Long> removedIds = new LinkedHashSet<>();
+        for (DomainEvent event : events) {
+            if (!"APPOINTMENT".equals(event.aggregateType()) || event.aggregateId() == null) {
+                continue;
+            }
+            Long appointmentId = Long.valueOf(event.aggregateId());
+            // Archived or deleted appointments never come back to the hot tables
+            if (event.type().equals(DomainEvent.APPOINTMENT_ARCHIVED) || event.type().equals(DomainEvent.APPOINTMENT_DELETED)) {
+                appointmentIds.remove(appointmentId);
+                removedIds.add(appointmentId);
+            } else if (!event.type().equals("APPOINTMENT_CREATED") && !event.type().equals("APPOINTMENT_UPDATED")) {
+                // Booking or moving an appointment does not touch any clinical text
+                appointmentIds.add(appointmentId);
+            }
+        }
+        appointmentIds.forEach(this::reindexAppointment);
+        if (!removedIds.isEmpty()) {
+            removeAppointments(removedIds);
+        }
+        remember(events.get(events.size() - 1).id());
+    }
+
+    @Override
+    public long lastEventId() {
+        return lastEventId;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIfEmpty() {
+        if (writer.getDocStats().numDocs == 0) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.search.commit-interval-ms:5000}")
+    public void commit() {
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException e) {
+            log.warn("Could not commit the clinical search index", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    // Committed together with the documents, by the next commit()
+    private void remember(long eventId) {
+        lastEventId = eventId;
+        writer.setLiveCommitData(Map.of(LAST_EVENT_ID, Long.toString(eventId)).entrySet());
+    }
+
+    private long indexAll(Source source) throws IOException {
+        long[] indexed = {0};
+        IOException[] failure = {null};
+        jdbcTemplate.getJdbcOperations().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                    source.sql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            return statement;
+        }, (ResultSet rs) -> {
+            if (failure[0] != null) {
+                return;
+            }
+            Document document = toDocument(source.type(), rs);
+            try {
+                writer.updateDocument(new Term(KEY, document.get(KEY)), document);
+                indexed[0]++;
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return indexed[0];
+    }
+
+    private Document toDocument(String type, ResultSet rs) throws SQLException {
+        long id = rs.getLong("id");
+        Document document = new Document();
+        document.add(new StringField(KEY, type + ":" + id, Field.Store.YES));
+        document.add(new StoredField(TYPE, type));
+        document.add(new StoredField(ID, Long.toString(id)));
+        document.add(new StringField(APPOINTMENT_ID, Long.toString(rs.getLong("appointmentId")), Field.Store.NO));
+        String text = rs.getString("text");
+        document.add(new TextField(TEXT, text == null ? "" : text, Field.Store.NO));
+        return document;
+    }
+
+    private Query buildQuery(String q) {
+        if (q == null || q.isBlank()) {
+            throw new InvalidInputException("Search query must not be empty");
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        Matcher phrases = PHRASE.matcher(q);
+        while (phrases.find()) {
+            Query phrase = queryBuilder.createPhraseQuery(TEXT, phrases.group(1));
+            if (phrase != null) {
+                builder.add(phrase, BooleanClause.Occur.MUST);
+            }
+        }
+        List<String> terms = analyze(PHRASE.matcher(q).replaceAll(" "));
+        for (String term : terms.subList(0, Math.min(terms.size(), MAX_QUERY_TERMS))) {
+            builder.add(termQuery(term), BooleanClause.Occur.MUST);
+        }
+        BooleanQuery query = builder.build();
+        if (query.clauses().isEmpty()) {
+            throw new InvalidInputException("Search query has no searchable words");
+        }
+        return query;
+    }
+
+    private Query termQuery(String token) {
+        Term term = new Term(TEXT, token);
+        BooleanQuery.Builder alternatives = new BooleanQuery.Builder();
+        alternatives.add(new BoostQuery(new TermQuery(term), 4f), BooleanClause.Occur.SHOULD);
+        if (token.length() >= 3) {
+            alternatives.add(new BoostQuery(new PrefixQuery(term), 2f), BooleanClause.Occur.SHOULD);
+        }
+        if (token.length() >= 4) {
+            alternatives.add(new FuzzyQuery(term, token.length() >= 8 ? 2 : 1), BooleanClause.Occur.SHOULD);
+        }
+        return alternatives.build();
+    }
+
+    private List<String> analyze(String text) {
+        List<String> tokens = new ArrayList<>();
+        try (TokenStream stream = analyzer.tokenStream(TEXT, text)) {
+            CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        } catch (IOException e) {
+            throw new SearchIndexException("Could not analyze the search query", e);
+        }
+        return tokens;
+    }
+
+    /**
+     * One IN-query per record type; hits whose record no longer exists are left out.
+     */
+    private List<ClinicalSearchHitDto> loadHits(List<Hit> hits) {
+        Map<String, Set<Long>> idsByType = new HashMap<>();
+        for (Hit hit : hits) {
+            idsByType.computeIfAbsent(hit.type(), type -> new HashSet<>()).add(hit.id());
+        }
+
+        Map<String, ClinicalSearchHitDto> records = new HashMap<>();
+        for (Source source : SOURCES) {
+            Set<Long> ids = idsByType.get(source.type());
+            if (ids == null) {
+                continue;
+            }
+            jdbcTemplate.query(source.sql() + " WHERE " + source.alias() + ".id IN (:ids)", new MapSqlParameterSource("ids", ids),
+                    (ResultSet rs) -> {
+                        long id = rs.getLong("id");
+                        records.put(source.type() + ":" + id, new ClinicalSearchHitDto(source.type(), id,
+                                rs.getLong("appointmentId"), rs.getLong("patientId"), rs.getString("patientName"),
+                                rs.getString("text"), 0f));
+                    });
+        }
+
+        List<ClinicalSearchHitDto> result = new ArrayList<>();
+        for (Hit hit : hits) {
+            ClinicalSearchHitDto record = records.get(hit.type() + ":" + hit.id());
+            if (record != null) {
+                result.add(new ClinicalSearchHitDto(record.getType(), record.getId(), record.getAppointmentId(),
+                        record.getPatientId(), record.getPatientName(), record.getText(), hit.score()));
+            }
+        }
+        return result;
+    }
+
+    private record Source(String type, String alias, String sql) {
+    }
+
+    private record Hit(String type, long id, float score) {
+    }
+}
@@ -0,0 +1,157 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.DiagnosisCode;
+import bg.nbu.medicalrecords.dto.DiagnosisCodeDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.exception.ResourceNotFoundException;
+import bg.nbu.medicalrecords.repository.DiagnosisCodeRepository;
+import bg.nbu.medicalrecords.repository.DiagnosisRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * The diagnosis dictionary. Free-text statements are coded by looking their normalised form up among the synonyms
+ * (an indexed equality match); a statement nobody has used before gets a new entry, which an admin can later merge
+ * into the right one.
+ */
+@Service
+public class DiagnosisCodeService {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final DiagnosisCodeRepository diagnosisCodeRepository;
+    private final DiagnosisRepository diagnosisRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate newTransaction;
+
+    public DiagnosisCodeService(DiagnosisCodeRepository diagnosisCodeRepository, DiagnosisRepository diagnosisRepository,
+                                EntityManager entityManager, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.diagnosisCodeRepository = diagnosisCodeRepository;
+        this.diagnosisRepository = diagnosisRepository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Synonym key of a statement: trimmed, inner whitespace collapsed, lower case.
+     * The 2026-10-19-03 migration applies the same rules in SQL; keep the two in step.
+     */
+    public static String normalize(String statement) {
+        return WHITESPACE.matcher(statement.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    public Optional<DiagnosisCode> findByStatement(String statement) {
+        if (statement == null || statement.isBlank()) {
+            return Optional.empty();
+        }
+        return diagnosisCodeRepository.findBySynonym(normalize(statement));
+    }
+
+    /**
+     * The entry a statement is coded to, creating one labelled with the statement when it is new. A new entry
+     * commits straight away and stays even if the caller's transaction rolls back; an unused entry does no harm.
+     */
+    public DiagnosisCode resolve(String statement) {
+        Optional<DiagnosisCode> existing = findByStatement(statement);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        // Created in a transaction of its own: a unique violation inside the caller's one would mark it rollback-only
+        try {
+            return newTransaction.execute(status -> findByStatement(statement).orElseGet(() -> {
+                DiagnosisCode created = new DiagnosisCode();
+                created.setLabel(WHITESPACE.matcher(statement.trim()).replaceAll(" "));
+                created.getSynonyms().add(normalize(statement));
+                return diagnosisCodeRepository.saveAndFlush(created);
+            }));
+        } catch (DataIntegrityViolationException e) {
+            // another request coded the same new statement first
+            return newTransaction.execute(status -> findByStatement(statement)).orElseThrow(() -> e);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<DiagnosisCodeDto> findAll() {
+        return diagnosisCodeRepository.findAll().stream()
+                .map(DiagnosisCodeService::mapToDto)
+                .sorted(Comparator.comparing(DiagnosisCodeDto::getLabel, String.CASE_INSENSITIVE_ORDER))
+                .toList();
+    }
+
+    @Transactional
+    public DiagnosisCodeDto update(Integer id, String code, String label) {
+        DiagnosisCode diagnosisCode = findById(id);
+        if (code != null) {
+            String trimmed = code.trim();
+            diagnosisCodeRepository.findByCode(trimmed)
+                    .filter(other -> !other.getId().equals(id))
+                    .ifPresent(other -> {
+                        throw new InvalidInputException("Code " + trimmed + " is already used by diagnosis code " + other.getId());
+                    });
+            diagnosisCode.setCode(trimmed.isEmpty() ? null : trimmed);
+        }
+        if (label != null && !label.isBlank()) {
+            diagnosisCodeRepository.findBySynonym(normalize(label))
+                    .filter(other -> !other.getId().equals(id))
+                    .ifPresent(other -> {
+                        throw new InvalidInputException("Label " + label.trim() + " is a synonym of diagnosis code " + other.getId() + "; merge the two instead");
+                    });
+            diagnosisCode.setLabel(label.trim());
+            diagnosisCode.getSynonyms().add(normalize(label));
+        }
+        return mapToDto(diagnosisCode);
+    }
+
+    /**
+     * Fold {@code sourceId} into {@code targetId}: its synonyms and diagnoses, archived ones included, move over and
+     * the source entry is deleted.
+     */
+    @Transactional
+    public DiagnosisCodeDto merge(Integer targetId, Integer sourceId) {
+        if (targetId.equals(sourceId)) {
+            throw new InvalidInputException("A diagnosis code cannot be merged into itself");
+        }
+        DiagnosisCode target = findById(targetId);
+        DiagnosisCode source = findById(sourceId);
+
+        Set<String> synonyms = new HashSet<>(source.getSynonyms());
+        // synonyms are unique, so they have to leave the source before they can be added to the target
+        source.getSynonyms().clear();
+        entityManager.flush();
+        target.getSynonyms().addAll(synonyms);
+        entityManager.flush();
+
+        // the bulk update clears the persistence context, so no loaded diagnosis keeps pointing at the source
+        diagnosisRepository.recode(source, target);
+        // the archive has no entity; it is only written by the AppointmentArchiveService
+        jdbcTemplate.update("UPDATE diagnoses_archive SET diagnosis_code_id = ? WHERE diagnosis_code_id = ?", targetId, sourceId);
+        diagnosisCodeRepository.deleteById(sourceId);
+        return mapToDto(findById(targetId));
+    }
+
+    private DiagnosisCode findById(Integer id) {
+        return diagnosisCodeRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Diagnosis code not found with id: " + id));
+    }
+
+    private static DiagnosisCodeDto mapToDto(DiagnosisCode diagnosisCode) {
+        return new DiagnosisCodeDto(
+                diagnosisCode.getId(),
+                diagnosisCode.getCode(),
+                diagnosisCode.getLabel(),
+                diagnosisCode.getSynonyms().stream().sorted().toList()
+        );
+    }
+}
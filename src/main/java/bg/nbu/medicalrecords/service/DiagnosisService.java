@@ -6,11 +6,17 @@ import bg.nbu.medicalrecords.dto.UpdateDiagnosisDto;
 import bg.nbu.medicalrecords.exception.DiagnosisNotFoundException;
 import bg.nbu.medicalrecords.exception.DoctorNotAssignedException;
 import bg.nbu.medicalrecords.exception.UnauthorizedAccessException;
+import bg.nbu.medicalrecords.repository.DiagnosisCodeStatistics;
 import bg.nbu.medicalrecords.repository.DiagnosisRepository;
+import bg.nbu.medicalrecords.repository.FirstDiagnosisDoctor;
+import bg.nbu.medicalrecords.util.VersionUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class DiagnosisService {
@@ -19,14 +25,20 @@ public class DiagnosisService {
     private final AuthenticationService authenticationService;
     private final AppointmentService appointmentService;
     private final DoctorService doctorService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DiagnosisCodeService diagnosisCodeService;
 
-    public DiagnosisService(DiagnosisRepository diagnosisRepository, AuthenticationService authenticationService, AppointmentService appointmentService, DoctorService doctorService) {
+    public DiagnosisService(DiagnosisRepository diagnosisRepository, AuthenticationService authenticationService, AppointmentService appointmentService, DoctorService doctorService,
+                            ApplicationEventPublisher eventPublisher, DiagnosisCodeService diagnosisCodeService) {
         this.diagnosisRepository = diagnosisRepository;
         this.authenticationService = authenticationService;
         this.appointmentService = appointmentService;
         this.doctorService = doctorService;
+        this.eventPublisher = eventPublisher;
+        this.diagnosisCodeService = diagnosisCodeService;
     }
 
+    @Transactional
     public Diagnosis createDiagnosis(Long appointmentId, CreateDiagnosisDto createDiagnosisDto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -42,16 +54,17 @@ public class DiagnosisService {
         Diagnosis diagnosis = new Diagnosis();
         diagnosis.setAppointment(appointment);
         diagnosis.setStatement(createDiagnosisDto.getStatement());
+        diagnosis.setCode(diagnosisCodeService.resolve(createDiagnosisDto.getStatement()));
         diagnosis.setDiagnosedDate(createDiagnosisDto.getDiagnosedDate());
 
         Diagnosis returnDiagnosis = diagnosisRepository.save(diagnosis);
-        appointment.setUpdatedAt(LocalDateTime.now());
-
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.DIAGNOSIS, AppointmentChangedEvent.Action.CREATED));
 
         return returnDiagnosis;
     }
 
+    @Transactional
     public Diagnosis updateDiagnosis(Long appointmentId, Long diagnosisId, UpdateDiagnosisDto updateDiagnosisDto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -68,18 +81,21 @@ public class DiagnosisService {
 
         Diagnosis diagnosis = diagnosisRepository.findById(diagnosisId)
                 .orElseThrow(() -> new DiagnosisNotFoundException("Diagnosis not found"));
+        VersionUtils.checkVersion(Diagnosis.class, diagnosisId, updateDiagnosisDto.getVersion(), diagnosis.getVersion());
 
         diagnosis.setDiagnosedDate(updateDiagnosisDto.getDiagnosedDate());
         diagnosis.setStatement(updateDiagnosisDto.getStatement());
+        diagnosis.setCode(diagnosisCodeService.resolve(updateDiagnosisDto.getStatement()));
 
-        Diagnosis returnDiagnosis = diagnosisRepository.save(diagnosis);
-        appointment.setUpdatedAt(LocalDateTime.now());
-
-        appointmentService.save(appointment);
+        // flushed so the returned diagnosis carries the new version
+        Diagnosis returnDiagnosis = diagnosisRepository.saveAndFlush(diagnosis);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.DIAGNOSIS, AppointmentChangedEvent.Action.UPDATED));
 
         return returnDiagnosis;
     }
 
+    @Transactional
     public void deleteDiagnosis(Long diagnosisId, Long appointmentId) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -99,8 +115,8 @@ public class DiagnosisService {
 
         diagnosisRepository.delete(diagnosis);
 
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.DIAGNOSIS, AppointmentChangedEvent.Action.DELETED));
     }
 
     public Diagnosis findById(Long diagnosisId) {
@@ -112,12 +128,35 @@ public class DiagnosisService {
         return diagnosisRepository.save(diagnosis);
     }
 
+    /**
+     * Canonical labels of the diagnosis codes in use.
+     */
     public List<String> getUniqueDiagnosis() {
-        return diagnosisRepository.findDistinctStatements();
+        return diagnosisRepository.findDistinctCodeLabels();
     }
 
+    /**
+     * Diagnoses coded the same as {@code statement}, so any synonym of a code finds all of them.
+     */
     public List<Diagnosis> findByStatement(String statement) {
-        return diagnosisRepository.findByStatementIgnoreCase(statement);
+        return diagnosisCodeService.findByStatement(statement)
+                .map(code -> diagnosisRepository.findByCode_Id(code.getId()))
+                .orElse(List.of());
+    }
+
+    public List<DiagnosisCodeStatistics> getCodeStatistics() {
+        return diagnosisRepository.findCodeStatistics();
+    }
+
+    /**
+     * Name of the doctor behind the earliest diagnosis of each code, keyed by code id.
+     */
+    public Map<Integer, String> findFirstDiagnosisDoctorNames() {
+        Map<Integer, String> doctorNames = new HashMap<>();
+        for (FirstDiagnosisDoctor first : diagnosisRepository.findFirstDiagnosisDoctors()) {
+            doctorNames.putIfAbsent(first.getCodeId(), first.getDoctorName());
+        }
+        return doctorNames;
     }
 
     public long count() {
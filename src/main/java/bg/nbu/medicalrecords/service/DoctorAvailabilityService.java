@@ -0,0 +1,211 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.dto.AvailableSlotDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.exception.ResourceNotFoundException;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.BookedInterval;
+import bg.nbu.medicalrecords.repository.BookingCampaignRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.*;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open slots in a doctor's working hours for {@code /doctors/{id}/availability}.
+ * <p>
+ * The slots of each doctor/day are cached. Days missing from the cache are filled by one range query over the
+ * (doctor_id, appointment_date_time) index and one over the doctor's booking campaign slots, which are never free for
+ * regular bookings, so a week view costs two short queries per doctor at most. A committed
+ * appointment change bumps the doctor's generation; entries from an older generation are never served, which also
+ * covers a load that raced with the change. A reassigned appointment invalidates both its new and its previous
+ * doctor, so the freed slot shows up at once.
+ */
+@Service
+public class DoctorAvailabilityService {
+
+    private final AppointmentRepository appointmentRepository;
+    private final BookingCampaignRepository bookingCampaignRepository;
+    private final DoctorRepository doctorRepository;
+    private final LocalTime workStart;
+    private final LocalTime workEnd;
+    private final int slotMinutes;
+    private final Set<DayOfWeek> workingDays;
+    private final int maxDays;
+    private final int maxDurationMinutes;
+    private final long cacheTtlMs;
+
+    private final Map<Long, DoctorCalendar> calendars = new ConcurrentHashMap<>();
+
+    public DoctorAvailabilityService(AppointmentRepository appointmentRepository, BookingCampaignRepository bookingCampaignRepository,
+                                     DoctorRepository doctorRepository,
+                                     @Value("${medical-records.availability.work-start:09:00}") String workStart,
+                                     @Value("${medical-records.availability.work-end:17:00}") String workEnd,
+                                     @Value("${medical-records.availability.slot-minutes:30}") int slotMinutes,
+                                     @Value("${medical-records.availability.working-days:MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY}") String[] workingDays,
+                                     @Value("${medical-records.availability.max-days:31}") int maxDays,
+                                     @Value("${medical-records.appointments.max-duration-minutes:240}") int maxDurationMinutes,
+                                     @Value("${medical-records.availability.cache-ttl-ms:300000}") long cacheTtlMs) {
+        this.appointmentRepository = appointmentRepository;
+        this.bookingCampaignRepository = bookingCampaignRepository;
+        this.doctorRepository = doctorRepository;
+        this.workStart = LocalTime.parse(workStart);
+        this.workEnd = LocalTime.parse(workEnd);
+        this.slotMinutes = slotMinutes;
+        this.workingDays = EnumSet.noneOf(DayOfWeek.class);
+        for (String day : workingDays) {
+            this.workingDays.add(DayOfWeek.valueOf(day.trim().toUpperCase(Locale.ROOT)));
+        }
+        if (!this.workStart.isBefore(this.workEnd) || slotMinutes < 1) {
+            throw new IllegalArgumentException("Working hours must be a non-empty range and slots at least a minute long");
+        }
+        this.maxDays = maxDays;
+        this.maxDurationMinutes = maxDurationMinutes;
+        this.cacheTtlMs = cacheTtlMs;
+    }
+
+    /**
+     * Free slots from {@code from} to {@code to} (both inclusive) that have not started yet, in time order.
+     */
+    public List<AvailableSlotDto> findAvailableSlots(Long doctorId, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new InvalidInputException("'from' must not be after 'to'");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= maxDays) {
+            throw new InvalidInputException("At most " + maxDays + " days can be requested at once");
+        }
+
+        DoctorCalendar calendar = calendars.computeIfAbsent(doctorId, id -> new DoctorCalendar());
+        long generation = calendar.generation.get();
+        long now = System.currentTimeMillis();
+
+        Map<LocalDate, List<AvailableSlotDto>> days = new TreeMap<>();
+        List<LocalDate> missing = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            CachedDay cached = calendar.days.get(day);
+            if (cached != null && cached.generation() == generation && now - cached.loadedAt() < cacheTtlMs) {
+                days.put(day, cached.slots());
+            } else {
+                missing.add(day);
+            }
+        }
+        if (!missing.isEmpty()) {
+            days.putAll(load(doctorId, calendar, generation, missing));
+        }
+
+        LocalDateTime current = LocalDateTime.now();
+        return days.values().stream()
+                .flatMap(List::stream)
+                .filter(slot -> slot.getStart().isAfter(current))
+                .toList();
+    }
+
+    /**
+     * Any committed change to an appointment of the doctor (booking, move, cancellation) invalidates their days;
+     * a reassignment invalidates the days of the doctor it was taken from as well.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAppointmentChanged(AppointmentChangedEvent event) {
+        if (event.subject() != AppointmentChangedEvent.Subject.APPOINTMENT) {
+            return;
+        }
+        invalidate(event.doctorId());
+        invalidate(event.previousDoctorId());
+    }
+
+    /**
+     * A new booking campaign takes its slots out of the doctor's free time.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onBookingCampaignCreated(BookingCampaignCreatedEvent event) {
+        invalidate(event.doctorId());
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.availability.cache-ttl-ms:300000}")
+    public void evictExpired() {
+        long oldest = System.currentTimeMillis() - cacheTtlMs;
+        calendars.values().forEach(calendar -> calendar.days.values().removeIf(day -> day.loadedAt() < oldest));
+    }
+
+    private void invalidate(Long doctorId) {
+        DoctorCalendar calendar = doctorId == null ? null : calendars.get(doctorId);
+        if (calendar != null) {
+            calendar.generation.incrementAndGet();
+            calendar.days.clear();
+        }
+    }
+
+    private Map<LocalDate, List<AvailableSlotDto>> load(Long doctorId, DoctorCalendar calendar, long generation, List<LocalDate> missing) {
+        if (!doctorRepository.existsById(doctorId)) {
+            calendars.remove(doctorId, calendar);
+            throw new ResourceNotFoundException("Doctor not found with id: " + doctorId);
+        }
+        LocalDate first = missing.get(0);
+        LocalDate last = missing.get(missing.size() - 1);
+        LocalDateTime earliestStart = first.atTime(workStart).minusMinutes(maxDurationMinutes);
+        List<BookedInterval> booked = new ArrayList<>(appointmentRepository.findBookedIntervals(doctorId, earliestStart, last.atTime(workEnd)));
+        booked.addAll(bookingCampaignRepository.findSlots(doctorId, earliestStart, last.atTime(workEnd)));
+        booked.sort(Comparator.comparing(BookedInterval::getAppointmentDateTime));
+
+        long loadedAt = System.currentTimeMillis();
+        Map<LocalDate, List<AvailableSlotDto>> loaded = new HashMap<>();
+        for (LocalDate day : missing) {
+            List<AvailableSlotDto> slots = freeSlots(day, booked);
+            loaded.put(day, slots);
+            // Stored under the generation read before the query; if a change committed meanwhile it is never served
+            calendar.days.put(day, new CachedDay(generation, loadedAt, slots));
+        }
+        return loaded;
+    }
+
+    private List<AvailableSlotDto> freeSlots(LocalDate day, List<BookedInterval> booked) {
+        if (!workingDays.contains(day.getDayOfWeek())) {
+            return List.of();
+        }
+        LocalDateTime dayEnd = day.atTime(workEnd);
+        List<AvailableSlotDto> slots = new ArrayList<>();
+        // booked is ordered by start, so the intervals that can still overlap begin at index next
+        int next = 0;
+        for (LocalDateTime start = day.atTime(workStart); !start.plusMinutes(slotMinutes).isAfter(dayEnd); start = start.plusMinutes(slotMinutes)) {
+            LocalDateTime end = start.plusMinutes(slotMinutes);
+            while (next < booked.size() && !endOf(booked.get(next)).isAfter(start)) {
+                next++;
+            }
+            if (!overlapsAny(booked, next, start, end)) {
+                slots.add(new AvailableSlotDto(start, end));
+            }
+        }
+        return List.copyOf(slots);
+    }
+
+    private static boolean overlapsAny(List<BookedInterval> booked, int from, LocalDateTime start, LocalDateTime end) {
+        for (int i = from; i < booked.size() && booked.get(i).getAppointmentDateTime().isBefore(end); i++) {
+            if (endOf(booked.get(i)).isAfter(start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static LocalDateTime endOf(BookedInterval interval) {
+        return interval.getAppointmentEndDateTime() != null
+                ? interval.getAppointmentEndDateTime()
+                : interval.getAppointmentDateTime().plusMinutes(Appointment.DEFAULT_DURATION_MINUTES);
+    }
+
+    private static final class DoctorCalendar {
+        private final AtomicLong generation = new AtomicLong();
+        private final Map<LocalDate, CachedDay> days = new ConcurrentHashMap<>();
+    }
+
+    private record CachedDay(long generation, long loadedAt, List<AvailableSlotDto> slots) {
+    }
+}
@@ -0,0 +1,84 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.exception.AppointmentConflictException;
+import bg.nbu.medicalrecords.exception.DoctorNotFoundException;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.BookingCampaignRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keeps a doctor's appointments from overlapping.
+ * <p>
+ * A booking locks the doctor row and then asks the (doctor_id, appointment_date_time) index for an overlapping
+ * appointment, so two requests for the same doctor are checked one after the other and the second sees the first.
+ * The lock is held until the caller's transaction commits the new appointment. The slots of the doctor's booking
+ * campaigns count as taken from the moment the campaign is created, booked or not; only bookings of that campaign
+ * may go there.
+ */
+@Service
+public class DoctorScheduleService {
+
+    private final DoctorRepository doctorRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final BookingCampaignRepository bookingCampaignRepository;
+    private final int maxDurationMinutes;
+
+    public DoctorScheduleService(DoctorRepository doctorRepository, AppointmentRepository appointmentRepository,
+                                 BookingCampaignRepository bookingCampaignRepository,
+                                 @Value("${medical-records.appointments.max-duration-minutes:240}") int maxDurationMinutes) {
+        this.doctorRepository = doctorRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.bookingCampaignRepository = bookingCampaignRepository;
+        this.maxDurationMinutes = maxDurationMinutes;
+    }
+
+    /**
+     * Locks the doctor's calendar and checks that [start, start + duration) is free, ignoring the appointment being
+     * moved ({@code excludeAppointmentId}, null for a new one). Must run inside the transaction that saves the
+     * appointment.
+     *
+     * @return the duration to store, {@link Appointment#DEFAULT_DURATION_MINUTES} when none was requested
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int reserve(Long doctorId, LocalDateTime start, Integer durationMinutes, Long excludeAppointmentId) {
+        return reserve(doctorId, start, durationMinutes, excludeAppointmentId, null);
+    }
+
+    /**
+     * Like {@link #reserve(Long, LocalDateTime, Integer, Long)} for an appointment that stays in booking campaign
+     * {@code campaignId}: the other bookings of that campaign share its slot and are not conflicts, nor are the
+     * campaign's own slots.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int reserve(Long doctorId, LocalDateTime start, Integer durationMinutes, Long excludeAppointmentId, Long campaignId) {
+        int duration = durationMinutes == null ? Appointment.DEFAULT_DURATION_MINUTES : durationMinutes;
+        if (duration < 1 || duration > maxDurationMinutes) {
+            throw new InvalidInputException("Appointment duration must be between 1 and " + maxDurationMinutes + " minutes");
+        }
+
+        Doctor doctor = doctorRepository.lockById(doctorId)
+                .orElseThrow(() -> new DoctorNotFoundException("Doctor not found with id: " + doctorId));
+        LocalDateTime earliestStart = start.minusMinutes(maxDurationMinutes);
+        LocalDateTime end = start.plusMinutes(duration);
+        if (appointmentRepository.existsOverlapping(doctor.getId(), earliestStart, start, end, excludeAppointmentId, campaignId)) {
+            throw new AppointmentConflictException("Doctor " + doctor.getName() + " already has an appointment between "
+                    + start + " and " + end);
+        }
+        boolean campaignSlotTaken = bookingCampaignRepository.findSlots(doctor.getId(), earliestStart, end).stream()
+                .anyMatch(slot -> !slot.getCampaignId().equals(campaignId) && slot.getAppointmentEndDateTime().isAfter(start));
+        if (campaignSlotTaken) {
+            throw new AppointmentConflictException("Doctor " + doctor.getName() + " has booking campaign slots between "
+                    + start + " and " + end);
+        }
+        return duration;
+    }
+}
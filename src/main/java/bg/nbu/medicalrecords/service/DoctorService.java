@@ -2,25 +2,34 @@ package bg.nbu.medicalrecords.service;
 
 import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
+import bg.nbu.medicalrecords.dto.DoctorDto;
 import bg.nbu.medicalrecords.exception.DoctorNotFoundException;
 import bg.nbu.medicalrecords.exception.UserNotFoundException;
 import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.util.MappingUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class DoctorService {
     private final DoctorRepository doctorRepository;
     private final UserService userService;
     private final AuthenticationService authenticationService;
+    private final CatalogVersionService catalogVersionService;
+    private final AppointmentDeletionService appointmentDeletionService;
 
-    public DoctorService(DoctorRepository doctorRepository, UserService userService, AuthenticationService authenticationService) {
+    public DoctorService(DoctorRepository doctorRepository, UserService userService, AuthenticationService authenticationService,
+                         CatalogVersionService catalogVersionService, AppointmentDeletionService appointmentDeletionService) {
         this.doctorRepository = doctorRepository;
         this.userService = userService;
         this.authenticationService = authenticationService;
+        this.catalogVersionService = catalogVersionService;
+        this.appointmentDeletionService = appointmentDeletionService;
     }
 
     public void createDoctorFromKeycloak(String kcUserId, String name, String uniqueIdentifier) {
@@ -41,18 +50,27 @@ public class DoctorService {
         doc.setPrimaryCare(false);
         doc.setSpecialties("N/A");
         doctorRepository.save(doc);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
     }
 
     public boolean existsByKeycloakId(String userId) {
         return doctorRepository.existsByKeycloakUserId(userId);
     }
 
+    @Transactional
     public void deleteByKeycloakUserId(String userId) {
+        Doctor doctor = doctorRepository.findByKeycloakUserId(userId);
+        if (doctor != null) {
+            appointmentDeletionService.deleteForDoctor(doctor.getId());
+        }
         doctorRepository.deleteByKeycloakUserId(userId);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
     }
 
     public Doctor createDoctor(Doctor doctor) {
-        return doctorRepository.save(doctor);
+        Doctor saved = doctorRepository.save(doctor);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
+        return saved;
     }
 
     public Doctor updateDoctor(Long id, Doctor updatedDoctor) {
@@ -63,13 +81,18 @@ public class DoctorService {
             doc.setKeycloakUserId(updatedDoctor.getKeycloakUserId());
             doc.setSpecialties(updatedDoctor.getSpecialties());
             doc.setPrimaryCare(updatedDoctor.isPrimaryCare());
-            return doctorRepository.save(doc);
+            Doctor saved = doctorRepository.save(doc);
+            catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
+            return saved;
         }
         throw new DoctorNotFoundException("Doctor not found with id: " + id);
     }
 
+    @Transactional
     public void deleteDoctor(Long id) {
+        appointmentDeletionService.deleteForDoctor(id);
         doctorRepository.deleteById(id);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
     }
 
     public List<Doctor> findAll() {
@@ -80,6 +103,26 @@ public class DoctorService {
         return doctorRepository.findById(id).orElseThrow(() -> new DoctorNotFoundException("Doctor not found"));
     }
 
+    /**
+     * Multi-get with a single IN-query; every doctor is readable by the roles allowed on the endpoint.
+     */
+    public BatchResultDto<DoctorDto> findAllByIds(List<Long> ids) {
+        Map<Long, Doctor> doctors = doctorRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Doctor::getId, Function.identity()));
+
+        List<DoctorDto> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Doctor doctor = doctors.get(id);
+            if (doctor == null) {
+                missing.add(id);
+            } else {
+                found.add(MappingUtils.mapToDoctorDto(doctor));
+            }
+        }
+        return new BatchResultDto<>(found, missing, List.of());
+    }
+
     public Doctor findByPrincipal() {
         User user = authenticationService.getCurrentUser();
         return doctorRepository.findByKeycloakUserId(user.getKeycloakUserId());
@@ -99,6 +142,8 @@ public class DoctorService {
         doc.setName(user.getFirstName() + " " + user.getLastName());
         doc.setPrimaryCare(updated.isPrimaryCare());
         doc.setSpecialties(updated.getSpecialties().isEmpty() ? "N/A" : updated.getSpecialties());
-        return doctorRepository.save(doc);
+        Doctor saved = doctorRepository.save(doc);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
+        return saved;
     }
 }
\ No newline at end of file
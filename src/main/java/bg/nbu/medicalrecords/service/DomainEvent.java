@@ -0,0 +1,26 @@
+package bg.nbu.medicalrecords.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * A domain event as handed to the {@link DomainEventConsumer}s.
+ *
+ * @param id            the outbox row id; a redelivered event keeps its id
+ * @param type          {@code <SUBJECT>_<ACTION>} of an {@link AppointmentChangedEvent} (e.g. {@code DIAGNOSIS_CREATED})
+ *                      , {@code APPOINTMENT_ARCHIVED} / {@code APPOINTMENT_DELETED} ({@link AppointmentsRemovedEvent})
+ *                      or {@code ROLE_CHANGED}
+ * @param aggregateType {@code APPOINTMENT} or {@code USER}
+ * @param aggregateId   appointment id or Keycloak user id
+ * @param payload       the original event as JSON
+ */
+public record DomainEvent(Long id,
+                          String type,
+                          String aggregateType,
+                          String aggregateId,
+                          String payload,
+                          LocalDateTime occurredAt) {
+
+    public static final String APPOINTMENT_ARCHIVED = "APPOINTMENT_ARCHIVED";
+    public static final String APPOINTMENT_DELETED = "APPOINTMENT_DELETED";
+    public static final String ROLE_CHANGED = "ROLE_CHANGED";
+}
@@ -0,0 +1,22 @@
+package bg.nbu.medicalrecords.service;
+
+import java.util.List;
+
+/**
+ * In-process consumer of the domain event outbox, called by the {@link DomainEventDispatcher} off the request path.
+ * <p>
+ * Every application instance delivers every event to its own consumers, in outbox order and at least once: a batch
+ * that fails anywhere is handed out again, event by event, so consumers must tolerate seeing an event twice.
+ * Throwing holds the event back for a retry.
+ */
+public interface DomainEventConsumer {
+
+    void onEvents(List<DomainEvent> events);
+
+    /**
+     * The id of the last event whose effects this consumer still has after a restart; delivery starts after it.
+     */
+    default long lastEventId() {
+        return 0L;
+    }
+}
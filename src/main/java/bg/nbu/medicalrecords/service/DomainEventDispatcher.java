@@ -0,0 +1,210 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.DomainEventOutbox;
+import bg.nbu.medicalrecords.dto.DomainEventLagDto;
+import bg.nbu.medicalrecords.repository.DomainEventOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the domain_event_outbox to the {@link DomainEventConsumer}s in batches, on the scheduler thread.
+ * <p>
+ * The consumers keep state on the instance they run on (the search index), so every instance reads the whole
+ * outbox: each consumer has its own cursor over the outbox ids, starting after {@link DomainEventConsumer#lastEventId()}.
+ * Nothing is claimed or written back, and delivery runs outside any transaction. Ids are handed out on insert but
+ * become visible on commit, so a missing id ahead of the cursor is waited for until the event after it is
+ * {@code gap-timeout-ms} old; it is then taken for a rolled back insert and skipped.
+ * <p>
+ * A batch that a consumer rejects is retried event by event. The event that fails holds back the ones after it, so
+ * the order is kept; it is retried with exponential backoff and skipped after the maximum number of attempts.
+ * Rows are purged after {@code retention-days}, which is as long as an instance can be down and still catch up.
+ */
+@Slf4j
+@Component
+public class DomainEventDispatcher {
+
+    private final DomainEventOutboxRepository outboxRepository;
+    private final List<Cursor> cursors = new ArrayList<>();
+
+    @Value("${medical-records.domain-events.batch-size:200}")
+    private int batchSize;
+
+    @Value("${medical-records.domain-events.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${medical-records.domain-events.backoff-base-ms:1000}")
+    private long backoffBaseMs;
+
+    @Value("${medical-records.domain-events.backoff-max-ms:300000}")
+    private long backoffMaxMs;
+
+    @Value("${medical-records.domain-events.gap-timeout-ms:10000}")
+    private long gapTimeoutMs;
+
+    @Value("${medical-records.domain-events.retention-days:7}")
+    private int retentionDays;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile LocalDateTime lastDeliveredAt;
+
+    public DomainEventDispatcher(DomainEventOutboxRepository outboxRepository, List<DomainEventConsumer> consumers) {
+        this.outboxRepository = outboxRepository;
+        consumers.forEach(consumer -> cursors.add(new Cursor(consumer)));
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.domain-events.poll-interval-ms:1000}")
+    public void dispatchPending() {
+        for (Cursor cursor : cursors) {
+            int read;
+            do {
+                read = dispatchBatch(cursor);
+            } while (read == batchSize);
+        }
+    }
+
+    /**
+     * Deliver the next batch after the cursor. Returns the number of outbox rows that were read.
+     */
+    int dispatchBatch(Cursor cursor) {
+        LocalDateTime now = LocalDateTime.now();
+        if (cursor.nextAttemptAt != null && cursor.nextAttemptAt.isAfter(now)) {
+            return 0;
+        }
+        List<DomainEventOutbox> rows = outboxRepository.findByIdGreaterThanOrderByIdAsc(cursor.position(), PageRequest.of(0, batchSize));
+        List<DomainEvent> events = contiguous(cursor, rows, now);
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            cursor.consumer.onEvents(events);
+            events.forEach(event -> advance(cursor, event, now));
+        } catch (RuntimeException batchFailure) {
+            if (events.size() == 1) {
+                scheduleRetry(cursor, events.get(0), batchFailure, now);
+                return 0;
+            }
+            for (DomainEvent event : events) {
+                try {
+                    cursor.consumer.onEvents(List.of(event));
+                    advance(cursor, event, now);
+                } catch (RuntimeException e) {
+                    scheduleRetry(cursor, event, e, now);
+                    return 0;
+                }
+            }
+        }
+        return rows.size();
+    }
+
+    public DomainEventLagDto lag() {
+        long behind = cursors.stream().mapToLong(Cursor::position).min().orElse(Long.MAX_VALUE);
+        DomainEventOutbox oldestPending = outboxRepository.findFirstByIdGreaterThanOrderByIdAsc(behind);
+        return new DomainEventLagDto(
+                outboxRepository.countByIdGreaterThan(behind),
+                failed.get(),
+                oldestPending != null ? Duration.between(oldestPending.getCreatedAt(), LocalDateTime.now()).toSeconds() : null,
+                delivered.get(),
+                lastDeliveredAt);
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.domain-events.purge-interval-ms:3600000}")
+    public void purgeDelivered() {
+        int purged = outboxRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (purged > 0) {
+            log.info("Purged {} domain events older than {} days", purged, retentionDays);
+        }
+    }
+
+    List<Cursor> cursors() {
+        return cursors;
+    }
+
+    /**
+     * The rows that directly follow the cursor. A gap in the ids ends the run; one at its very start is skipped
+     * once the row after it is older than the gap timeout.
+     */
+    private List<DomainEvent> contiguous(Cursor cursor, List<DomainEventOutbox> rows, LocalDateTime now) {
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        DomainEventOutbox head = rows.get(0);
+        long first = head.getId();
+        if (first != cursor.position() + 1) {
+            if (head.getCreatedAt().plusNanos(gapTimeoutMs * 1_000_000).isAfter(now)) {
+                return List.of();
+            }
+            log.warn("Domain events {} to {} are missing (rolled back or purged), skipping them", cursor.position() + 1, first - 1);
+            cursor.position = first - 1;
+        }
+        List<DomainEvent> events = new ArrayList<>(rows.size());
+        long expected = first;
+        for (DomainEventOutbox row : rows) {
+            if (row.getId() != expected) {
+                break;
+            }
+            events.add(toEvent(row));
+            expected++;
+        }
+        return events;
+    }
+
+    private void advance(Cursor cursor, DomainEvent event, LocalDateTime now) {
+        cursor.position = event.id();
+        cursor.attempts = 0;
+        cursor.nextAttemptAt = null;
+        delivered.incrementAndGet();
+        lastDeliveredAt = now;
+    }
+
+    private void scheduleRetry(Cursor cursor, DomainEvent event, RuntimeException cause, LocalDateTime now) {
+        int attempts = ++cursor.attempts;
+        if (attempts >= maxAttempts) {
+            log.error("Giving up on domain event {} ({}) after {} attempts", event.id(), event.type(), attempts, cause);
+            cursor.position = event.id();
+            cursor.attempts = 0;
+            cursor.nextAttemptAt = null;
+            failed.incrementAndGet();
+            return;
+        }
+
+        long delayMs = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 20));
+        cursor.nextAttemptAt = now.plusNanos(delayMs * 1_000_000);
+        log.warn("Domain event {} ({}) was not delivered (attempt {}), retrying in {} ms: {}",
+                event.id(), event.type(), attempts, delayMs, cause.getMessage());
+    }
+
+    private static DomainEvent toEvent(DomainEventOutbox entry) {
+        return new DomainEvent(entry.getId(), entry.getEventType(), entry.getAggregateType(), entry.getAggregateId(),
+                entry.getPayload(), entry.getCreatedAt());
+    }
+
+    // One consumer's place in the outbox on this instance; only touched by the scheduler thread
+    static final class Cursor {
+        private final DomainEventConsumer consumer;
+        private volatile Long position;
+        private int attempts;
+        private LocalDateTime nextAttemptAt;
+
+        Cursor(DomainEventConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        long position() {
+            if (position == null) {
+                position = consumer.lastEventId();
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.DomainEventOutbox;
+import bg.nbu.medicalrecords.repository.DomainEventOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the application events of the write paths to the domain_event_outbox table. Runs synchronously while
+ * the event is published, so the row commits or rolls back together with the change that raised it.
+ */
+@Component
+public class DomainEventRecorder {
+
+    private final DomainEventOutboxRepository outboxRepository;
+    private final ObjectMapper objectMapper;
+
+    public DomainEventRecorder(DomainEventOutboxRepository outboxRepository, ObjectMapper objectMapper) {
+        this.outboxRepository = outboxRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    @EventListener
+    public void onAppointmentChanged(AppointmentChangedEvent event) {
+        record(event.subject().name() + "_" + event.action().name(), "APPOINTMENT",
+                event.appointmentId() != null ? event.appointmentId().toString() : null, event);
+    }
+
+    @EventListener
+    public void onRoleChanged(RoleChangedEvent event) {
+        record(DomainEvent.ROLE_CHANGED, "USER", event.keycloakUserId(), event);
+    }
+
+    @EventListener
+    public void onAppointmentsRemoved(AppointmentsRemovedEvent event) {
+        String type = "APPOINTMENT_" + event.reason().name();
+        List<DomainEventOutbox> entries = new ArrayList<>(event.appointmentIds().size());
+        for (Long appointmentId : event.appointmentIds()) {
+            // One small payload per appointment rather than the whole id list on every row
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("appointmentId", appointmentId);
+            payload.put("reason", event.reason());
+            payload.put("occurredAt", event.occurredAt());
+            entries.add(entry(type, "APPOINTMENT", appointmentId.toString(), payload));
+        }
+        outboxRepository.saveAll(entries);
+    }
+
+    private void record(String type, String aggregateType, String aggregateId, Object event) {
+        outboxRepository.save(entry(type, aggregateType, aggregateId, event));
+    }
+
+    private DomainEventOutbox entry(String type, String aggregateType, String aggregateId, Object event) {
+        DomainEventOutbox entry = new DomainEventOutbox();
+        entry.setEventType(type);
+        entry.setAggregateType(aggregateType);
+        entry.setAggregateId(aggregateId);
+        try {
+            entry.setPayload(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + type + " event", e);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,198 @@
+package bg.nbu.medicalrecords.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Key store behind the {@code Idempotency-Key} header of the clinical write endpoints.
+ * <p>
+ * A key is scoped to the caller and remembered with a hash of the request it came with. The first request reserves
+ * the key, runs, and stores its response; a retry with the same key and request gets that response back, one that
+ * arrives while the first is still running gets {@link Outcome#IN_PROGRESS}, and a different request under a key
+ * already used gets {@link Outcome#MISMATCH}.
+ * <p>
+ * The {@code idempotency_keys} table makes a key visible to every instance for {@code ttl-hours}; its unique
+ * (principal, key) index is what decides between two instances reserving the same key. In front of it, each
+ * instance keeps the keys it handled in the last {@code memory-ttl-ms} in memory, so that retries and concurrent
+ * duplicates, which mostly come within seconds, are answered without touching the database; a new key costs one
+ * single-row insert. A reservation left behind by a crashed instance can be taken over after
+ * {@code in-progress-timeout-ms}, a lease kept well above the longest a request can run, so that a slow request is
+ * never run a second time alongside itself.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+    private static final String IN_PROGRESS = "IN_PROGRESS";
+    private static final String COMPLETED = "COMPLETED";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Map<String, Entry> memory = new ConcurrentHashMap<>();
+
+    @Value("${medical-records.idempotency.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${medical-records.idempotency.memory-ttl-ms:600000}")
+    private long memoryTtlMs;
+
+    @Value("${medical-records.idempotency.in-progress-timeout-ms:900000}")
+    private long inProgressTimeoutMs;
+
+    public IdempotencyService(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Look the key up and, if it is new, reserve it for this request.
+     */
+    public Decision begin(String principal, String key, String requestHash) {
+        String id = id(principal, key);
+        long now = System.currentTimeMillis();
+        Entry reservation = new Entry(requestHash, null, now + memoryTtlMs);
+        Entry current = memory.compute(id, (k, existing) -> existing == null || existing.expiresAt() < now ? reservation : existing);
+        if (current != reservation) {
+            return decide(current, requestHash);
+        }
+        try {
+            return reserve(principal, key, requestHash, id, reservation, now);
+        } catch (RuntimeException e) {
+            // Not reserved after all; left in memory, the key would answer IN_PROGRESS to every retry
+            memory.remove(id, reservation);
+            throw e;
+        }
+    }
+
+    private Decision reserve(String principal, String key, String requestHash, String id, Entry reservation, long now) {
+        LocalDateTime createdAt = LocalDateTime.now();
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("principal", principal)
+                .addValue("key", key)
+                .addValue("requestHash", requestHash)
+                .addValue("status", IN_PROGRESS)
+                .addValue("createdAt", createdAt)
+                .addValue("expiresAt", createdAt.plusHours(ttlHours));
+        try {
+            jdbcTemplate.update("""
+                    INSERT INTO idempotency_keys (principal, idempotency_key, request_hash, status, created_at, expires_at)
+                    VALUES (:principal, :key, :requestHash, :status, :createdAt, :expiresAt)""", parameters);
+            return new Decision(Outcome.PROCEED, null);
+        } catch (DuplicateKeyException e) {
+            // Seen by another instance, or before a restart; an expired row or an abandoned reservation is taken over
+            int takenOver = jdbcTemplate.update("""
+                    UPDATE idempotency_keys
+                    SET request_hash = :requestHash, status = :status, response_status = NULL,
+                        response_content_type = NULL, response_body = NULL, created_at = :createdAt, expires_at = :expiresAt
+                    WHERE principal = :principal AND idempotency_key = :key
+                      AND (expires_at < :createdAt OR (status = :status AND created_at < :staleBefore))""",
+                    parameters.addValue("staleBefore", createdAt.minus(Duration.ofMillis(inProgressTimeoutMs))));
+            if (takenOver > 0) {
+                return new Decision(Outcome.PROCEED, null);
+            }
+            memory.remove(id, reservation);
+            Entry stored = load(principal, key, now);
+            if (stored == null) {
+                // Purged in between
+                return begin(principal, key, requestHash);
+            }
+            if (stored.response() != null) {
+                memory.put(id, stored);
+            }
+            return decide(stored, requestHash);
+        }
+    }
+
+    /**
+     * Store the response of a request that reserved the key, for its retries.
+     */
+    public void complete(String principal, String key, StoredResponse response) {
+        jdbcTemplate.update("""
+                        UPDATE idempotency_keys
+                        SET status = :status, response_status = :responseStatus,
+                            response_content_type = :contentType, response_body = :body
+                        WHERE principal = :principal AND idempotency_key = :key""",
+                new MapSqlParameterSource()
+                        .addValue("status", COMPLETED)
+                        .addValue("responseStatus", response.status())
+                        .addValue("contentType", response.contentType())
+                        .addValue("body", response.body())
+                        .addValue("principal", principal)
+                        .addValue("key", key));
+        memory.computeIfPresent(id(principal, key),
+                (k, entry) -> new Entry(entry.requestHash(), response, System.currentTimeMillis() + memoryTtlMs));
+    }
+
+    /**
+     * Forget the key of a request that failed on the server, so that a retry runs it again.
+     */
+    public void release(String principal, String key) {
+        memory.remove(id(principal, key));
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE principal = :principal AND idempotency_key = :key AND status = :status",
+                new MapSqlParameterSource("principal", principal).addValue("key", key).addValue("status", IN_PROGRESS));
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.idempotency.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        memory.values().removeIf(entry -> entry.expiresAt() < now);
+        int purged = jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at < :now",
+                new MapSqlParameterSource("now", LocalDateTime.now()));
+        if (purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    private Entry load(String principal, String key, long now) {
+        List<Entry> entries = jdbcTemplate.query("""
+                        SELECT request_hash, status, response_status, response_content_type, response_body
+                        FROM idempotency_keys WHERE principal = :principal AND idempotency_key = :key""",
+                new MapSqlParameterSource("principal", principal).addValue("key", key),
+                (rs, rowNum) -> new Entry(rs.getString("request_hash"),
+                        COMPLETED.equals(rs.getString("status"))
+                                ? new StoredResponse(rs.getInt("response_status"), rs.getString("response_content_type"), rs.getString("response_body"))
+                                : null,
+                        now + memoryTtlMs));
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    private static Decision decide(Entry entry, String requestHash) {
+        if (!entry.requestHash().equals(requestHash)) {
+            return new Decision(Outcome.MISMATCH, null);
+        }
+        if (entry.response() == null) {
+            return new Decision(Outcome.IN_PROGRESS, null);
+        }
+        return new Decision(Outcome.REPLAY, entry.response());
+    }
+
+    private static String id(String principal, String key) {
+        return principal + '\n' + key;
+    }
+
+    public enum Outcome {
+        PROCEED, REPLAY, IN_PROGRESS, MISMATCH
+    }
+
+    /**
+     * What to do with a request; {@code response} is set for {@link Outcome#REPLAY}.
+     */
+    public record Decision(Outcome outcome, StoredResponse response) {
+    }
+
+    public record StoredResponse(int status, String contentType, String body) {
+    }
+
+    // A key this instance has seen; response is null while the request is still running
+    private record Entry(String requestHash, StoredResponse response, long expiresAt) {
+    }
+}
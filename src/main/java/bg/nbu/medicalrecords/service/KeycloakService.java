@@ -6,7 +6,6 @@ import bg.nbu.medicalrecords.domain.User;
 import bg.nbu.medicalrecords.dto.KeycloakUserDto;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.client.RestTemplate;
@@ -19,7 +18,7 @@ import java.util.stream.Collectors;
  * - obtaining an admin access token,
  * - creating a user in Keycloak,
  * - assigning roles,
- * - periodic user synchronization (Keycloak -> local DB).
+ * - user synchronization (Keycloak -> local DB).
  */
 @Service
 public class KeycloakService {
@@ -42,7 +41,7 @@ public class KeycloakService {
     @Value("${keycloak.credentials.secret:}")
     private String clientSecret; // If needed for confidential clients
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final RestTemplate restTemplate;
     private final UserService userService;
 
     private final DoctorService doctorService;
@@ -50,7 +49,8 @@ public class KeycloakService {
     private final PatientService patientService;
 
 
-    public KeycloakService(UserService userService, DoctorService doctorService, PatientService patientService) {
+    public KeycloakService(RestTemplate keycloakRestTemplate, UserService userService, DoctorService doctorService, PatientService patientService) {
+        this.restTemplate = keycloakRestTemplate;
         this.userService = userService;
         this.doctorService = doctorService;
         this.patientService = patientService;
@@ -151,8 +151,13 @@ public class KeycloakService {
      * Assign a realm role (e.g., "patient", "doctor", "user", "admin") to a user in Keycloak.
      */
     public void assignRole(String userId, String roleName) {
-        String adminToken = getAdminAccessToken();
+        assignRole(userId, roleName, getAdminAccessToken());
+    }
 
+    /**
+     * Assign a realm role using an admin token the caller already holds (e.g. one token per dispatched batch).
+     */
+    public void assignRole(String userId, String roleName, String adminToken) {
         // 1) Fetch the role representation
         String roleUrl = keycloakAuthServerUrl
                 + "/admin/realms/" + realmName
@@ -240,10 +245,9 @@ public class KeycloakService {
     }
 
     /**
-     * Trigger a sync of Keycloak users with the local database on a schedule (and can be called manually).
+     * Sync Keycloak users with the local database. Called from POST /auth/sync, and on a schedule by
+     * {@link KeycloakUserSyncJob} when that is enabled.
      */
-    // e.g., every 1 minute
-    @Scheduled(fixedRate = 60_000)
     public void syncUsers() {
         // 1) fetch all users from Keycloak
         List<KeycloakUserDto> keycloakUsers = fetchAllUsers();
@@ -323,8 +327,13 @@ public class KeycloakService {
      * Update the role for a user by removing all existing realm roles and assigning the new one.
      */
     public void updateUserRole(String userId, String newRole) {
-        String adminToken = getAdminAccessToken();
+        updateUserRole(userId, newRole, getAdminAccessToken());
+    }
 
+    /**
+     * Update the role for a user using an admin token the caller already holds.
+     */
+    public void updateUserRole(String userId, String newRole, String adminToken) {
         // 1) Fetch current roles
         String getRolesUrl = keycloakAuthServerUrl
                 + "/admin/realms/" + realmName
@@ -347,7 +356,7 @@ public class KeycloakService {
         }
 
         // 3) Now assign the new role
-        assignRole(userId, newRole);
+        assignRole(userId, newRole, adminToken);
     }
 
     /**
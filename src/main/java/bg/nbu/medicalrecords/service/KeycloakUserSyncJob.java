@@ -0,0 +1,26 @@
+package bg.nbu.medicalrecords.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs {@link KeycloakService#syncUsers()} on a schedule. Off unless medical-records.keycloak-sync.enabled=true:
+ * the sync deletes local users that are missing from Keycloak and creates the ones it does not know, so it has to
+ * be switched on deliberately.
+ */
+@Component
+@ConditionalOnProperty(name = "medical-records.keycloak-sync.enabled", havingValue = "true")
+public class KeycloakUserSyncJob {
+
+    private final KeycloakService keycloakService;
+
+    public KeycloakUserSyncJob(KeycloakService keycloakService) {
+        this.keycloakService = keycloakService;
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.keycloak-sync.interval-ms:60000}")
+    public void syncUsers() {
+        keycloakService.syncUsers();
+    }
+}
@@ -1,6 +1,6 @@
 package bg.nbu.medicalrecords.service;
 
-import bg.nbu.medicalrecords.dto.KeycloakUserDto;
+import bg.nbu.medicalrecords.domain.User;
 import bg.nbu.medicalrecords.exception.LocalSyncException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -10,25 +10,23 @@ public class LocalSyncService {
 
     private final DoctorService doctorService;
     private final PatientService patientService;
-    private final KeycloakService keycloakService;
     private final UserService userService;
 
     public LocalSyncService(
             DoctorService doctorService,
             PatientService patientService,
-            KeycloakService keycloakService, UserService userService
+            UserService userService
     ) {
         this.doctorService = doctorService;
         this.patientService = patientService;
-        this.keycloakService = keycloakService;
         this.userService = userService;
     }
 
     @Transactional
     public void handleRoleChange(String userId, String newRole) {
         try {
-            // 1) Fetch user details from Keycloak
-            KeycloakUserDto kcData = keycloakService.findUserById(userId);
+            // 1) Read user details from the local copy; Keycloak itself is updated by the RoleChangeDispatcher
+            User user = userService.findByKeycloakUserId(userId);
 
             // 2) If a Doctor record exists for this user, remove it
             if (doctorService.existsByKeycloakId(userId)) {
@@ -41,23 +39,23 @@ public class LocalSyncService {
 
             // 4) Recreate local records depending on the new role
             if ("doctor".equals(newRole)) {
-                String name = (kcData.getFirstName() == null && kcData.getLastName() == null)
-                        ? kcData.getUsername()
-                        : kcData.getFirstName() + " " + kcData.getLastName();
-                doctorService.createDoctorFromKeycloak(userId, name, userId);
+                doctorService.createDoctorFromKeycloak(userId, displayName(user), userId);
 
             } else if ("patient".equals(newRole)) {
-                String name = (kcData.getFirstName() == null && kcData.getLastName() == null)
-                        ? kcData.getUsername()
-                        : kcData.getFirstName() + " " + kcData.getLastName();
-                patientService.createPatientFromKeycloak(userId, name);
+                patientService.createPatientFromKeycloak(userId, displayName(user));
 
-            } else if ("admin".equals(newRole)) {
-                userService.assignRole(userId, "admin");
+            } else {
+                userService.assignRole(userId, newRole);
             }
 
         } catch (Exception e) {
             throw new LocalSyncException("Failed to handle role change for user ID: " + userId, e);
         }
     }
-}
\ No newline at end of file
+
+    private String displayName(User user) {
+        return (user.getFirstName() == null && user.getLastName() == null)
+                ? user.getUsername()
+                : user.getFirstName() + " " + user.getLastName();
+    }
+}
@@ -0,0 +1,289 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.dto.MedicationImportErrorDto;
+import bg.nbu.medicalrecords.dto.MedicationImportResultDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static bg.nbu.medicalrecords.util.CsvUtils.field;
+import static bg.nbu.medicalrecords.util.CsvUtils.parseLine;
+
+/**
+ * Catalog sync from a national drug registry file for {@code POST /medications/import}.
+ * <p>
+ * The registry is the full list of medications that may be prescribed. The file is streamed and diffed in memory
+ * against the catalog, which is loaded with one query, by its natural key: name + dosage form + strength, compared
+ * case- and whitespace-insensitively. New keys are inserted, changed ones updated (a retired medication that is
+ * back in the registry is reinstated), and catalog entries missing from the file are retired. Nothing is deleted,
+ * so prescriptions keep their {@code medication_id}. The changes are then written in JDBC batches of
+ * {@code batch-size} within one transaction, and the catalog version is bumped once at the end, which rebuilds
+ * the cached medication list and the suggest index on their next read.
+ * <p>
+ * Two guards protect against a truncated or broken file: nothing is retired when any row failed, and an import
+ * that would retire more than {@code max-retired-percent} of the active catalog is refused.
+ * <p>
+ * Columns (header required, any order): {@code medicationName} (required), {@code dosageForm}, {@code strength},
+ * {@code sideEffect} (a blank cell keeps the stored value).
+ */
+@Slf4j
+@Service
+public class MedicationImportService {
+
+    private static final String MEDICATION_NAME = "medicationName";
+    private static final String DOSAGE_FORM = "dosageForm";
+    private static final String STRENGTH = "strength";
+    private static final String SIDE_EFFECT = "sideEffect";
+    private static final List<String> COLUMNS = List.of(MEDICATION_NAME, DOSAGE_FORM, STRENGTH, SIDE_EFFECT);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CatalogVersionService catalogVersionService;
+
+    @Value("${medical-records.medication-import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${medical-records.medication-import.max-retired-percent:20}")
+    private int maxRetiredPercent;
+
+    @Value("${medical-records.medication-import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public MedicationImportService(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                   CatalogVersionService catalogVersionService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.catalogVersionService = catalogVersionService;
+    }
+
+    public MedicationImportResultDto importCsv(InputStream input, boolean dryRun) {
+        CurrentCatalog catalog = loadCatalog();
+        Report report = new Report(maxReportedErrors);
+        Diff diff = diff(input, catalog, report);
+
+        long active = catalog.byKey().values().stream().filter(medication -> !medication.retired()).count()
+                + catalog.duplicates().size();
+        if (report.failed > 0 && !diff.retirements.isEmpty()) {
+            log.warn("Medication import: {} rows failed, not retiring {} medications missing from the file",
+                    report.failed, diff.retirements.size());
+            diff.retirements.clear();
+        }
+        if (active > 0 && diff.retirements.size() * 100L > active * maxRetiredPercent) {
+            throw new InvalidInputException("The import would retire " + diff.retirements.size() + " of " + active
+                    + " active medications, more than " + maxRetiredPercent + "%; check that the file is complete");
+        }
+
+        if (!dryRun && diff.hasChanges()) {
+            transactionTemplate.executeWithoutResult(status -> apply(diff));
+            catalogVersionService.markChanged(CatalogVersionService.Catalog.MEDICATIONS);
+        }
+        log.info("Medication import{}: {} rows, {} inserted, {} updated, {} unchanged, {} retired, {} failed",
+                dryRun ? " (dry run)" : "", report.rows, diff.inserts.size(), diff.updates.size(), diff.unchanged,
+                diff.retirements.size(), report.failed);
+        return new MedicationImportResultDto(report.rows, diff.inserts.size(), diff.updates.size(), diff.unchanged,
+                diff.retirements.size(), report.failed, dryRun, List.copyOf(report.errors));
+    }
+
+    private CurrentCatalog loadCatalog() {
+        CurrentCatalog catalog = new CurrentCatalog(new HashMap<>(), new ArrayList<>());
+        jdbcTemplate.query("SELECT id, medication_name, dosage_form, strength, side_effect, retired FROM medications ORDER BY id",
+                rs -> {
+                    Existing medication = new Existing(rs.getLong("id"), rs.getString("medication_name"), rs.getString("dosage_form"),
+                            rs.getString("strength"), rs.getString("side_effect"), rs.getBoolean("retired"));
+                    Existing first = catalog.byKey().putIfAbsent(key(medication.name(), medication.dosageForm(), medication.strength()), medication);
+                    // The oldest entry stands for its key; younger active copies of it get retired
+                    if (first != null && !medication.retired()) {
+                        catalog.duplicates().add(medication.id());
+                    }
+                });
+        return catalog;
+    }
+
+    private Diff diff(InputStream input, CurrentCatalog catalog, Report report) {
+        Diff diff = new Diff();
+        Set<String> seenKeys = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new InvalidInputException("The registry file is empty");
+            }
+            Map<String, Integer> positions = columnPositions(parseLine(header.replace("\uFEFF", "")));
+
+            long lineNumber = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                report.rows++;
+                List<String> fields = parseLine(line);
+                Row row = new Row(field(fields, positions, MEDICATION_NAME), field(fields, positions, DOSAGE_FORM),
+                        field(fields, positions, STRENGTH), field(fields, positions, SIDE_EFFECT));
+                if (row.name() == null) {
+                    report.fail(lineNumber, null, "medicationName is missing");
+                    continue;
+                }
+                String key = key(row.name(), row.dosageForm(), row.strength());
+                if (!seenKeys.add(key)) {
+                    report.fail(lineNumber, row.name(), "The same name, form and strength appear earlier in the file");
+                    continue;
+                }
+
+                Existing existing = catalog.byKey().get(key);
+                if (existing == null) {
+                    diff.inserts.add(row);
+                } else if (existing.differsFrom(row)) {
+                    diff.updates.put(existing.id(), row);
+                } else {
+                    diff.unchanged++;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the medication registry", e);
+        }
+
+        for (Map.Entry<String, Existing> entry : catalog.byKey().entrySet()) {
+            Existing medication = entry.getValue();
+            if (!medication.retired() && !seenKeys.contains(entry.getKey())) {
+                diff.retirements.add(medication.id());
+            }
+        }
+        diff.retirements.addAll(catalog.duplicates());
+        return diff;
+    }
+
+    private void apply(Diff diff) {
+        LocalDateTime now = LocalDateTime.now();
+
+        List<MapSqlParameterSource> inserts = diff.inserts.stream()
+                .map(row -> parameters(row, now))
+                .toList();
+        for (List<MapSqlParameterSource> batch : batches(inserts)) {
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO medications (medication_name, dosage_form, strength, side_effect, retired, created_at)
+                    VALUES (:name, :dosageForm, :strength, :sideEffect, FALSE, :now)""",
+                    batch.toArray(MapSqlParameterSource[]::new));
+        }
+
+        List<MapSqlParameterSource> updates = diff.updates.entrySet().stream()
+                .map(entry -> parameters(entry.getValue(), now).addValue("id", entry.getKey()))
+                .toList();
+        for (List<MapSqlParameterSource> batch : batches(updates)) {
+            jdbcTemplate.batchUpdate("""
+                    UPDATE medications
+                    SET medication_name = :name,
+                        dosage_form = :dosageForm,
+                        strength = :strength,
+                        side_effect = COALESCE(:sideEffect, side_effect),
+                        retired = FALSE,
+                        updated_at = :now
+                    WHERE id = :id""",
+                    batch.toArray(MapSqlParameterSource[]::new));
+        }
+
+        for (List<Long> batch : batches(diff.retirements)) {
+            jdbcTemplate.update("UPDATE medications SET retired = TRUE, updated_at = :now WHERE id IN (:ids)",
+                    new MapSqlParameterSource("ids", batch).addValue("now", now));
+        }
+    }
+
+    private <T> List<List<T>> batches(List<T> items) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += batchSize) {
+            batches.add(items.subList(from, Math.min(items.size(), from + batchSize)));
+        }
+        return batches;
+    }
+
+    private static MapSqlParameterSource parameters(Row row, LocalDateTime now) {
+        return new MapSqlParameterSource()
+                .addValue("name", row.name())
+                .addValue("dosageForm", row.dosageForm())
+                .addValue("strength", row.strength())
+                .addValue("sideEffect", row.sideEffect())
+                .addValue("now", now);
+    }
+
+    /**
+     * The natural key of a medication: name, form and strength, lower-cased with runs of whitespace collapsed.
+     */
+    static String key(String name, String dosageForm, String strength) {
+        return normalize(name) + '|' + normalize(dosageForm) + '|' + normalize(strength);
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, Integer> columnPositions(List<String> header) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim();
+            for (String column : COLUMNS) {
+                if (column.equalsIgnoreCase(name)) {
+                    positions.put(column, i);
+                }
+            }
+        }
+        if (!positions.containsKey(MEDICATION_NAME)) {
+            throw new InvalidInputException("The CSV header must contain a 'medicationName' column, found: " + String.join(",", header));
+        }
+        return positions;
+    }
+
+    private record CurrentCatalog(Map<String, Existing> byKey, List<Long> duplicates) {
+    }
+
+    private record Row(String name, String dosageForm, String strength, String sideEffect) {
+    }
+
+    private record Existing(long id, String name, String dosageForm, String strength, String sideEffect, boolean retired) {
+
+        boolean differsFrom(Row row) {
+            return retired
+                    || !Objects.equals(name, row.name())
+                    || !Objects.equals(dosageForm, row.dosageForm())
+                    || !Objects.equals(strength, row.strength())
+                    || (row.sideEffect() != null && !row.sideEffect().equals(sideEffect));
+        }
+    }
+
+    private static final class Diff {
+        private final List<Row> inserts = new ArrayList<>();
+        private final Map<Long, Row> updates = new LinkedHashMap<>();
+        private final List<Long> retirements = new ArrayList<>();
+        private long unchanged;
+
+        boolean hasChanges() {
+            return !inserts.isEmpty() || !updates.isEmpty() || !retirements.isEmpty();
+        }
+    }
+
+    private static final class Report {
+        private final int maxReportedErrors;
+        private final List<MedicationImportErrorDto> errors = new ArrayList<>();
+        private long rows;
+        private long failed;
+
+        Report(int maxReportedErrors) {
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        void fail(long line, String medicationName, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new MedicationImportErrorDto(line, medicationName, message));
+            }
+        }
+    }
+}
@@ -16,8 +16,11 @@ public class MedicationService {
         this.medicationRepository = medicationRepository;
     }
 
+    /**
+     * The medications that can be prescribed; retired ones are left out.
+     */
     public List<Medication> getAll() {
-        return medicationRepository.findAll();
+        return medicationRepository.findByRetiredFalse();
     }
 
     public Medication findById(Long medicationId) {
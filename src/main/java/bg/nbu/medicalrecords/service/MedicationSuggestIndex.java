@@ -0,0 +1,157 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Medication;
+import bg.nbu.medicalrecords.dto.MedicationDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.util.MappingUtils;
+import bg.nbu.medicalrecords.util.SearchTokens;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Medication autocomplete over name, dosage form and strength, e.g. "amox 500" or "ibu caps".
+ * <p>
+ * The catalog is compiled into an immutable snapshot: medications in display order plus one sorted array of
+ * (token, medication) pairs, so each typed word is a binary search and a short forward scan. A snapshot is
+ * built for one MEDICATIONS version of {@link CatalogVersionService} and replaced as a whole by a single
+ * volatile write, so readers never see a half-built index and never lock.
+ */
+@Service
+public class MedicationSuggestIndex {
+
+    static final int MAX_LIMIT = 50;
+
+    private static final Comparator<Medication> DISPLAY_ORDER = Comparator
+            .comparing(Medication::getMedicationName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(Medication::getDosageForm, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(Medication::getStrength, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(Medication::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final MedicationService medicationService;
+    private final CatalogVersionService catalogVersionService;
+
+    private volatile Snapshot snapshot;
+
+    public MedicationSuggestIndex(MedicationService medicationService, CatalogVersionService catalogVersionService) {
+        this.medicationService = medicationService;
+        this.catalogVersionService = catalogVersionService;
+    }
+
+    /**
+     * Medications where every word of {@code q} starts a word of the name, dosage form or strength, in display order.
+     */
+    public List<MedicationDto> suggest(String q, int limit) {
+        List<String> queryTokens = SearchTokens.tokenize(q);
+        if (queryTokens.isEmpty()) {
+            throw new InvalidInputException("Search query must contain a letter or digit");
+        }
+        Snapshot current = current();
+
+        BitSet candidates = null;
+        for (String token : queryTokens) {
+            BitSet matches = current.matching(token);
+            if (candidates == null) {
+                candidates = matches;
+            } else {
+                candidates.and(matches);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        // Ordinals follow display order, so the first set bits are the first results
+        int max = Math.min(Math.max(limit, 1), MAX_LIMIT);
+        List<MedicationDto> result = new ArrayList<>(Math.min(max, candidates.cardinality()));
+        for (int i = candidates.nextSetBit(0); i >= 0 && result.size() < max; i = candidates.nextSetBit(i + 1)) {
+            result.add(current.medications[i]);
+        }
+        return result;
+    }
+
+    private Snapshot current() {
+        String versionToken = catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS);
+        Snapshot current = snapshot;
+        if (current != null && current.versionToken.equals(versionToken)) {
+            return current;
+        }
+        synchronized (this) {
+            versionToken = catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS);
+            current = snapshot;
+            if (current != null && current.versionToken.equals(versionToken)) {
+                return current;
+            }
+            // The version is read before loading, so a write racing with the build only causes another build
+            current = Snapshot.build(versionToken, medicationService.getAll());
+            snapshot = current;
+            return current;
+        }
+    }
+
+    private static final class Snapshot {
+        private final String versionToken;
+        private final MedicationDto[] medications;
+        private final String[] tokens;
+        private final int[] ordinals;
+
+        private Snapshot(String versionToken, MedicationDto[] medications, String[] tokens, int[] ordinals) {
+            this.versionToken = versionToken;
+            this.medications = medications;
+            this.tokens = tokens;
+            this.ordinals = ordinals;
+        }
+
+        static Snapshot build(String versionToken, List<Medication> catalog) {
+            List<Medication> sorted = new ArrayList<>(catalog);
+            sorted.sort(DISPLAY_ORDER);
+
+            MedicationDto[] medications = new MedicationDto[sorted.size()];
+            List<Posting> postings = new ArrayList<>();
+            for (int ordinal = 0; ordinal < sorted.size(); ordinal++) {
+                Medication medication = sorted.get(ordinal);
+                medications[ordinal] = MappingUtils.mapToMedicationDto(medication);
+                Set<String> words = new HashSet<>(SearchTokens.tokenize(medication.getMedicationName()));
+                words.addAll(SearchTokens.tokenize(medication.getDosageForm()));
+                words.addAll(SearchTokens.tokenize(medication.getStrength()));
+                for (String word : words) {
+                    postings.add(new Posting(word, ordinal));
+                }
+            }
+            postings.sort(Comparator.comparing(Posting::token).thenComparingInt(Posting::ordinal));
+
+            String[] tokens = new String[postings.size()];
+            int[] ordinals = new int[postings.size()];
+            for (int i = 0; i < postings.size(); i++) {
+                tokens[i] = postings.get(i).token();
+                ordinals[i] = postings.get(i).ordinal();
+            }
+            return new Snapshot(versionToken, medications, tokens, ordinals);
+        }
+
+        BitSet matching(String prefix) {
+            BitSet matches = new BitSet(medications.length);
+            for (int i = lowerBound(prefix); i < tokens.length && tokens[i].startsWith(prefix); i++) {
+                matches.set(ordinals[i]);
+            }
+            return matches;
+        }
+
+        private int lowerBound(String prefix) {
+            int low = 0;
+            int high = tokens.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (tokens[mid].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private record Posting(String token, int ordinal) {
+    }
+}
@@ -0,0 +1,162 @@
+package bg.nbu.medicalrecords.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Upkeep of the yearly RANGE partitions of {@code appointments} and {@code diagnoses} (MySQL only).
+ * <p>
+ * Ahead of time, the catch-all {@code MAXVALUE} partition is split so that every year up to {@code years-ahead}
+ * from now has its own partition; the catch-all stays empty, so the split is cheap. Behind the archive horizon,
+ * partitions that the archive job has emptied are dropped, which costs the same however many rows the year once
+ * held. A partition that still holds rows (an appointment still under treatment) is left for a later run.
+ * <p>
+ * On other databases, or on tables that are not partitioned, nothing is done.
+ */
+@Slf4j
+@Service
+public class PartitionMaintenanceService {
+
+    static final List<String> TABLES = List.of("appointments", "diagnoses");
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("\\w+");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AppointmentArchiveService appointmentArchiveService;
+
+    @Value("${medical-records.partitions.years-ahead:1}")
+    private int yearsAhead;
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate, AppointmentArchiveService appointmentArchiveService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.appointmentArchiveService = appointmentArchiveService;
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.partitions.interval-ms:86400000}",
+            initialDelayString = "${medical-records.partitions.initial-delay-ms:900000}")
+    public void maintainPartitions() {
+        if (!isMySql()) {
+            return;
+        }
+        int lastYear = LocalDate.now().getYear() + yearsAhead;
+        int archivedBefore = appointmentArchiveService.cutoff().getYear();
+        for (String table : TABLES) {
+            List<Partition> partitions = jdbcTemplate.query("""
+                            SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS
+                            WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL
+                            ORDER BY PARTITION_ORDINAL_POSITION""",
+                    (rs, rowNum) -> Partition.of(rs.getString("PARTITION_NAME"), rs.getString("PARTITION_DESCRIPTION")),
+                    table);
+            if (partitions.isEmpty()) {
+                continue;
+            }
+            String addSql = addPartitionsSql(table, partitions, lastYear);
+            if (addSql != null) {
+                jdbcTemplate.execute(addSql);
+                log.info("Added partitions to {} up to {}", table, lastYear);
+            }
+            for (Partition partition : droppable(partitions, archivedBefore)) {
+                if (dropIfEmpty(table, partition)) {
+                    log.info("Dropped empty partition {} of {}", partition.name(), table);
+                }
+            }
+        }
+    }
+
+    /**
+     * The statement that gives every year up to {@code lastYear} its own {@code p<year>} partition, or null if they
+     * all exist. A trailing {@code MAXVALUE} partition is reorganized into the new years plus itself, otherwise the
+     * new years are appended.
+     */
+    static String addPartitionsSql(String table, List<Partition> partitions, int lastYear) {
+        Partition catchAll = partitions.get(partitions.size() - 1).upperBound() == null
+                ? partitions.get(partitions.size() - 1) : null;
+        int nextYear = partitions.stream()
+                .filter(partition -> partition.upperBound() != null)
+                .mapToInt(Partition::upperBound)
+                .max()
+                .orElse(lastYear + 1);
+
+        List<String> definitions = new ArrayList<>();
+        for (int year = nextYear; year <= lastYear; year++) {
+            definitions.add("PARTITION p" + year + " VALUES LESS THAN (" + (year + 1) + ")");
+        }
+        if (definitions.isEmpty()) {
+            return null;
+        }
+        if (catchAll == null) {
+            return "ALTER TABLE " + table + " ADD PARTITION (" + String.join(", ", definitions) + ")";
+        }
+        definitions.add("PARTITION " + catchAll.name() + " VALUES LESS THAN MAXVALUE");
+        return "ALTER TABLE " + table + " REORGANIZE PARTITION " + catchAll.name()
+                + " INTO (" + String.join(", ", definitions) + ")";
+    }
+
+    /**
+     * Partitions holding only years before {@code archivedBefore}, i.e. rows the archive job may already have moved.
+     */
+    static List<Partition> droppable(List<Partition> partitions, int archivedBefore) {
+        return partitions.stream()
+                .filter(partition -> partition.upperBound() != null && partition.upperBound() <= archivedBefore)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Drops the partition if it holds no rows. The check and the drop run on one connection under a table write lock,
+     * so a backdated row written in between cannot land in the partition and be dropped with it; writers to the
+     * table wait for the (metadata-only) drop.
+     */
+    private boolean dropIfEmpty(String table, Partition partition) {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("LOCK TABLES " + table + " WRITE");
+                try {
+                    try (ResultSet rs = statement.executeQuery(
+                            "SELECT EXISTS (SELECT 1 FROM " + table + " PARTITION (" + partition.name() + "))")) {
+                        if (rs.next() && rs.getBoolean(1)) {
+                            return false;
+                        }
+                    }
+                    statement.execute("ALTER TABLE " + table + " DROP PARTITION " + partition.name());
+                    return true;
+                } finally {
+                    statement.execute("UNLOCK TABLES");
+                }
+            }
+        }));
+    }
+
+    private boolean isMySql() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+        return product != null && product.toLowerCase(Locale.ROOT).contains("mysql");
+    }
+
+    /**
+     * A RANGE partition on a year; {@code upperBound} is the first year it does not hold, null for {@code MAXVALUE}.
+     */
+    record Partition(String name, Integer upperBound) {
+
+        Partition {
+            if (!PARTITION_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Unexpected partition name: " + name);
+            }
+        }
+
+        static Partition of(String name, String description) {
+            return new Partition(name, "MAXVALUE".equalsIgnoreCase(description) ? null : Integer.valueOf(description.trim()));
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.dto.ExportFormat;
+import bg.nbu.medicalrecords.exception.PatientNotFoundException;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Streams a patient's complete history (appointments, diagnoses, treatments, prescriptions, sick leaves)
+ * straight from forward-only JDBC cursors to the response, one record per line.
+ * Nothing is collected in memory, so the cost does not depend on how long the history is.
+ * Each record type is read from the archive tables first (see {@link AppointmentArchiveService}), then from the hot ones.
+ */
+@Service
+public class PatientExportService {
+
+    /**
+     * Every exported record uses the same columns; a record type leaves the ones it does not have empty.
+     */
+    static final List<String> COLUMNS = List.of(
+            "type", "id", "appointmentId", "parentId", "date", "startDate", "endDate", "text",
+            "doctorId", "doctorName", "medicationId", "medicationName", "dosageForm", "strength",
+            "dosage", "duration", "createdAt", "updatedAt");
+
+    // The hot tables as the section queries alias them; their archive copies have the same columns
+    private static final Pattern HOT_TABLE = Pattern.compile("\\b(appointments a|diagnoses dg|treatments t|prescriptions p|sick_leaves s)\\b");
+
+    private static final List<Section> SECTIONS = List.of(
+            new Section("appointment", """
+                    SELECT a.id AS id, a.id AS appointmentId, a.appointment_date_time AS date,
+                           d.id AS doctorId, d.name AS doctorName, a.created_at AS createdAt, a.updated_at AS updatedAt
+                    FROM appointments a
+                    JOIN doctors d ON d.id = a.doctor_id
+                    WHERE a.patient_id = ?
+                    ORDER BY a.id"""),
+            new Section("diagnosis", """
+                    SELECT dg.id AS id, dg.appointment_id AS appointmentId, dg.appointment_id AS parentId,
+                           dg.diagnosed_date AS date, dg.statement AS text, dg.created_at AS createdAt, dg.updated_at AS updatedAt
+                    FROM diagnoses dg
+                    JOIN appointments a ON a.id = dg.appointment_id
+                    WHERE a.patient_id = ?
+                    ORDER BY dg.appointment_id, dg.id"""),
+            new Section("treatment", """
+                    SELECT t.id AS id, dg.appointment_id AS appointmentId, t.diagnosis_id AS parentId,
+                           t.start_date AS startDate, t.end_date AS endDate, t.description AS text,
+                           t.created_at AS createdAt, t.updated_at AS updatedAt
+                    FROM treatments t
+                    JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                    JOIN appointments a ON a.id = dg.appointment_id
+                    WHERE a.patient_id = ?
+                    ORDER BY dg.appointment_id, t.id"""),
+            new Section("prescription", """
+                    SELECT p.id AS id, dg.appointment_id AS appointmentId, p.treatment_id AS parentId,
+                           m.id AS medicationId, m.medication_name AS medicationName, m.dosage_form AS dosageForm,
+                           m.strength AS strength, p.dosage AS dosage, p.duration AS duration,
+                           p.created_at AS createdAt, p.updated_at AS updatedAt
+                    FROM prescriptions p
+                    JOIN medications m ON m.id = p.medication_id
+                    JOIN treatments t ON t.id = p.treatment_id
+                    JOIN diagnoses dg ON dg.id = t.diagnosis_id
+                    JOIN appointments a ON a.id = dg.appointment_id
+                    WHERE a.patient_id = ?
+                    ORDER BY dg.appointment_id, p.id"""),
+            new Section("sickLeave", """
+                    SELECT s.id AS id, s.appointment_id AS appointmentId, s.appointment_id AS parentId,
+                           s.today_date AS date, s.start_date AS startDate, s.end_date AS endDate, s.reason AS text,
+                           s.created_at AS createdAt, s.updated_at AS updatedAt
+                    FROM sick_leaves s
+                    JOIN appointments a ON a.id = s.appointment_id
+                    WHERE a.patient_id = ?
+                    ORDER BY s.appointment_id, s.id""")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PatientRepository patientRepository;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    // With useCursorFetch=true on the MySQL URL this is the number of rows per server-side cursor fetch
+    @Value("${medical-records.export.fetch-size:500}")
+    private int fetchSize;
+
+    public PatientExportService(JdbcTemplate jdbcTemplate, PatientRepository patientRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.patientRepository = patientRepository;
+    }
+
+    /**
+     * Check the patient exists (so a missing one is a 404, not a broken stream) and return the response body.
+     */
+    public StreamingResponseBody exportPatientHistory(Long patientId, ExportFormat format) {
+        if (!patientRepository.existsById(patientId)) {
+            throw new PatientNotFoundException("Patient not found with id: " + patientId);
+        }
+        return outputStream -> export(patientId, format, outputStream);
+    }
+
+    public void export(Long patientId, ExportFormat format, OutputStream outputStream) throws IOException {
+        RecordWriter writer = format == ExportFormat.CSV
+                ? new CsvRecordWriter(outputStream)
+                : new NdjsonRecordWriter(jsonFactory, outputStream);
+
+        for (Section section : SECTIONS) {
+            for (String sql : List.of(section.archiveSql(), section.sql())) {
+                SectionHandler handler = new SectionHandler(section.type(), writer);
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(fetchSize);
+                    statement.setLong(1, patientId);
+                    return statement;
+                }, handler);
+            }
+        }
+        writer.finish();
+    }
+
+    private record Section(String type, String sql) {
+
+        String archiveSql() {
+            return HOT_TABLE.matcher(sql).replaceAll(match -> match.group(1).replace(" ", "_archive "));
+        }
+    }
+
+    /**
+     * Maps the columns of one section's result set onto {@link #COLUMNS} once, then writes each row.
+     */
+    private static class SectionHandler implements RowCallbackHandler {
+        private final String type;
+        private final RecordWriter writer;
+        private int[] resultSetIndexes;
+
+        SectionHandler(String type, RecordWriter writer) {
+            this.type = type;
+            this.writer = writer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            if (resultSetIndexes == null) {
+                resultSetIndexes = mapColumns(rs.getMetaData());
+            }
+            Object[] values = new Object[COLUMNS.size()];
+            values[0] = type;
+            for (int i = 1; i < values.length; i++) {
+                values[i] = resultSetIndexes[i] > 0 ? normalize(rs.getObject(resultSetIndexes[i])) : null;
+            }
+            try {
+                writer.write(values);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static int[] mapColumns(ResultSetMetaData metaData) throws SQLException {
+            int[] indexes = new int[COLUMNS.size()];
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                String label = metaData.getColumnLabel(i);
+                for (int c = 0; c < COLUMNS.size(); c++) {
+                    if (COLUMNS.get(c).equalsIgnoreCase(label)) {
+                        indexes[c] = i;
+                    }
+                }
+            }
+            return indexes;
+        }
+
+        private static Object normalize(Object value) {
+            if (value instanceof Timestamp timestamp) {
+                return timestamp.toLocalDateTime().toString();
+            }
+            if (value instanceof Date date) {
+                return date.toLocalDate().toString();
+            }
+            if (value instanceof java.time.temporal.TemporalAccessor) {
+                return value.toString();
+            }
+            return value;
+        }
+    }
+
+    private interface RecordWriter {
+        void write(Object[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static class NdjsonRecordWriter implements RecordWriter {
+        private final JsonGenerator generator;
+
+        NdjsonRecordWriter(JsonFactory jsonFactory, OutputStream outputStream) throws IOException {
+            this.generator = jsonFactory.createGenerator(outputStream);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                String field = COLUMNS.get(i);
+                if (value instanceof Number number) {
+                    generator.writeFieldName(field);
+                    generator.writeNumber(number.toString());
+                } else if (value instanceof Boolean bool) {
+                    generator.writeBooleanField(field, bool);
+                } else {
+                    generator.writeStringField(field, value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static class CsvRecordWriter implements RecordWriter {
+        private final Writer out;
+
+        CsvRecordWriter(OutputStream outputStream) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            out.write(String.join(",", COLUMNS));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (values[i] != null) {
+                    out.write(escape(values[i].toString()));
+                }
+            }
+            out.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            out.flush();
+        }
+
+        static String escape(String value) {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
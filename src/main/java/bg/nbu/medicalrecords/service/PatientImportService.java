@@ -0,0 +1,311 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.dto.PatientImportErrorDto;
+import bg.nbu.medicalrecords.dto.PatientImportResultDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static bg.nbu.medicalrecords.util.CsvUtils.field;
+import static bg.nbu.medicalrecords.util.CsvUtils.parseLine;
+
+/**
+ * Bulk patient import for {@code POST /patients/import}.
+ * <p>
+ * The CSV is read line by line and handled in chunks of {@code chunk-size} rows, one transaction per chunk. Per
+ * chunk, the EGNs are resolved against {@code users} and the primary doctors checked with one IN-query each, and
+ * the patients are written with one JDBC batch of inserts and one of updates. A patient is matched by the Keycloak
+ * id of the user with the row's EGN, so importing the same file twice updates instead of duplicating. Blank cells
+ * leave the stored value alone on update. Only users with the patient role are imported; the import does not change
+ * roles, which go through the role change outbox to Keycloak.
+ * <p>
+ * Columns (header required, any order): {@code egn} (required), {@code name} (a new patient defaults to the user's name),
+ * {@code healthInsurancePaid}, {@code primaryDoctorId}. Quoted fields may contain commas but not line breaks.
+ */
+@Slf4j
+@Service
+public class PatientImportService {
+
+    private static final String EGN = "egn";
+    private static final String NAME = "name";
+    private static final String HEALTH_INSURANCE_PAID = "healthInsurancePaid";
+    private static final String PRIMARY_DOCTOR_ID = "primaryDoctorId";
+    private static final List<String> COLUMNS = List.of(EGN, NAME, HEALTH_INSURANCE_PAID, PRIMARY_DOCTOR_ID);
+    private static final String PATIENT_ROLE = "patient";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CatalogVersionService catalogVersionService;
+    private final PatientSearchIndex patientSearchIndex;
+
+    @Value("${medical-records.patient-import.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${medical-records.patient-import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    public PatientImportService(NamedParameterJdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                CatalogVersionService catalogVersionService, PatientSearchIndex patientSearchIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.catalogVersionService = catalogVersionService;
+        this.patientSearchIndex = patientSearchIndex;
+    }
+
+    public PatientImportResultDto importCsv(InputStream input) {
+        Report report = new Report(maxReportedErrors);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new InvalidInputException("The CSV file is empty");
+            }
+            Map<String, Integer> positions = columnPositions(parseLine(header.replace("\uFEFF", "")));
+
+            Set<String> seenEgns = new HashSet<>();
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                report.rows++;
+                Row row = parseRow(lineNumber, line, positions, report);
+                if (row == null) {
+                    continue;
+                }
+                if (!seenEgns.add(row.egn())) {
+                    report.fail(lineNumber, row.egn(), "EGN already appears earlier in the file");
+                    continue;
+                }
+                chunk.add(row);
+                if (chunk.size() == chunkSize) {
+                    importChunk(chunk, report);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, report);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read the patient import", e);
+        } finally {
+            if (report.created + report.updated > 0) {
+                catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+            }
+        }
+        log.info("Patient import: {} rows, {} created, {} updated, {} failed", report.rows, report.created, report.updated, report.failed);
+        return report.toDto();
+    }
+
+    private void importChunk(List<Row> chunk, Report report) {
+        ChunkResult result;
+        try {
+            result = transactionTemplate.execute(status -> upsert(chunk));
+        } catch (DataAccessException e) {
+            log.warn("Patient import chunk of {} rows starting at line {} failed", chunk.size(), chunk.get(0).line(), e);
+            chunk.forEach(row -> report.fail(row.line(), row.egn(), "Not imported: " + e.getMostSpecificCause().getMessage()));
+            return;
+        }
+        result.errors().forEach(error -> report.fail(error.getLine(), error.getEgn(), error.getMessage()));
+        report.created += result.created();
+        report.updated += result.updated();
+        for (Imported patient : result.imported()) {
+            patientSearchIndex.put(patient.id(), patient.name(), patient.keycloakUserId(), patient.egn());
+        }
+    }
+
+    private ChunkResult upsert(List<Row> chunk) {
+        Map<String, UserRow> users = new HashMap<>();
+        jdbcTemplate.query("SELECT egn, keycloak_user_id, username, first_name, last_name, role FROM users WHERE egn IN (:egns)",
+                new MapSqlParameterSource("egns", chunk.stream().map(Row::egn).toList()),
+                rs -> {
+                    users.put(rs.getString("egn"), new UserRow(rs.getString("keycloak_user_id"), rs.getString("username"),
+                            rs.getString("first_name"), rs.getString("last_name"), rs.getString("role")));
+                });
+
+        List<Long> requestedDoctorIds = chunk.stream().map(Row::primaryDoctorId).filter(Objects::nonNull).distinct().toList();
+        Set<Long> doctorIds = requestedDoctorIds.isEmpty() ? Set.of() : new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT id FROM doctors WHERE id IN (:ids)", new MapSqlParameterSource("ids", requestedDoctorIds), Long.class));
+
+        List<PatientImportErrorDto> errors = new ArrayList<>();
+        Map<String, Imported> valid = new LinkedHashMap<>();
+        Map<String, Row> rowsByKeycloakUserId = new HashMap<>();
+        for (Row row : chunk) {
+            UserRow user = users.get(row.egn());
+            if (user == null) {
+                errors.add(new PatientImportErrorDto(row.line(), row.egn(), "No user with this EGN"));
+            } else if (!PATIENT_ROLE.equals(user.role())) {
+                errors.add(new PatientImportErrorDto(row.line(), row.egn(), "The user with this EGN is not a patient (role: " + user.role() + ")"));
+            } else if (row.primaryDoctorId() != null && !doctorIds.contains(row.primaryDoctorId())) {
+                errors.add(new PatientImportErrorDto(row.line(), row.egn(), "No doctor with id " + row.primaryDoctorId()));
+            } else {
+                // The user's name only names a new patient; a blank cell leaves an existing name alone
+                String name = row.name() != null ? row.name() : user.displayName();
+                valid.put(user.keycloakUserId(), new Imported(null, name, user.keycloakUserId(), row.egn()));
+                rowsByKeycloakUserId.put(user.keycloakUserId(), row);
+            }
+        }
+        if (valid.isEmpty()) {
+            return new ChunkResult(List.of(), errors, 0, 0);
+        }
+
+        Map<String, Imported> existing = storedPatients(valid.keySet());
+        LocalDateTime now = LocalDateTime.now();
+        List<MapSqlParameterSource> inserts = new ArrayList<>();
+        List<MapSqlParameterSource> updates = new ArrayList<>();
+        for (Imported patient : valid.values()) {
+            Row row = rowsByKeycloakUserId.get(patient.keycloakUserId());
+            Long id = existing.containsKey(patient.keycloakUserId()) ? existing.get(patient.keycloakUserId()).id() : null;
+            // A new patient without the column is uninsured; an existing one keeps their flag (COALESCE below)
+            Boolean insurancePaid = id == null ? Boolean.valueOf(Boolean.TRUE.equals(row.healthInsurancePaid())) : row.healthInsurancePaid();
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("id", id, Types.BIGINT)
+                    .addValue("name", id == null ? patient.name() : row.name(), Types.VARCHAR)
+                    .addValue("insurancePaid", insurancePaid, Types.BOOLEAN)
+                    .addValue("primaryDoctorId", row.primaryDoctorId(), Types.BIGINT)
+                    .addValue("keycloakUserId", patient.keycloakUserId())
+                    .addValue("now", now);
+            (id == null ? inserts : updates).add(parameters);
+        }
+
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    INSERT INTO patients (name, is_health_insurance_paid, primary_doctor_id, keycloak_user_id, created_at)
+                    VALUES (:name, :insurancePaid, :primaryDoctorId, :keycloakUserId, :now)""",
+                    inserts.toArray(MapSqlParameterSource[]::new));
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("""
+                    UPDATE patients
+                    SET name = COALESCE(:name, name),
+                        is_health_insurance_paid = COALESCE(:insurancePaid, is_health_insurance_paid),
+                        primary_doctor_id = COALESCE(:primaryDoctorId, primary_doctor_id),
+                        updated_at = :now
+                    WHERE id = :id""",
+                    updates.toArray(MapSqlParameterSource[]::new));
+        }
+
+        // Re-read for the ids of the new rows and the names the updated rows kept
+        Map<String, Imported> stored = storedPatients(valid.keySet());
+        List<Imported> imported = valid.values().stream()
+                .map(patient -> new Imported(stored.get(patient.keycloakUserId()).id(), stored.get(patient.keycloakUserId()).name(),
+                        patient.keycloakUserId(), patient.egn()))
+                .toList();
+        return new ChunkResult(imported, errors, inserts.size(), updates.size());
+    }
+
+    private Map<String, Imported> storedPatients(Collection<String> keycloakUserIds) {
+        Map<String, Imported> patients = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name, keycloak_user_id FROM patients WHERE keycloak_user_id IN (:ids)",
+                new MapSqlParameterSource("ids", keycloakUserIds),
+                rs -> {
+                    patients.put(rs.getString("keycloak_user_id"),
+                            new Imported(rs.getLong("id"), rs.getString("name"), rs.getString("keycloak_user_id"), null));
+                });
+        return patients;
+    }
+
+    private static Map<String, Integer> columnPositions(List<String> header) {
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String name = header.get(i).trim();
+            for (String column : COLUMNS) {
+                if (column.equalsIgnoreCase(name)) {
+                    positions.put(column, i);
+                }
+            }
+        }
+        if (!positions.containsKey(EGN)) {
+            throw new InvalidInputException("The CSV header must contain an 'egn' column, found: " + String.join(",", header));
+        }
+        return positions;
+    }
+
+    private static Row parseRow(long line, String text, Map<String, Integer> positions, Report report) {
+        List<String> fields = parseLine(text);
+        String egn = field(fields, positions, EGN);
+        if (egn == null) {
+            report.fail(line, null, "EGN is missing");
+            return null;
+        }
+
+        Boolean healthInsurancePaid = null;
+        String insurance = field(fields, positions, HEALTH_INSURANCE_PAID);
+        if (insurance != null) {
+            switch (insurance.toLowerCase(Locale.ROOT)) {
+                case "true", "yes", "1" -> healthInsurancePaid = true;
+                case "false", "no", "0" -> healthInsurancePaid = false;
+                default -> {
+                    report.fail(line, egn, "healthInsurancePaid must be true or false, got '" + insurance + "'");
+                    return null;
+                }
+            }
+        }
+
+        Long primaryDoctorId = null;
+        String doctor = field(fields, positions, PRIMARY_DOCTOR_ID);
+        if (doctor != null) {
+            try {
+                primaryDoctorId = Long.valueOf(doctor);
+            } catch (NumberFormatException e) {
+                report.fail(line, egn, "primaryDoctorId must be a number, got '" + doctor + "'");
+                return null;
+            }
+        }
+        return new Row(line, egn, field(fields, positions, NAME), healthInsurancePaid, primaryDoctorId);
+    }
+
+    private record Row(long line, String egn, String name, Boolean healthInsurancePaid, Long primaryDoctorId) {
+    }
+
+    private record UserRow(String keycloakUserId, String username, String firstName, String lastName, String role) {
+
+        String displayName() {
+            String name = String.join(" ", Objects.toString(firstName, ""), Objects.toString(lastName, "")).trim();
+            return name.isEmpty() ? username : name;
+        }
+    }
+
+    private record Imported(Long id, String name, String keycloakUserId, String egn) {
+    }
+
+    private record ChunkResult(List<Imported> imported, List<PatientImportErrorDto> errors, int created, int updated) {
+    }
+
+    private static final class Report {
+        private final int maxReportedErrors;
+        private final List<PatientImportErrorDto> errors = new ArrayList<>();
+        private long rows;
+        private long created;
+        private long updated;
+        private long failed;
+
+        Report(int maxReportedErrors) {
+            this.maxReportedErrors = maxReportedErrors;
+        }
+
+        void fail(long line, String egn, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new PatientImportErrorDto(line, egn, message));
+            }
+        }
+
+        PatientImportResultDto toDto() {
+            return new PatientImportResultDto(rows, created, updated, failed, List.copyOf(errors));
+        }
+    }
+}
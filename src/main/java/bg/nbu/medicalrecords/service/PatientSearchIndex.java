@@ -0,0 +1,157 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.dto.PatientSearchHitDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.util.SearchTokens;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory prefix index for the reception's patient lookup by partial name or EGN.
+ * <p>
+ * Name words (lower-cased, accents stripped) and the EGN are kept in a sorted map from token to patient ids,
+ * so a prefix is a range scan and a search never touches the database. The index is built from
+ * {@code patients} and {@code users} at startup and kept current by {@link PatientService} (names, new and
+ * removed patients) and {@link UserService} (EGN changes, including the Keycloak sync), which apply their changes
+ * once the transaction commits so a rolled-back write never shows up here. Reads are lock-free; writes are rare
+ * and serialised.
+ */
+@Slf4j
+@Component
+public class PatientSearchIndex {
+
+    static final int MAX_LIMIT = 50;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ConcurrentSkipListMap<String, Set<Long>> patientIdsByToken = new ConcurrentSkipListMap<>();
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Long> patientIdsByKeycloakUserId = new ConcurrentHashMap<>();
+
+    public PatientSearchIndex(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Patients whose name words or EGN start with every word of {@code q}, ordered by name.
+     */
+    public List<PatientSearchHitDto> search(String q, int limit) {
+        List<String> queryTokens = SearchTokens.tokenize(q);
+        if (queryTokens.isEmpty()) {
+            throw new InvalidInputException("Search query must contain a letter or digit");
+        }
+        // The longest word is usually the most selective, so start the intersection with it
+        queryTokens.sort(Comparator.comparingInt(String::length).reversed());
+
+        Set<Long> candidates = null;
+        for (String token : queryTokens) {
+            Set<Long> matches = new HashSet<>();
+            for (Set<Long> ids : patientIdsByToken.subMap(token, true, token + Character.MAX_VALUE, true).values()) {
+                matches.addAll(ids);
+            }
+            if (candidates == null) {
+                candidates = matches;
+            } else {
+                candidates.retainAll(matches);
+            }
+            if (candidates.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        return candidates.stream()
+                .map(entries::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparing(Entry::name, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER)).thenComparing(Entry::id))
+                .limit(Math.min(Math.max(limit, 1), MAX_LIMIT))
+                .map(entry -> new PatientSearchHitDto(entry.id(), entry.name(), entry.egn()))
+                .toList();
+    }
+
+    /**
+     * Load every patient with the EGN of their user in one query, replacing what the index held.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        patientIdsByToken.clear();
+        entries.clear();
+        patientIdsByKeycloakUserId.clear();
+        jdbcTemplate.getJdbcOperations().query("""
+                SELECT p.id AS id, p.name AS name, p.keycloak_user_id AS keycloakUserId, u.egn AS egn
+                FROM patients p
+                LEFT JOIN users u ON u.keycloak_user_id = p.keycloak_user_id""",
+                (ResultSet rs) -> {
+                    add(new Entry(rs.getLong("id"), rs.getString("name"), rs.getString("keycloakUserId"), rs.getString("egn")));
+                });
+        log.info("Patient search index built with {} patients", entries.size());
+    }
+
+    public synchronized void put(Long patientId, String name, String keycloakUserId, String egn) {
+        remove(patientId);
+        add(new Entry(patientId, name, keycloakUserId, egn));
+    }
+
+    public synchronized void remove(Long patientId) {
+        Entry entry = entries.remove(patientId);
+        if (entry == null) {
+            return;
+        }
+        if (entry.keycloakUserId() != null) {
+            patientIdsByKeycloakUserId.remove(entry.keycloakUserId(), patientId);
+        }
+        for (String token : entry.tokens()) {
+            patientIdsByToken.computeIfPresent(token, (key, ids) -> {
+                ids.remove(patientId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    public synchronized void removeByKeycloakUserId(String keycloakUserId) {
+        Long patientId = patientIdsByKeycloakUserId.get(keycloakUserId);
+        if (patientId != null) {
+            remove(patientId);
+        }
+    }
+
+    /**
+     * A user's EGN changed (or the user was removed, {@code egn == null}); only matters if the user is a patient.
+     */
+    public synchronized void updateEgn(String keycloakUserId, String egn) {
+        Long patientId = keycloakUserId == null ? null : patientIdsByKeycloakUserId.get(keycloakUserId);
+        Entry entry = patientId == null ? null : entries.get(patientId);
+        if (entry != null && !Objects.equals(entry.egn(), egn)) {
+            put(entry.id(), entry.name(), entry.keycloakUserId(), egn);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void add(Entry entry) {
+        entries.put(entry.id(), entry);
+        if (entry.keycloakUserId() != null) {
+            patientIdsByKeycloakUserId.put(entry.keycloakUserId(), entry.id());
+        }
+        for (String token : entry.tokens()) {
+            patientIdsByToken.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(entry.id());
+        }
+    }
+
+    private record Entry(Long id, String name, String keycloakUserId, String egn) {
+
+        Set<String> tokens() {
+            Set<String> tokens = new HashSet<>(SearchTokens.tokenize(name));
+            tokens.addAll(SearchTokens.tokenize(egn));
+            return tokens;
+        }
+    }
+}
@@ -1,18 +1,21 @@
 package bg.nbu.medicalrecords.service;
 
 import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
 import bg.nbu.medicalrecords.dto.CreatePatientDto;
 import bg.nbu.medicalrecords.dto.PatientDto;
+import bg.nbu.medicalrecords.dto.PatientSearchHitDto;
 import bg.nbu.medicalrecords.dto.UpdatePatientDto;
 import bg.nbu.medicalrecords.exception.ResourceNotFoundException;
 import bg.nbu.medicalrecords.repository.DoctorRepository;
 import bg.nbu.medicalrecords.repository.PatientRepository;
 import bg.nbu.medicalrecords.util.MappingUtils;
+import bg.nbu.medicalrecords.util.TransactionUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -20,11 +23,21 @@ public class PatientService {
     private final PatientRepository patientRepository;
     private final DoctorRepository doctorRepository;
     private final UserService userService;
+    private final CatalogVersionService catalogVersionService;
+    private final AuthenticationService authenticationService;
+    private final PatientSearchIndex patientSearchIndex;
+    private final AppointmentDeletionService appointmentDeletionService;
 
-    public PatientService(PatientRepository patientRepository, DoctorRepository doctorRepository, UserService userService) {
+    public PatientService(PatientRepository patientRepository, DoctorRepository doctorRepository, UserService userService,
+                          CatalogVersionService catalogVersionService, AuthenticationService authenticationService,
+                          PatientSearchIndex patientSearchIndex, AppointmentDeletionService appointmentDeletionService) {
         this.patientRepository = patientRepository;
         this.doctorRepository = doctorRepository;
         this.userService = userService;
+        this.catalogVersionService = catalogVersionService;
+        this.authenticationService = authenticationService;
+        this.patientSearchIndex = patientSearchIndex;
+        this.appointmentDeletionService = appointmentDeletionService;
     }
 
     public Patient createPatientFromKeycloak(String kcUserId, String name) {
@@ -45,15 +58,25 @@ public class PatientService {
         p.setKeycloakUserId(kcUserId);
         p.setName(name);
         p.setHealthInsurancePaid(false);
-        return patientRepository.save(p);
+        Patient saved = patientRepository.save(p);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.put(saved.getId(), saved.getName(), kcUserId, user.getEgn()));
+        return saved;
     }
 
     public boolean existsByKeycloakId(String userId) {
         return patientRepository.existsByKeycloakUserId(userId);
     }
 
+    @Transactional
     public void deleteByKeycloakUserId(String userId) {
+        Patient patient = patientRepository.findByKeycloakUserId(userId);
+        if (patient != null) {
+            appointmentDeletionService.deleteForPatient(patient.getId());
+        }
         patientRepository.deleteByKeycloakUserId(userId);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.removeByKeycloakUserId(userId));
     }
 
     public PatientDto createPatient(CreatePatientDto dto) {
@@ -68,6 +91,8 @@ public class PatientService {
         }
 
         patientRepository.save(p);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.put(p.getId(), p.getName(), p.getKeycloakUserId(), null));
         return mapToDto(p);
     }
 
@@ -87,14 +112,20 @@ public class PatientService {
             p.setPrimaryDoctor(d);
         }
         patientRepository.save(p);
-        return mapToDto(p);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.put(p.getId(), p.getName(), p.getKeycloakUserId(), user.getEgn()));
+        return mapToDto(p, user);
     }
 
+    @Transactional
     public void deletePatient(Long id) {
         if (!patientRepository.existsById(id)) {
             throw new ResourceNotFoundException("Patient not found with id: " + id);
         }
+        appointmentDeletionService.deleteForPatient(id);
         patientRepository.deleteById(id);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.remove(id));
     }
 
     public List<PatientDto> findAll() {
@@ -121,6 +152,41 @@ public class PatientService {
         return mapToDto(p);
     }
 
+    /**
+     * Multi-get: one IN-query for the patients and one for their users (EGN). A patient may only read their own record.
+     */
+    public BatchResultDto<PatientDto> findAllByIds(List<Long> ids) {
+        User currentUser = authenticationService.getCurrentUser();
+        Map<Long, Patient> patients = patientRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Patient::getId, Function.identity()));
+        Map<String, User> users = userService.findAllByKeycloakUserIds(patients.values().stream()
+                .map(Patient::getKeycloakUserId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        List<PatientDto> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        List<Long> forbidden = new ArrayList<>();
+        for (Long id : ids) {
+            Patient p = patients.get(id);
+            if (p == null) {
+                missing.add(id);
+            } else if ("patient".equals(currentUser.getRole()) && !Objects.equals(p.getKeycloakUserId(), currentUser.getKeycloakUserId())) {
+                forbidden.add(id);
+            } else {
+                found.add(mapToDto(p, users.get(p.getKeycloakUserId())));
+            }
+        }
+        return new BatchResultDto<>(found, missing, forbidden);
+    }
+
+    /**
+     * Autocomplete for the reception: patients whose name words or EGN start with the typed text, served from memory.
+     */
+    public List<PatientSearchHitDto> search(String q, int limit) {
+        return patientSearchIndex.search(q, limit);
+    }
+
     public PatientDto findByEgn(String egn) {
         User user = userService.findByEgn(egn);
         Patient p = patientRepository.findByKeycloakUserId(user.getKeycloakUserId());
@@ -130,15 +196,17 @@ public class PatientService {
         if (!Objects.equals(user.getRole(), "patient")) {
             throw new ResourceNotFoundException("User not a patient");
         }
-        return mapToDto(p);
+        return mapToDto(p, user);
     }
 
     private PatientDto mapToDto(Patient p) {
-        User user = userService.findByKeycloakUserId(p.getKeycloakUserId());
+        return mapToDto(p, userService.findByKeycloakUserId(p.getKeycloakUserId()));
+    }
 
+    private PatientDto mapToDto(Patient p, User user) {
         PatientDto dto = new PatientDto();
         dto.setId(p.getId());
-        dto.setEgn(user.getEgn());
+        dto.setEgn(user != null ? user.getEgn() : null);
         dto.setName(p.getName());
         dto.setHealthInsurancePaid(p.isHealthInsurancePaid());
         dto.setPrimaryDoctorId(p.getPrimaryDoctor() != null ? p.getPrimaryDoctor().getId() : null);
@@ -164,6 +232,8 @@ public class PatientService {
 
         d.setPrimaryCare(true);
         doctorRepository.save(d);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
     }
 
     public void updateHealthInsuranceStatus(Long id, Boolean healthInsurancePaid) {
@@ -171,6 +241,7 @@ public class PatientService {
                 .orElseThrow(() -> new ResourceNotFoundException("Patient not found with id: " + id));
         patient.setHealthInsurancePaid(healthInsurancePaid);
         patientRepository.save(patient);
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
     }
 
     public PatientDto findByKeycloakUserId(String keycloakUserId) {
@@ -5,9 +5,11 @@ import bg.nbu.medicalrecords.domain.*;
 import bg.nbu.medicalrecords.dto.CreatePrescriptionDto;
 import bg.nbu.medicalrecords.exception.*;
 import bg.nbu.medicalrecords.repository.PrescriptionRepository;
+import bg.nbu.medicalrecords.util.VersionUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 
 @Service
 public class PrescriptionService {
@@ -18,16 +20,20 @@ public class PrescriptionService {
     private final TreatmentService treatmentService;
     private final MedicationService medicationService;
     private final DiagnosisService diagnosisService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public PrescriptionService(AuthenticationService authenticationService, PrescriptionRepository prescriptionRepository, AppointmentService appointmentService, TreatmentService treatmentService, MedicationService medicationService, DiagnosisService diagnosisService) {
+    public PrescriptionService(AuthenticationService authenticationService, PrescriptionRepository prescriptionRepository, AppointmentService appointmentService, TreatmentService treatmentService, MedicationService medicationService, DiagnosisService diagnosisService,
+                               ApplicationEventPublisher eventPublisher) {
         this.authenticationService = authenticationService;
         this.prescriptionRepository = prescriptionRepository;
         this.appointmentService = appointmentService;
         this.treatmentService = treatmentService;
         this.medicationService = medicationService;
         this.diagnosisService = diagnosisService;
+        this.eventPublisher = eventPublisher;
     }
 
+    @Transactional
     public Prescription createPrescription(Long appointmentId, Long treatmentId, CreatePrescriptionDto createPrescriptionDto) {
         Appointment appointment = appointmentService.findById(appointmentId);
         Treatment treatment = treatmentService.findById(treatmentId);
@@ -41,6 +47,9 @@ public class PrescriptionService {
         } else if (!currentUser.getRole().equals("admin")) {
             throw new UnauthorizedAccessException("User is not authorized to create a prescription");
         }
+        if (medication.isRetired()) {
+            throw new InvalidInputException("Medication " + medication.getId() + " is retired and can no longer be prescribed");
+        }
 
         Prescription prescription = new Prescription();
         prescription.setTreatment(treatment);
@@ -57,12 +66,13 @@ public class PrescriptionService {
         diagnosis.getTreatments().add(treatment);
         diagnosisService.save(diagnosis);
 
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.PRESCRIPTION, AppointmentChangedEvent.Action.CREATED));
 
         return savedPrescription;
     }
 
+    @Transactional
     public Prescription updatePrescription(Long appointmentId, Long treatmentId, Long prescriptionId, UpdatePrescriptionDto updatePrescriptionDto) {
         Appointment appointment = appointmentService.findById(appointmentId);
         Treatment treatment = treatmentService.findById(treatmentId);
@@ -78,17 +88,20 @@ public class PrescriptionService {
             throw new UnauthorizedAccessException("User is not authorized to update a prescription");
         }
 
+        VersionUtils.checkVersion(Prescription.class, prescriptionId, updatePrescriptionDto.getVersion(), prescription.getVersion());
         prescription.setDosage(updatePrescriptionDto.getDosage());
         prescription.setDuration(updatePrescriptionDto.getDuration());
 
-        Prescription savedPrescription = prescriptionRepository.save(prescription);
+        // flushed so the returned prescription carries the new version
+        Prescription savedPrescription = prescriptionRepository.saveAndFlush(prescription);
 
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.PRESCRIPTION, AppointmentChangedEvent.Action.UPDATED));
 
         return savedPrescription;
     }
 
+    @Transactional
     public void deletePrescription(Long appointmentId, Long treatmentId, Long prescriptionId) {
         Appointment appointment = appointmentService.findById(appointmentId);
         Treatment treatment = treatmentService.findById(treatmentId);
@@ -109,7 +122,7 @@ public class PrescriptionService {
 
         prescriptionRepository.delete(prescription);
 
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.PRESCRIPTION, AppointmentChangedEvent.Action.DELETED));
     }
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.RoleChangeOutbox;
+import bg.nbu.medicalrecords.domain.RoleChangeStatus;
+import bg.nbu.medicalrecords.repository.RoleChangeOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pushes queued role changes from the role_change_outbox table to Keycloak.
+ * Works in batches with a single admin token per batch; failed pushes are retried with exponential backoff.
+ * <p>
+ * A batch is claimed in a short transaction (FOR UPDATE SKIP LOCKED), which moves the rows' next attempt
+ * {@code claim-timeout-ms} ahead so that no other instance picks them up. The Keycloak calls run outside any
+ * transaction, and the outcome is written in a second short one. Rows of an instance that dies mid-batch become
+ * due again once the claim runs out; pushing a role twice is harmless.
+ */
+@Slf4j
+@Component
+public class RoleChangeDispatcher {
+
+    private final RoleChangeOutboxRepository outboxRepository;
+    private final KeycloakService keycloakService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${medical-records.role-sync.batch-size:50}")
+    private int batchSize;
+
+    @Value("${medical-records.role-sync.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${medical-records.role-sync.backoff-base-ms:1000}")
+    private long backoffBaseMs;
+
+    @Value("${medical-records.role-sync.backoff-max-ms:300000}")
+    private long backoffMaxMs;
+
+    @Value("${medical-records.role-sync.claim-timeout-ms:600000}")
+    private long claimTimeoutMs;
+
+    public RoleChangeDispatcher(RoleChangeOutboxRepository outboxRepository, KeycloakService keycloakService, TransactionTemplate transactionTemplate) {
+        this.outboxRepository = outboxRepository;
+        this.keycloakService = keycloakService;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${medical-records.role-sync.poll-interval-ms:2000}")
+    public void dispatchPending() {
+        int dispatched;
+        do {
+            dispatched = dispatchBatch();
+        } while (dispatched == batchSize);
+    }
+
+    /**
+     * Push one batch of due role changes. Returns the number of outbox rows that were picked up.
+     */
+    int dispatchBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        Claim claim = transactionTemplate.execute(status -> claim(now));
+        if (claim == null || claim.picked() == 0) {
+            return 0;
+        }
+
+        List<RoleChangeOutbox> pushed = new ArrayList<>();
+        try {
+            String adminToken = keycloakService.getAdminAccessToken();
+            for (RoleChangeOutbox entry : claim.latest()) {
+                try {
+                    keycloakService.updateUserRole(entry.getKeycloakUserId(), entry.getRole(), adminToken);
+                    entry.setStatus(RoleChangeStatus.DONE);
+                    entry.setLastError(null);
+                    pushed.add(entry);
+                } catch (RuntimeException e) {
+                    scheduleRetry(entry, e, now);
+                }
+            }
+        } catch (RuntimeException e) {
+            claim.latest().forEach(entry -> scheduleRetry(entry, e, now));
+        }
+
+        transactionTemplate.execute(status -> {
+            outboxRepository.saveAll(claim.latest());
+            pushed.forEach(entry -> outboxRepository.supersedeOlder(entry.getKeycloakUserId(), entry.getId(),
+                    RoleChangeStatus.PENDING, RoleChangeStatus.SUPERSEDED));
+            return null;
+        });
+        return claim.picked();
+    }
+
+    private Claim claim(LocalDateTime now) {
+        List<RoleChangeOutbox> batch = outboxRepository.findDue(RoleChangeStatus.PENDING, now, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return new Claim(0, List.of());
+        }
+
+        // Only the newest change per user has to reach Keycloak
+        Map<String, RoleChangeOutbox> latestPerUser = new LinkedHashMap<>();
+        for (RoleChangeOutbox entry : batch) {
+            RoleChangeOutbox older = latestPerUser.put(entry.getKeycloakUserId(), entry);
+            if (older != null) {
+                older.setStatus(RoleChangeStatus.SUPERSEDED);
+            }
+        }
+        latestPerUser.values().forEach(entry -> entry.setNextAttemptAt(now.plusNanos(claimTimeoutMs * 1_000_000)));
+        outboxRepository.saveAll(batch);
+        return new Claim(batch.size(), List.copyOf(latestPerUser.values()));
+    }
+
+    private void scheduleRetry(RoleChangeOutbox entry, RuntimeException cause, LocalDateTime now) {
+        int attempts = entry.getAttempts() + 1;
+        entry.setAttempts(attempts);
+        entry.setLastError(truncate(cause.getMessage()));
+
+        if (attempts >= maxAttempts) {
+            entry.setStatus(RoleChangeStatus.FAILED);
+            log.error("Giving up on role change {} -> '{}' for user {} after {} attempts",
+                    entry.getId(), entry.getRole(), entry.getKeycloakUserId(), attempts, cause);
+            return;
+        }
+
+        long delayMs = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 20));
+        entry.setNextAttemptAt(now.plusNanos(delayMs * 1_000_000));
+        log.warn("Role change {} for user {} failed (attempt {}), retrying in {} ms: {}",
+                entry.getId(), entry.getKeycloakUserId(), attempts, delayMs, cause.getMessage());
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= 1000) {
+            return message;
+        }
+        return message.substring(0, 1000);
+    }
+
+    private record Claim(int picked, List<RoleChangeOutbox> latest) {
+    }
+}
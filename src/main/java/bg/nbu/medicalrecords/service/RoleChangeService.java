@@ -0,0 +1,43 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.RoleChangeOutbox;
+import bg.nbu.medicalrecords.domain.RoleChangeStatus;
+import bg.nbu.medicalrecords.repository.RoleChangeOutboxRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Applies role changes to the local database right away and queues the matching Keycloak update.
+ * The queued change is pushed by the {@link RoleChangeDispatcher}.
+ */
+@Service
+public class RoleChangeService {
+
+    private final LocalSyncService localSyncService;
+    private final RoleChangeOutboxRepository outboxRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public RoleChangeService(LocalSyncService localSyncService, RoleChangeOutboxRepository outboxRepository,
+                             ApplicationEventPublisher eventPublisher) {
+        this.localSyncService = localSyncService;
+        this.outboxRepository = outboxRepository;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @Transactional
+    public RoleChangeOutbox requestRoleChange(String userId, String newRole) {
+        localSyncService.handleRoleChange(userId, newRole);
+
+        RoleChangeOutbox entry = new RoleChangeOutbox();
+        entry.setKeycloakUserId(userId);
+        entry.setRole(newRole);
+        entry.setStatus(RoleChangeStatus.PENDING);
+        entry.setNextAttemptAt(LocalDateTime.now());
+        RoleChangeOutbox saved = outboxRepository.save(entry);
+        eventPublisher.publishEvent(new RoleChangedEvent(userId, newRole, LocalDateTime.now()));
+        return saved;
+    }
+}
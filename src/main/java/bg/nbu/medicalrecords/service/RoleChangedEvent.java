@@ -0,0 +1,9 @@
+package bg.nbu.medicalrecords.service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published by {@link RoleChangeService} inside the transaction that applies a role change locally.
+ */
+public record RoleChangedEvent(String keycloakUserId, String role, LocalDateTime occurredAt) {
+}
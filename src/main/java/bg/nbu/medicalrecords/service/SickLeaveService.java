@@ -6,9 +6,11 @@ import bg.nbu.medicalrecords.dto.UpdateSickLeaveDto;
 import bg.nbu.medicalrecords.exception.DoctorNotAssignedToAppointmentException;
 import bg.nbu.medicalrecords.exception.SickLeaveNotFoundException;
 import bg.nbu.medicalrecords.repository.SickLeaveRepository;
+import bg.nbu.medicalrecords.util.VersionUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Objects;
 
@@ -19,14 +21,18 @@ public class SickLeaveService {
     private final AuthenticationService authenticationService;
     private final DoctorService doctorService;
     private final AppointmentService appointmentService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public SickLeaveService(SickLeaveRepository sickLeaveRepository, AuthenticationService authenticationService, DoctorService doctorService, AppointmentService appointmentService) {
+    public SickLeaveService(SickLeaveRepository sickLeaveRepository, AuthenticationService authenticationService, DoctorService doctorService, AppointmentService appointmentService,
+                            ApplicationEventPublisher eventPublisher) {
         this.sickLeaveRepository = sickLeaveRepository;
         this.authenticationService = authenticationService;
         this.doctorService = doctorService;
         this.appointmentService = appointmentService;
+        this.eventPublisher = eventPublisher;
     }
 
+    @Transactional
     public SickLeave createSickLeave(Long appointmentId, SickLeaveDto sickLeaveDto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -46,12 +52,13 @@ public class SickLeaveService {
         sickLeave.setEndDate(sickLeaveDto.getEndDate());
 
         SickLeave returnSickLeave = sickLeaveRepository.save(sickLeave);
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.SICK_LEAVE, AppointmentChangedEvent.Action.CREATED));
 
         return returnSickLeave;
     }
 
+    @Transactional
     public SickLeave updateSickLeave(Long appointmentId, UpdateSickLeaveDto sickLeaveDto, Long sickLeaveId) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -65,19 +72,22 @@ public class SickLeaveService {
 
         SickLeave sickLeave = sickLeaveRepository.findById(sickLeaveId)
                 .orElseThrow(() -> new SickLeaveNotFoundException("Sick leave not found"));
+        VersionUtils.checkVersion(SickLeave.class, sickLeaveId, sickLeaveDto.getVersion(), sickLeave.getVersion());
 
         sickLeave.setReason(sickLeaveDto.getReason());
         sickLeave.setTodayDate(sickLeaveDto.getTodayDate());
         sickLeave.setStartDate(sickLeaveDto.getStartDate());
         sickLeave.setEndDate(sickLeaveDto.getEndDate());
 
-        SickLeave returnSickLeave = sickLeaveRepository.save(sickLeave);
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        // flushed so the returned sick leave carries the new version
+        SickLeave returnSickLeave = sickLeaveRepository.saveAndFlush(sickLeave);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.SICK_LEAVE, AppointmentChangedEvent.Action.UPDATED));
 
         return returnSickLeave;
     }
 
+    @Transactional
     public void deleteSickLeave(Long sickLeaveId, Long appointmentId) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -97,8 +107,8 @@ public class SickLeaveService {
         }
 
         sickLeaveRepository.delete(sickLeave);
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.SICK_LEAVE, AppointmentChangedEvent.Action.DELETED));
     }
 
     public List<SickLeave> findAllSickLeaves() {
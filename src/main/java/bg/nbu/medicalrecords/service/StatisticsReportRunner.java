@@ -0,0 +1,67 @@
+package bg.nbu.medicalrecords.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the statistics reports on their own bounded pool, so month-end reporting never occupies
+ * (or starves) the request threads that serve appointments.
+ * The pool is deliberately not exposed as an Executor bean: that would replace Spring Boot's
+ * applicationTaskExecutor, which MVC async requests and @Async rely on.
+ */
+@Component
+public class StatisticsReportRunner implements DisposableBean {
+
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final long timeoutMs;
+
+    public StatisticsReportRunner(@Value("${medical-records.statistics.executor.core-pool-size:2}") int corePoolSize,
+                                  @Value("${medical-records.statistics.executor.max-pool-size:4}") int maxPoolSize,
+                                  @Value("${medical-records.statistics.executor.queue-capacity:20}") int queueCapacity,
+                                  @Value("${medical-records.statistics.timeout-ms:30000}") long timeoutMs) {
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("statistics-");
+        executor.initialize();
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Start a report. When the pool and its queue are full this throws a TaskRejectedException right away;
+     * a report still running after the timeout completes the future with a TimeoutException.
+     * Both are answered with 503 by the GlobalExceptionHandler.
+     * <p>
+     * A report that times out is also cancelled, so its pool thread is interrupted instead of working on for
+     * nobody; the statistics transaction timeout ends a query that does not react to the interrupt.
+     */
+    public <T> CompletableFuture<T> run(Supplier<T> report) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(report.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((value, error) -> {
+            if (error instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
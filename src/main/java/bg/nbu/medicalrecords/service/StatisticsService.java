@@ -3,17 +3,26 @@ package bg.nbu.medicalrecords.service;
 import bg.nbu.medicalrecords.domain.*;
 import bg.nbu.medicalrecords.dto.*;
 import bg.nbu.medicalrecords.exception.StatisticsServiceException;
+import bg.nbu.medicalrecords.repository.DiagnosisCodeStatistics;
 import bg.nbu.medicalrecords.util.MappingUtils;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Reports run on the statistics executor, outside the request's open session, so every report
+ * gets its own read-only transaction to load the lazy associations it walks.
+ */
 @Service
+@Transactional(readOnly = true, timeoutString = "${medical-records.statistics.query-timeout-s:30}")
 public class StatisticsService {
 
     public final DiagnosisService diagnosisService;
@@ -40,29 +49,28 @@ public class StatisticsService {
         }
     }
 
+    /**
+     * One row per diagnosis code, aggregated by the database; spelling variants of a diagnosis share a code.
+     */
     public DiagnosisStatisticsDto getDiagnosisLeaderboard() {
         try {
-            List<String> uniqueDiagnosisStatements = diagnosisService.getUniqueDiagnosis();
+            List<DiagnosisCodeStatistics> codeStatistics = diagnosisService.getCodeStatistics();
+            Map<Integer, String> firstDoctorNames = diagnosisService.findFirstDiagnosisDoctorNames();
+            long totalDiagnoses = diagnosisService.count();
+            long totalPatients = patientService.count();
             List<DiagnosisDetailsDto> diagnosisDetailsList = new ArrayList<>();
 
-            for (String statement : uniqueDiagnosisStatements) {
-                List<Diagnosis> diagnoses = diagnosisService.findByStatement(statement);
-                long count = diagnoses.size();
-                long totalDiagnoses = diagnosisService.count();
-                long totalPatients = patientService.count();
-                long patientsWithDiagnosis = diagnoses.stream().map(Diagnosis::getAppointment).map(Appointment::getPatient).distinct().count();
-
-                Diagnosis firstDiagnosis = diagnoses.stream().min(Comparator.comparing(Diagnosis::getDiagnosedDate)).orElse(null);
-                Diagnosis lastDiagnosis = diagnoses.stream().max(Comparator.comparing(Diagnosis::getDiagnosedDate)).orElse(null);
-
+            for (DiagnosisCodeStatistics statistics : codeStatistics) {
                 DiagnosisDetailsDto detailsDto = new DiagnosisDetailsDto();
-                detailsDto.setStatement(statement);
-                detailsDto.setCount(count);
-                detailsDto.setPercentageOfAllDiagnoses((count * 100) / totalDiagnoses);
-                detailsDto.setPercentageOfAllPatients((patientsWithDiagnosis * 100) / totalPatients);
-                detailsDto.setDoctorNameOfFirstDiagnosis(firstDiagnosis != null ? firstDiagnosis.getAppointment().getDoctor().getName() : null);
-                detailsDto.setDateOfFirstDiagnosis(firstDiagnosis != null ? firstDiagnosis.getDiagnosedDate() : null);
-                detailsDto.setDateOfLastDiagnosis(lastDiagnosis != null ? lastDiagnosis.getDiagnosedDate() : null);
+                detailsDto.setDiagnosisCodeId(statistics.getCodeId());
+                detailsDto.setCode(statistics.getCode());
+                detailsDto.setStatement(statistics.getLabel());
+                detailsDto.setCount(statistics.getDiagnosisCount());
+                detailsDto.setPercentageOfAllDiagnoses((statistics.getDiagnosisCount() * 100) / totalDiagnoses);
+                detailsDto.setPercentageOfAllPatients((statistics.getPatientCount() * 100) / totalPatients);
+                detailsDto.setDoctorNameOfFirstDiagnosis(firstDoctorNames.get(statistics.getCodeId()));
+                detailsDto.setDateOfFirstDiagnosis(statistics.getFirstDiagnosedDate());
+                detailsDto.setDateOfLastDiagnosis(statistics.getLastDiagnosedDate());
 
                 diagnosisDetailsList.add(detailsDto);
             }
@@ -144,14 +152,10 @@ public class StatisticsService {
         try {
             List<Doctor> doctors = doctorService.findAll();
             List<DoctorsThatHaveAppointmentsInPeriod> doctorsThatHaveAppointmentsInPeriodList = new ArrayList<>();
+            Set<Long> doctorIdsInPeriod = new HashSet<>(appointmentService.findDoctorIdsWithAppointmentsInPeriod(startDate, endDate));
 
             for (Doctor doctor : doctors) {
-                List<Appointment> appointments = appointmentService.findAllByDoctorId(doctor.getId());
-                List<Appointment> appointmentsInPeriod = appointments.stream()
-                        .filter(appointment -> appointment.getAppointmentDateTime().isAfter(startDate) && appointment.getAppointmentDateTime().isBefore(endDate))
-                        .toList();
-
-                if (appointmentsInPeriod.isEmpty()) {
+                if (!doctorIdsInPeriod.contains(doctor.getId())) {
                     continue;
                 }
 
@@ -202,13 +206,16 @@ public class StatisticsService {
                 default -> null;
             };
 
-            List<Appointment> allAppointmentsForMostSickLeavesMonth = appointmentService.findAll().stream()
-                    .filter(appointment -> appointment.getAppointmentDateTime().getMonthValue() == mostSickLeavesMonth && appointment.getAppointmentDateTime().getYear() == currentYear)
-                    .toList();
+            List<Appointment> allAppointmentsForMostSickLeavesMonth = List.of();
+            if (mostSickLeavesMonth != 0) {
+                LocalDateTime monthStart = LocalDateTime.of(currentYear, mostSickLeavesMonth, 1, 0, 0);
+                allAppointmentsForMostSickLeavesMonth = appointmentService.findAllInPeriod(monthStart, monthStart.plusMonths(1));
+            }
 
+            // Counted per diagnosis code, so spelling variants of one diagnosis add up
             List<String> diagnosisStatements = allAppointmentsForMostSickLeavesMonth.stream()
                     .flatMap(appointment -> appointment.getDiagnoses().stream())
-                    .map(Diagnosis::getStatement)
+                    .map(diagnosis -> diagnosis.getCode() != null ? diagnosis.getCode().getLabel() : diagnosis.getStatement())
                     .toList();
 
             String mostCommonDiagnosis = diagnosisStatements.stream()
@@ -11,7 +11,10 @@ import bg.nbu.medicalrecords.exception.DoctorNotAssignedToAppointmentException;
 import bg.nbu.medicalrecords.exception.TreatmentNotFoundException;
 import bg.nbu.medicalrecords.repository.TreatmentRepository;
 import bg.nbu.medicalrecords.util.MappingUtils;
+import bg.nbu.medicalrecords.util.VersionUtils;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -23,14 +26,18 @@ public class TreatmentService {
     private final AppointmentService appointmentService;
     private final DiagnosisService diagnosisService;
     private final TreatmentRepository treatmentRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public TreatmentService(AuthenticationService authenticationService, AppointmentService appointmentService, DiagnosisService diagnosisService, TreatmentRepository treatmentRepository) {
+    public TreatmentService(AuthenticationService authenticationService, AppointmentService appointmentService, DiagnosisService diagnosisService, TreatmentRepository treatmentRepository,
+                            ApplicationEventPublisher eventPublisher) {
         this.authenticationService = authenticationService;
         this.appointmentService = appointmentService;
         this.diagnosisService = diagnosisService;
         this.treatmentRepository = treatmentRepository;
+        this.eventPublisher = eventPublisher;
     }
 
+    @Transactional
     public TreatmentDto createTreatment(Long appointmentId, Long diagnosisId, CreateTreatmentDto createTreatmentDto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -53,13 +60,10 @@ public class TreatmentService {
         treatment = treatmentRepository.save(treatment);
 
         diagnosis.getTreatments().add(treatment);
-        diagnosis = diagnosisService.save(diagnosis);
-
-        Diagnosis updatedDiagnosis = diagnosisService.save(diagnosis);
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointment.getDiagnoses().get(appointment.getDiagnoses().indexOf(diagnosis)).getTreatments().addAll(updatedDiagnosis.getTreatments());
+        diagnosisService.save(diagnosis);
 
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.TREATMENT, AppointmentChangedEvent.Action.CREATED));
 
         return MappingUtils.mapToTreatmentDto(treatment);
     }
@@ -73,6 +77,7 @@ public class TreatmentService {
         return treatmentRepository.save(treatment);
     }
 
+    @Transactional
     public TreatmentDto updateTreatment(Long appointmentId, Long treatmentId, UpdateTreatmentDto updateTreatmentDto) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -84,13 +89,20 @@ public class TreatmentService {
         }
 
         Treatment treatment = findById(treatmentId);
+        VersionUtils.checkVersion(Treatment.class, treatmentId, updateTreatmentDto.getVersion(), treatment.getVersion());
         treatment.setDescription(updateTreatmentDto.getDescription());
         treatment.setStartDate(updateTreatmentDto.getStartDate());
         treatment.setEndDate(updateTreatmentDto.getEndDate());
 
-        return MappingUtils.mapToTreatmentDto(save(treatment));
+        Treatment saved = save(treatment);
+        // flushed so the returned DTO carries the new version
+        treatmentRepository.flush();
+        TreatmentDto updated = MappingUtils.mapToTreatmentDto(saved);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.TREATMENT, AppointmentChangedEvent.Action.UPDATED));
+        return updated;
     }
 
+    @Transactional
     public void deleteTreatment(Long appointmentId, Long treatmentId) {
         User currentUser = authenticationService.getCurrentUser();
         Appointment appointment = appointmentService.findById(appointmentId);
@@ -106,9 +118,9 @@ public class TreatmentService {
         diagnosis.getTreatments().remove(treatment);
         diagnosisService.save(diagnosis);
 
-        appointment.setUpdatedAt(LocalDateTime.now());
-        appointmentService.save(appointment);
+        appointmentService.touch(appointmentId);
 
         treatmentRepository.delete(treatment);
+        eventPublisher.publishEvent(AppointmentChangedEvent.of(appointment, AppointmentChangedEvent.Subject.TREATMENT, AppointmentChangedEvent.Action.DELETED));
     }
 }
\ No newline at end of file
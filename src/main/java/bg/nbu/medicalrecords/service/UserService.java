@@ -3,22 +3,30 @@ package bg.nbu.medicalrecords.service;
 import bg.nbu.medicalrecords.domain.User;
 import bg.nbu.medicalrecords.exception.UserNotFoundException;
 import bg.nbu.medicalrecords.repository.UserRepository;
+import bg.nbu.medicalrecords.util.TransactionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class UserService {
     private final UserRepository userRepository;
+    private final PatientSearchIndex patientSearchIndex;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, PatientSearchIndex patientSearchIndex) {
         this.userRepository = userRepository;
+        this.patientSearchIndex = patientSearchIndex;
     }
 
     @Transactional
     public User createUser(User user) {
         userRepository.save(user);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.updateEgn(user.getKeycloakUserId(), user.getEgn()));
         return user;
     }
 
@@ -35,7 +43,18 @@ public class UserService {
         if (user == null) {
             throw new UserNotFoundException("User not found with EGN: " + egn);
         }
-        return findByKeycloakUserId(user.getKeycloakUserId());
+        return user;
+    }
+
+    /**
+     * Users of the given Keycloak ids in one query, keyed by Keycloak id; ids without a local user are left out.
+     */
+    public Map<String, User> findAllByKeycloakUserIds(Collection<String> kcUserIds) {
+        if (kcUserIds.isEmpty()) {
+            return Map.of();
+        }
+        return userRepository.findByKeycloakUserIdIn(kcUserIds).stream()
+                .collect(Collectors.toMap(User::getKeycloakUserId, Function.identity()));
     }
 
     public boolean existsByKeycloakId(String userId) {
@@ -45,6 +64,7 @@ public class UserService {
     public void deleteByKeycloakUserId(String userId) {
         User user = findByKeycloakUserId(userId);
         userRepository.delete(user);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.updateEgn(userId, null));
     }
 
     public void assignRole(String userId, String role) {
@@ -58,10 +78,13 @@ public class UserService {
     }
 
     public void deleteUser(Long id) {
+        userRepository.findById(id).ifPresent(user ->
+                TransactionUtils.afterCommit(() -> patientSearchIndex.updateEgn(user.getKeycloakUserId(), null)));
         userRepository.deleteById(id);
     }
 
     public void updateUser(User user) {
         userRepository.save(user);
+        TransactionUtils.afterCommit(() -> patientSearchIndex.updateEgn(user.getKeycloakUserId(), user.getEgn()));
     }
 }
\ No newline at end of file
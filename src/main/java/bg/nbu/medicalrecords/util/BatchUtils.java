@@ -0,0 +1,29 @@
+package bg.nbu.medicalrecords.util;
+
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+
+public class BatchUtils {
+
+    private BatchUtils() {
+    }
+
+    /**
+     * Ids of a multi-get request without duplicates, in request order; rejects an empty request or one above {@code maxIds}.
+     */
+    public static List<Long> distinctIds(List<Long> ids, int maxIds) {
+        List<Long> distinct = ids == null ? new ArrayList<>() : new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.removeIf(Objects::isNull);
+        if (distinct.isEmpty()) {
+            throw new InvalidInputException("At least one id is required");
+        }
+        if (distinct.size() > maxIds) {
+            throw new InvalidInputException("At most " + maxIds + " ids can be requested at once");
+        }
+        return distinct;
+    }
+}
@@ -0,0 +1,54 @@
+package bg.nbu.medicalrecords.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class CsvUtils {
+
+    private CsvUtils() {
+    }
+
+    /**
+     * Splits one CSV line; fields may be quoted, with {@code ""} for a quote inside.
+     */
+    public static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * The trimmed cell of {@code column}, or null when the column is absent or the cell blank.
+     */
+    public static String field(List<String> fields, Map<String, Integer> positions, String column) {
+        Integer position = positions.get(column);
+        if (position == null || position >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(position).trim();
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,19 @@
+package bg.nbu.medicalrecords.util;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+public class ETagUtils {
+
+    private ETagUtils() {
+    }
+
+    /**
+     * Strong ETag built from version tokens; the tokens themselves (user ids, row counts) are not exposed.
+     */
+    public static String etag(String... parts) {
+        String joined = String.join("|", parts);
+        return "\"" + DigestUtils.md5DigestAsHex(joined.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+}
@@ -2,6 +2,7 @@ package bg.nbu.medicalrecords.util;
 
 import bg.nbu.medicalrecords.domain.*;
 import bg.nbu.medicalrecords.dto.*;
+import bg.nbu.medicalrecords.repository.AppointmentSummary;
 
 import java.util.stream.Collectors;
 
@@ -18,18 +19,32 @@ public class MappingUtils {
                 appointment.getSickLeaves().stream().map(MappingUtils::mapToSickLeaveDto).collect(Collectors.toList()),
                 appointment.getCreatedAt(),
                 appointment.getUpdatedAt(),
-                appointment.getAppointmentDateTime()
+                appointment.getAppointmentDateTime(),
+                appointment.getDurationMinutes(),
+                appointment.getVersion()
         );
 
     }
 
+    public static AppointmentSummaryDto mapToAppointmentSummaryDto(AppointmentSummary summary) {
+        return new AppointmentSummaryDto(
+                summary.getId(),
+                summary.getAppointmentDateTime(),
+                summary.getDurationMinutes(),
+                summary.getDoctorId(),
+                summary.getDoctorName(),
+                summary.getPatientId(),
+                summary.getPatientName()
+        );
+    }
+
     public static PatientDto mapToPatientDto(Patient patient, User user) {
 
 
         return new PatientDto(
                 patient.getId(),
                 patient.getName(),
-                user.getEgn(),
+                user != null ? user.getEgn() : null,
                 patient.isHealthInsurancePaid(),
                 patient.getPrimaryDoctor() != null ? patient.getPrimaryDoctor().getId() : null,
                 patient.getKeycloakUserId()
@@ -53,7 +68,8 @@ public class MappingUtils {
                 diagnosis.getDiagnosedDate(),
                 diagnosis.getCreatedAt(),
                 diagnosis.getUpdatedAt(),
-                diagnosis.getTreatments().stream().map(MappingUtils::mapToTreatmentDto).collect(Collectors.toList())
+                diagnosis.getTreatments().stream().map(MappingUtils::mapToTreatmentDto).collect(Collectors.toList()),
+                diagnosis.getVersion()
         );
     }
 
@@ -65,7 +81,8 @@ public class MappingUtils {
                 sickLeave.getStartDate(),
                 sickLeave.getEndDate(),
                 sickLeave.getCreatedAt(),
-                sickLeave.getUpdatedAt()
+                sickLeave.getUpdatedAt(),
+                sickLeave.getVersion()
         );
     }
 
@@ -77,7 +94,8 @@ public class MappingUtils {
                 treatment.getStartDate(),
                 treatment.getEndDate(),
                 treatment.getPrescriptions().stream().map(MappingUtils::mapToPrescriptionDto).collect(Collectors.toList()),
-                treatment.getDescription()
+                treatment.getDescription(),
+                treatment.getVersion()
         );
     }
 
@@ -88,7 +106,8 @@ public class MappingUtils {
                 prescription.getDosage(),
                 prescription.getDuration(),
                 prescription.getCreatedAt(),
-                prescription.getUpdatedAt()
+                prescription.getUpdatedAt(),
+                prescription.getVersion()
         );
     }
 
@@ -0,0 +1,19 @@
+package bg.nbu.medicalrecords.util;
+
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+public class VersionUtils {
+
+    private VersionUtils() {
+    }
+
+    /**
+     * Reject an edit based on another version of the record than the stored one (409 Conflict through the exception
+     * handler); {@code expected == null} skips the check for clients that do not send a version.
+     */
+    public static void checkVersion(Class<?> entityClass, Object id, Long expected, Long actual) {
+        if (expected != null && !expected.equals(actual)) {
+            throw new ObjectOptimisticLockingFailureException(entityClass, id);
+        }
+    }
+}
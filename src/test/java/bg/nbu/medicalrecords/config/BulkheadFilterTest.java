@@ -0,0 +1,66 @@
+package bg.nbu.medicalrecords.config;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadFilterTest {
+
+    @Test
+    void doFilter_ShouldPassRequestThroughAndReleasePermit() throws Exception {
+        // Arrange
+        BulkheadFilter filter = new BulkheadFilter(1, 10);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(new MockHttpServletRequest("GET", "/doctors"), response, (req, res) -> {
+        });
+
+        // Assert
+        assertEquals(200, response.getStatus());
+        assertEquals(1, filter.availablePermits());
+    }
+
+    @Test
+    void doFilter_ShouldAnswer503_WhenAllPermitsAreHeld() throws Exception {
+        // Arrange
+        BulkheadFilter filter = new BulkheadFilter(1, 10);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain slowChain = (req, res) -> {
+            inside.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Thread holder = new Thread(() -> {
+            try {
+                filter.doFilter(new MockHttpServletRequest("GET", "/doctors"), new MockHttpServletResponse(), slowChain);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        holder.start();
+        assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+        // Act
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/doctors"), rejected, (req, res) -> fail("must not reach the chain"));
+
+        // Assert
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+
+        release.countDown();
+        holder.join();
+        assertEquals(1, filter.availablePermits());
+    }
+}
@@ -0,0 +1,157 @@
+package bg.nbu.medicalrecords.config;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingJwtDecoderTest {
+
+    private static RSAKey rsaKey;
+    private static JwtDecoder rsaDecoder;
+
+    @BeforeAll
+    static void generateKeyPair() throws JOSEException {
+        rsaKey = new RSAKeyGenerator(2048).keyID("test-key").generate();
+        rsaDecoder = NimbusJwtDecoder.withPublicKey(rsaKey.toRSAPublicKey()).build();
+    }
+
+    @Test
+    void decode_ShouldVerifyOnlyOnce_WhenSameTokenIsPresentedAgain() throws Exception {
+        CountingDecoder counting = new CountingDecoder(rsaDecoder);
+        CachingJwtDecoder decoder = new CachingJwtDecoder(counting, 100);
+        String token = sign("user-1", Instant.now().plusSeconds(300));
+
+        Jwt first = decoder.decode(token);
+        Jwt second = decoder.decode(token);
+
+        assertEquals("user-1", second.getSubject());
+        assertSame(first, second);
+        assertEquals(1, counting.calls.get());
+    }
+
+    @Test
+    void decode_ShouldVerifyAgain_WhenCachedTokenHasExpired() throws Exception {
+        CountingDecoder counting = new CountingDecoder(rsaDecoder);
+        MutableClock clock = new MutableClock(Instant.now());
+        CachingJwtDecoder decoder = new CachingJwtDecoder(counting, 100, clock);
+        String token = sign("user-1", clock.instant().plusSeconds(30));
+
+        decoder.decode(token);
+        clock.advance(Duration.ofSeconds(31));
+        decoder.decode(token);
+
+        assertEquals(2, counting.calls.get());
+    }
+
+    @Test
+    void decode_ShouldRejectTamperedToken_EvenWhenOriginalIsCached() throws Exception {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(rsaDecoder, 100);
+        String token = sign("user-1", Instant.now().plusSeconds(300));
+        decoder.decode(token);
+
+        String tampered = token.substring(0, token.length() - 4) + "AAAA";
+
+        assertThrows(JwtException.class, () -> decoder.decode(tampered));
+    }
+
+    @Test
+    void decode_ShouldNotGrowPastMaxEntries() throws Exception {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(rsaDecoder, 3);
+        for (int i = 0; i < 10; i++) {
+            decoder.decode(sign("user-" + i, Instant.now().plusSeconds(300)));
+        }
+
+        assertEquals(3, decoder.size());
+    }
+
+    @Test
+    void decode_ShouldVerifyEachTokenOnce_AcrossRepeatedRequests() throws Exception {
+        CountingDecoder counting = new CountingDecoder(rsaDecoder);
+        CachingJwtDecoder decoder = new CachingJwtDecoder(counting, 100);
+        String[] tokens = {
+                sign("user-1", Instant.now().plusSeconds(300)),
+                sign("user-2", Instant.now().plusSeconds(300)),
+                sign("user-3", Instant.now().plusSeconds(300))
+        };
+
+        for (int i = 0; i < 1_000; i++) {
+            decoder.decode(tokens[i % tokens.length]);
+        }
+
+        assertEquals(tokens.length, counting.calls.get());
+    }
+
+    private static String sign(String subject, Instant expiresAt) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(subject)
+                .issuer("http://localhost:8080/realms/medical-realm")
+                .issueTime(new Date())
+                .expirationTime(Date.from(expiresAt))
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(rsaKey.getKeyID()).build(), claims);
+        jwt.sign(new RSASSASigner(rsaKey));
+        return jwt.serialize();
+    }
+
+    private static class CountingDecoder implements JwtDecoder {
+        private final JwtDecoder delegate;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        CountingDecoder(JwtDecoder delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Jwt decode(String token) {
+            calls.incrementAndGet();
+            return delegate.decode(token);
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package bg.nbu.medicalrecords.config;
+
+import bg.nbu.medicalrecords.service.IdempotencyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IdempotencyFilterTest {
+
+    private final IdempotencyService idempotencyService = mock(IdempotencyService.class);
+    private final IdempotencyFilter filter = new IdempotencyFilter(idempotencyService);
+
+    @Test
+    void doFilter_ShouldStoreTheResponse_AndPassTheBodyOn() throws Exception {
+        // Arrange
+        when(idempotencyService.begin(eq("anonymous"), eq("key-1"), anyString()))
+                .thenReturn(new IdempotencyService.Decision(IdempotencyService.Outcome.PROCEED, null));
+        AtomicReference<String> bodySeen = new AtomicReference<>();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(post("/appointments/5/diagnosis", "key-1"), response, (req, res) -> {
+            bodySeen.set(new String(req.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            ((jakarta.servlet.http.HttpServletResponse) res).setStatus(201);
+            res.setContentType("application/json");
+            res.getWriter().write("{\"id\":9}");
+        });
+
+        // Assert
+        assertEquals("{\"statement\":\"Flu\"}", bodySeen.get());
+        assertEquals(201, response.getStatus());
+        assertEquals("{\"id\":9}", response.getContentAsString());
+        verify(idempotencyService).complete("anonymous", "key-1",
+                new IdempotencyService.StoredResponse(201, "application/json", "{\"id\":9}"));
+        verify(idempotencyService, never()).release(any(), any());
+    }
+
+    @Test
+    void doFilter_ShouldReplayWithoutRunningTheRequest() throws Exception {
+        // Arrange
+        when(idempotencyService.begin(any(), any(), any())).thenReturn(new IdempotencyService.Decision(IdempotencyService.Outcome.REPLAY,
+                new IdempotencyService.StoredResponse(201, "application/json", "{\"id\":9}")));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(post("/appointments", "key-1"), response, (req, res) -> fail("must not reach the chain"));
+
+        // Assert
+        assertEquals(201, response.getStatus());
+        assertEquals("{\"id\":9}", response.getContentAsString());
+        assertEquals("true", response.getHeader(IdempotencyFilter.REPLAYED));
+    }
+
+    @Test
+    void doFilter_ShouldAnswer409And422_ForRunningAndReusedKeys() throws Exception {
+        // Arrange
+        when(idempotencyService.begin(any(), eq("running"), any()))
+                .thenReturn(new IdempotencyService.Decision(IdempotencyService.Outcome.IN_PROGRESS, null));
+        when(idempotencyService.begin(any(), eq("reused"), any()))
+                .thenReturn(new IdempotencyService.Decision(IdempotencyService.Outcome.MISMATCH, null));
+        MockHttpServletResponse running = new MockHttpServletResponse();
+        MockHttpServletResponse reused = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(post("/appointments", "running"), running, (req, res) -> fail("must not reach the chain"));
+        filter.doFilter(post("/appointments", "reused"), reused, (req, res) -> fail("must not reach the chain"));
+
+        // Assert
+        assertEquals(409, running.getStatus());
+        assertEquals(422, reused.getStatus());
+    }
+
+    @Test
+    void doFilter_ShouldKeepTheKeyReserved_WhenTheResponseCannotBeStored() throws Exception {
+        // Arrange
+        when(idempotencyService.begin(any(), any(), any()))
+                .thenReturn(new IdempotencyService.Decision(IdempotencyService.Outcome.PROCEED, null));
+        doThrow(new IllegalStateException("Connection lost")).when(idempotencyService).complete(any(), any(), any());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(post("/appointments/5/diagnosis", "key-1"), response,
+                (req, res) -> ((jakarta.servlet.http.HttpServletResponse) res).setStatus(201));
+
+        // Assert: the diagnosis exists, so a retry must not create it again
+        assertEquals(201, response.getStatus());
+        verify(idempotencyService, never()).release(any(), any());
+    }
+
+    @Test
+    void doFilter_ShouldReleaseTheKey_AfterAServerError() throws Exception {
+        // Arrange
+        when(idempotencyService.begin(any(), any(), any()))
+                .thenReturn(new IdempotencyService.Decision(IdempotencyService.Outcome.PROCEED, null));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // Act
+        filter.doFilter(post("/appointments/5/treatments/3/prescriptions", "key-1"), response,
+                (req, res) -> ((jakarta.servlet.http.HttpServletResponse) res).setStatus(500));
+
+        // Assert
+        verify(idempotencyService).release("anonymous", "key-1");
+        verify(idempotencyService, never()).complete(any(), any(), any());
+    }
+
+    @Test
+    void doFilter_ShouldIgnoreOtherRequests() throws Exception {
+        // Arrange
+        MockHttpServletRequest withoutKey = post("/appointments", null);
+        MockHttpServletRequest otherEndpoint = post("/patients", "key-1");
+        MockHttpServletRequest update = post("/appointments/5/diagnosis", "key-1");
+        update.setMethod("PUT");
+
+        // Act
+        for (MockHttpServletRequest request : new MockHttpServletRequest[]{withoutKey, otherEndpoint, update}) {
+            filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            });
+        }
+
+        // Assert
+        verifyNoInteractions(idempotencyService);
+    }
+
+    private static MockHttpServletRequest post(String uri, String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContentType("application/json");
+        request.setContent("{\"statement\":\"Flu\"}".getBytes(StandardCharsets.UTF_8));
+        if (key != null) {
+            request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+        }
+        return request;
+    }
+}
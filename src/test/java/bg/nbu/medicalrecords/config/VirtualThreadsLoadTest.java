@@ -0,0 +1,144 @@
+package bg.nbu.medicalrecords.config;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the application with the virtual-threads profile (virtual request threads, bulkhead on) against a
+ * Keycloak that answers slowly. GET /users makes two blocking Keycloak calls per request, so the number of
+ * calls Keycloak sees at the same time is the number of requests the application admits at the same time.
+ * The stub holds every call until more than 200 are waiting, Tomcat's default platform thread count, or until
+ * it gives up; with a platform pool that point is never reached.
+ * Only runs on Java 21, which the virtual-threads Maven profile builds with.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"test", "virtual-threads"})
+class VirtualThreadsLoadTest {
+
+    private static final int REQUESTS = 600;
+    private static final int TOMCAT_DEFAULT_THREADS = 200;
+    // Below the Keycloak client's 5 s read timeout
+    private static final long MAX_KEYCLOAK_LATENCY_MS = 4000;
+
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger peakInFlight = new AtomicInteger();
+    private static final CountDownLatch crowded = new CountDownLatch(1);
+
+    private static HttpServer slowKeycloak;
+    private static ExecutorService slowKeycloakExecutor;
+
+    @LocalServerPort
+    private int port;
+
+    @MockBean
+    private JwtDecoder jwtDecoder;
+
+    @BeforeAll
+    static void startSlowKeycloak() throws IOException {
+        slowKeycloak = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        slowKeycloak.createContext("/realms/medical-realm/protocol/openid-connect/token",
+                exchange -> respondSlowly(exchange, "{\"access_token\":\"token\"}"));
+        slowKeycloak.createContext("/admin/realms/medical-realm/users", exchange -> respondSlowly(exchange, "[]"));
+        slowKeycloakExecutor = Executors.newCachedThreadPool();
+        slowKeycloak.setExecutor(slowKeycloakExecutor);
+        slowKeycloak.start();
+    }
+
+    @DynamicPropertySource
+    static void keycloakUrl(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.auth-server-url", () -> "http://localhost:" + slowKeycloak.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void stopSlowKeycloak() {
+        slowKeycloak.stop(0);
+        slowKeycloakExecutor.shutdownNow();
+    }
+
+    @Test
+    void slowKeycloak_ShouldNotLimitConcurrentRequestsToThePlatformPoolSize() throws Exception {
+        // Arrange
+        when(jwtDecoder.decode(anyString())).thenReturn(Jwt.withTokenValue("admin-token")
+                .header("alg", "RS256")
+                .subject("admin")
+                .claim("realm_access", Map.of("roles", List.of("admin")))
+                .build());
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/users"))
+                .header("Authorization", "Bearer admin-token")
+                .build();
+
+        // Act
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+        }
+
+        // Assert
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            assertEquals(200, response.get().statusCode(), "no request may be turned away by the bulkhead");
+        }
+        assertTrue(peakInFlight.get() > TOMCAT_DEFAULT_THREADS,
+                "peak concurrent Keycloak calls was " + peakInFlight.get());
+    }
+
+    private static void respondSlowly(HttpExchange exchange, String json) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        int waiting = inFlight.incrementAndGet();
+        peakInFlight.accumulateAndGet(waiting, Math::max);
+        if (waiting > TOMCAT_DEFAULT_THREADS) {
+            crowded.countDown();
+        }
+        try {
+            crowded.await(MAX_KEYCLOAK_LATENCY_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        // The JDK server drops idle connections past its limit, which a pooled POST from the client would run into
+        exchange.getResponseHeaders().add("Connection", "close");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -56,6 +56,9 @@ public class AppointmentControllerIntegrationTest {
     @MockBean
     private PrescriptionService prescriptionService;
 
+    @MockBean
+    private AppointmentVersionService appointmentVersionService;
+
     @MockBean
     private MappingUtils mappingUtils;
 
@@ -85,7 +88,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDateTime.of(2025, 1, 15, 10, 0),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
-                Collections.emptyList()
+                Collections.emptyList(),
+                null
         );
 
         SickLeaveDto sickLeave1 = new SickLeaveDto(
@@ -95,7 +99,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2025, 1, 16),
                 LocalDate.of(2025, 1, 25),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
-                LocalDateTime.of(2025, 1, 15, 9, 0)
+                LocalDateTime.of(2025, 1, 15, 9, 0),
+                null
         );
 
         AppointmentDto appointment1 = new AppointmentDto(
@@ -106,7 +111,9 @@ public class AppointmentControllerIntegrationTest {
                 Collections.singletonList(sickLeave1),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
-                LocalDateTime.of(2025, 1, 15, 10, 0)
+                LocalDateTime.of(2025, 1, 15, 10, 0),
+                30,
+                null
         );
 
         List<AppointmentDto> appointments = Arrays.asList(appointment1);
@@ -131,6 +138,25 @@ public class AppointmentControllerIntegrationTest {
         Mockito.verify(appointmentService, Mockito.times(1)).findAllForLoggedInUser();
     }
 
+    @Test
+    @DisplayName("GET /appointments/getAppointmentsForLoggedInUser?view=summary - Get calendar view for logged in user")
+    @WithMockUser(authorities = {"patient"})
+    void testFindAllForLoggedInUser_SummaryView() throws Exception {
+        AppointmentSummaryDto summary = new AppointmentSummaryDto(1L, LocalDateTime.of(2025, 1, 15, 10, 0), 30,
+                1L, "Dr. Smith", 2L, "John Doe");
+
+        Mockito.when(appointmentService.findSummariesForLoggedInUser()).thenReturn(List.of(summary));
+
+        mockMvc.perform(get("/appointments/getAppointmentsForLoggedInUser").param("view", "summary"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(1))
+                .andExpect(jsonPath("$[0].doctorName").value("Dr. Smith"))
+                .andExpect(jsonPath("$[0].diagnoses").doesNotExist());
+
+        Mockito.verify(appointmentService, Mockito.never()).findAllForLoggedInUser();
+    }
+
     @Test
     @DisplayName("GET /appointments/{patientId}/appointments - Get all appointments for a patient")
     @WithMockUser(authorities = {"admin", "doctor"})
@@ -156,7 +182,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDateTime.of(2025, 2, 10, 11, 0),
                 LocalDateTime.of(2025, 2, 10, 10, 0),
                 LocalDateTime.of(2025, 2, 10, 10, 0),
-                Collections.emptyList()
+                Collections.emptyList(),
+                null
         );
 
         SickLeaveDto sickLeave1 = new SickLeaveDto(
@@ -166,7 +193,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2025, 2, 11),
                 LocalDate.of(2025, 2, 20),
                 LocalDateTime.of(2025, 2, 10, 10, 0),
-                LocalDateTime.of(2025, 2, 10, 10, 0)
+                LocalDateTime.of(2025, 2, 10, 10, 0),
+                null
         );
 
         AppointmentDto appointment1 = new AppointmentDto(
@@ -177,12 +205,14 @@ public class AppointmentControllerIntegrationTest {
                 Collections.singletonList(sickLeave1),
                 LocalDateTime.of(2025, 2, 10, 10, 0),
                 LocalDateTime.of(2025, 2, 10, 10, 0),
-                LocalDateTime.of(2025, 2, 10, 11, 0)
+                LocalDateTime.of(2025, 2, 10, 11, 0),
+                30,
+                null
         );
 
         List<AppointmentDto> appointments = Arrays.asList(appointment1);
 
-        Mockito.when(appointmentService.findAllForPatient(patientId)).thenReturn(appointments);
+        Mockito.when(appointmentService.findAllForPatient(patientId, null)).thenReturn(appointments);
 
         mockMvc.perform(get("/appointments/{patientId}/appointments", patientId))
                 .andExpect(status().isOk())
@@ -199,7 +229,7 @@ public class AppointmentControllerIntegrationTest {
                 .andExpect(jsonPath("$[0].sickLeaves[0].id").value(2))
                 .andExpect(jsonPath("$[0].appointmentDateTime").value("2025-02-10T11:00:00"));
 
-        Mockito.verify(appointmentService, Mockito.times(1)).findAllForPatient(patientId);
+        Mockito.verify(appointmentService, Mockito.times(1)).findAllForPatient(patientId, null);
     }
 
     @Test
@@ -231,7 +261,9 @@ public class AppointmentControllerIntegrationTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 3, 15, 9, 0),
                 LocalDateTime.of(2025, 3, 15, 9, 0),
-                LocalDateTime.of(2025, 3, 15, 10, 0)
+                LocalDateTime.of(2025, 3, 15, 10, 0),
+                30,
+                null
         );
 
         Mockito.when(appointmentService.createAppointment(any(CreateAppointmentDto.class))).thenReturn(createdAppointment);
@@ -258,7 +290,9 @@ public class AppointmentControllerIntegrationTest {
         Long appointmentId = 1L;
         UpdateAppointmentDto updateDto = new UpdateAppointmentDto(
                 2L,
-                LocalDateTime.of(2025, 4, 10, 15, 0)
+                LocalDateTime.of(2025, 4, 10, 15, 0),
+                null,
+                null
         );
 
         PatientDto patient = new PatientDto();
@@ -282,7 +316,9 @@ public class AppointmentControllerIntegrationTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 4, 10, 14, 0),
                 LocalDateTime.of(2025, 4, 10, 14, 0),
-                LocalDateTime.of(2025, 4, 10, 15, 0)
+                LocalDateTime.of(2025, 4, 10, 15, 0),
+                30,
+                null
         );
 
         Mockito.when(appointmentService.updateAppointment(eq(appointmentId), any(UpdateAppointmentDto.class)))
@@ -329,7 +365,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2025, 5, 1),
                 LocalDate.of(2025, 5, 10),
                 LocalDateTime.of(2025, 5, 1, 9, 0),
-                LocalDateTime.of(2025, 5, 1, 9, 0)
+                LocalDateTime.of(2025, 5, 1, 9, 0),
+                null
         );
 
         // Mock SickLeave entity returned by the service
@@ -405,7 +442,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2026, 5, 1),
                 LocalDate.of(2026, 5, 12),
                 LocalDateTime.of(2026, 5, 1, 9, 0),
-                LocalDateTime.of(2026, 5, 1, 9, 0)
+                LocalDateTime.of(2026, 5, 1, 9, 0),
+                null
         );
 
         // Mock the service call
@@ -500,7 +538,8 @@ public class AppointmentControllerIntegrationTest {
         // Instantiate UpdateDiagnosisDto using the all-args constructor
         UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto(
                 "Updated Hypertension",
-                LocalDateTime.of(2025, 6, 2, 11, 0)
+                LocalDateTime.of(2025, 6, 2, 11, 0),
+                null
         );
 
         // Create the updated Diagnosis domain object
@@ -518,7 +557,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDateTime.of(2025, 6, 2, 11, 0),
                 LocalDateTime.of(2025, 6, 1, 10, 0),
                 LocalDateTime.of(2025, 6, 2, 11, 0),
-                Collections.emptyList()
+                Collections.emptyList(),
+                null
         );
 
         // Mock the diagnosisService.updateDiagnosis method
@@ -584,7 +624,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2025, 6, 3),
                 LocalDate.of(2025, 6, 10),
                 Collections.emptyList(),
-                "Physical therapy sessions"
+                "Physical therapy sessions",
+                null
         );
 
         Mockito.when(treatmentService.createTreatment(eq(appointmentId), eq(diagnosisId), any(CreateTreatmentDto.class)))
@@ -655,7 +696,8 @@ public class AppointmentControllerIntegrationTest {
                 "5mg",
                 30,
                 LocalDateTime.of(2025, 6, 4, 10, 0),
-                LocalDateTime.of(2025, 6, 4, 10, 0)
+                LocalDateTime.of(2025, 6, 4, 10, 0),
+                null
         );
 
         // Mock service and static method
@@ -699,7 +741,8 @@ public class AppointmentControllerIntegrationTest {
         UpdatePrescriptionDto updatePrescriptionDto = new UpdatePrescriptionDto(
                 2L,
                 "10mg",
-                60
+                60,
+                null
         );
 
         Prescription updatedPrescription = new Prescription();
@@ -733,7 +776,8 @@ public class AppointmentControllerIntegrationTest {
                 "10mg",
                 60,
                 LocalDateTime.of(2025, 6, 4, 10, 0),
-                LocalDateTime.of(2025, 6, 5, 11, 0)
+                LocalDateTime.of(2025, 6, 5, 11, 0),
+                null
         );
 
         Mockito.when(prescriptionService.updatePrescription(eq(appointmentId), eq(treatmentId), eq(prescriptionId), any(UpdatePrescriptionDto.class)))
@@ -790,7 +834,8 @@ public class AppointmentControllerIntegrationTest {
         UpdateTreatmentDto updateTreatmentDto = new UpdateTreatmentDto(
                 LocalDate.of(2025, 6, 4),
                 LocalDate.of(2025, 6, 15),
-                "Updated physical therapy sessions"
+                "Updated physical therapy sessions",
+                null
         );
 
         TreatmentDto updatedTreatmentDto = new TreatmentDto(
@@ -800,7 +845,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2025, 6, 4),
                 LocalDate.of(2025, 6, 15),
                 Collections.emptyList(),
-                "Updated physical therapy sessions"
+                "Updated physical therapy sessions",
+                null
         );
 
         Mockito.when(treatmentService.updateTreatment(eq(appointmentId), eq(treatmentId), any(UpdateTreatmentDto.class)))
@@ -859,7 +905,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDateTime.of(2025, 1, 10, 10, 0),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
-                Collections.emptyList()
+                Collections.emptyList(),
+                null
         );
 
         SickLeaveDto sickLeave1 = new SickLeaveDto(
@@ -869,7 +916,8 @@ public class AppointmentControllerIntegrationTest {
                 LocalDate.of(2025, 1, 11),
                 LocalDate.of(2025, 1, 20),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
-                LocalDateTime.of(2025, 1, 10, 9, 0)
+                LocalDateTime.of(2025, 1, 10, 9, 0),
+                null
         );
 
         AppointmentDto appointment1 = new AppointmentDto(
@@ -880,7 +928,9 @@ public class AppointmentControllerIntegrationTest {
                 Collections.singletonList(sickLeave1),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
-                LocalDateTime.of(2025, 1, 10, 10, 0)
+                LocalDateTime.of(2025, 1, 10, 10, 0),
+                30,
+                null
         );
 
         List<AppointmentDto> appointments = Arrays.asList(appointment1);
@@ -1,6 +1,11 @@
 package bg.nbu.medicalrecords.controller;
 
 import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.dto.AvailableSlotDto;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
+import bg.nbu.medicalrecords.dto.DoctorDto;
+import bg.nbu.medicalrecords.service.CatalogVersionService;
+import bg.nbu.medicalrecords.service.DoctorAvailabilityService;
 import bg.nbu.medicalrecords.service.DoctorService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,10 +21,16 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.LongStream;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -36,11 +47,19 @@ class DoctorControllerIntegrationTest {
     @MockBean
     private DoctorService doctorService;
 
+    @MockBean
+    private DoctorAvailabilityService doctorAvailabilityService;
+
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
     private ObjectMapper objectMapper;
 
     @BeforeEach
     void setUp() {
         reset(doctorService);
+        // The doctor list is served from a cache; stand in for the write a real DoctorService would report
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
         objectMapper = new ObjectMapper();
     }
 
@@ -65,6 +84,52 @@ class DoctorControllerIntegrationTest {
         verify(doctorService, times(1)).findAll();
     }
 
+    @Test
+    @DisplayName("GET /doctors - Answer 304 while the doctor list is unchanged")
+    @WithMockUser(authorities = {"admin", "doctor", "patient"})
+    void testFindAll_NotModified() throws Exception {
+        // GIVEN
+        when(doctorService.findAll()).thenReturn(Collections.emptyList());
+        String etag = mockMvc.perform(get("/doctors"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // WHEN
+        mockMvc.perform(get("/doctors").header("If-None-Match", etag))
+                // THEN
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(doctorService, times(1)).findAll();
+    }
+
+    @Test
+    @DisplayName("GET /doctors - Serve the cached list gzip-encoded when the client accepts it")
+    @WithMockUser(authorities = {"admin", "doctor", "patient"})
+    void testFindAll_Gzip() throws Exception {
+        // GIVEN
+        Doctor doctor = new Doctor();
+        doctor.setId(1L);
+        doctor.setName("Dr. John Doe");
+        when(doctorService.findAll()).thenReturn(Collections.singletonList(doctor));
+
+        // WHEN
+        byte[] body = mockMvc.perform(get("/doctors").header("Accept-Encoding", "gzip, deflate"))
+                // THEN
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().stringValues("Vary", hasItem("Accept-Encoding")))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            String json = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(json).contains("\"name\":\"Dr. John Doe\"");
+        }
+        mockMvc.perform(get("/doctors").header("Accept-Encoding", "gzip"));
+        verify(doctorService, times(1)).findAll();
+    }
+
     @Test
     @DisplayName("POST /doctors - Create a doctor")
     @WithMockUser(authorities = "admin")
@@ -146,6 +211,40 @@ class DoctorControllerIntegrationTest {
         verify(doctorService, times(1)).findById(1L);
     }
 
+    @Test
+    @DisplayName("GET /doctors?ids= - Find several doctors at once, de-duplicating the ids")
+    @WithMockUser(authorities = {"admin", "doctor"})
+    void testFindAllByIds() throws Exception {
+        // GIVEN
+        DoctorDto doctor = new DoctorDto(1L, "kc-1", "Dr. John Doe", null, false);
+
+        when(doctorService.findAllByIds(List.of(1L, 7L))).thenReturn(new BatchResultDto<>(List.of(doctor), List.of(7L), List.of()));
+
+        // WHEN
+        mockMvc.perform(get("/doctors").param("ids", "1,7,1"))
+                // THEN
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found[0].name").value("Dr. John Doe"))
+                .andExpect(jsonPath("$.missing[0]").value(7L));
+
+        verify(doctorService, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("GET /doctors?ids= - Reject more ids than the configured maximum")
+    @WithMockUser(authorities = {"admin", "doctor"})
+    void testFindAllByIds_TooManyIds() throws Exception {
+        // GIVEN
+        String ids = String.join(",", LongStream.rangeClosed(1, 101).mapToObj(Long::toString).toList());
+
+        // WHEN
+        mockMvc.perform(get("/doctors").param("ids", ids))
+                // THEN
+                .andExpect(status().isBadRequest());
+
+        verify(doctorService, never()).findAllByIds(anyList());
+    }
+
     @Test
     @DisplayName("GET /doctors/doctor - Find doctor by principal")
     @WithMockUser(authorities = {"admin", "doctor"})
@@ -167,4 +266,24 @@ class DoctorControllerIntegrationTest {
 
         verify(doctorService, times(1)).findByPrincipal();
     }
+
+    @Test
+    @DisplayName("GET /doctors/{id}/availability - Find open slots of a doctor")
+    @WithMockUser(authorities = {"patient"})
+    void testFindAvailability() throws Exception {
+        // GIVEN
+        LocalDate monday = LocalDate.of(2030, 3, 4);
+        when(doctorAvailabilityService.findAvailableSlots(1L, monday, monday.plusDays(6))).thenReturn(List.of(
+                new AvailableSlotDto(monday.atTime(9, 0), monday.atTime(9, 30))));
+
+        // WHEN
+        mockMvc.perform(get("/doctors/1/availability").param("from", "2030-03-04").param("to", "2030-03-10"))
+                // THEN
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].start").value("2030-03-04T09:00:00"))
+                .andExpect(jsonPath("$[0].end").value("2030-03-04T09:30:00"));
+
+        verify(doctorAvailabilityService, times(1)).findAvailableSlots(1L, monday, monday.plusDays(6));
+    }
 }
@@ -14,6 +14,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -22,6 +23,7 @@ import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -51,7 +53,11 @@ class StatisticsControllerIntegrationTest {
 
         Mockito.when(statisticsService.getUniqueDiagnosis()).thenReturn(uniqueDiagnoses);
 
-        mockMvc.perform(get("/statistics/diagnoses/unique"))
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/diagnoses/unique"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.length()").value(uniqueDiagnoses.size()))
@@ -89,7 +95,11 @@ class StatisticsControllerIntegrationTest {
 
         Mockito.when(statisticsService.getDiagnosisLeaderboard()).thenReturn(leaderboard);
 
-        mockMvc.perform(get("/statistics/diagnoses/leaderboard"))
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/diagnoses/leaderboard"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.diagnosisDetails.length()").value(2))
@@ -166,7 +176,11 @@ class StatisticsControllerIntegrationTest {
 
         Mockito.when(statisticsService.getDoctorsWithPatientCount()).thenReturn(doctorsWithPatientCount);
 
-        mockMvc.perform(get("/statistics/doctors-with-patient-count"))
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/doctors-with-patient-count"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.length()").value(2))
@@ -194,7 +208,11 @@ class StatisticsControllerIntegrationTest {
 
         Mockito.when(statisticsService.getDoctorsWithAppointmentsCount()).thenReturn(doctorsWithAppointmentsCount);
 
-        mockMvc.perform(get("/statistics/doctors-with-appointments-count"))
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/doctors-with-appointments-count"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.length()").value(2))
@@ -230,9 +248,13 @@ class StatisticsControllerIntegrationTest {
         Mockito.when(statisticsService.getDoctorsWithAppointmentsInPeriod(eq(startDate), eq(endDate)))
                 .thenReturn(doctorsInPeriod);
 
-        mockMvc.perform(get("/statistics/doctors-with-appointments-in-period")
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/doctors-with-appointments-in-period")
                         .param("startDate", "2025-01-05T00:00:00")
                         .param("endDate", "2025-01-29T00:00:00"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.length()").value(2))
@@ -262,7 +284,11 @@ class StatisticsControllerIntegrationTest {
 
         Mockito.when(statisticsService.getMostSickLeavesMonthData()).thenReturn(sickLeavesData);
 
-        mockMvc.perform(get("/statistics/most-sick-leaves-month-data"))
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/most-sick-leaves-month-data"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.monthName").value("January"))
@@ -297,7 +323,11 @@ class StatisticsControllerIntegrationTest {
         Mockito.when(statisticsService.getDoctorsSickLeavesLeaderboard()).thenReturn(leaderboard);
 
         // Perform the GET request and assert the response
-        mockMvc.perform(get("/statistics/doctors-sick-leaves-leaderboard"))
+        MvcResult asyncResult = mockMvc.perform(get("/statistics/doctors-sick-leaves-leaderboard"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(asyncResult))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.length()").value(2)) // Expecting two items in the list
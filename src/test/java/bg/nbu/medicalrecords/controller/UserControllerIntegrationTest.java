@@ -2,7 +2,7 @@ package bg.nbu.medicalrecords.controller;
 
 import bg.nbu.medicalrecords.dto.KeycloakUserDto;
 import bg.nbu.medicalrecords.service.KeycloakService;
-import bg.nbu.medicalrecords.service.LocalSyncService;
+import bg.nbu.medicalrecords.service.RoleChangeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -19,6 +19,7 @@ import java.util.List;
 
 import static bg.nbu.medicalrecords.utils.UserControllerTestUtil.asJsonString;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
@@ -39,14 +40,14 @@ class UserControllerIntegrationTest {
     @MockBean
     private KeycloakService keycloakService;
 
-    // We also 'mock' LocalSyncService
+    // We also 'mock' RoleChangeService so no outbox rows are written
     @MockBean
-    private LocalSyncService localSyncService;
+    private RoleChangeService roleChangeService;
 
     @BeforeEach
     void setUp() {
         // Reset mocks before each test, if you want
-        reset(keycloakService, localSyncService);
+        reset(keycloakService, roleChangeService);
     }
 
     @Test
@@ -111,11 +112,11 @@ class UserControllerIntegrationTest {
         mockMvc.perform(put("/users/{id}/role", userId)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(requestBody))
-                .andExpect(status().isOk());
+                .andExpect(status().isAccepted());
 
-        // THEN check that KeycloakService.updateUserRole and LocalSyncService.handleRoleChange are called
-        verify(keycloakService, times(1)).updateUserRole(userId, newRole);
-        verify(localSyncService, times(1)).handleRoleChange(userId, newRole);
+        // THEN the change is queued and Keycloak is not called on the request thread
+        verify(roleChangeService, times(1)).requestRoleChange(userId, newRole);
+        verify(keycloakService, never()).updateUserRole(anyString(), anyString());
     }
 
     @Test
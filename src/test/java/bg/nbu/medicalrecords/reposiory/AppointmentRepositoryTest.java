@@ -4,18 +4,20 @@ import bg.nbu.medicalrecords.domain.Appointment;
 import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.Patient;
 import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.AppointmentSummary;
 import bg.nbu.medicalrecords.repository.DoctorRepository;
 import bg.nbu.medicalrecords.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import java.time.LocalDateTime;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 @DataJpaTest
 class AppointmentRepositoryTest {
@@ -29,6 +31,9 @@ class AppointmentRepositoryTest {
     @Autowired
     private DoctorRepository doctorRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
     private Patient patient;
     private Doctor doctor;
 
@@ -100,4 +105,95 @@ class AppointmentRepositoryTest {
         assertEquals(2, appointments.size());
         assertTrue(appointments.stream().allMatch(a -> a.getDoctor().getId().equals(doctor.getId())));
     }
+
+    @Test
+    void findSummariesByPatientKeycloakUserId_ShouldReturnCalendarColumnsInDateOrder() {
+        // Act
+        List<AppointmentSummary> summaries = appointmentRepository.findSummariesByPatientKeycloakUserId("patient-kc-id");
+
+        // Assert
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.get(0).getAppointmentDateTime().isBefore(summaries.get(1).getAppointmentDateTime()));
+        assertEquals("Dr. John", summaries.get(0).getDoctorName());
+        assertEquals(doctor.getId(), summaries.get(0).getDoctorId());
+        assertEquals("Patient Jane", summaries.get(0).getPatientName());
+    }
+
+    @Test
+    void findSummariesByDoctorKeycloakUserId_ShouldReturnAppointmentsForDoctor() {
+        // Act
+        List<AppointmentSummary> summaries = appointmentRepository.findSummariesByDoctorKeycloakUserId("doctor-kc-id");
+
+        // Assert
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.stream().allMatch(s -> s.getPatientId().equals(patient.getId())));
+    }
+
+    @Test
+    void findByIdIn_ShouldReturnOnlyExistingAppointmentsWithDoctorAndPatient() {
+        // Arrange
+        List<Long> ids = appointmentRepository.findByDoctor_Id(doctor.getId()).stream().map(Appointment::getId).toList();
+
+        // Act
+        List<Appointment> appointments = appointmentRepository.findByIdIn(List.of(ids.get(0), ids.get(1), -1L));
+
+        // Assert
+        assertEquals(2, appointments.size());
+        assertTrue(appointments.stream().allMatch(a -> a.getDoctor().getName().equals("Dr. John")
+                && a.getPatient().getName().equals("Patient Jane")));
+    }
+
+    @Test
+    void periodQueries_ShouldOnlyReturnAppointmentsInsideThePeriod() {
+        // Arrange: the setup's appointments are tomorrow and the day after
+        LocalDateTime start = LocalDateTime.now();
+        LocalDateTime end = LocalDateTime.now().plusDays(1).plusHours(12);
+
+        // Act
+        List<Appointment> forDoctor = appointmentRepository.findByDoctorInPeriod(doctor.getId(), start, end);
+        List<Appointment> all = appointmentRepository.findInPeriod(start, end);
+        List<Long> doctorIds = appointmentRepository.findDoctorIdsInPeriod(start, end);
+        List<Long> noDoctorIds = appointmentRepository.findDoctorIdsInPeriod(start.minusDays(10), start.minusDays(5));
+
+        // Assert
+        assertEquals(1, forDoctor.size());
+        assertEquals(1, all.size());
+        assertEquals(List.of(doctor.getId()), doctorIds);
+        assertTrue(noDoctorIds.isEmpty());
+    }
+
+    @Test
+    void touch_ShouldSetUpdatedAt_WithoutBumpingVersion() {
+        // Arrange
+        Appointment appointment = appointmentRepository.findByPatient_Id(patient.getId()).get(0);
+        entityManager.flush();
+        Long version = appointment.getVersion();
+        LocalDateTime now = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+        // Act
+        int updated = appointmentRepository.touch(appointment.getId(), now);
+        entityManager.clear();
+
+        // Assert
+        assertEquals(1, updated);
+        Appointment reloaded = appointmentRepository.findById(appointment.getId()).orElseThrow();
+        assertEquals(now, reloaded.getUpdatedAt());
+        assertEquals(version, reloaded.getVersion());
+    }
+
+    @Test
+    void save_ShouldRejectStaleCopy() {
+        // Arrange
+        Appointment appointment = appointmentRepository.findByPatient_Id(patient.getId()).get(0);
+        entityManager.flush();
+        entityManager.detach(appointment);
+
+        Appointment current = appointmentRepository.findById(appointment.getId()).orElseThrow();
+        current.setAppointmentDateTime(LocalDateTime.now().plusDays(5));
+        entityManager.flush();
+
+        // Act & Assert
+        appointment.setAppointmentDateTime(LocalDateTime.now().plusDays(6));
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> appointmentRepository.save(appointment));
+    }
 }
@@ -2,11 +2,15 @@ package bg.nbu.medicalrecords.reposiory;
 
 import bg.nbu.medicalrecords.domain.Appointment;
 import bg.nbu.medicalrecords.domain.Diagnosis;
+import bg.nbu.medicalrecords.domain.DiagnosisCode;
 import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.Patient;
 import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.DiagnosisCodeRepository;
+import bg.nbu.medicalrecords.repository.DiagnosisCodeStatistics;
 import bg.nbu.medicalrecords.repository.DiagnosisRepository;
 import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.FirstDiagnosisDoctor;
 import bg.nbu.medicalrecords.repository.PatientRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -34,6 +38,9 @@ class DiagnosisRepositoryTest {
     @Autowired
     private DoctorRepository doctorRepository;
 
+    @Autowired
+    private DiagnosisCodeRepository diagnosisCodeRepository;
+
     private Appointment sampleAppointment;
 
     @BeforeEach
@@ -105,4 +112,38 @@ class DiagnosisRepositoryTest {
         // Assert
         assertTrue(diagnoses.isEmpty());
     }
+
+    @Test
+    void findCodeStatistics_ShouldGroupByDiagnosisCode() {
+        // Arrange
+        DiagnosisCode hypertension = new DiagnosisCode();
+        hypertension.setCode("I10");
+        hypertension.setLabel("Hypertension");
+        hypertension = diagnosisCodeRepository.save(hypertension);
+
+        LocalDateTime first = LocalDateTime.of(2024, 3, 1, 9, 0);
+        LocalDateTime last = LocalDateTime.of(2024, 4, 1, 9, 0);
+        for (String statement : List.of("Hypertension", "hypertension ", "High blood pressure")) {
+            Diagnosis diagnosis = new Diagnosis();
+            diagnosis.setStatement(statement);
+            diagnosis.setAppointment(sampleAppointment);
+            diagnosis.setCode(hypertension);
+            diagnosis.setDiagnosedDate(statement.startsWith("High") ? first : last);
+            diagnosisRepository.save(diagnosis);
+        }
+
+        // Act
+        List<DiagnosisCodeStatistics> statistics = diagnosisRepository.findCodeStatistics();
+        List<FirstDiagnosisDoctor> firstDoctors = diagnosisRepository.findFirstDiagnosisDoctors();
+
+        // Assert
+        assertEquals(1, statistics.size());
+        assertEquals("I10", statistics.get(0).getCode());
+        assertEquals(3L, statistics.get(0).getDiagnosisCount());
+        assertEquals(1L, statistics.get(0).getPatientCount());
+        assertEquals(first, statistics.get(0).getFirstDiagnosedDate());
+        assertEquals(last, statistics.get(0).getLastDiagnosedDate());
+        assertEquals(1, firstDoctors.size());
+        assertEquals("Dr. Jane Smith", firstDoctors.get(0).getDoctorName());
+    }
 }
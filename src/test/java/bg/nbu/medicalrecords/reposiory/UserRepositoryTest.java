@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -68,6 +69,14 @@ class UserRepositoryTest {
         assertEquals(sampleUser.getUsername(), foundUser.getUsername());
     }
 
+    @Test
+    void findByKeycloakUserIdIn_ShouldReturnOnlyKnownUsers() {
+        List<User> foundUsers = userRepository.findByKeycloakUserIdIn(List.of("keycloak-user-id-123", "nonexistent-id"));
+
+        assertEquals(1, foundUsers.size());
+        assertEquals(sampleUser.getEgn(), foundUsers.get(0).getEgn());
+    }
+
     @Test
     void existsByKeycloakUserId_ShouldReturnTrue() {
         boolean exists = userRepository.existsByKeycloakUserId("keycloak-user-id-123");
@@ -0,0 +1,219 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.dto.AppointmentDto;
+import bg.nbu.medicalrecords.dto.DiagnosisDto;
+import bg.nbu.medicalrecords.dto.ExportFormat;
+import bg.nbu.medicalrecords.repository.*;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// One appointment per batch, so archiving the two closed appointments takes several transactions
+@DataJpaTest(properties = "medical-records.archive.batch-size=1")
+@Import({AppointmentArchiveService.class, PatientExportService.class, DomainEventRecorder.class, JacksonAutoConfiguration.class})
+class AppointmentArchiveServiceTest {
+
+    private static final LocalDateTime LONG_AGO = LocalDateTime.of(2020, 2, 3, 9, 0);
+
+    @Autowired
+    private AppointmentArchiveService appointmentArchiveService;
+
+    @Autowired
+    private PatientExportService patientExportService;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DiagnosisRepository diagnosisRepository;
+
+    @Autowired
+    private TreatmentRepository treatmentRepository;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private SickLeaveRepository sickLeaveRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Doctor doctor;
+    private Patient patient;
+    private Appointment closed;
+    private Appointment closedWithoutRecords;
+    private Appointment underTreatment;
+    private Appointment recent;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new Doctor();
+        doctor.setName("Dr. Smith");
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        doctor = doctorRepository.save(doctor);
+
+        patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-keycloak-id");
+        patient = patientRepository.save(patient);
+
+        Medication medication = new Medication();
+        medication.setMedicationName("Paracetamol");
+        medication.setDosageForm("tablet");
+        medication.setStrength("500mg");
+        medication = medicationRepository.save(medication);
+
+        closed = appointment(LONG_AGO);
+        Treatment treatment = treatment(diagnosis(closed, "Flu"), LocalDate.of(2020, 2, 10));
+        Prescription prescription = new Prescription();
+        prescription.setTreatment(treatment);
+        prescription.setMedication(medication);
+        prescription.setDosage("1 tablet every 6 hours");
+        prescription.setDuration(5);
+        prescriptionRepository.save(prescription);
+        SickLeave sickLeave = new SickLeave();
+        sickLeave.setAppointment(closed);
+        sickLeave.setReason("Flu");
+        sickLeave.setTodayDate(LONG_AGO.toLocalDate());
+        sickLeave.setStartDate(LONG_AGO.toLocalDate());
+        sickLeave.setEndDate(LocalDate.of(2020, 2, 7));
+        sickLeaveRepository.save(sickLeave);
+
+        closedWithoutRecords = appointment(LONG_AGO.plusDays(1));
+
+        // Old, but the treatment still runs
+        underTreatment = appointment(LONG_AGO.plusDays(2));
+        treatment(diagnosis(underTreatment, "Diabetes"), LocalDate.now().plusYears(1));
+
+        recent = appointment(LocalDateTime.now().minusDays(1));
+
+        // The archive job works through JDBC, so the pending inserts have to reach the database first
+        entityManager.flush();
+    }
+
+    @Test
+    void archiveClosedAppointments_ShouldMoveClosedAppointmentsWithTheirRecords() {
+        // Act
+        appointmentArchiveService.archiveClosedAppointments();
+        entityManager.clear();
+
+        // Assert
+        assertFalse(appointmentRepository.existsById(closed.getId()));
+        assertFalse(appointmentRepository.existsById(closedWithoutRecords.getId()));
+        assertTrue(appointmentRepository.existsById(underTreatment.getId()));
+        assertTrue(appointmentRepository.existsById(recent.getId()));
+        assertEquals(1, diagnosisRepository.count());
+        assertEquals(1, treatmentRepository.count());
+        assertEquals(0, prescriptionRepository.count());
+        assertEquals(0, sickLeaveRepository.count());
+
+        assertEquals(2, count("appointments_archive"));
+        assertEquals(1, count("diagnoses_archive"));
+        assertEquals(1, count("treatments_archive"));
+        assertEquals(1, count("prescriptions_archive"));
+        assertEquals(1, count("sick_leaves_archive"));
+        assertEquals(List.of(closed.getId().toString(), closedWithoutRecords.getId().toString()), jdbcTemplate.queryForList(
+                "SELECT aggregate_id FROM domain_event_outbox WHERE event_type = 'APPOINTMENT_ARCHIVED' ORDER BY id", String.class));
+    }
+
+    @Test
+    void findForPatient_ShouldReadArchivedAppointmentsWithTheirRecords() {
+        // Arrange
+        appointmentArchiveService.archiveClosedAppointments();
+
+        // Act
+        List<AppointmentDto> archived = appointmentArchiveService.findForPatient(patient, null, null);
+        List<AppointmentDto> fromFeb4 = appointmentArchiveService.findForPatient(patient, null, LONG_AGO.plusDays(1));
+
+        // Assert
+        assertEquals(List.of(closed.getId(), closedWithoutRecords.getId()), archived.stream().map(AppointmentDto::getId).toList());
+        AppointmentDto first = archived.get(0);
+        assertEquals("Dr. Smith", first.getDoctor().getName());
+        assertEquals(LONG_AGO, first.getAppointmentDateTime());
+        DiagnosisDto diagnosis = first.getDiagnoses().get(0);
+        assertEquals("Flu", diagnosis.getStatement());
+        assertEquals("Paracetamol", diagnosis.getTreatments().get(0).getPrescriptions().get(0).getMedication().getMedicationName());
+        assertEquals(LocalDate.of(2020, 2, 7), first.getSickLeaves().get(0).getEndDate());
+        assertEquals(List.of(closedWithoutRecords.getId()), fromFeb4.stream().map(AppointmentDto::getId).toList());
+    }
+
+    @Test
+    void reachesArchive_ShouldOnlyHoldForReadsBeforeTheHorizon() {
+        // Act & Assert
+        assertTrue(appointmentArchiveService.reachesArchive(null));
+        assertTrue(appointmentArchiveService.reachesArchive(LONG_AGO));
+        assertFalse(appointmentArchiveService.reachesArchive(LocalDateTime.now().minusDays(30)));
+    }
+
+    @Test
+    void export_ShouldStillContainArchivedRecords() throws Exception {
+        // Arrange
+        appointmentArchiveService.archiveClosedAppointments();
+
+        // Act
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        patientExportService.export(patient.getId(), ExportFormat.CSV, outputStream);
+
+        // Assert: header + 4 appointments, 2 diagnoses, 2 treatments, 1 prescription and 1 sick leave
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(11, lines.length);
+        assertTrue(lines[1].startsWith("appointment," + closed.getId() + ","));
+        assertTrue(lines[9].startsWith("prescription,"));
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private Appointment appointment(LocalDateTime dateTime) {
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        appointment.setAppointmentDateTime(dateTime);
+        return appointmentRepository.save(appointment);
+    }
+
+    private Diagnosis diagnosis(Appointment appointment, String statement) {
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setStatement(statement);
+        diagnosis.setDiagnosedDate(appointment.getAppointmentDateTime());
+        diagnosis.setAppointment(appointment);
+        return diagnosisRepository.save(diagnosis);
+    }
+
+    private Treatment treatment(Diagnosis diagnosis, LocalDate endDate) {
+        Treatment treatment = new Treatment();
+        treatment.setDiagnosis(diagnosis);
+        treatment.setDescription("Rest");
+        treatment.setStartDate(diagnosis.getDiagnosedDate().toLocalDate());
+        treatment.setEndDate(endDate);
+        return treatmentRepository.save(treatment);
+    }
+}
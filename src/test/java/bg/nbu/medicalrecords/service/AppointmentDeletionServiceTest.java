@@ -0,0 +1,210 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.repository.*;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@DataJpaTest
+@Import({AppointmentDeletionService.class, DomainEventRecorder.class, JacksonAutoConfiguration.class})
+class AppointmentDeletionServiceTest {
+
+    private static final LocalDateTime LAST_YEAR = LocalDateTime.now().minusYears(1);
+    private static final LocalDateTime NEXT_WEEK = LocalDateTime.now().plusWeeks(1).withNano(0);
+
+    @Autowired
+    private AppointmentDeletionService appointmentDeletionService;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DiagnosisRepository diagnosisRepository;
+
+    @Autowired
+    private TreatmentRepository treatmentRepository;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private SickLeaveRepository sickLeaveRepository;
+
+    @Autowired
+    private BookingCampaignRepository bookingCampaignRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @MockBean
+    private BookingCampaignService bookingCampaignService;
+
+    private Doctor doctor;
+    private Patient patient;
+    private Patient otherPatient;
+    private Medication medication;
+    private Appointment history;
+    private Appointment booked;
+    private Appointment otherPatientsAppointment;
+    private BookingCampaign campaign;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new Doctor();
+        doctor.setName("Dr. Smith");
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        doctor = doctorRepository.save(doctor);
+
+        patient = patient("patient-keycloak-id");
+        otherPatient = patient("other-patient-keycloak-id");
+
+        medication = new Medication();
+        medication.setMedicationName("Paracetamol");
+        medication = medicationRepository.save(medication);
+
+        campaign = new BookingCampaign();
+        campaign.setName("Flu shots");
+        campaign.setDoctor(doctor);
+        campaign.setDurationMinutes(10);
+        campaign.setCapacityPerSlot(1);
+        campaign.setWaitlistCapacity(0);
+        campaign.setSlotStarts(List.of(NEXT_WEEK));
+        campaign = bookingCampaignRepository.save(campaign);
+
+        history = appointmentWithRecords(patient, LAST_YEAR);
+        appointmentWithRecords(patient, LAST_YEAR.plusDays(1));
+        booked = appointment(patient, NEXT_WEEK);
+        booked.setCampaignId(campaign.getId());
+        otherPatientsAppointment = appointmentWithRecords(otherPatient, LAST_YEAR);
+
+        // The deletes run through JDBC, so the pending inserts have to reach the database first
+        entityManager.flush();
+    }
+
+    @Test
+    void deleteForPatient_ShouldRemoveTheWholeHistory_AndKeepOtherPatients() {
+        // Act
+        int deleted = appointmentDeletionService.deleteForPatient(patient.getId());
+
+        // Assert
+        assertEquals(3, deleted);
+        assertTrue(appointmentRepository.findByPatient_Id(patient.getId()).isEmpty());
+        assertEquals(List.of(otherPatientsAppointment.getId()),
+                appointmentRepository.findAll().stream().map(Appointment::getId).toList());
+        assertEquals(1, diagnosisRepository.count());
+        assertEquals(1, treatmentRepository.count());
+        assertEquals(1, prescriptionRepository.count());
+        assertEquals(1, sickLeaveRepository.count());
+        verify(bookingCampaignService, times(1)).release(campaign.getId(), NEXT_WEEK, "patient-keycloak-id");
+        // The past history is reported too, so the search index drops it
+        List<String> deletedIds = jdbcTemplate.queryForList(
+                "SELECT aggregate_id FROM domain_event_outbox WHERE event_type = 'APPOINTMENT_DELETED'", String.class);
+        assertEquals(3, deletedIds.size());
+        assertTrue(deletedIds.containsAll(List.of(history.getId().toString(), booked.getId().toString())));
+
+        // Nothing points at the deleted rows any more, so the patient itself can go
+        patientRepository.deleteById(patient.getId());
+        entityManager.flush();
+    }
+
+    @Test
+    void deleteForDoctor_ShouldRemoveEveryPatientsAppointmentsWithTheDoctor() {
+        // Act
+        int deleted = appointmentDeletionService.deleteForDoctor(doctor.getId());
+
+        // Assert
+        assertEquals(4, deleted);
+        assertEquals(0, appointmentRepository.count());
+        assertEquals(0, diagnosisRepository.count());
+        assertEquals(0, prescriptionRepository.count());
+        assertEquals(2, patientRepository.count());
+        verify(bookingCampaignService, times(1)).closeForDoctor(doctor.getId());
+    }
+
+    @Test
+    void deleteAppointment_ShouldOnlyRemoveThatAppointment() {
+        // Act
+        int deleted = appointmentDeletionService.deleteAppointment(history.getId());
+
+        // Assert
+        assertEquals(1, deleted);
+        assertFalse(appointmentRepository.existsById(history.getId()));
+        assertEquals(3, appointmentRepository.count());
+        assertEquals(2, treatmentRepository.count());
+        verify(bookingCampaignService, never()).release(any(), any(), any());
+    }
+
+    private Patient patient(String keycloakUserId) {
+        Patient patient = new Patient();
+        patient.setName(keycloakUserId);
+        patient.setKeycloakUserId(keycloakUserId);
+        return patientRepository.save(patient);
+    }
+
+    private Appointment appointment(Patient patient, LocalDateTime dateTime) {
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        appointment.setAppointmentDateTime(dateTime);
+        return appointmentRepository.save(appointment);
+    }
+
+    private Appointment appointmentWithRecords(Patient patient, LocalDateTime dateTime) {
+        Appointment appointment = appointment(patient, dateTime);
+
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setStatement("Flu");
+        diagnosis.setDiagnosedDate(dateTime);
+        diagnosis.setAppointment(appointment);
+        diagnosis = diagnosisRepository.save(diagnosis);
+
+        Treatment treatment = new Treatment();
+        treatment.setDiagnosis(diagnosis);
+        treatment.setDescription("Rest");
+        treatment.setStartDate(dateTime.toLocalDate());
+        treatment.setEndDate(dateTime.toLocalDate().plusDays(5));
+        treatment = treatmentRepository.save(treatment);
+
+        Prescription prescription = new Prescription();
+        prescription.setTreatment(treatment);
+        prescription.setMedication(medication);
+        prescription.setDosage("1 tablet every 6 hours");
+        prescription.setDuration(5);
+        prescriptionRepository.save(prescription);
+
+        SickLeave sickLeave = new SickLeave();
+        sickLeave.setAppointment(appointment);
+        sickLeave.setReason("Flu");
+        sickLeave.setTodayDate(dateTime.toLocalDate());
+        sickLeave.setStartDate(dateTime.toLocalDate());
+        sickLeave.setEndDate(dateTime.toLocalDate().plusDays(3));
+        sickLeaveRepository.save(sickLeave);
+        return appointment;
+    }
+}
@@ -0,0 +1,186 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+class AppointmentEventStreamTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("^id:(\\S+)$", Pattern.MULTILINE);
+
+    private AuthenticationService authenticationService;
+    private AppointmentEventStream appointmentEventStream;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        authenticationService = mock(AuthenticationService.class);
+        appointmentEventStream = new AppointmentEventStream(authenticationService, 10, 3, 60_000, 1);
+        mockMvc = MockMvcBuilders.standaloneSetup(new StreamController(appointmentEventStream)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        appointmentEventStream.destroy();
+    }
+
+    @Test
+    void onAppointmentChanged_ShouldReachOnlyTheAppointmentsDoctorAndPatient() throws Exception {
+        // Arrange
+        MockHttpServletResponse doctor = subscribe(user("doctor-1", "doctor"), null);
+        MockHttpServletResponse otherDoctor = subscribe(user("doctor-2", "doctor"), null);
+        MockHttpServletResponse patient = subscribe(user("patient-1", "patient"), null);
+        MockHttpServletResponse admin = subscribe(user("admin-1", "admin"), null);
+
+        // Act
+        appointmentEventStream.onAppointmentChanged(event(7L, AppointmentChangedEvent.Subject.DIAGNOSIS));
+
+        // Assert
+        awaitEvents(doctor, 1);
+        awaitEvents(patient, 1);
+        awaitEvents(admin, 1);
+        assertTrue(doctor.getContentAsString().contains("event:appointment-changed"));
+        assertTrue(doctor.getContentAsString().contains("\"appointmentId\":7"));
+        assertTrue(doctor.getContentAsString().contains("\"subject\":\"DIAGNOSIS\""));
+        assertEquals(0, eventIds(otherDoctor).size());
+    }
+
+    @Test
+    void onAppointmentChanged_ShouldReachThePreviousDoctor_WhenTheAppointmentWasReassigned() throws Exception {
+        // Arrange
+        MockHttpServletResponse newDoctor = subscribe(user("doctor-1", "doctor"), null);
+        MockHttpServletResponse previousDoctor = subscribe(user("doctor-2", "doctor"), null);
+
+        // Act
+        appointmentEventStream.onAppointmentChanged(new AppointmentChangedEvent(7L, 1L, "doctor-1", "patient-1", 2L, "doctor-2",
+                AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.UPDATED, LocalDateTime.of(2025, 1, 15, 10, 0)));
+
+        // Assert
+        awaitEvents(newDoctor, 1);
+        awaitEvents(previousDoctor, 1);
+        assertTrue(previousDoctor.getContentAsString().contains("\"appointmentId\":7"));
+    }
+
+    @Test
+    void subscribe_WithLastEventId_ShouldReplayOnlyTheMissedEvents() throws Exception {
+        // Arrange
+        MockHttpServletResponse first = subscribe(user("doctor-1", "doctor"), null);
+        appointmentEventStream.onAppointmentChanged(event(1L, AppointmentChangedEvent.Subject.APPOINTMENT));
+        appointmentEventStream.onAppointmentChanged(event(2L, AppointmentChangedEvent.Subject.SICK_LEAVE));
+        appointmentEventStream.onAppointmentChanged(event(3L, AppointmentChangedEvent.Subject.TREATMENT));
+        List<String> ids = awaitEvents(first, 3);
+
+        // Act
+        MockHttpServletResponse resumed = subscribe(user("doctor-1", "doctor"), ids.get(0));
+
+        // Assert
+        assertEquals(ids.subList(1, 3), awaitEvents(resumed, 2));
+        assertFalse(resumed.getContentAsString().contains("\"appointmentId\":1"));
+    }
+
+    @Test
+    void subscribe_WithIdFromAnotherInstance_ShouldSendReset() throws Exception {
+        // Act
+        MockHttpServletResponse resumed = subscribe(user("doctor-1", "doctor"), "unknown-42");
+
+        // Assert
+        awaitEvents(resumed, 1);
+        assertTrue(resumed.getContentAsString().contains("event:reset"));
+    }
+
+    @Test
+    void subscribe_WhenMoreWasMissedThanTheClientQueueHolds_ShouldSendReset() throws Exception {
+        // Arrange
+        MockHttpServletResponse first = subscribe(user("doctor-1", "doctor"), null);
+        appointmentEventStream.onAppointmentChanged(event(1L, AppointmentChangedEvent.Subject.APPOINTMENT));
+        String firstId = awaitEvents(first, 1).get(0);
+        for (long id = 2; id <= 5; id++) {
+            appointmentEventStream.onAppointmentChanged(event(id, AppointmentChangedEvent.Subject.DIAGNOSIS));
+        }
+
+        // Act
+        MockHttpServletResponse resumed = subscribe(user("doctor-1", "doctor"), firstId);
+
+        // Assert
+        awaitEvents(resumed, 1);
+        assertTrue(resumed.getContentAsString().contains("event:reset"));
+        assertFalse(resumed.getContentAsString().contains("event:appointment-changed"));
+    }
+
+    private MockHttpServletResponse subscribe(User user, String lastEventId) throws Exception {
+        when(authenticationService.getCurrentUser()).thenReturn(user);
+        var request = get("/stream");
+        if (lastEventId != null) {
+            request.header("Last-Event-ID", lastEventId);
+        }
+        return mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+    }
+
+    private static List<String> awaitEvents(MockHttpServletResponse response, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5_000;
+        List<String> ids = eventIds(response);
+        while (ids.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            ids = eventIds(response);
+        }
+        assertEquals(count, ids.size(), response.getContentAsString());
+        return ids;
+    }
+
+    private static List<String> eventIds(MockHttpServletResponse response) throws Exception {
+        List<String> ids = new ArrayList<>();
+        Matcher matcher = EVENT_ID.matcher(response.getContentAsString());
+        while (matcher.find()) {
+            ids.add(matcher.group(1));
+        }
+        return ids;
+    }
+
+    private static User user(String keycloakUserId, String role) {
+        User user = new User();
+        user.setKeycloakUserId(keycloakUserId);
+        user.setRole(role);
+        return user;
+    }
+
+    private static AppointmentChangedEvent event(Long appointmentId, AppointmentChangedEvent.Subject subject) {
+        return new AppointmentChangedEvent(appointmentId, 1L, "doctor-1", "patient-1", null, null, subject,
+                AppointmentChangedEvent.Action.CREATED, LocalDateTime.of(2025, 1, 15, 10, 0));
+    }
+
+    @RestController
+    static class StreamController {
+        private final AppointmentEventStream appointmentEventStream;
+
+        StreamController(AppointmentEventStream appointmentEventStream) {
+            this.appointmentEventStream = appointmentEventStream;
+        }
+
+        @GetMapping("/stream")
+        SseEmitter stream(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+            return appointmentEventStream.subscribe(lastEventId);
+        }
+    }
+}
@@ -5,8 +5,10 @@ import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.Patient;
 import bg.nbu.medicalrecords.domain.User;
 import bg.nbu.medicalrecords.dto.*;
+import bg.nbu.medicalrecords.exception.AppointmentConflictException;
 import bg.nbu.medicalrecords.exception.DoctorNotAssignedException;
 import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.AppointmentSummary;
 import bg.nbu.medicalrecords.repository.PatientRepository;
 import bg.nbu.medicalrecords.util.MappingUtils;
 import org.junit.jupiter.api.Test;
@@ -14,6 +16,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -42,6 +45,21 @@ public class AppointmentServiceTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private DoctorScheduleService doctorScheduleService;
+
+    @Mock
+    private BookingCampaignService bookingCampaignService;
+
+    @Mock
+    private AppointmentArchiveService appointmentArchiveService;
+
+    @Mock
+    private AppointmentDeletionService appointmentDeletionService;
+
     @InjectMocks
     private AppointmentService appointmentService;
 
@@ -108,7 +126,9 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
-                LocalDateTime.of(2025, 1, 15, 10, 0)
+                LocalDateTime.of(2025, 1, 15, 10, 0),
+                null,
+                null
         );
 
         try (MockedStatic<MappingUtils> mockedMappingUtils = mockStatic(MappingUtils.class)) {
@@ -196,7 +216,9 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
                 LocalDateTime.of(2025, 1, 15, 9, 0),
-                LocalDateTime.of(2025, 1, 15, 10, 0)
+                LocalDateTime.of(2025, 1, 15, 10, 0),
+                null,
+                null
         );
 
         try (MockedStatic<MappingUtils> mockedMappingUtils = mockStatic(MappingUtils.class)) {
@@ -221,6 +243,36 @@ public class AppointmentServiceTest {
         verify(appointmentRepository, times(1)).findByPatient_KeycloakUserId("patient-456");
     }
 
+    /**
+     * Test the calendar view for a doctor: only the summary projection is read, never the full entities.
+     */
+    @Test
+    void testFindSummariesForLoggedInUser_DoctorRole() {
+        // Arrange
+        User currentUser = new User();
+        currentUser.setKeycloakUserId("doctor-123");
+        currentUser.setRole("doctor");
+
+        AppointmentSummary summary = mock(AppointmentSummary.class);
+        when(summary.getId()).thenReturn(3L);
+        when(summary.getAppointmentDateTime()).thenReturn(LocalDateTime.of(2025, 1, 15, 10, 0));
+        when(summary.getDoctorName()).thenReturn("Dr. Smith");
+        when(summary.getPatientName()).thenReturn("John Doe");
+
+        when(authenticationService.getCurrentUser()).thenReturn(currentUser);
+        when(appointmentRepository.findSummariesByDoctorKeycloakUserId("doctor-123")).thenReturn(List.of(summary));
+
+        // Act
+        List<AppointmentSummaryDto> result = appointmentService.findSummariesForLoggedInUser();
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(3L, result.get(0).getId());
+        assertEquals("Dr. Smith", result.get(0).getDoctorName());
+        assertEquals("John Doe", result.get(0).getPatientName());
+        verify(appointmentRepository, never()).findByDoctor_KeycloakUserId(anyString());
+    }
+
     /**
      * Test creating a new appointment.
      */
@@ -284,7 +336,9 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 3, 15, 9, 0),
                 LocalDateTime.of(2025, 3, 15, 9, 0),
-                LocalDateTime.of(2025, 3, 15, 10, 0)
+                LocalDateTime.of(2025, 3, 15, 10, 0),
+                null,
+                null
         );
 
         when(authenticationService.getCurrentUser()).thenReturn(currentUser);
@@ -312,9 +366,36 @@ public class AppointmentServiceTest {
         verify(authenticationService, times(1)).getCurrentUser();
         verify(patientService, times(1)).findPatientById(2L);
         verify(doctorService, times(1)).findById(1L);
+        verify(doctorScheduleService, times(1)).reserve(1L, LocalDateTime.of(2025, 3, 15, 10, 0), null, null);
         verify(appointmentRepository, times(1)).save(any(Appointment.class));
     }
 
+    /**
+     * Test that an appointment overlapping another one of the same doctor is not saved.
+     */
+    @Test
+    void testCreateAppointment_Conflict() {
+        // Arrange
+        CreateAppointmentDto createDto = new CreateAppointmentDto();
+        createDto.setPatientId(2L);
+        createDto.setDoctorId(1L);
+        createDto.setDate(LocalDateTime.of(2025, 3, 15, 10, 0));
+        createDto.setDurationMinutes(45);
+
+        Doctor doctor = new Doctor();
+        doctor.setId(1L);
+
+        when(patientService.findPatientById(2L)).thenReturn(new Patient());
+        when(doctorService.findById(1L)).thenReturn(doctor);
+        when(doctorScheduleService.reserve(1L, createDto.getDate(), 45, null))
+                .thenThrow(new AppointmentConflictException("Doctor already has an appointment"));
+
+        // Act & Assert
+        assertThrows(AppointmentConflictException.class, () -> appointmentService.createAppointment(createDto));
+        verify(appointmentRepository, never()).save(any(Appointment.class));
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
     /**
      * Test finding an appointment by its ID successfully.
      */
@@ -368,7 +449,9 @@ public class AppointmentServiceTest {
         Long appointmentId = 1L;
         UpdateAppointmentDto updateDto = new UpdateAppointmentDto(
                 null, // doctorId is not being updated by doctor
-                LocalDateTime.of(2025, 4, 10, 15, 0)
+                LocalDateTime.of(2025, 4, 10, 15, 0),
+                null,
+                null
         );
 
         User currentUser = new User();
@@ -431,13 +514,15 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 4, 10, 14, 0),
                 LocalDateTime.of(2025, 4, 10, 14, 0),
-                LocalDateTime.of(2025, 4, 10, 15, 0)
+                LocalDateTime.of(2025, 4, 10, 15, 0),
+                null,
+                null
         );
 
         when(authenticationService.getCurrentUser()).thenReturn(currentUser);
         when(appointmentRepository.findById(appointmentId)).thenReturn(Optional.of(appointment));
         when(doctorService.findByPrincipal()).thenReturn(currentDoctor);
-        when(appointmentRepository.save(appointment)).thenReturn(updatedAppointment);
+        when(appointmentRepository.saveAndFlush(appointment)).thenReturn(updatedAppointment);
 
         try (MockedStatic<MappingUtils> mockedMappingUtils = mockStatic(MappingUtils.class)) {
             mockedMappingUtils.when(() -> MappingUtils.mapToAppointmentDto(updatedAppointment, currentUser))
@@ -458,7 +543,8 @@ public class AppointmentServiceTest {
         verify(authenticationService, times(1)).getCurrentUser();
         verify(appointmentRepository, times(1)).findById(appointmentId);
         verify(doctorService, times(1)).findByPrincipal();
-        verify(appointmentRepository, times(1)).save(appointment);
+        verify(doctorScheduleService, times(1)).reserve(2L, LocalDateTime.of(2025, 4, 10, 15, 0), null, appointmentId, null);
+        verify(appointmentRepository, times(1)).saveAndFlush(appointment);
     }
 
     /**
@@ -470,7 +556,9 @@ public class AppointmentServiceTest {
         Long appointmentId = 1L;
         UpdateAppointmentDto updateDto = new UpdateAppointmentDto(
                 3L, // New doctorId
-                LocalDateTime.of(2025, 4, 10, 16, 0)
+                LocalDateTime.of(2025, 4, 10, 16, 0),
+                null,
+                null
         );
 
         User currentUser = new User();
@@ -540,13 +628,15 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 4, 10, 14, 0),
                 LocalDateTime.of(2025, 4, 10, 14, 0),
-                LocalDateTime.of(2025, 4, 10, 16, 0)
+                LocalDateTime.of(2025, 4, 10, 16, 0),
+                null,
+                null
         );
 
         when(authenticationService.getCurrentUser()).thenReturn(currentUser);
         when(appointmentRepository.findById(appointmentId)).thenReturn(Optional.of(appointment));
         when(doctorService.findById(3L)).thenReturn(newDoctor);
-        when(appointmentRepository.save(appointment)).thenReturn(updatedAppointment);
+        when(appointmentRepository.saveAndFlush(appointment)).thenReturn(updatedAppointment);
 
         try (MockedStatic<MappingUtils> mockedMappingUtils = mockStatic(MappingUtils.class)) {
             mockedMappingUtils.when(() -> MappingUtils.mapToAppointmentDto(updatedAppointment, currentUser))
@@ -567,7 +657,11 @@ public class AppointmentServiceTest {
         verify(authenticationService, times(1)).getCurrentUser();
         verify(appointmentRepository, times(1)).findById(appointmentId);
         verify(doctorService, times(1)).findById(3L);
-        verify(appointmentRepository, times(1)).save(appointment);
+        verify(appointmentRepository, times(1)).saveAndFlush(appointment);
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) -> event instanceof AppointmentChangedEvent changed
+                && Long.valueOf(3L).equals(changed.doctorId())
+                && Long.valueOf(2L).equals(changed.previousDoctorId())
+                && "doctor-123".equals(changed.previousDoctorKeycloakUserId())));
     }
 
     /**
@@ -616,7 +710,7 @@ public class AppointmentServiceTest {
         verify(authenticationService, times(1)).getCurrentUser();
         verify(doctorService, times(1)).findByPrincipal();
         verify(appointmentRepository, times(1)).findById(appointmentId);
-        verify(appointmentRepository, times(1)).delete(appointment);
+        verify(appointmentDeletionService, times(1)).deleteAppointment(appointmentId);
     }
 
     /**
@@ -675,7 +769,7 @@ public class AppointmentServiceTest {
         verify(authenticationService, times(1)).getCurrentUser();
         verify(doctorService, times(1)).findByPrincipal();
         verify(appointmentRepository, times(1)).findById(appointmentId);
-        verify(appointmentRepository, never()).delete(any(Appointment.class));
+        verify(appointmentDeletionService, never()).deleteAppointment(anyLong());
     }
 
     /**
@@ -773,7 +867,9 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 5, 20, 9, 0),
                 LocalDateTime.of(2025, 5, 20, 9, 0),
-                LocalDateTime.of(2025, 5, 20, 10, 0)
+                LocalDateTime.of(2025, 5, 20, 10, 0),
+                null,
+                null
         );
 
         AppointmentDto appointmentDto2 = new AppointmentDto(
@@ -784,7 +880,9 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 5, 21, 10, 0),
                 LocalDateTime.of(2025, 5, 21, 10, 0),
-                LocalDateTime.of(2025, 5, 21, 11, 0)
+                LocalDateTime.of(2025, 5, 21, 11, 0),
+                null,
+                null
         );
 
         try (MockedStatic<MappingUtils> mockedMappingUtils = mockStatic(MappingUtils.class)) {
@@ -820,6 +918,76 @@ public class AppointmentServiceTest {
         verify(userService, times(1)).findByKeycloakUserId("patient-456");
     }
 
+    @Test
+    void testFindAllForPatient_ShouldPrependArchivedAppointments_WhenReachingPastTheHorizon() {
+        // Arrange
+        Long patientId = 1L;
+        LocalDateTime from = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+        User currentUser = new User();
+        currentUser.setRole("doctor");
+
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        patient.setKeycloakUserId("patient-456");
+        patient.setName("John Doe");
+
+        User patientUser = new User();
+        patientUser.setKeycloakUserId("patient-456");
+
+        Doctor doctor = new Doctor();
+        doctor.setId(3L);
+        doctor.setName("Dr. Adams");
+
+        Appointment recent = new Appointment();
+        recent.setId(6L);
+        recent.setPatient(patient);
+        recent.setDoctor(doctor);
+        recent.setAppointmentDateTime(LocalDateTime.of(2025, 5, 21, 11, 0));
+
+        AppointmentDto archived = new AppointmentDto(2L, null, null, List.of(), List.of(), null, null,
+                LocalDateTime.of(2021, 3, 4, 9, 0), 30, null);
+
+        when(authenticationService.getCurrentUser()).thenReturn(currentUser);
+        when(appointmentRepository.findByPatient_IdAndAppointmentDateTimeGreaterThanEqual(patientId, from)).thenReturn(List.of(recent));
+        when(patientRepository.findById(patientId)).thenReturn(Optional.of(patient));
+        when(userService.findByKeycloakUserId("patient-456")).thenReturn(patientUser);
+        when(appointmentArchiveService.reachesArchive(from)).thenReturn(true);
+        when(appointmentArchiveService.findForPatient(patient, patientUser, from)).thenReturn(List.of(archived));
+
+        // Act
+        List<AppointmentDto> result = appointmentService.findAllForPatient(patientId, from);
+
+        // Assert
+        assertEquals(List.of(2L, 6L), result.stream().map(AppointmentDto::getId).toList());
+    }
+
+    @Test
+    void testFindAllForPatient_ShouldNotReadTheArchive_ForARecentWindow() {
+        // Arrange
+        Long patientId = 1L;
+        LocalDateTime from = LocalDateTime.now().minusDays(7);
+
+        User currentUser = new User();
+        currentUser.setRole("admin");
+
+        Patient patient = new Patient();
+        patient.setId(patientId);
+        patient.setKeycloakUserId("patient-456");
+
+        when(authenticationService.getCurrentUser()).thenReturn(currentUser);
+        when(appointmentRepository.findByPatient_IdAndAppointmentDateTimeGreaterThanEqual(patientId, from)).thenReturn(List.of());
+        when(patientRepository.findById(patientId)).thenReturn(Optional.of(patient));
+        when(appointmentArchiveService.reachesArchive(from)).thenReturn(false);
+
+        // Act
+        List<AppointmentDto> result = appointmentService.findAllForPatient(patientId, from);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verify(appointmentArchiveService, never()).findForPatient(any(), any(), any());
+    }
+
     /**
      * Test retrieving appointments for a doctor within a specified period.
      */
@@ -860,7 +1028,8 @@ public class AppointmentServiceTest {
         appointment2.setCreatedAt(LocalDateTime.of(2025, 2, 5, 10, 0));
         appointment2.setUpdatedAt(LocalDateTime.of(2025, 2, 5, 10, 0));
 
-        List<Appointment> appointments = Arrays.asList(appointment1, appointment2);
+        // The period is filtered by the query, so only appointment1 comes back
+        List<Appointment> appointments = List.of(appointment1);
 
         // Mock userService to return the patient user
         User patientUser = new User();
@@ -869,7 +1038,7 @@ public class AppointmentServiceTest {
         patientUser.setRole("patient");
 
         // Note: Removed authenticationService.getCurrentUser() since it's not invoked in the method under test
-        when(appointmentRepository.findByDoctor_Id(doctorId)).thenReturn(appointments);
+        when(appointmentRepository.findByDoctorInPeriod(doctorId, startDate, endDate)).thenReturn(appointments);
         when(userService.findByKeycloakUserId("patient-456")).thenReturn(patientUser);
 
         PatientDto patientDto = new PatientDto(
@@ -897,7 +1066,9 @@ public class AppointmentServiceTest {
                 Collections.emptyList(),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
                 LocalDateTime.of(2025, 1, 10, 9, 0),
-                LocalDateTime.of(2025, 1, 10, 10, 0)
+                LocalDateTime.of(2025, 1, 10, 10, 0),
+                null,
+                null
         );
 
         try (MockedStatic<MappingUtils> mockedMappingUtils = mockStatic(MappingUtils.class)) {
@@ -923,7 +1094,7 @@ public class AppointmentServiceTest {
         }
 
         // Removed verification for authenticationService.getCurrentUser() since it's not used
-        verify(appointmentRepository, times(1)).findByDoctor_Id(doctorId);
+        verify(appointmentRepository, times(1)).findByDoctorInPeriod(doctorId, startDate, endDate);
         verify(userService, times(1)).findByKeycloakUserId("patient-456");
     }
 
@@ -0,0 +1,111 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.DiagnosisRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@Import({AppointmentVersionService.class, CatalogVersionService.class})
+class AppointmentVersionServiceTest {
+
+    @Autowired
+    private AppointmentVersionService appointmentVersionService;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DiagnosisRepository diagnosisRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @MockBean
+    private AuthenticationService authenticationService;
+
+    private Appointment appointment;
+
+    @BeforeEach
+    void setUp() {
+        Doctor doctor = new Doctor();
+        doctor.setName("Dr. Smith");
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        doctor = doctorRepository.save(doctor);
+
+        Patient patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-keycloak-id");
+        patient = patientRepository.save(patient);
+
+        appointment = new Appointment();
+        appointment.setDoctor(doctor);
+        appointment.setPatient(patient);
+        appointment.setAppointmentDateTime(LocalDateTime.of(2025, 1, 15, 10, 0));
+        appointment = appointmentRepository.save(appointment);
+        entityManager.flush();
+
+        User currentUser = new User();
+        currentUser.setKeycloakUserId("patient-keycloak-id");
+        currentUser.setRole("patient");
+        when(authenticationService.getCurrentUser()).thenReturn(currentUser);
+    }
+
+    @Test
+    void versionToken_ShouldStayTheSame_WhenNothingChanged() {
+        // Act & Assert
+        assertEquals(appointmentVersionService.versionTokenForLoggedInUser(),
+                appointmentVersionService.versionTokenForLoggedInUser());
+    }
+
+    @Test
+    void versionToken_ShouldChange_WhenDiagnosisIsAddedToAnAppointment() {
+        // Arrange
+        String before = appointmentVersionService.versionTokenForLoggedInUser();
+
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setStatement("Flu");
+        diagnosis.setAppointment(appointment);
+        diagnosisRepository.save(diagnosis);
+        entityManager.flush();
+
+        // Act
+        String after = appointmentVersionService.versionTokenForLoggedInUser();
+
+        // Assert
+        assertNotEquals(before, after);
+    }
+
+    @Test
+    void versionToken_ShouldDependOnTheUsersScope() {
+        // Arrange
+        String patientToken = appointmentVersionService.versionTokenForLoggedInUser();
+
+        User doctorUser = new User();
+        doctorUser.setKeycloakUserId("doctor-keycloak-id");
+        doctorUser.setRole("doctor");
+        when(authenticationService.getCurrentUser()).thenReturn(doctorUser);
+
+        // Act & Assert
+        assertNotEquals(patientToken, appointmentVersionService.versionTokenForLoggedInUser());
+    }
+}
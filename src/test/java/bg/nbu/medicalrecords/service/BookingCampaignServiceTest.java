@@ -0,0 +1,305 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.domain.CampaignWaitlistEntry;
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.dto.BookingCampaignDto;
+import bg.nbu.medicalrecords.dto.CampaignBookingDto;
+import bg.nbu.medicalrecords.dto.CampaignSlotDto;
+import bg.nbu.medicalrecords.dto.CreateBookingCampaignDto;
+import bg.nbu.medicalrecords.exception.AppointmentConflictException;
+import bg.nbu.medicalrecords.exception.PatientNotFoundException;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.CampaignWaitlistRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@Import({BookingCampaignService.class, DoctorScheduleService.class})
+class BookingCampaignServiceTest {
+
+    private static final LocalDateTime NINE = LocalDateTime.of(2030, 3, 4, 9, 0);
+
+    @Autowired
+    private BookingCampaignService bookingCampaignService;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private CampaignWaitlistRepository campaignWaitlistRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockBean
+    private AuthenticationService authenticationService;
+
+    // Each booking thread acts as its own patient
+    private final ThreadLocal<String> currentPatient = new ThreadLocal<>();
+
+    private Doctor doctor;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new Doctor();
+        doctor.setKeycloakUserId("doctor-kc-id");
+        doctor.setName("Dr. Smith");
+        doctor = doctorRepository.save(doctor);
+
+        when(authenticationService.getCurrentKeycloakUserId()).thenAnswer(invocation -> currentPatient.get());
+    }
+
+    @AfterEach
+    void tearDown() {
+        // The service outlives the test; write out what is still queued while the test transaction is open
+        bookingCampaignService.flushConfirmations();
+    }
+
+    @Test
+    void book_ShouldNeverOversellSlots_UnderConcurrentRequests() throws Exception {
+        // Arrange: 2 slots x 3 places and 4 waitlist places for 20 patients at once; the booking threads only see
+        // committed patients
+        Long campaignId = campaign(3, 4, NINE, NINE.plusMinutes(15)).getId();
+        List<String> patients = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            patients.add("concurrent-patient-" + i);
+        }
+        TransactionTemplate committed = new TransactionTemplate(transactionManager);
+        committed.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        committed.executeWithoutResult(status -> patients.forEach(this::patient));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger confirmed = new AtomicInteger();
+        AtomicInteger waitlisted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        // Act
+        List<Future<?>> futures = new ArrayList<>();
+        for (String patient : patients) {
+            futures.add(executor.submit(() -> {
+                currentPatient.set(patient);
+                start.await();
+                try {
+                    CampaignBookingDto booking = bookingCampaignService.book(campaignId, null);
+                    (booking.getStatus() == CampaignBookingDto.Status.CONFIRMED ? confirmed : waitlisted).incrementAndGet();
+                } catch (AppointmentConflictException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+            committed.executeWithoutResult(status -> patientRepository.deleteAll(patientRepository.findByKeycloakUserIdIn(patients)));
+        }
+
+        // Assert
+        assertEquals(6, confirmed.get());
+        assertEquals(4, waitlisted.get());
+        assertEquals(10, rejected.get());
+        BookingCampaignDto campaign = find(campaignId);
+        assertTrue(campaign.getSlots().stream().allMatch(slot -> slot.getRemaining() == 0));
+        assertEquals(4, campaign.getWaitlisted());
+    }
+
+    @Test
+    void create_ShouldReject_WhenASlotOverlapsAnAppointmentOfTheDoctor() {
+        // Arrange: the doctor already sees a patient from 09:10
+        patient("patient-1");
+        Appointment appointment = new Appointment();
+        appointment.setDoctor(doctor);
+        appointment.setPatient(patientRepository.findByKeycloakUserId("patient-1"));
+        appointment.setAppointmentDateTime(NINE.plusMinutes(10));
+        appointmentRepository.save(appointment);
+        int campaigns = bookingCampaignService.findAll().size();
+
+        // Act & Assert
+        assertThrows(AppointmentConflictException.class, () -> campaign(5, 0, NINE.minusHours(1), NINE));
+        assertEquals(campaigns, bookingCampaignService.findAll().size());
+    }
+
+    @Test
+    void book_ShouldRejectSecondBookingOfTheSamePatient() {
+        // Arrange
+        Long campaignId = campaign(5, 0, NINE).getId();
+        patient("patient-1");
+        currentPatient.set("patient-1");
+        bookingCampaignService.book(campaignId, NINE);
+
+        // Act & Assert
+        assertThrows(AppointmentConflictException.class, () -> bookingCampaignService.book(campaignId, NINE));
+        assertEquals(4, find(campaignId).getSlots().get(0).getRemaining());
+    }
+
+    @Test
+    void book_ShouldRefuseUsersWithoutPatientRecord() {
+        // Arrange
+        Long campaignId = campaign(2, 0, NINE).getId();
+        currentPatient.set("unknown-user");
+
+        // Act & Assert
+        assertThrows(PatientNotFoundException.class, () -> bookingCampaignService.book(campaignId, NINE));
+        assertEquals(2, find(campaignId).getSlots().get(0).getRemaining());
+    }
+
+    @Test
+    void flushConfirmations_ShouldStoreAppointments_AndReleasePlacesWithoutPatient() {
+        // Arrange: patient-2's record is deleted before the booking is stored
+        Long campaignId = campaign(2, 0, NINE).getId();
+        patient("patient-1");
+        patient("patient-2");
+        currentPatient.set("patient-1");
+        bookingCampaignService.book(campaignId, NINE);
+        currentPatient.set("patient-2");
+        bookingCampaignService.book(campaignId, NINE);
+        patientRepository.delete(patientRepository.findByKeycloakUserId("patient-2"));
+
+        // Act
+        bookingCampaignService.flushConfirmations();
+
+        // Assert
+        List<Appointment> appointments = appointmentRepository.findAll();
+        assertEquals(1, appointments.size());
+        assertEquals(campaignId, appointments.get(0).getCampaignId());
+        assertEquals(NINE, appointments.get(0).getAppointmentDateTime());
+        assertEquals(20, appointments.get(0).getDurationMinutes());
+        assertEquals(1, find(campaignId).getSlots().get(0).getRemaining());
+
+        // The counters rebuilt from the stored appointments agree
+        bookingCampaignService.loadInventories();
+        assertEquals(1, find(campaignId).getSlots().get(0).getRemaining());
+    }
+
+    @Test
+    void release_ShouldGiveThePlaceToTheWaitlist() {
+        // Arrange: one place, one waitlist place
+        Long campaignId = campaign(1, 1, NINE).getId();
+        patient("patient-1");
+        patient("patient-2");
+        currentPatient.set("patient-1");
+        bookingCampaignService.book(campaignId, null);
+        currentPatient.set("patient-2");
+        assertEquals(CampaignBookingDto.Status.WAITLISTED, bookingCampaignService.book(campaignId, null).getStatus());
+
+        // Act
+        bookingCampaignService.release(campaignId, NINE, "patient-1");
+        assertEquals(1, find(campaignId).getWaitlisted(), "the place is only given back once the transaction commits");
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        // Assert: patient-2 holds the place now and patient-1 may queue again
+        BookingCampaignDto campaign = find(campaignId);
+        assertEquals(List.of(new CampaignSlotDto(NINE, 0)), campaign.getSlots());
+        assertEquals(0, campaign.getWaitlisted());
+        currentPatient.set("patient-1");
+        assertEquals(CampaignBookingDto.Status.WAITLISTED, bookingCampaignService.book(campaignId, null).getStatus());
+    }
+
+    @Test
+    void loadInventories_ShouldRestoreTheWaitlist_InItsOrder() {
+        // Arrange: one place taken and two patients waiting
+        Long campaignId = campaign(1, 2, NINE).getId();
+        patient("patient-1");
+        patient("patient-2");
+        patient("patient-3");
+        for (String patient : List.of("patient-1", "patient-2", "patient-3")) {
+            currentPatient.set(patient);
+            bookingCampaignService.book(campaignId, null);
+        }
+        bookingCampaignService.flushConfirmations();
+
+        // Act
+        bookingCampaignService.loadInventories();
+
+        // Assert: the restored waitlist still hands the freed place to the first in line
+        assertEquals(2, find(campaignId).getWaitlisted());
+        bookingCampaignService.release(campaignId, NINE, "patient-1");
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        bookingCampaignService.flushConfirmations();
+        assertEquals(1, find(campaignId).getWaitlisted());
+        assertTrue(appointmentRepository.findAll().stream()
+                .anyMatch(appointment -> appointment.getPatient().getKeycloakUserId().equals("patient-2")));
+        assertEquals(List.of("patient-3"), campaignWaitlistRepository.findAll().stream()
+                .filter(entry -> entry.getCampaignId().equals(campaignId))
+                .map(CampaignWaitlistEntry::getPatientKeycloakUserId)
+                .toList());
+    }
+
+    @Test
+    void closeForDoctor_ShouldDropTheWaitlist_AndForgetTheCampaignOnceCommitted() {
+        // Arrange
+        Long campaignId = campaign(1, 1, NINE).getId();
+        for (String patient : List.of("patient-1", "patient-2")) {
+            patient(patient);
+            currentPatient.set(patient);
+            bookingCampaignService.book(campaignId, null);
+        }
+
+        // Act
+        bookingCampaignService.closeForDoctor(doctor.getId());
+
+        // Assert
+        assertTrue(campaignWaitlistRepository.findAll().stream().noneMatch(entry -> entry.getCampaignId().equals(campaignId)));
+        assertNotNull(find(campaignId), "a rolled back doctor deletion keeps the campaign");
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertTrue(bookingCampaignService.findAll().stream().noneMatch(campaign -> campaign.getId().equals(campaignId)));
+    }
+
+    private BookingCampaignDto campaign(int capacityPerSlot, int waitlistCapacity, LocalDateTime... slotStarts) {
+        CreateBookingCampaignDto dto = new CreateBookingCampaignDto();
+        dto.setName("Flu vaccination");
+        dto.setDoctorId(doctor.getId());
+        dto.setDurationMinutes(20);
+        dto.setCapacityPerSlot(capacityPerSlot);
+        dto.setWaitlistCapacity(waitlistCapacity);
+        dto.setSlotStarts(List.of(slotStarts));
+        return bookingCampaignService.create(dto);
+    }
+
+    private BookingCampaignDto find(Long campaignId) {
+        return bookingCampaignService.findAll().stream()
+                .filter(campaign -> campaign.getId().equals(campaignId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void patient(String keycloakUserId) {
+        Patient patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId(keycloakUserId);
+        patientRepository.save(patient);
+    }
+}
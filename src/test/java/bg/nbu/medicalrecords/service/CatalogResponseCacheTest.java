@@ -0,0 +1,118 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.domain.Medication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogResponseCacheTest {
+
+    @Mock
+    private DoctorService doctorService;
+
+    @Mock
+    private MedicationService medicationService;
+
+    @Mock
+    private CatalogVersionService catalogVersionService;
+
+    private CatalogResponseCache catalogResponseCache;
+
+    @BeforeEach
+    void setUp() {
+        ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+        catalogResponseCache = new CatalogResponseCache(doctorService, medicationService, catalogVersionService, objectMapper);
+    }
+
+    @Test
+    void doctors_ShouldSerializeOnce_WhileVersionIsUnchanged() {
+        // Arrange
+        when(catalogVersionService.versionToken(CatalogVersionService.Catalog.DOCTORS)).thenReturn("doctors-1");
+        when(doctorService.findAll()).thenReturn(List.of(doctor("Dr. Smith")));
+
+        // Act
+        CatalogResponseCache.SerializedCatalog first = catalogResponseCache.doctors();
+        CatalogResponseCache.SerializedCatalog second = catalogResponseCache.doctors();
+
+        // Assert
+        assertSame(first, second);
+        verify(doctorService, times(1)).findAll();
+    }
+
+    @Test
+    void doctors_ShouldRebuild_AfterDoctorCatalogChanged() {
+        // Arrange
+        when(doctorService.findAll()).thenReturn(List.of(doctor("Dr. Smith")), List.of(doctor("Dr. Jones")));
+        when(catalogVersionService.versionToken(CatalogVersionService.Catalog.DOCTORS)).thenReturn("doctors-1");
+        CatalogResponseCache.SerializedCatalog before = catalogResponseCache.doctors();
+
+        // Act
+        when(catalogVersionService.versionToken(CatalogVersionService.Catalog.DOCTORS)).thenReturn("doctors-2");
+        CatalogResponseCache.SerializedCatalog after = catalogResponseCache.doctors();
+
+        // Assert
+        assertNotEquals(before.etag(), after.etag());
+        assertTrue(new String(after.json(), StandardCharsets.UTF_8).contains("Dr. Jones"));
+    }
+
+    @Test
+    void medications_ShouldNotBeRebuilt_WhenOnlyDoctorsChanged() {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(List.of(medication()));
+        when(catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS)).thenReturn("medications-1");
+        catalogResponseCache.medications();
+
+        // Act
+        catalogResponseCache.medications();
+
+        // Assert
+        verify(medicationService, times(1)).getAll();
+    }
+
+    @Test
+    void medications_GzipVariant_ShouldDecompressToTheJsonVariant() throws Exception {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(List.of(medication()));
+        when(catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS)).thenReturn("medications-1");
+
+        // Act
+        CatalogResponseCache.SerializedCatalog medications = catalogResponseCache.medications();
+
+        // Assert
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(medications.gzip()))) {
+            assertArrayEquals(medications.json(), gzip.readAllBytes());
+        }
+        assertTrue(new String(medications.json(), StandardCharsets.UTF_8).contains("\"medicationName\":\"Paracetamol\""));
+    }
+
+    private static Doctor doctor(String name) {
+        Doctor doctor = new Doctor();
+        doctor.setId(1L);
+        doctor.setName(name);
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        return doctor;
+    }
+
+    private static Medication medication() {
+        Medication medication = new Medication();
+        medication.setId(1L);
+        medication.setMedicationName("Paracetamol");
+        medication.setDosageForm("tablet");
+        medication.setStrength("500mg");
+        return medication;
+    }
+}
@@ -0,0 +1,88 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.repository.CatalogVersionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Without the test transaction, so that commits and the version bumps after them really happen
+@DataJpaTest(properties = "medical-records.catalog-versions.refresh-ms=0")
+@Import(CatalogVersionService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CatalogVersionServiceTest {
+
+    @Autowired
+    private CatalogVersionService catalogVersionService;
+
+    @Autowired
+    private CatalogVersionRepository catalogVersionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void markChanged_ShouldBumpOnlyThatCatalog_WhenNoTransactionIsActive() {
+        // Arrange
+        String doctorsBefore = catalogVersionService.versionToken(CatalogVersionService.Catalog.DOCTORS);
+        String medicationsBefore = catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS);
+
+        // Act
+        catalogVersionService.markChanged(CatalogVersionService.Catalog.DOCTORS);
+
+        // Assert
+        assertNotEquals(doctorsBefore, catalogVersionService.versionToken(CatalogVersionService.Catalog.DOCTORS));
+        assertEquals(medicationsBefore, catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS));
+    }
+
+    @Test
+    void markChanged_ShouldWaitForCommit_WhenTransactionIsActive() {
+        // Arrange
+        long before = catalogVersionService.currentVersion(CatalogVersionService.Catalog.PATIENTS);
+
+        // Act & Assert
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+            assertEquals(before, catalogVersionService.currentVersion(CatalogVersionService.Catalog.PATIENTS));
+        });
+        assertEquals(before + 1, catalogVersionService.currentVersion(CatalogVersionService.Catalog.PATIENTS));
+    }
+
+    @Test
+    void markChanged_ShouldNotBump_WhenTransactionRollsBack() {
+        // Arrange
+        long before = catalogVersionService.currentVersion(CatalogVersionService.Catalog.PATIENTS);
+
+        // Act
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            catalogVersionService.markChanged(CatalogVersionService.Catalog.PATIENTS);
+            status.setRollbackOnly();
+        });
+
+        // Assert
+        assertEquals(before, catalogVersionService.currentVersion(CatalogVersionService.Catalog.PATIENTS));
+    }
+
+    @Test
+    void versionToken_ShouldSeeWritesOfOtherInstances() {
+        // Arrange
+        String before = catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS);
+
+        // Act: another instance, or a SQL script, bumps the shared row
+        jdbcTemplate.update("UPDATE catalog_versions SET version = version + 1 WHERE catalog = 'MEDICATIONS'");
+
+        // Assert
+        assertNotEquals(before, catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS));
+        assertEquals(3, catalogVersionRepository.count());
+    }
+}
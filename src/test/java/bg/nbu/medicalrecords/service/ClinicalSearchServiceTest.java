@@ -0,0 +1,216 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.dto.ClinicalSearchHitDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.*;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "medical-records.search.index-dir=")
+@Import(ClinicalSearchService.class)
+class ClinicalSearchServiceTest {
+
+    @Autowired
+    private ClinicalSearchService clinicalSearchService;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DiagnosisRepository diagnosisRepository;
+
+    @Autowired
+    private TreatmentRepository treatmentRepository;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private SickLeaveRepository sickLeaveRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Appointment appointment;
+    private Diagnosis diagnosis;
+
+    @BeforeEach
+    void setUp() {
+        Doctor doctor = new Doctor();
+        doctor.setName("Dr. Smith");
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        doctor = doctorRepository.save(doctor);
+
+        Patient patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-keycloak-id");
+        patient = patientRepository.save(patient);
+
+        appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        appointment.setAppointmentDateTime(LocalDateTime.of(2024, 1, 10, 9, 0));
+        appointment = appointmentRepository.save(appointment);
+
+        diagnosis = new Diagnosis();
+        diagnosis.setStatement("Community acquired pneumonia");
+        diagnosis.setDiagnosedDate(LocalDateTime.of(2024, 1, 10, 9, 30));
+        diagnosis.setAppointment(appointment);
+        diagnosis = diagnosisRepository.save(diagnosis);
+
+        Treatment treatment = new Treatment();
+        treatment.setDiagnosis(diagnosis);
+        treatment.setDescription("Bed rest for a week and plenty of fluids");
+        treatment.setStartDate(LocalDate.of(2024, 1, 10));
+        treatment.setEndDate(LocalDate.of(2024, 1, 17));
+        treatment = treatmentRepository.save(treatment);
+
+        Medication medication = new Medication();
+        medication.setMedicationName("Paracetamol");
+        medication.setDosageForm("tablet");
+        medication.setStrength("500mg");
+        medication = medicationRepository.save(medication);
+
+        Prescription prescription = new Prescription();
+        prescription.setTreatment(treatment);
+        prescription.setMedication(medication);
+        prescription.setDosage("1 tablet every 6 hours");
+        prescription.setDuration(5);
+        prescriptionRepository.save(prescription);
+
+        // The index reads through JDBC, so the pending inserts have to reach the database first
+        entityManager.flush();
+        clinicalSearchService.rebuild();
+    }
+
+    @Test
+    void search_ShouldFindExactWordAndJoinThePatientBack() {
+        // Act
+        List<ClinicalSearchHitDto> hits = clinicalSearchService.search("pneumonia", 10);
+
+        // Assert
+        assertEquals(1, hits.size());
+        assertEquals("diagnosis", hits.get(0).getType());
+        assertEquals(diagnosis.getId(), hits.get(0).getId());
+        assertEquals(appointment.getId(), hits.get(0).getAppointmentId());
+        assertEquals("John Doe", hits.get(0).getPatientName());
+        assertEquals("Community acquired pneumonia", hits.get(0).getText());
+    }
+
+    @Test
+    void search_ShouldTolerateTyposAndMatchPrefixes() {
+        // Act & Assert
+        assertEquals("diagnosis", clinicalSearchService.search("pnemonia", 10).get(0).getType());
+        List<ClinicalSearchHitDto> prefixHits = clinicalSearchService.search("parac", 10);
+        assertEquals(1, prefixHits.size());
+        assertEquals("prescription", prefixHits.get(0).getType());
+        assertTrue(prefixHits.get(0).getText().startsWith("Paracetamol"));
+    }
+
+    @Test
+    void search_ShouldRequireQuotedTextAsPhrase() {
+        // Act & Assert
+        assertEquals("treatment", clinicalSearchService.search("\"bed rest\"", 10).get(0).getType());
+        assertTrue(clinicalSearchService.search("\"rest bed\"", 10).isEmpty());
+    }
+
+    @Test
+    void search_ShouldRankExactMatchesAboveFuzzyOnes() {
+        // Arrange
+        SickLeave sickLeave = new SickLeave();
+        sickLeave.setAppointment(appointment);
+        sickLeave.setReason("Pneumonias recovery");
+        sickLeave.setTodayDate(LocalDate.of(2024, 1, 10));
+        sickLeave.setStartDate(LocalDate.of(2024, 1, 10));
+        sickLeave.setEndDate(LocalDate.of(2024, 1, 14));
+        sickLeaveRepository.save(sickLeave);
+        entityManager.flush();
+        clinicalSearchService.reindexAppointment(appointment.getId());
+
+        // Act
+        List<ClinicalSearchHitDto> hits = clinicalSearchService.search("pneumonia", 10);
+
+        // Assert
+        assertEquals(List.of("diagnosis", "sickLeave"), hits.stream().map(ClinicalSearchHitDto::getType).toList());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+    }
+
+    @Test
+    void onEvents_ShouldPickUpNewAndRemovedRecords() {
+        // Arrange
+        SickLeave sickLeave = new SickLeave();
+        sickLeave.setAppointment(appointment);
+        sickLeave.setReason("Fractured wrist");
+        sickLeave.setTodayDate(LocalDate.of(2024, 1, 10));
+        sickLeave.setStartDate(LocalDate.of(2024, 1, 10));
+        sickLeave.setEndDate(LocalDate.of(2024, 1, 14));
+        sickLeave = sickLeaveRepository.save(sickLeave);
+        entityManager.flush();
+
+        // Act
+        clinicalSearchService.onEvents(List.of(event("SICK_LEAVE_CREATED")));
+
+        // Assert
+        assertEquals(sickLeave.getId(), clinicalSearchService.search("fractured", 10).get(0).getId());
+        assertEquals(1L, clinicalSearchService.lastEventId());
+
+        // Act
+        sickLeaveRepository.delete(sickLeave);
+        entityManager.flush();
+        clinicalSearchService.onEvents(List.of(event("SICK_LEAVE_DELETED"), event("APPOINTMENT_UPDATED")));
+
+        // Assert
+        assertTrue(clinicalSearchService.search("fractured", 10).isEmpty());
+    }
+
+    @Test
+    void onEvents_ShouldDropArchivedAppointmentsFromTheIndex() {
+        // Act: the index is hot-only, so it forgets the appointment without asking the database
+        clinicalSearchService.onEvents(List.of(event(DomainEvent.APPOINTMENT_ARCHIVED)));
+
+        // Assert
+        assertTrue(clinicalSearchService.search("pneumonia", 10).isEmpty());
+        assertTrue(clinicalSearchService.search("paracetamol", 10).isEmpty());
+    }
+
+    @Test
+    void onEvents_ShouldDropDeletedAppointmentsFromTheIndex() {
+        // Act
+        clinicalSearchService.onEvents(List.of(event(DomainEvent.APPOINTMENT_DELETED)));
+
+        // Assert
+        assertTrue(clinicalSearchService.search("pneumonia", 10).isEmpty());
+        assertTrue(clinicalSearchService.search("paracetamol", 10).isEmpty());
+    }
+
+    @Test
+    void search_ShouldRejectQueriesWithoutWords() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> clinicalSearchService.search("  ", 10));
+        assertThrows(InvalidInputException.class, () -> clinicalSearchService.search("!!", 10));
+    }
+
+    private DomainEvent event(String type) {
+        return new DomainEvent(1L, type, "APPOINTMENT", appointment.getId().toString(), "{}", LocalDateTime.now());
+    }
+}
@@ -0,0 +1,190 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.dto.DiagnosisCodeDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// New codes commit in a transaction of their own, so the tests run without one and clean up after themselves
+@DataJpaTest
+@Import(DiagnosisCodeService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DiagnosisCodeServiceTest {
+
+    @Autowired
+    private DiagnosisCodeService diagnosisCodeService;
+
+    @Autowired
+    private DiagnosisCodeRepository diagnosisCodeRepository;
+
+    @Autowired
+    private DiagnosisRepository diagnosisRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Appointment appointment;
+
+    @BeforeEach
+    void setUp() {
+        Doctor doctor = new Doctor();
+        doctor.setName("Dr. Smith");
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        doctor = doctorRepository.save(doctor);
+
+        Patient patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-keycloak-id");
+        patient = patientRepository.save(patient);
+
+        appointment = new Appointment();
+        appointment.setDoctor(doctor);
+        appointment.setPatient(patient);
+        appointment.setAppointmentDateTime(LocalDateTime.of(2025, 1, 15, 10, 0));
+        appointment = appointmentRepository.save(appointment);
+    }
+
+    @AfterEach
+    void tearDown() {
+        diagnosisRepository.deleteAll();
+        appointmentRepository.deleteAll();
+        patientRepository.deleteAll();
+        doctorRepository.deleteAll();
+        diagnosisCodeRepository.deleteAll();
+    }
+
+    @Test
+    void normalize_ShouldTrimCollapseWhitespaceAndLowerCase() {
+        // Act & Assert
+        assertEquals("acute bronchitis", DiagnosisCodeService.normalize("  Acute \t Bronchitis "));
+    }
+
+    @Test
+    void resolve_ShouldReuseTheSameCode_ForSpellingVariants() {
+        // Act
+        DiagnosisCode first = diagnosisCodeService.resolve("Flu");
+        DiagnosisCode second = diagnosisCodeService.resolve("flu ");
+        DiagnosisCode third = diagnosisCodeService.resolve("FLU");
+
+        // Assert
+        assertEquals(first.getId(), second.getId());
+        assertEquals(first.getId(), third.getId());
+        assertEquals("Flu", first.getLabel());
+        assertEquals(1, diagnosisCodeRepository.count());
+    }
+
+    @Test
+    void resolve_ShouldLeaveTheCallersTransactionUsable_WhenTheStatementIsNew() {
+        // Arrange
+        TransactionTemplate caller = new TransactionTemplate(transactionManager);
+
+        // Act
+        Diagnosis saved = caller.execute(status -> diagnosis("Bronchitis", diagnosisCodeService.resolve("Bronchitis")));
+        caller.executeWithoutResult(status -> {
+            diagnosisCodeService.resolve("Sinusitis");
+            status.setRollbackOnly();
+        });
+
+        // Assert
+        assertEquals(diagnosisCodeService.findByStatement("bronchitis").orElseThrow().getId(),
+                diagnosisRepository.findById(saved.getId()).orElseThrow().getCode().getId());
+        assertTrue(diagnosisCodeService.findByStatement("sinusitis").isPresent());
+    }
+
+    @Test
+    void merge_ShouldMoveSynonymsAndDiagnoses_AndDeleteTheSource() {
+        // Arrange
+        DiagnosisCode flu = diagnosisCodeService.resolve("Flu");
+        DiagnosisCode influenza = diagnosisCodeService.resolve("Influenza");
+        Diagnosis diagnosis = diagnosis("Influenza", influenza);
+
+        // Act
+        DiagnosisCodeDto merged = diagnosisCodeService.merge(flu.getId(), influenza.getId());
+
+        // Assert
+        assertEquals(List.of("flu", "influenza"), merged.getSynonyms());
+        assertFalse(diagnosisCodeRepository.existsById(influenza.getId()));
+        assertEquals(flu.getId(), diagnosisCodeService.findByStatement("influenza").orElseThrow().getId());
+        assertEquals(List.of(diagnosis.getId()),
+                diagnosisRepository.findByCode_Id(flu.getId()).stream().map(Diagnosis::getId).toList());
+    }
+
+    @Test
+    void merge_ShouldRecodeArchivedDiagnoses() {
+        // Arrange
+        DiagnosisCode flu = diagnosisCodeService.resolve("Flu");
+        DiagnosisCode influenza = diagnosisCodeService.resolve("Influenza");
+        jdbcTemplate.update("INSERT INTO appointments_archive (id, patient_id, doctor_id, appointment_date_time, archived_at) VALUES (?, ?, ?, ?, ?)",
+                1000L, appointment.getPatient().getId(), appointment.getDoctor().getId(),
+                LocalDateTime.of(2020, 1, 15, 10, 0), LocalDateTime.now());
+        jdbcTemplate.update("INSERT INTO diagnoses_archive (id, statement, appointment_id, diagnosis_code_id) VALUES (?, ?, ?, ?)",
+                1000L, "Influenza", 1000L, influenza.getId());
+
+        // Act
+        diagnosisCodeService.merge(flu.getId(), influenza.getId());
+
+        // Assert
+        assertEquals(flu.getId(), jdbcTemplate.queryForObject(
+                "SELECT diagnosis_code_id FROM diagnoses_archive WHERE id = 1000", Integer.class));
+    }
+
+    @Test
+    void merge_ShouldRejectMergingACodeIntoItself() {
+        // Arrange
+        DiagnosisCode flu = diagnosisCodeService.resolve("Flu");
+
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> diagnosisCodeService.merge(flu.getId(), flu.getId()));
+    }
+
+    @Test
+    void update_ShouldAssignCode_AndAddTheNewLabelAsSynonym() {
+        // Arrange
+        DiagnosisCode flu = diagnosisCodeService.resolve("Flu");
+
+        // Act
+        DiagnosisCodeDto updated = diagnosisCodeService.update(flu.getId(), "J11", "Influenza");
+
+        // Assert
+        assertEquals("J11", updated.getCode());
+        assertEquals("Influenza", updated.getLabel());
+        assertEquals(List.of("flu", "influenza"), updated.getSynonyms());
+    }
+
+    private Diagnosis diagnosis(String statement, DiagnosisCode code) {
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setStatement(statement);
+        diagnosis.setDiagnosedDate(LocalDateTime.of(2025, 1, 15, 10, 30));
+        diagnosis.setAppointment(appointment);
+        diagnosis.setCode(code);
+        return diagnosisRepository.save(diagnosis);
+    }
+}
@@ -11,6 +11,8 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -35,6 +37,12 @@ public class DiagnosisServiceTest {
     @Mock
     private DoctorService doctorService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private DiagnosisCodeService diagnosisCodeService;
+
     @InjectMocks
     private DiagnosisService diagnosisService;
 
@@ -104,7 +112,7 @@ public class DiagnosisServiceTest {
         when(authenticationService.getCurrentUser()).thenReturn(doctorUser);
         when(appointmentService.findById(appointment.getId())).thenReturn(appointment);
         when(diagnosisRepository.save(any(Diagnosis.class))).thenReturn(diagnosis);
-        doNothing().when(appointmentService).save(appointment);
+        doNothing().when(appointmentService).touch(appointment.getId());
 
         // Act
         Diagnosis result = diagnosisService.createDiagnosis(appointment.getId(), createDiagnosisDto);
@@ -115,7 +123,12 @@ public class DiagnosisServiceTest {
         verify(authenticationService, times(1)).getCurrentUser();
         verify(appointmentService, times(1)).findById(appointment.getId());
         verify(diagnosisRepository, times(1)).save(any(Diagnosis.class));
-        verify(appointmentService, times(1)).save(appointment);
+        verify(diagnosisCodeService, times(1)).resolve("Flu");
+        verify(appointmentService, times(1)).touch(appointment.getId());
+        verify(eventPublisher, times(1)).publishEvent(argThat((Object event) -> event instanceof AppointmentChangedEvent changed
+                && changed.subject() == AppointmentChangedEvent.Subject.DIAGNOSIS
+                && changed.action() == AppointmentChangedEvent.Action.CREATED
+                && changed.appointmentId().equals(appointment.getId())));
     }
 
     /**
@@ -141,6 +154,7 @@ public class DiagnosisServiceTest {
         verify(appointmentService, times(1)).findById(appointment.getId());
         verify(diagnosisRepository, never()).save(any(Diagnosis.class));
         verify(appointmentService, never()).save(any(Appointment.class));
+        verifyNoInteractions(eventPublisher);
     }
 
     /**
@@ -149,14 +163,14 @@ public class DiagnosisServiceTest {
     @Test
     void updateDiagnosis_Success_AssignedDoctor() {
         // Arrange
-        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0));
+        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0), null);
 
         when(authenticationService.getCurrentUser()).thenReturn(doctorUser);
         when(doctorService.findByPrincipal()).thenReturn(doctor);
         when(appointmentService.findById(appointment.getId())).thenReturn(appointment);
         when(diagnosisRepository.findById(diagnosis.getId())).thenReturn(Optional.of(diagnosis));
-        when(diagnosisRepository.save(any(Diagnosis.class))).thenReturn(diagnosis);
-        doNothing().when(appointmentService).save(appointment);
+        when(diagnosisRepository.saveAndFlush(any(Diagnosis.class))).thenReturn(diagnosis);
+        doNothing().when(appointmentService).touch(appointment.getId());
 
         // Act
         Diagnosis result = diagnosisService.updateDiagnosis(appointment.getId(), diagnosis.getId(), updateDiagnosisDto);
@@ -169,8 +183,32 @@ public class DiagnosisServiceTest {
         verify(doctorService, times(1)).findByPrincipal();
         verify(appointmentService, times(1)).findById(appointment.getId());
         verify(diagnosisRepository, times(1)).findById(diagnosis.getId());
-        verify(diagnosisRepository, times(1)).save(diagnosis);
-        verify(appointmentService, times(1)).save(appointment);
+        verify(diagnosisRepository, times(1)).saveAndFlush(diagnosis);
+        verify(appointmentService, times(1)).touch(appointment.getId());
+    }
+
+    /**
+     * Test updating a diagnosis from a stale copy is rejected before anything is written.
+     */
+    @Test
+    void updateDiagnosis_Failure_StaleVersion() {
+        // Arrange
+        diagnosis.setVersion(3L);
+        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0), 2L);
+
+        when(authenticationService.getCurrentUser()).thenReturn(doctorUser);
+        when(doctorService.findByPrincipal()).thenReturn(doctor);
+        when(appointmentService.findById(appointment.getId())).thenReturn(appointment);
+        when(diagnosisRepository.findById(diagnosis.getId())).thenReturn(Optional.of(diagnosis));
+
+        // Act & Assert
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> {
+            diagnosisService.updateDiagnosis(appointment.getId(), diagnosis.getId(), updateDiagnosisDto);
+        });
+
+        assertEquals("Common Cold", diagnosis.getStatement());
+        verify(diagnosisRepository, never()).saveAndFlush(any(Diagnosis.class));
+        verifyNoInteractions(eventPublisher);
     }
 
     /**
@@ -179,7 +217,7 @@ public class DiagnosisServiceTest {
     @Test
     void updateDiagnosis_Failure_DoctorNotAssigned() {
         // Arrange
-        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0));
+        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0), null);
 
         when(authenticationService.getCurrentUser()).thenReturn(anotherDoctorUser);
         when(doctorService.findByPrincipal()).thenReturn(anotherDoctor);
@@ -195,7 +233,7 @@ public class DiagnosisServiceTest {
         verify(doctorService, times(1)).findByPrincipal();
         verify(appointmentService, times(1)).findById(appointment.getId());
         verify(diagnosisRepository, never()).findById(anyLong());
-        verify(diagnosisRepository, never()).save(any(Diagnosis.class));
+        verify(diagnosisRepository, never()).saveAndFlush(any(Diagnosis.class));
         verify(appointmentService, never()).save(any(Appointment.class));
     }
 
@@ -205,7 +243,7 @@ public class DiagnosisServiceTest {
     @Test
     void updateDiagnosis_Failure_DiagnosisNotFound() {
         // Arrange
-        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0));
+        UpdateDiagnosisDto updateDiagnosisDto = new UpdateDiagnosisDto("Severe Flu", LocalDateTime.of(2025, 5, 20, 12, 0), null);
 
         when(authenticationService.getCurrentUser()).thenReturn(doctorUser);
         when(doctorService.findByPrincipal()).thenReturn(doctor);
@@ -222,7 +260,7 @@ public class DiagnosisServiceTest {
         verify(doctorService, times(1)).findByPrincipal();
         verify(appointmentService, times(1)).findById(appointment.getId());
         verify(diagnosisRepository, times(1)).findById(diagnosis.getId());
-        verify(diagnosisRepository, never()).save(any(Diagnosis.class));
+        verify(diagnosisRepository, never()).saveAndFlush(any(Diagnosis.class));
         verify(appointmentService, never()).save(any(Appointment.class));
     }
 
@@ -237,7 +275,7 @@ public class DiagnosisServiceTest {
         when(appointmentService.findById(appointment.getId())).thenReturn(appointment);
         when(diagnosisRepository.findById(diagnosis.getId())).thenReturn(Optional.of(diagnosis));
         doNothing().when(diagnosisRepository).delete(diagnosis);
-        doNothing().when(appointmentService).save(appointment);
+        doNothing().when(appointmentService).touch(appointment.getId());
 
         // Act
         diagnosisService.deleteDiagnosis(diagnosis.getId(), appointment.getId());
@@ -248,7 +286,7 @@ public class DiagnosisServiceTest {
         verify(appointmentService, times(1)).findById(appointment.getId());
         verify(diagnosisRepository, times(1)).findById(diagnosis.getId());
         verify(diagnosisRepository, times(1)).delete(diagnosis);
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointment.getId());
     }
 
     /**
@@ -352,13 +390,13 @@ public class DiagnosisServiceTest {
     }
 
     /**
-     * Test retrieving unique diagnosis statements.
+     * Test retrieving the labels of the diagnosis codes in use.
      */
     @Test
     void getUniqueDiagnosis_Success() {
         // Arrange
         List<String> uniqueDiagnoses = Arrays.asList("Flu", "Common Cold");
-        when(diagnosisRepository.findDistinctStatements()).thenReturn(uniqueDiagnoses);
+        when(diagnosisRepository.findDistinctCodeLabels()).thenReturn(uniqueDiagnoses);
 
         // Act
         List<String> result = diagnosisService.getUniqueDiagnosis();
@@ -368,18 +406,21 @@ public class DiagnosisServiceTest {
         assertEquals(2, result.size());
         assertTrue(result.contains("Flu"));
         assertTrue(result.contains("Common Cold"));
-        verify(diagnosisRepository, times(1)).findDistinctStatements();
+        verify(diagnosisRepository, times(1)).findDistinctCodeLabels();
     }
 
     /**
-     * Test finding diagnoses by statement.
+     * Test finding diagnoses by statement: they are looked up by the diagnosis code the statement maps to.
      */
     @Test
     void findByStatement_Success() {
         // Arrange
         String statement = "Flu";
+        DiagnosisCode code = new DiagnosisCode();
+        code.setId(7);
         List<Diagnosis> diagnoses = Arrays.asList(diagnosis);
-        when(diagnosisRepository.findByStatementIgnoreCase(statement)).thenReturn(diagnoses);
+        when(diagnosisCodeService.findByStatement(statement)).thenReturn(Optional.of(code));
+        when(diagnosisRepository.findByCode_Id(7)).thenReturn(diagnoses);
 
         // Act
         List<Diagnosis> result = diagnosisService.findByStatement(statement);
@@ -388,7 +429,24 @@ public class DiagnosisServiceTest {
         assertNotNull(result);
         assertEquals(1, result.size());
         assertEquals(diagnosis, result.get(0));
-        verify(diagnosisRepository, times(1)).findByStatementIgnoreCase(statement);
+        verify(diagnosisRepository, times(1)).findByCode_Id(7);
+        verify(diagnosisRepository, never()).findByStatementIgnoreCase(anyString());
+    }
+
+    /**
+     * Test finding diagnoses by a statement that no diagnosis code knows.
+     */
+    @Test
+    void findByStatement_UnknownStatement_ReturnsEmpty() {
+        // Arrange
+        when(diagnosisCodeService.findByStatement("Unknown")).thenReturn(Optional.empty());
+
+        // Act
+        List<Diagnosis> result = diagnosisService.findByStatement("Unknown");
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(diagnosisRepository);
     }
 
     /**
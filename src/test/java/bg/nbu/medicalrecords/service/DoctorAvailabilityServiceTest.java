@@ -0,0 +1,181 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.domain.BookingCampaign;
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.dto.AvailableSlotDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.exception.ResourceNotFoundException;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.BookingCampaignRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(DoctorAvailabilityService.class)
+class DoctorAvailabilityServiceTest {
+
+    // A Monday far enough ahead that no slot is in the past
+    private static final LocalDate MONDAY = LocalDate.of(2030, 3, 4);
+
+    @Autowired
+    private DoctorAvailabilityService doctorAvailabilityService;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private BookingCampaignRepository bookingCampaignRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Doctor doctor;
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        doctor = new Doctor();
+        doctor.setKeycloakUserId("doctor-kc-id");
+        doctor.setName("Dr. Smith");
+        doctor = doctorRepository.save(doctor);
+
+        patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-kc-id");
+        patient = patientRepository.save(patient);
+    }
+
+    @Test
+    void findAvailableSlots_ShouldLeaveOutBookedIntervals() {
+        // Arrange: 10:00-11:00 and 13:15-13:45
+        book(MONDAY.atTime(10, 0), 60);
+        book(MONDAY.atTime(13, 15), 30);
+
+        // Act
+        List<AvailableSlotDto> slots = doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY);
+
+        // Assert: 16 half-hour slots from 9 to 17, minus 10:00, 10:30, 13:00 and 13:30
+        assertEquals(12, slots.size());
+        List<LocalDateTime> starts = slots.stream().map(AvailableSlotDto::getStart).toList();
+        assertFalse(starts.contains(MONDAY.atTime(10, 30)));
+        assertFalse(starts.contains(MONDAY.atTime(13, 0)));
+        assertTrue(starts.contains(MONDAY.atTime(11, 0)));
+        assertTrue(starts.contains(MONDAY.atTime(14, 0)));
+    }
+
+    @Test
+    void findAvailableSlots_ShouldLeaveOutCampaignSlots_AndRefreshWhenACampaignIsCreated() {
+        // Arrange
+        assertEquals(16, doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).size());
+        BookingCampaign campaign = new BookingCampaign();
+        campaign.setName("Flu vaccination");
+        campaign.setDoctor(doctor);
+        campaign.setDurationMinutes(20);
+        campaign.setCapacityPerSlot(5);
+        campaign.setWaitlistCapacity(0);
+        campaign.setSlotStarts(new ArrayList<>(List.of(MONDAY.atTime(11, 0), MONDAY.atTime(11, 20))));
+        campaign = bookingCampaignRepository.save(campaign);
+        entityManager.flush();
+
+        // Act
+        doctorAvailabilityService.onBookingCampaignCreated(new BookingCampaignCreatedEvent(campaign.getId(), doctor.getId()));
+        List<LocalDateTime> starts = doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).stream()
+                .map(AvailableSlotDto::getStart)
+                .toList();
+
+        // Assert: 11:00-11:40 takes the 11:00 and 11:30 slots, though nobody has booked the campaign yet
+        assertEquals(14, starts.size());
+        assertFalse(starts.contains(MONDAY.atTime(11, 0)));
+        assertFalse(starts.contains(MONDAY.atTime(11, 30)));
+        assertTrue(starts.contains(MONDAY.atTime(12, 0)));
+    }
+
+    @Test
+    void findAvailableSlots_ShouldSkipNonWorkingDays() {
+        // Act
+        List<AvailableSlotDto> slots = doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY.minusDays(2), MONDAY.minusDays(1));
+
+        // Assert
+        assertTrue(slots.isEmpty());
+    }
+
+    @Test
+    void findAvailableSlots_ShouldServeCachedDays_UntilTheDoctorsAppointmentsChange() {
+        // Arrange
+        assertEquals(16, doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).size());
+        Appointment booked = book(MONDAY.atTime(9, 0), 30);
+
+        // Act & Assert: the booking was written without an event, so the cached day is still served
+        assertEquals(16, doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).size());
+
+        doctorAvailabilityService.onAppointmentChanged(AppointmentChangedEvent.of(booked,
+                AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.CREATED));
+        assertEquals(15, doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).size());
+    }
+
+    @Test
+    void onAppointmentChanged_ShouldFreeTheSlotOfThePreviousDoctor_WhenTheAppointmentIsReassigned() {
+        // Arrange
+        Doctor other = new Doctor();
+        other.setKeycloakUserId("other-doctor-kc-id");
+        other.setName("Dr. Jones");
+        other = doctorRepository.save(other);
+        Appointment booked = book(MONDAY.atTime(9, 0), 30);
+        assertEquals(15, doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).size());
+        assertEquals(16, doctorAvailabilityService.findAvailableSlots(other.getId(), MONDAY, MONDAY).size());
+
+        // Act
+        booked.setDoctor(other);
+        appointmentRepository.save(booked);
+        entityManager.flush();
+        doctorAvailabilityService.onAppointmentChanged(AppointmentChangedEvent.of(booked, doctor,
+                AppointmentChangedEvent.Subject.APPOINTMENT, AppointmentChangedEvent.Action.UPDATED));
+
+        // Assert
+        assertEquals(16, doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY).size());
+        assertEquals(15, doctorAvailabilityService.findAvailableSlots(other.getId(), MONDAY, MONDAY).size());
+    }
+
+    @Test
+    void findAvailableSlots_ShouldRejectInvalidRanges_AndUnknownDoctors() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class,
+                () -> doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY.minusDays(1)));
+        assertThrows(InvalidInputException.class,
+                () -> doctorAvailabilityService.findAvailableSlots(doctor.getId(), MONDAY, MONDAY.plusDays(31)));
+        assertThrows(ResourceNotFoundException.class,
+                () -> doctorAvailabilityService.findAvailableSlots(doctor.getId() + 1000, MONDAY, MONDAY));
+    }
+
+    private Appointment book(LocalDateTime start, int durationMinutes) {
+        Appointment appointment = new Appointment();
+        appointment.setDoctor(doctor);
+        appointment.setPatient(patient);
+        appointment.setAppointmentDateTime(start);
+        appointment.setDurationMinutes(durationMinutes);
+        appointment = appointmentRepository.save(appointment);
+        entityManager.flush();
+        return appointment;
+    }
+}
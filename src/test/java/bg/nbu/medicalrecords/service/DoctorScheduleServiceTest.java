@@ -0,0 +1,150 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Appointment;
+import bg.nbu.medicalrecords.domain.BookingCampaign;
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.exception.AppointmentConflictException;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.AppointmentRepository;
+import bg.nbu.medicalrecords.repository.BookingCampaignRepository;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(DoctorScheduleService.class)
+class DoctorScheduleServiceTest {
+
+    private static final LocalDateTime TEN = LocalDateTime.of(2025, 3, 15, 10, 0);
+
+    @Autowired
+    private DoctorScheduleService doctorScheduleService;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private BookingCampaignRepository bookingCampaignRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Doctor doctor;
+    private Doctor otherDoctor;
+    private Appointment booked;
+
+    @BeforeEach
+    void setUp() {
+        doctor = doctorRepository.save(doctor("doctor-kc-id", "Dr. Smith"));
+        otherDoctor = doctorRepository.save(doctor("other-doctor-kc-id", "Dr. Jones"));
+
+        Patient patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-kc-id");
+        patient = patientRepository.save(patient);
+
+        // 10:00 - 10:30
+        booked = new Appointment();
+        booked.setDoctor(doctor);
+        booked.setPatient(patient);
+        booked.setAppointmentDateTime(TEN);
+        booked = appointmentRepository.save(booked);
+        entityManager.flush();
+    }
+
+    @Test
+    void reserve_ShouldRejectOverlappingInterval() {
+        // Act & Assert
+        assertThrows(AppointmentConflictException.class,
+                () -> doctorScheduleService.reserve(doctor.getId(), TEN.minusMinutes(15), 30, null));
+        assertThrows(AppointmentConflictException.class,
+                () -> doctorScheduleService.reserve(doctor.getId(), TEN.plusMinutes(29), 10, null));
+    }
+
+    @Test
+    void reserve_ShouldAllowBackToBackAppointments() {
+        // Act & Assert
+        assertEquals(30, doctorScheduleService.reserve(doctor.getId(), TEN.plusMinutes(30), null, null));
+        assertEquals(30, doctorScheduleService.reserve(doctor.getId(), TEN.minusMinutes(30), 30, null));
+    }
+
+    @Test
+    void reserve_ShouldIgnoreOtherDoctors_AndTheAppointmentBeingMoved() {
+        // Act & Assert
+        assertEquals(30, doctorScheduleService.reserve(otherDoctor.getId(), TEN, 30, null));
+        assertEquals(45, doctorScheduleService.reserve(doctor.getId(), TEN.plusMinutes(10), 45, booked.getId()));
+    }
+
+    @Test
+    void reserve_ShouldIgnoreTheOtherBookingsOfTheSameCampaign() {
+        // Arrange
+        Long campaignId = campaign(TEN).getId();
+        Long otherCampaignId = campaign(TEN.plusHours(3)).getId();
+        booked.setCampaignId(campaignId);
+        entityManager.flush();
+
+        // Act & Assert
+        assertEquals(30, doctorScheduleService.reserve(doctor.getId(), TEN, 30, null, campaignId));
+        assertThrows(AppointmentConflictException.class,
+                () -> doctorScheduleService.reserve(doctor.getId(), TEN, 30, null, otherCampaignId));
+        assertThrows(AppointmentConflictException.class,
+                () -> doctorScheduleService.reserve(doctor.getId(), TEN, 30, null));
+    }
+
+    @Test
+    void reserve_ShouldTreatCampaignSlotsAsBusy_ForEveryoneButTheCampaign() {
+        // Arrange: 12:00 - 12:30, nobody booked yet
+        Long campaignId = campaign(TEN.plusHours(2)).getId();
+        entityManager.flush();
+
+        // Act & Assert
+        assertThrows(AppointmentConflictException.class,
+                () -> doctorScheduleService.reserve(doctor.getId(), TEN.plusHours(2).plusMinutes(15), 30, null));
+        assertEquals(30, doctorScheduleService.reserve(doctor.getId(), TEN.plusHours(2), 30, null, campaignId));
+        assertEquals(30, doctorScheduleService.reserve(doctor.getId(), TEN.plusHours(2).plusMinutes(30), 30, null));
+        assertEquals(30, doctorScheduleService.reserve(otherDoctor.getId(), TEN.plusHours(2), 30, null));
+    }
+
+    @Test
+    void reserve_ShouldRejectDurationOutsideLimits() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> doctorScheduleService.reserve(doctor.getId(), TEN.plusHours(2), 0, null));
+        assertThrows(InvalidInputException.class, () -> doctorScheduleService.reserve(doctor.getId(), TEN.plusHours(2), 241, null));
+    }
+
+    private BookingCampaign campaign(LocalDateTime slotStart) {
+        BookingCampaign campaign = new BookingCampaign();
+        campaign.setName("Flu vaccination");
+        campaign.setDoctor(doctor);
+        campaign.setDurationMinutes(30);
+        campaign.setCapacityPerSlot(5);
+        campaign.setWaitlistCapacity(0);
+        campaign.setSlotStarts(new ArrayList<>(List.of(slotStart)));
+        return bookingCampaignRepository.save(campaign);
+    }
+
+    private static Doctor doctor(String keycloakUserId, String name) {
+        Doctor doctor = new Doctor();
+        doctor.setKeycloakUserId(keycloakUserId);
+        doctor.setName(name);
+        return doctor;
+    }
+}
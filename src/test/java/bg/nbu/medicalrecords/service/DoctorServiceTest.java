@@ -2,7 +2,10 @@ package bg.nbu.medicalrecords.service;
 
 import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
+import bg.nbu.medicalrecords.dto.DoctorDto;
 import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.util.MappingUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -28,6 +31,12 @@ public class DoctorServiceTest {
     @Mock
     private AuthenticationService authenticationService;
 
+    @Mock
+    private CatalogVersionService catalogVersionService;
+
+    @Mock
+    private AppointmentDeletionService appointmentDeletionService;
+
     @InjectMocks
     private DoctorService doctorService;
 
@@ -206,12 +215,16 @@ public class DoctorServiceTest {
     void deleteByKeycloakUserId_Success() {
         // Arrange
         String userId = "doctor-123";
+        Doctor doctor = new Doctor();
+        doctor.setId(4L);
+        when(doctorRepository.findByKeycloakUserId(userId)).thenReturn(doctor);
         doNothing().when(doctorRepository).deleteByKeycloakUserId(userId);
 
         // Act
         doctorService.deleteByKeycloakUserId(userId);
 
         // Assert
+        verify(appointmentDeletionService, times(1)).deleteForDoctor(4L);
         verify(doctorRepository, times(1)).deleteByKeycloakUserId(userId);
     }
 
@@ -287,6 +300,7 @@ public class DoctorServiceTest {
         doctorService.deleteDoctor(doctorId);
 
         // Assert
+        verify(appointmentDeletionService, times(1)).deleteForDoctor(doctorId);
         verify(doctorRepository, times(1)).deleteById(doctorId);
     }
 
@@ -473,4 +487,22 @@ public class DoctorServiceTest {
         verify(doctorRepository, times(1)).findByKeycloakUserId(keycloakUserId);
         verify(doctorRepository, never()).save(any(Doctor.class));
     }
+
+    /**
+     * Test the doctor multi-get reports unknown ids as missing.
+     */
+    @Test
+    void findAllByIds_ReturnsFoundInRequestOrderAndMissing() {
+        // Arrange
+        when(doctorRepository.findAllById(List.of(2L, 9L, 1L))).thenReturn(Arrays.asList(existingDoctor, anotherDoctor));
+
+        // Act
+        BatchResultDto<DoctorDto> result = doctorService.findAllByIds(List.of(2L, 9L, 1L));
+
+        // Assert
+        assertEquals(Arrays.asList(MappingUtils.mapToDoctorDto(anotherDoctor), MappingUtils.mapToDoctorDto(existingDoctor)), result.getFound());
+        assertEquals(List.of(9L), result.getMissing());
+        assertTrue(result.getForbidden().isEmpty());
+        verify(doctorRepository, times(1)).findAllById(List.of(2L, 9L, 1L));
+    }
 }
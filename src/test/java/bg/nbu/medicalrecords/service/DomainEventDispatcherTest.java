@@ -0,0 +1,164 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.DomainEventOutbox;
+import bg.nbu.medicalrecords.repository.DomainEventOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DomainEventDispatcherTest {
+
+    @Mock
+    private DomainEventOutboxRepository outboxRepository;
+
+    private final List<List<Long>> received = new ArrayList<>();
+
+    private DomainEventDispatcher dispatcher;
+    private DomainEventDispatcher.Cursor cursor;
+
+    @BeforeEach
+    void setUp() {
+        // Records every call and rejects any batch holding event 3
+        DomainEventConsumer consumer = events -> {
+            received.add(events.stream().map(DomainEvent::id).toList());
+            if (events.stream().anyMatch(event -> event.id() == 3L)) {
+                throw new IllegalStateException("Index is read-only");
+            }
+        };
+        dispatcher = new DomainEventDispatcher(outboxRepository, List.of(consumer));
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 50);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "backoffBaseMs", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "backoffMaxMs", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "gapTimeoutMs", 10000L);
+        cursor = dispatcher.cursors().get(0);
+    }
+
+    @Test
+    void dispatchBatch_ShouldDeliverTheBatchInOneCall() {
+        // Arrange
+        when(outboxRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(row(1L), row(2L)));
+
+        // Act
+        int read = dispatcher.dispatchBatch(cursor);
+
+        // Assert
+        assertEquals(2, read);
+        assertEquals(List.of(List.of(1L, 2L)), received);
+        assertEquals(2L, cursor.position());
+        assertEquals(2, dispatcher.lag().getDeliveredSinceStart());
+    }
+
+    @Test
+    void dispatchBatch_ShouldHoldBackTheEventsAfterTheOneThatFails() {
+        // Arrange
+        when(outboxRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(row(1L), row(2L), row(3L), row(4L)));
+
+        // Act
+        dispatcher.dispatchBatch(cursor);
+        dispatcher.dispatchBatch(cursor);
+
+        // Assert: the batch, then each event on its own up to the failing one; the second call waits for the backoff
+        assertEquals(List.of(List.of(1L, 2L, 3L, 4L), List.of(1L), List.of(2L), List.of(3L)), received);
+        assertEquals(2L, cursor.position());
+        verify(outboxRepository, times(1)).findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class));
+    }
+
+    @Test
+    void dispatchBatch_ShouldSkipTheEvent_AfterMaxAttempts() {
+        // Arrange
+        ReflectionTestUtils.setField(dispatcher, "backoffBaseMs", 0L);
+        when(outboxRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(row(3L)));
+        ReflectionTestUtils.setField(cursor, "position", 2L);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            dispatcher.dispatchBatch(cursor);
+        }
+
+        // Assert
+        assertEquals(3, received.size());
+        assertEquals(3L, cursor.position());
+        assertEquals(1, dispatcher.lag().getFailed());
+    }
+
+    @Test
+    void dispatchBatch_ShouldStopAtAMissingEvent() {
+        // Arrange
+        when(outboxRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(row(1L), row(2L), row(4L)));
+
+        // Act
+        dispatcher.dispatchBatch(cursor);
+
+        // Assert
+        assertEquals(List.of(List.of(1L, 2L)), received);
+        assertEquals(2L, cursor.position());
+    }
+
+    @Test
+    void dispatchBatch_ShouldWaitForAMissingEvent_UntilTheGapTimeout() {
+        // Arrange
+        ReflectionTestUtils.setField(cursor, "position", 2L);
+        DomainEventOutbox fourth = row(4L);
+        when(outboxRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(fourth, row(5L)));
+
+        // Act: event 3 may still commit
+        dispatcher.dispatchBatch(cursor);
+
+        // Assert
+        assertTrue(received.isEmpty());
+        assertEquals(2L, cursor.position());
+
+        // Act: long enough after event 4 that event 3 was rolled back
+        fourth.setCreatedAt(LocalDateTime.now().minusMinutes(1));
+        dispatcher.dispatchBatch(cursor);
+
+        // Assert
+        assertEquals(List.of(List.of(4L, 5L)), received);
+        assertEquals(5L, cursor.position());
+    }
+
+    @Test
+    void lag_ShouldReportAgeOfOldestUndeliveredEvent() {
+        // Arrange
+        DomainEventOutbox oldest = row(1L);
+        oldest.setCreatedAt(LocalDateTime.now().minusMinutes(2));
+        when(outboxRepository.countByIdGreaterThan(0L)).thenReturn(4L);
+        when(outboxRepository.findFirstByIdGreaterThanOrderByIdAsc(0L)).thenReturn(oldest);
+
+        // Act & Assert
+        assertEquals(4, dispatcher.lag().getPending());
+        assertEquals(0, dispatcher.lag().getFailed());
+        assertTrue(dispatcher.lag().getOldestPendingAgeSeconds() >= 120);
+    }
+
+    private static DomainEventOutbox row(Long id) {
+        DomainEventOutbox entry = new DomainEventOutbox();
+        entry.setId(id);
+        entry.setEventType("DIAGNOSIS_CREATED");
+        entry.setAggregateType("APPOINTMENT");
+        entry.setAggregateId("10");
+        entry.setPayload("{}");
+        entry.setCreatedAt(LocalDateTime.now());
+        return entry;
+    }
+}
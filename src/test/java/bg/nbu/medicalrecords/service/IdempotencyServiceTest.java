@@ -0,0 +1,126 @@
+package bg.nbu.medicalrecords.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// No in-memory front, so every lookup below goes to the table the way it does on another instance
+@DataJpaTest(properties = "medical-records.idempotency.memory-ttl-ms=-1")
+@Import(IdempotencyService.class)
+class IdempotencyServiceTest {
+
+    private static final IdempotencyService.StoredResponse CREATED =
+            new IdempotencyService.StoredResponse(201, "application/json", "{\"id\":7}");
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void begin_ShouldReplayTheStoredResponse_ForTheSameRequest() {
+        // Arrange
+        assertEquals(IdempotencyService.Outcome.PROCEED, idempotencyService.begin("doctor-1", "key-1", "hash-a").outcome());
+        idempotencyService.complete("doctor-1", "key-1", CREATED);
+
+        // Act
+        IdempotencyService.Decision retry = idempotencyService.begin("doctor-1", "key-1", "hash-a");
+        IdempotencyService.Decision otherBody = idempotencyService.begin("doctor-1", "key-1", "hash-b");
+        IdempotencyService.Decision otherCaller = idempotencyService.begin("doctor-2", "key-1", "hash-b");
+
+        // Assert
+        assertEquals(IdempotencyService.Outcome.REPLAY, retry.outcome());
+        assertEquals(CREATED, retry.response());
+        assertEquals(IdempotencyService.Outcome.MISMATCH, otherBody.outcome());
+        assertEquals(IdempotencyService.Outcome.PROCEED, otherCaller.outcome(), "keys are scoped to the caller");
+    }
+
+    @Test
+    void begin_ShouldRejectARetry_WhileTheFirstRequestRuns() {
+        // Arrange
+        idempotencyService.begin("doctor-1", "key-1", "hash-a");
+
+        // Act & Assert
+        assertEquals(IdempotencyService.Outcome.IN_PROGRESS, idempotencyService.begin("doctor-1", "key-1", "hash-a").outcome());
+    }
+
+    @Test
+    void release_ShouldLetTheRetryRunAgain() {
+        // Arrange
+        idempotencyService.begin("doctor-1", "key-1", "hash-a");
+
+        // Act
+        idempotencyService.release("doctor-1", "key-1");
+
+        // Assert
+        assertEquals(IdempotencyService.Outcome.PROCEED, idempotencyService.begin("doctor-1", "key-1", "hash-a").outcome());
+    }
+
+    @Test
+    void begin_ShouldTakeOverExpiredAndAbandonedKeys() {
+        // Arrange
+        idempotencyService.begin("doctor-1", "expired", "hash-a");
+        idempotencyService.complete("doctor-1", "expired", CREATED);
+        idempotencyService.begin("doctor-1", "abandoned", "hash-a");
+        jdbcTemplate.update("UPDATE idempotency_keys SET expires_at = ? WHERE idempotency_key = 'expired'", LocalDateTime.now().minusMinutes(1));
+        jdbcTemplate.update("UPDATE idempotency_keys SET created_at = ? WHERE idempotency_key = 'abandoned'", LocalDateTime.now().minusHours(1));
+
+        // Act & Assert
+        assertEquals(IdempotencyService.Outcome.PROCEED, idempotencyService.begin("doctor-1", "expired", "hash-b").outcome());
+        assertEquals(IdempotencyService.Outcome.PROCEED, idempotencyService.begin("doctor-1", "abandoned", "hash-a").outcome());
+    }
+
+    @Test
+    void begin_ShouldNotTakeOverAReservationInsideItsLease() {
+        // Arrange: still running after five minutes
+        idempotencyService.begin("doctor-1", "slow", "hash-a");
+        jdbcTemplate.update("UPDATE idempotency_keys SET created_at = ? WHERE idempotency_key = 'slow'", LocalDateTime.now().minusMinutes(5));
+
+        // Act & Assert
+        assertEquals(IdempotencyService.Outcome.IN_PROGRESS, idempotencyService.begin("doctor-1", "slow", "hash-a").outcome());
+    }
+
+    @Test
+    void begin_ShouldForgetTheReservation_WhenTheDatabaseFails() {
+        // Arrange: an in-memory front over a database whose first write fails
+        NamedParameterJdbcTemplate failingOnce = mock(NamedParameterJdbcTemplate.class);
+        when(failingOnce.update(anyString(), any(SqlParameterSource.class)))
+                .thenThrow(new DataAccessResourceFailureException("Connection lost"))
+                .thenReturn(1);
+        IdempotencyService service = new IdempotencyService(failingOnce);
+        ReflectionTestUtils.setField(service, "memoryTtlMs", 600_000L);
+
+        // Act & Assert
+        assertThrows(DataAccessResourceFailureException.class, () -> service.begin("doctor-1", "key-1", "hash-a"));
+        assertEquals(IdempotencyService.Outcome.PROCEED, service.begin("doctor-1", "key-1", "hash-a").outcome());
+    }
+
+    @Test
+    void purgeExpired_ShouldDeleteOnlyExpiredKeys() {
+        // Arrange
+        idempotencyService.begin("doctor-1", "old", "hash-a");
+        idempotencyService.begin("doctor-1", "new", "hash-a");
+        jdbcTemplate.update("UPDATE idempotency_keys SET expires_at = ? WHERE idempotency_key = 'old'", LocalDateTime.now().minusMinutes(1));
+
+        // Act
+        idempotencyService.purgeExpired();
+
+        // Assert
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_keys", Long.class));
+    }
+}
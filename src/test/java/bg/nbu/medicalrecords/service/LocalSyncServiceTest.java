@@ -1,6 +1,6 @@
 package bg.nbu.medicalrecords.service;
 
-import bg.nbu.medicalrecords.dto.KeycloakUserDto;
+import bg.nbu.medicalrecords.domain.User;
 import bg.nbu.medicalrecords.exception.LocalSyncException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,9 +19,6 @@ class LocalSyncServiceTest {
     @Mock
     private PatientService patientService;
 
-    @Mock
-    private KeycloakService keycloakService;
-
     @Mock
     private UserService userService;
 
@@ -38,12 +35,12 @@ class LocalSyncServiceTest {
         // Arrange
         String userId = "123";
         String newRole = "doctor";
-        KeycloakUserDto kcData = new KeycloakUserDto();
-        kcData.setUsername("testuser");
-        kcData.setFirstName("John");
-        kcData.setLastName("Doe");
+        User user = new User();
+        user.setUsername("testuser");
+        user.setFirstName("John");
+        user.setLastName("Doe");
 
-        when(keycloakService.findUserById(userId)).thenReturn(kcData);
+        when(userService.findByKeycloakUserId(userId)).thenReturn(user);
         when(doctorService.existsByKeycloakId(userId)).thenReturn(false);
         when(patientService.existsByKeycloakId(userId)).thenReturn(false);
 
@@ -61,12 +58,12 @@ class LocalSyncServiceTest {
         // Arrange
         String userId = "456";
         String newRole = "patient";
-        KeycloakUserDto kcData = new KeycloakUserDto();
-        kcData.setUsername("testuser");
-        kcData.setFirstName("Jane");
-        kcData.setLastName("Doe");
+        User user = new User();
+        user.setUsername("testuser");
+        user.setFirstName("Jane");
+        user.setLastName("Doe");
 
-        when(keycloakService.findUserById(userId)).thenReturn(kcData);
+        when(userService.findByKeycloakUserId(userId)).thenReturn(user);
         when(doctorService.existsByKeycloakId(userId)).thenReturn(false);
         when(patientService.existsByKeycloakId(userId)).thenReturn(false);
 
@@ -84,10 +81,10 @@ class LocalSyncServiceTest {
         // Arrange
         String userId = "789";
         String newRole = "admin";
-        KeycloakUserDto kcData = new KeycloakUserDto();
-        kcData.setUsername("adminuser");
+        User user = new User();
+        user.setUsername("adminuser");
 
-        when(keycloakService.findUserById(userId)).thenReturn(kcData);
+        when(userService.findByKeycloakUserId(userId)).thenReturn(user);
         when(doctorService.existsByKeycloakId(userId)).thenReturn(false);
         when(patientService.existsByKeycloakId(userId)).thenReturn(false);
 
@@ -106,7 +103,7 @@ class LocalSyncServiceTest {
         String userId = "123";
         String newRole = "doctor";
 
-        when(keycloakService.findUserById(userId)).thenThrow(new RuntimeException("Keycloak error"));
+        when(userService.findByKeycloakUserId(userId)).thenThrow(new RuntimeException("User lookup error"));
 
         // Act & Assert
         LocalSyncException exception = assertThrows(LocalSyncException.class, () ->
@@ -123,12 +120,12 @@ class LocalSyncServiceTest {
         // Arrange
         String userId = "123";
         String newRole = "doctor";
-        KeycloakUserDto kcData = new KeycloakUserDto();
-        kcData.setUsername("testuser");
-        kcData.setFirstName("John");
-        kcData.setLastName("Doe");
+        User user = new User();
+        user.setUsername("testuser");
+        user.setFirstName("John");
+        user.setLastName("Doe");
 
-        when(keycloakService.findUserById(userId)).thenReturn(kcData);
+        when(userService.findByKeycloakUserId(userId)).thenReturn(user);
         when(doctorService.existsByKeycloakId(userId)).thenReturn(true);
         when(patientService.existsByKeycloakId(userId)).thenReturn(true);
 
@@ -0,0 +1,168 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Medication;
+import bg.nbu.medicalrecords.dto.MedicationImportErrorDto;
+import bg.nbu.medicalrecords.dto.MedicationImportResultDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.MedicationRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// One row per JDBC batch; half of the tiny catalog may be retired at once
+@DataJpaTest(properties = {
+        "medical-records.medication-import.batch-size=1",
+        "medical-records.medication-import.max-retired-percent=50"})
+@Import({MedicationImportService.class, CatalogVersionService.class})
+class MedicationImportServiceTest {
+
+    private static final String HEADER = "medicationName,dosageForm,strength,sideEffect\n";
+
+    @Autowired
+    private MedicationImportService medicationImportService;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Medication amoxicillin;
+    private Medication ibuprofen;
+    private Medication paracetamol;
+    private Medication aspirin;
+
+    @BeforeEach
+    void setUp() {
+        amoxicillin = medication("Amoxicillin", "capsule", "500mg", "nausea", false);
+        ibuprofen = medication("Ibuprofen", "tablet", "200mg", null, true);
+        paracetamol = medication("Paracetamol", "tablet", "500mg", "rash", false);
+        aspirin = medication("Aspirin", "tablet", "100mg", null, false);
+        entityManager.flush();
+    }
+
+    @Test
+    void importCsv_ShouldInsertUpdateAndRetireByNaturalKey() {
+        // Arrange
+        String csv = HEADER + """
+                Amoxicillin,capsule,500mg,"nausea, diarrhoea"
+                IBUPROFEN,  Tablet,200mg,
+                Paracetamol,tablet,500mg,
+                Metformin,tablet,850mg,diarrhoea
+                """;
+
+        // Act
+        MedicationImportResultDto result = medicationImportService.importCsv(csv(csv), false);
+
+        // Assert
+        assertEquals(4, result.getRows());
+        assertEquals(1, result.getInserted());
+        assertEquals(2, result.getUpdated());
+        assertEquals(1, result.getUnchanged());
+        assertEquals(1, result.getRetired());
+        entityManager.clear();
+
+        assertFalse(medicationRepository.findById(ibuprofen.getId()).orElseThrow().isRetired());
+        assertEquals("nausea, diarrhoea", medicationRepository.findById(amoxicillin.getId()).orElseThrow().getSideEffect());
+        assertTrue(medicationRepository.findById(aspirin.getId()).orElseThrow().isRetired(), "kept for existing prescriptions");
+        assertEquals("rash", medicationRepository.findById(paracetamol.getId()).orElseThrow().getSideEffect(), "a blank cell keeps the stored value");
+        List<String> active = medicationRepository.findByRetiredFalse().stream().map(Medication::getMedicationName).sorted().toList();
+        assertEquals(List.of("Amoxicillin", "IBUPROFEN", "Metformin", "Paracetamol"), active);
+    }
+
+    @Test
+    void importCsv_ShouldReinstateRetiredMedication() {
+        // Arrange
+        String csv = HEADER + """
+                Amoxicillin,capsule,500mg,
+                ibuprofen,Tablet,200mg,
+                Paracetamol,tablet,500mg,
+                Aspirin,tablet,100mg,
+                """;
+
+        // Act
+        MedicationImportResultDto result = medicationImportService.importCsv(csv(csv), false);
+
+        // Assert
+        assertEquals(1, result.getUpdated());
+        assertEquals(3, result.getUnchanged());
+        entityManager.clear();
+        Medication reinstated = medicationRepository.findById(ibuprofen.getId()).orElseThrow();
+        assertFalse(reinstated.isRetired());
+        assertEquals("ibuprofen", reinstated.getMedicationName());
+        assertEquals(4, medicationRepository.count());
+    }
+
+    @Test
+    void importCsv_DryRun_ShouldReportWithoutChangingTheCatalog() {
+        // Act
+        MedicationImportResultDto result = medicationImportService.importCsv(csv(HEADER + "Amoxicillin,capsule,500mg,\nParacetamol,tablet,500mg,\nMetformin,tablet,850mg,\n"), true);
+
+        // Assert
+        assertTrue(result.isDryRun());
+        assertEquals(1, result.getInserted());
+        assertEquals(1, result.getRetired());
+        entityManager.clear();
+        assertEquals(4, medicationRepository.count());
+        assertFalse(medicationRepository.findById(aspirin.getId()).orElseThrow().isRetired());
+    }
+
+    @Test
+    void importCsv_ShouldNotRetire_WhenRowsFailed() {
+        // Arrange
+        String csv = HEADER + """
+                Amoxicillin,capsule,500mg,
+                ,tablet,100mg,
+                Amoxicillin,Capsule,500mg,
+                """;
+
+        // Act
+        MedicationImportResultDto result = medicationImportService.importCsv(csv(csv), false);
+
+        // Assert
+        assertEquals(2, result.getFailed());
+        assertEquals(0, result.getRetired());
+        assertEquals(List.of(3L, 4L), result.getErrors().stream().map(MedicationImportErrorDto::getLine).toList());
+        entityManager.clear();
+        assertFalse(medicationRepository.findById(paracetamol.getId()).orElseThrow().isRetired());
+    }
+
+    @Test
+    void importCsv_ShouldRefuseToRetireMostOfTheCatalog() {
+        // Act & Assert: a truncated file would retire all three active medications
+        assertThrows(InvalidInputException.class, () -> medicationImportService.importCsv(csv(HEADER + "Metformin,tablet,850mg,\n"), false));
+        entityManager.clear();
+        assertEquals(4, medicationRepository.count());
+        assertEquals(3, medicationRepository.findByRetiredFalse().size());
+    }
+
+    @Test
+    void importCsv_ShouldRequireAMedicationNameColumn() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> medicationImportService.importCsv(csv("name\nAspirin\n"), false));
+        assertThrows(InvalidInputException.class, () -> medicationImportService.importCsv(csv(""), true));
+    }
+
+    private Medication medication(String name, String dosageForm, String strength, String sideEffect, boolean retired) {
+        Medication medication = new Medication();
+        medication.setMedicationName(name);
+        medication.setDosageForm(dosageForm);
+        medication.setStrength(strength);
+        medication.setSideEffect(sideEffect);
+        medication.setRetired(retired);
+        return medicationRepository.save(medication);
+    }
+
+    private static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -36,7 +36,7 @@ class MedicationServiceTest {
         medication2.setId(2L);
         medication2.setMedicationName("Medication B");
 
-        when(medicationRepository.findAll()).thenReturn(Arrays.asList(medication1, medication2));
+        when(medicationRepository.findByRetiredFalse()).thenReturn(Arrays.asList(medication1, medication2));
 
         // Act
         List<Medication> result = medicationService.getAll();
@@ -46,7 +46,7 @@ class MedicationServiceTest {
         assertEquals(2, result.size());
         assertEquals("Medication A", result.get(0).getMedicationName());
         assertEquals("Medication B", result.get(1).getMedicationName());
-        verify(medicationRepository, times(1)).findAll();
+        verify(medicationRepository, times(1)).findByRetiredFalse();
     }
 
     @Test
@@ -0,0 +1,119 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Medication;
+import bg.nbu.medicalrecords.dto.MedicationDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MedicationSuggestIndexTest {
+
+    @Mock
+    private MedicationService medicationService;
+
+    @Mock
+    private CatalogVersionService catalogVersionService;
+
+    private MedicationSuggestIndex medicationSuggestIndex;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS)).thenReturn("medications-1");
+        medicationSuggestIndex = new MedicationSuggestIndex(medicationService, catalogVersionService);
+    }
+
+    @Test
+    void suggest_ShouldMatchEveryWordAgainstNameFormAndStrength() {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(List.of(
+                medication(1L, "Amoxicillin", "Capsule", "500mg"),
+                medication(2L, "Amoxicillin", "Suspension", "250mg/5ml"),
+                medication(3L, "Ibuprofen", "Tablet", "400mg")));
+
+        // Act
+        List<MedicationDto> result = medicationSuggestIndex.suggest("amox 500", 10);
+
+        // Assert
+        assertEquals(1, result.size());
+        assertEquals(1L, result.get(0).getId());
+    }
+
+    @Test
+    void suggest_ShouldReturnDisplayOrder_AndApplyLimit() {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(List.of(
+                medication(1L, "Paracetamol", "Tablet", "500mg"),
+                medication(2L, "Ibuprofen", "Tablet", "400mg"),
+                medication(3L, "Aspirin", "Tablet", "100mg")));
+
+        // Act
+        List<MedicationDto> result = medicationSuggestIndex.suggest("tab", 2);
+
+        // Assert
+        assertEquals(List.of("Aspirin", "Ibuprofen"), result.stream().map(MedicationDto::getMedicationName).toList());
+    }
+
+    @Test
+    void suggest_ShouldBuildOnce_WhileVersionIsUnchanged() {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(List.of(medication(1L, "Ibuprofen", "Tablet", "400mg")));
+
+        // Act
+        medicationSuggestIndex.suggest("ibu", 10);
+        medicationSuggestIndex.suggest("tablet", 10);
+
+        // Assert
+        verify(medicationService, times(1)).getAll();
+    }
+
+    @Test
+    void suggest_ShouldSwapSnapshot_AfterMedicationCatalogChanged() {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(
+                List.of(medication(1L, "Ibuprofen", "Tablet", "400mg")),
+                List.of(medication(1L, "Ibuprofen", "Tablet", "400mg"), medication(2L, "Ibuprofen", "Gel", "5%")));
+        assertEquals(1, medicationSuggestIndex.suggest("ibu", 10).size());
+
+        // Act
+        when(catalogVersionService.versionToken(CatalogVersionService.Catalog.MEDICATIONS)).thenReturn("medications-2");
+        List<MedicationDto> result = medicationSuggestIndex.suggest("ibu", 10);
+
+        // Assert
+        assertEquals(2, result.size());
+        verify(medicationService, times(2)).getAll();
+    }
+
+    @Test
+    void suggest_ShouldReturnEmpty_WhenAWordMatchesNothing() {
+        // Arrange
+        when(medicationService.getAll()).thenReturn(List.of(medication(1L, "Ibuprofen", "Tablet", "400mg")));
+
+        // Act & Assert
+        assertTrue(medicationSuggestIndex.suggest("ibu syrup", 10).isEmpty());
+    }
+
+    @Test
+    void suggest_ShouldRejectQueryWithoutLettersOrDigits() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> medicationSuggestIndex.suggest("  ", 10));
+        verifyNoInteractions(medicationService);
+    }
+
+    private static Medication medication(Long id, String name, String dosageForm, String strength) {
+        Medication medication = new Medication();
+        medication.setId(id);
+        medication.setMedicationName(name);
+        medication.setDosageForm(dosageForm);
+        medication.setStrength(strength);
+        return medication;
+    }
+}
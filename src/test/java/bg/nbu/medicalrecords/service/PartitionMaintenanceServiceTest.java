@@ -0,0 +1,60 @@
+package bg.nbu.medicalrecords.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionMaintenanceServiceTest {
+
+    private static final List<PartitionMaintenanceService.Partition> PARTITIONS = List.of(
+            PartitionMaintenanceService.Partition.of("p_old", "2024"),
+            PartitionMaintenanceService.Partition.of("p2024", "2025"),
+            PartitionMaintenanceService.Partition.of("p2025", "2026"),
+            PartitionMaintenanceService.Partition.of("p_future", "MAXVALUE"));
+
+    @Test
+    void addPartitionsSql_ShouldSplitTheCatchAllUpToTheLastYear() {
+        // Act
+        String sql = PartitionMaintenanceService.addPartitionsSql("appointments", PARTITIONS, 2027);
+
+        // Assert
+        assertEquals("ALTER TABLE appointments REORGANIZE PARTITION p_future INTO ("
+                + "PARTITION p2026 VALUES LESS THAN (2027), "
+                + "PARTITION p2027 VALUES LESS THAN (2028), "
+                + "PARTITION p_future VALUES LESS THAN MAXVALUE)", sql);
+    }
+
+    @Test
+    void addPartitionsSql_ShouldAppend_WhenThereIsNoCatchAll() {
+        // Act
+        String sql = PartitionMaintenanceService.addPartitionsSql("diagnoses", PARTITIONS.subList(0, 3), 2026);
+
+        // Assert
+        assertEquals("ALTER TABLE diagnoses ADD PARTITION (PARTITION p2026 VALUES LESS THAN (2027))", sql);
+    }
+
+    @Test
+    void addPartitionsSql_ShouldReturnNull_WhenTheYearsExist() {
+        // Act & Assert
+        assertNull(PartitionMaintenanceService.addPartitionsSql("appointments", PARTITIONS, 2025));
+    }
+
+    @Test
+    void droppable_ShouldOnlyPickPartitionsEndingBeforeTheArchiveCutoffYear() {
+        // Act
+        List<String> names = PartitionMaintenanceService.droppable(PARTITIONS, 2025).stream()
+                .map(PartitionMaintenanceService.Partition::name)
+                .toList();
+
+        // Assert: p2025 still holds rows from after January 1st 2025, the catch-all is never dropped
+        assertEquals(List.of("p_old", "p2024"), names);
+    }
+
+    @Test
+    void partition_ShouldRejectNamesThatCannotBeSplicedIntoSql() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> PartitionMaintenanceService.Partition.of("p1; DROP TABLE x", "2024"));
+    }
+}
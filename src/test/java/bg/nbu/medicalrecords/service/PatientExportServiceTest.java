@@ -0,0 +1,176 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.*;
+import bg.nbu.medicalrecords.dto.ExportFormat;
+import bg.nbu.medicalrecords.exception.PatientNotFoundException;
+import bg.nbu.medicalrecords.repository.*;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(PatientExportService.class)
+class PatientExportServiceTest {
+
+    @Autowired
+    private PatientExportService patientExportService;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Autowired
+    private DiagnosisRepository diagnosisRepository;
+
+    @Autowired
+    private TreatmentRepository treatmentRepository;
+
+    @Autowired
+    private MedicationRepository medicationRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private SickLeaveRepository sickLeaveRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Patient patient;
+
+    @BeforeEach
+    void setUp() {
+        Doctor doctor = new Doctor();
+        doctor.setName("Dr. Smith");
+        doctor.setKeycloakUserId("doctor-keycloak-id");
+        doctor = doctorRepository.save(doctor);
+
+        patient = new Patient();
+        patient.setName("John Doe");
+        patient.setKeycloakUserId("patient-keycloak-id");
+        patient.setPrimaryDoctor(doctor);
+        patient = patientRepository.save(patient);
+
+        Patient otherPatient = new Patient();
+        otherPatient.setName("Jane Roe");
+        otherPatient.setKeycloakUserId("other-patient-keycloak-id");
+        otherPatient = patientRepository.save(otherPatient);
+
+        Appointment appointment = saveAppointment(patient, doctor);
+        saveAppointment(otherPatient, doctor);
+
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setStatement("Flu, seasonal");
+        diagnosis.setDiagnosedDate(LocalDateTime.of(2024, 1, 10, 9, 30));
+        diagnosis.setAppointment(appointment);
+        diagnosis = diagnosisRepository.save(diagnosis);
+
+        Treatment treatment = new Treatment();
+        treatment.setDiagnosis(diagnosis);
+        treatment.setDescription("Rest and \"fluids\"");
+        treatment.setStartDate(LocalDate.of(2024, 1, 10));
+        treatment.setEndDate(LocalDate.of(2024, 1, 17));
+        treatment = treatmentRepository.save(treatment);
+
+        Medication medication = new Medication();
+        medication.setMedicationName("Paracetamol");
+        medication.setDosageForm("tablet");
+        medication.setStrength("500mg");
+        medication = medicationRepository.save(medication);
+
+        Prescription prescription = new Prescription();
+        prescription.setTreatment(treatment);
+        prescription.setMedication(medication);
+        prescription.setDosage("1 tablet every 6 hours");
+        prescription.setDuration(5);
+        prescriptionRepository.save(prescription);
+
+        SickLeave sickLeave = new SickLeave();
+        sickLeave.setAppointment(appointment);
+        sickLeave.setReason("Flu");
+        sickLeave.setTodayDate(LocalDate.of(2024, 1, 10));
+        sickLeave.setStartDate(LocalDate.of(2024, 1, 10));
+        sickLeave.setEndDate(LocalDate.of(2024, 1, 14));
+        sickLeaveRepository.save(sickLeave);
+
+        // The export reads through JDBC, so the pending inserts have to reach the database first
+        entityManager.flush();
+    }
+
+    @Test
+    void export_Ndjson_ShouldWriteOneLinePerRecordOfThePatientOnly() throws Exception {
+        // Act
+        String output = export(ExportFormat.NDJSON);
+
+        // Assert
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<JsonNode> records = new ArrayList<>();
+        for (String line : output.split("\n")) {
+            records.add(objectMapper.readTree(line));
+        }
+        assertEquals(List.of("appointment", "diagnosis", "treatment", "prescription", "sickLeave"),
+                records.stream().map(node -> node.get("type").asText()).toList());
+
+        JsonNode prescription = records.get(3);
+        assertEquals("Paracetamol", prescription.get("medicationName").asText());
+        assertEquals(5, prescription.get("duration").asInt());
+        assertFalse(prescription.has("startDate"));
+
+        assertEquals("2024-01-17", records.get(2).get("endDate").asText());
+        assertEquals("Dr. Smith", records.get(0).get("doctorName").asText());
+    }
+
+    @Test
+    void export_Csv_ShouldWriteHeaderAndEscapeValues() throws Exception {
+        // Act
+        String output = export(ExportFormat.CSV);
+
+        // Assert
+        String[] lines = output.split("\r\n");
+        assertEquals(6, lines.length);
+        assertEquals(String.join(",", PatientExportService.COLUMNS), lines[0]);
+        assertTrue(lines[2].contains("\"Flu, seasonal\""));
+        assertTrue(lines[3].contains("\"Rest and \"\"fluids\"\"\""));
+    }
+
+    @Test
+    void exportPatientHistory_ShouldThrow_WhenPatientDoesNotExist() {
+        // Act & Assert
+        assertThrows(PatientNotFoundException.class,
+                () -> patientExportService.exportPatientHistory(-1L, ExportFormat.NDJSON));
+    }
+
+    private String export(ExportFormat format) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        patientExportService.export(patient.getId(), format, outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private Appointment saveAppointment(Patient patient, Doctor doctor) {
+        Appointment appointment = new Appointment();
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        appointment.setAppointmentDateTime(LocalDateTime.of(2024, 1, 10, 9, 0));
+        return appointmentRepository.save(appointment);
+    }
+}
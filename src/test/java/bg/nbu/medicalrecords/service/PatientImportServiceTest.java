@@ -0,0 +1,210 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Doctor;
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.PatientImportErrorDto;
+import bg.nbu.medicalrecords.dto.PatientImportResultDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.DoctorRepository;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import bg.nbu.medicalrecords.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Two rows per chunk, so the files below span several chunks
+@DataJpaTest(properties = "medical-records.patient-import.chunk-size=2")
+@Import({PatientImportService.class, PatientSearchIndex.class, CatalogVersionService.class})
+class PatientImportServiceTest {
+
+    @Autowired
+    private PatientImportService patientImportService;
+
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DoctorRepository doctorRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Doctor doctor;
+
+    @BeforeEach
+    void setUp() {
+        user("kc-ivan", "8501011234", "Ivan", "Petrov");
+        user("kc-maria", "9002023456", "Maria", "Ivanova");
+        user("kc-georgi", "7703035678", "Georgi", "Dimitrov");
+
+        doctor = new Doctor();
+        doctor.setKeycloakUserId("doctor-kc-id");
+        doctor.setName("Dr. Smith");
+        doctor = doctorRepository.save(doctor);
+
+        // Ivan is a patient already
+        Patient ivan = new Patient();
+        ivan.setName("Ivan Petrov");
+        ivan.setKeycloakUserId("kc-ivan");
+        ivan.setHealthInsurancePaid(true);
+        patientRepository.save(ivan);
+        entityManager.flush();
+    }
+
+    @Test
+    void importCsv_ShouldCreateNewAndUpdateExistingPatients() {
+        // Arrange
+        String csv = """
+                egn,name,healthInsurancePaid,primaryDoctorId
+                8501011234,"Petrov, Ivan",,%d
+                9002023456,,true,
+                7703035678,Georgi D.,no,
+                """.formatted(doctor.getId());
+
+        // Act
+        PatientImportResultDto result = patientImportService.importCsv(csv(csv));
+
+        // Assert
+        assertEquals(3, result.getRows());
+        assertEquals(2, result.getCreated());
+        assertEquals(1, result.getUpdated());
+        assertEquals(0, result.getFailed());
+        entityManager.clear();
+
+        Patient ivan = patientRepository.findByKeycloakUserId("kc-ivan");
+        assertEquals("Petrov, Ivan", ivan.getName());
+        assertTrue(ivan.isHealthInsurancePaid(), "a blank cell keeps the stored value");
+        assertEquals(doctor.getId(), ivan.getPrimaryDoctor().getId());
+
+        Patient maria = patientRepository.findByKeycloakUserId("kc-maria");
+        assertEquals("Maria Ivanova", maria.getName());
+        assertTrue(maria.isHealthInsurancePaid());
+        assertFalse(patientRepository.findByKeycloakUserId("kc-georgi").isHealthInsurancePaid());
+        assertTrue(patientSearchIndex.search("9002023456", 10).stream().anyMatch(hit -> hit.getId().equals(maria.getId())));
+    }
+
+    @Test
+    void importCsv_ShouldKeepTheStoredName_WhenTheFileHasNone() {
+        // Arrange: a name curated after the first import
+        Patient ivan = patientRepository.findByKeycloakUserId("kc-ivan");
+        ivan.setName("Ivan Petrov Petrov");
+        entityManager.flush();
+
+        // Act
+        PatientImportResultDto result = patientImportService.importCsv(csv("egn,healthInsurancePaid\n8501011234,false\n"));
+
+        // Assert
+        assertEquals(1, result.getUpdated());
+        entityManager.clear();
+        Patient updated = patientRepository.findByKeycloakUserId("kc-ivan");
+        assertEquals("Ivan Petrov Petrov", updated.getName());
+        assertFalse(updated.isHealthInsurancePaid());
+        assertTrue(patientSearchIndex.search("Petrov Petrov", 10).stream().anyMatch(hit -> hit.getId().equals(updated.getId())));
+    }
+
+    @Test
+    void importCsv_ShouldBeIdempotent() {
+        // Arrange
+        String csv = "egn\n9002023456\n";
+
+        // Act
+        patientImportService.importCsv(csv(csv));
+        PatientImportResultDto again = patientImportService.importCsv(csv(csv));
+
+        // Assert
+        assertEquals(0, again.getCreated());
+        assertEquals(1, again.getUpdated());
+        assertEquals(2, patientRepository.count());
+    }
+
+    @Test
+    void importCsv_ShouldReportBadRows_AndImportTheRest() {
+        // Arrange
+        String csv = """
+                primaryDoctorId,egn
+                ,0000000000
+                %d,9002023456
+                999999,7703035678
+                ,9002023456
+                x,8501011234
+                ,
+                """.formatted(doctor.getId());
+
+        // Act
+        PatientImportResultDto result = patientImportService.importCsv(csv(csv));
+
+        // Assert
+        assertEquals(6, result.getRows());
+        assertEquals(1, result.getCreated());
+        assertEquals(5, result.getFailed());
+        assertEquals(List.of(2L, 4L, 5L, 6L, 7L), result.getErrors().stream().map(PatientImportErrorDto::getLine).sorted().toList());
+        assertEquals("No user with this EGN", error(result, 2).getMessage());
+        assertEquals("No doctor with id 999999", error(result, 4).getMessage());
+        assertEquals("EGN already appears earlier in the file", error(result, 5).getMessage());
+        assertTrue(error(result, 6).getMessage().startsWith("primaryDoctorId must be a number"));
+        assertEquals("EGN is missing", error(result, 7).getMessage());
+    }
+
+    @Test
+    void importCsv_ShouldRejectUsersWhoAreNotPatients() {
+        // Arrange
+        user("kc-doctor", "6604046789", "Petar", "Georgiev", "doctor");
+        entityManager.flush();
+
+        // Act
+        PatientImportResultDto result = patientImportService.importCsv(csv("egn\n6604046789\n"));
+
+        // Assert
+        assertEquals(0, result.getCreated());
+        assertEquals(1, result.getFailed());
+        assertEquals("The user with this EGN is not a patient (role: doctor)", error(result, 2).getMessage());
+        assertNull(patientRepository.findByKeycloakUserId("kc-doctor"));
+    }
+
+    @Test
+    void importCsv_ShouldRequireAnEgnColumn() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> patientImportService.importCsv(csv("name\nIvan\n")));
+        assertThrows(InvalidInputException.class, () -> patientImportService.importCsv(csv("")));
+    }
+
+    private static PatientImportErrorDto error(PatientImportResultDto result, long line) {
+        return result.getErrors().stream().filter(error -> error.getLine() == line).findFirst().orElseThrow();
+    }
+
+    private static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void user(String keycloakUserId, String egn, String firstName, String lastName) {
+        user(keycloakUserId, egn, firstName, lastName, "patient");
+    }
+
+    private void user(String keycloakUserId, String egn, String firstName, String lastName, String role) {
+        User user = new User();
+        user.setKeycloakUserId(keycloakUserId);
+        user.setEgn(egn);
+        user.setUsername(keycloakUserId);
+        user.setEmail(keycloakUserId + "@example.com");
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        user.setRole(role);
+        userRepository.save(user);
+    }
+}
@@ -0,0 +1,126 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.Patient;
+import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.PatientSearchHitDto;
+import bg.nbu.medicalrecords.exception.InvalidInputException;
+import bg.nbu.medicalrecords.repository.PatientRepository;
+import bg.nbu.medicalrecords.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(PatientSearchIndex.class)
+class PatientSearchIndexTest {
+
+    @Autowired
+    private PatientSearchIndex patientSearchIndex;
+
+    @Autowired
+    private PatientRepository patientRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Patient ivan;
+
+    @BeforeEach
+    void setUp() {
+        ivan = savePatient("kc-ivan", "Иван Петров", "8501011234");
+        savePatient("kc-maria", "Maria Ivanova", "9002025678");
+        savePatient("kc-jose", "José Álvarez", "7703039999");
+        entityManager.flush();
+
+        patientSearchIndex.rebuild();
+    }
+
+    @Test
+    void rebuild_ShouldLoadEveryPatient() {
+        // Assert
+        assertEquals(3, patientSearchIndex.size());
+    }
+
+    @Test
+    void search_ShouldMatchNamePrefixes_IgnoringCaseAndAccents() {
+        // Act
+        List<PatientSearchHitDto> hits = patientSearchIndex.search("alv", 10);
+
+        // Assert
+        assertEquals(1, hits.size());
+        assertEquals("José Álvarez", hits.get(0).getName());
+        assertEquals("7703039999", hits.get(0).getEgn());
+    }
+
+    @Test
+    void search_ShouldMatchEgnPrefix() {
+        // Act
+        List<PatientSearchHitDto> hits = patientSearchIndex.search("850101", 10);
+
+        // Assert
+        assertEquals(1, hits.size());
+        assertEquals(ivan.getId(), hits.get(0).getId());
+    }
+
+    @Test
+    void search_ShouldRequireEveryWordToMatch() {
+        // Act & Assert
+        assertEquals(1, patientSearchIndex.search("иван пет", 10).size());
+        assertTrue(patientSearchIndex.search("maria pet", 10).isEmpty());
+    }
+
+    @Test
+    void search_ShouldReflectWrites() {
+        // Act
+        patientSearchIndex.put(ivan.getId(), "Ivan Georgiev", "kc-ivan", "8501011234");
+        patientSearchIndex.updateEgn("kc-ivan", "8501015555");
+        patientSearchIndex.removeByKeycloakUserId("kc-maria");
+
+        // Assert
+        assertTrue(patientSearchIndex.search("петров", 10).isEmpty());
+        assertEquals(1, patientSearchIndex.search("georg", 10).size());
+        assertTrue(patientSearchIndex.search("85010112", 10).isEmpty());
+        assertEquals(1, patientSearchIndex.search("85010155", 10).size());
+        assertTrue(patientSearchIndex.search("maria", 10).isEmpty());
+    }
+
+    @Test
+    void search_ShouldApplyLimit() {
+        // Act
+        List<PatientSearchHitDto> hits = patientSearchIndex.search("ivan", 1);
+
+        // Assert
+        assertEquals(1, hits.size());
+    }
+
+    @Test
+    void search_ShouldRejectQueryWithoutLettersOrDigits() {
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () -> patientSearchIndex.search(" - ", 10));
+    }
+
+    private Patient savePatient(String keycloakUserId, String name, String egn) {
+        User user = new User();
+        user.setKeycloakUserId(keycloakUserId);
+        user.setEgn(egn);
+        user.setUsername(keycloakUserId);
+        user.setEmail(keycloakUserId + "@example.com");
+        user.setRole("patient");
+        userRepository.save(user);
+
+        Patient patient = new Patient();
+        patient.setName(name);
+        patient.setKeycloakUserId(keycloakUserId);
+        return patientRepository.save(patient);
+    }
+}
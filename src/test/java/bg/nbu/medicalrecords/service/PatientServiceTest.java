@@ -3,6 +3,7 @@ package bg.nbu.medicalrecords.service;
 import bg.nbu.medicalrecords.domain.Doctor;
 import bg.nbu.medicalrecords.domain.Patient;
 import bg.nbu.medicalrecords.domain.User;
+import bg.nbu.medicalrecords.dto.BatchResultDto;
 import bg.nbu.medicalrecords.dto.CreatePatientDto;
 import bg.nbu.medicalrecords.dto.PatientDto;
 import bg.nbu.medicalrecords.dto.UpdatePatientDto;
@@ -17,6 +18,8 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.mockito.MockedStatic;
 
 import java.util.*;
@@ -38,6 +41,18 @@ public class PatientServiceTest {
     @Mock
     private UserService userService;
 
+    @Mock
+    private CatalogVersionService catalogVersionService;
+
+    @Mock
+    private AuthenticationService authenticationService;
+
+    @Mock
+    private PatientSearchIndex patientSearchIndex;
+
+    @Mock
+    private AppointmentDeletionService appointmentDeletionService;
+
     @InjectMocks
     private PatientService patientService;
 
@@ -209,12 +224,16 @@ public class PatientServiceTest {
     void deleteByKeycloakUserId_Success() {
         // Arrange
         String userId = "kc-123";
+        Patient patient = new Patient();
+        patient.setId(5L);
+        when(patientRepository.findByKeycloakUserId(userId)).thenReturn(patient);
         doNothing().when(patientRepository).deleteByKeycloakUserId(userId);
 
         // Act
         patientService.deleteByKeycloakUserId(userId);
 
         // Assert
+        verify(appointmentDeletionService, times(1)).deleteForPatient(5L);
         verify(patientRepository, times(1)).deleteByKeycloakUserId(userId);
     }
 
@@ -340,7 +359,31 @@ public class PatientServiceTest {
 
         // Assert
         verify(patientRepository, times(1)).existsById(patientId);
+        verify(appointmentDeletionService, times(1)).deleteForPatient(patientId);
         verify(patientRepository, times(1)).deleteById(patientId);
+        verify(patientSearchIndex, times(1)).remove(patientId);
+    }
+
+    /**
+     * Test the search index only drops the patient once the delete has committed.
+     */
+    @Test
+    void deletePatient_InTransaction_ShouldUpdateSearchIndexOnlyAfterCommit() {
+        // Arrange
+        Long patientId = 1L;
+        when(patientRepository.existsById(patientId)).thenReturn(true);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            patientService.deletePatient(patientId);
+
+            // Assert
+            verify(patientSearchIndex, never()).remove(patientId);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(patientSearchIndex, times(1)).remove(patientId);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
 
     /**
@@ -360,6 +403,7 @@ public class PatientServiceTest {
         assertEquals("Patient not found with id: " + patientId, exception.getMessage());
         verify(patientRepository, times(1)).existsById(patientId);
         verify(patientRepository, never()).deleteById(patientId);
+        verify(appointmentDeletionService, never()).deleteForPatient(anyLong());
     }
 
 
@@ -715,4 +759,72 @@ public class PatientServiceTest {
         verify(patientRepository, times(1)).findByPrimaryDoctor_Id(doctorId);
         verifyNoMoreInteractions(userService);
     }
+
+    /**
+     * Test the multi-get as a doctor: found records keep request order, unknown ids are reported as missing.
+     */
+    @Test
+    void findAllByIds_AsDoctor_ReturnsFoundAndMissing() {
+        // Arrange
+        User doctorUser = new User();
+        doctorUser.setKeycloakUserId("kc-doctor");
+        doctorUser.setRole("doctor");
+        when(authenticationService.getCurrentUser()).thenReturn(doctorUser);
+
+        Patient first = new Patient();
+        first.setId(1L);
+        first.setName("John Doe");
+        first.setKeycloakUserId("kc-1");
+        Patient second = new Patient();
+        second.setId(2L);
+        second.setName("Jane Roe");
+        second.setKeycloakUserId("kc-2");
+        when(patientRepository.findAllById(List.of(2L, 3L, 1L))).thenReturn(List.of(first, second));
+
+        User firstUser = new User();
+        firstUser.setKeycloakUserId("kc-1");
+        firstUser.setEgn("1111111111");
+        when(userService.findAllByKeycloakUserIds(Set.of("kc-1", "kc-2"))).thenReturn(Map.of("kc-1", firstUser));
+
+        // Act
+        BatchResultDto<PatientDto> result = patientService.findAllByIds(List.of(2L, 3L, 1L));
+
+        // Assert
+        assertEquals(List.of(2L, 1L), result.getFound().stream().map(PatientDto::getId).collect(Collectors.toList()));
+        assertNull(result.getFound().get(0).getEgn());
+        assertEquals("1111111111", result.getFound().get(1).getEgn());
+        assertEquals(List.of(3L), result.getMissing());
+        assertTrue(result.getForbidden().isEmpty());
+        verify(userService, never()).findByKeycloakUserId(anyString());
+    }
+
+    /**
+     * Test the multi-get as a patient: other patients' ids are reported as forbidden.
+     */
+    @Test
+    void findAllByIds_AsPatient_ReturnsOnlyOwnRecord() {
+        // Arrange
+        User patientUser = new User();
+        patientUser.setKeycloakUserId("kc-1");
+        patientUser.setRole("patient");
+        when(authenticationService.getCurrentUser()).thenReturn(patientUser);
+
+        Patient own = new Patient();
+        own.setId(1L);
+        own.setKeycloakUserId("kc-1");
+        Patient other = new Patient();
+        other.setId(2L);
+        other.setKeycloakUserId("kc-2");
+        when(patientRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(own, other));
+        when(userService.findAllByKeycloakUserIds(anySet())).thenReturn(Map.of("kc-1", patientUser));
+
+        // Act
+        BatchResultDto<PatientDto> result = patientService.findAllByIds(List.of(1L, 2L));
+
+        // Assert
+        assertEquals(1, result.getFound().size());
+        assertEquals(1L, result.getFound().get(0).getId());
+        assertEquals(List.of(2L), result.getForbidden());
+        assertTrue(result.getMissing().isEmpty());
+    }
 }
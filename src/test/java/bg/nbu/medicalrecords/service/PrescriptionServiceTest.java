@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -38,6 +39,9 @@ public class PrescriptionServiceTest {
     @Mock
     private DiagnosisService diagnosisService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private PrescriptionService prescriptionService;
 
@@ -98,7 +102,7 @@ public class PrescriptionServiceTest {
         assertEquals(createPrescriptionDto.getDuration(), result.getDuration());
         assertEquals(medicationId, result.getMedication().getId());
         assertEquals(treatmentId, result.getTreatment().getId());
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointmentId);
         verify(treatmentService, times(1)).save(treatment);
         verify(diagnosisService, times(1)).save(diagnosis);
     }
@@ -132,13 +136,38 @@ public class PrescriptionServiceTest {
                 prescriptionService.createPrescription(appointmentId, treatmentId, createPrescriptionDto));
     }
 
+    @Test
+    void createPrescription_RetiredMedication() {
+        // Arrange
+        Long appointmentId = 1L;
+        Long treatmentId = 2L;
+        Long medicationId = 3L;
+        CreatePrescriptionDto createPrescriptionDto = new CreatePrescriptionDto(medicationId, "1 tablet twice a day", 7);
+
+        Medication medication = new Medication();
+        medication.setId(medicationId);
+        medication.setRetired(true);
+
+        User currentUser = new User();
+        currentUser.setRole("admin");
+
+        when(authenticationService.getCurrentUser()).thenReturn(currentUser);
+        when(appointmentService.findById(appointmentId)).thenReturn(new Appointment());
+        when(medicationService.findById(medicationId)).thenReturn(medication);
+
+        // Act & Assert
+        assertThrows(InvalidInputException.class, () ->
+                prescriptionService.createPrescription(appointmentId, treatmentId, createPrescriptionDto));
+        verify(prescriptionRepository, never()).save(any(Prescription.class));
+    }
+
     @Test
     void updatePrescription_Success() {
         // Arrange
         Long appointmentId = 1L;
         Long treatmentId = 2L;
         Long prescriptionId = 4L;
-        UpdatePrescriptionDto updatePrescriptionDto = new UpdatePrescriptionDto(3L, "2 tablets daily", 10);
+        UpdatePrescriptionDto updatePrescriptionDto = new UpdatePrescriptionDto(3L, "2 tablets daily", 10, null);
 
         User currentUser = new User();
         currentUser.setKeycloakUserId("doctor-1");
@@ -162,7 +191,7 @@ public class PrescriptionServiceTest {
         when(appointmentService.findById(appointmentId)).thenReturn(appointment);
         when(treatmentService.findById(treatmentId)).thenReturn(treatment);
         when(prescriptionRepository.findById(prescriptionId)).thenReturn(Optional.of(prescription));
-        when(prescriptionRepository.save(any(Prescription.class))).thenReturn(prescription);
+        when(prescriptionRepository.saveAndFlush(any(Prescription.class))).thenReturn(prescription);
 
         // Act
         Prescription result = prescriptionService.updatePrescription(appointmentId, treatmentId, prescriptionId, updatePrescriptionDto);
@@ -171,7 +200,7 @@ public class PrescriptionServiceTest {
         assertNotNull(result);
         assertEquals(updatePrescriptionDto.getDosage(), result.getDosage());
         assertEquals(updatePrescriptionDto.getDuration(), result.getDuration());
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointmentId);
     }
 
     @Test
@@ -208,7 +237,7 @@ public class PrescriptionServiceTest {
 
         // Assert
         verify(prescriptionRepository, times(1)).delete(prescription);
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointmentId);
     }
 
     @Test
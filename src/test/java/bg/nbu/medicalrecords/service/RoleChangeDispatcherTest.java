@@ -0,0 +1,190 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.RoleChangeOutbox;
+import bg.nbu.medicalrecords.domain.RoleChangeStatus;
+import bg.nbu.medicalrecords.repository.RoleChangeOutboxRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoleChangeDispatcherTest {
+
+    @Mock
+    private RoleChangeOutboxRepository outboxRepository;
+
+    @Mock
+    private KeycloakService keycloakService;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private RoleChangeDispatcher dispatcher;
+
+    private final AtomicBoolean inTransaction = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new RoleChangeDispatcher(outboxRepository, keycloakService, transactionTemplate);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 50);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "backoffBaseMs", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "backoffMaxMs", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "claimTimeoutMs", 600000L);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            inTransaction.set(true);
+            try {
+                return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            } finally {
+                inTransaction.set(false);
+            }
+        });
+    }
+
+    @Test
+    void dispatchBatch_ShouldClaimRows_AndCallKeycloakOutsideTheTransaction() {
+        // Arrange
+        RoleChangeOutbox entry = pending(1L, "kc-1", "doctor");
+        when(outboxRepository.findDue(eq(RoleChangeStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(entry));
+        List<LocalDateTime> claimedUntil = new ArrayList<>();
+        when(outboxRepository.saveAll(any())).thenAnswer(invocation -> {
+            claimedUntil.add(entry.getNextAttemptAt());
+            return invocation.getArgument(0);
+        });
+        when(keycloakService.getAdminAccessToken()).thenAnswer(invocation -> {
+            assertFalse(inTransaction.get());
+            return "token";
+        });
+        doAnswer(invocation -> {
+            assertFalse(inTransaction.get());
+            return null;
+        }).when(keycloakService).updateUserRole("kc-1", "doctor", "token");
+
+        // Act
+        dispatcher.dispatchBatch();
+
+        // Assert
+        verify(transactionTemplate, times(2)).execute(any());
+        assertTrue(claimedUntil.get(0).isAfter(LocalDateTime.now().plusMinutes(9)), "the claim keeps other instances off the row");
+        assertEquals(RoleChangeStatus.DONE, entry.getStatus());
+    }
+
+    @Test
+    void dispatchBatch_ShouldPushWithOneTokenAndMarkDone() {
+        // Arrange
+        RoleChangeOutbox first = pending(1L, "kc-1", "doctor");
+        RoleChangeOutbox second = pending(2L, "kc-2", "patient");
+        when(outboxRepository.findDue(eq(RoleChangeStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(first, second));
+        when(keycloakService.getAdminAccessToken()).thenReturn("token");
+
+        // Act
+        int picked = dispatcher.dispatchBatch();
+
+        // Assert
+        assertEquals(2, picked);
+        verify(keycloakService, times(1)).getAdminAccessToken();
+        verify(keycloakService).updateUserRole("kc-1", "doctor", "token");
+        verify(keycloakService).updateUserRole("kc-2", "patient", "token");
+        assertEquals(RoleChangeStatus.DONE, first.getStatus());
+        assertEquals(RoleChangeStatus.DONE, second.getStatus());
+    }
+
+    @Test
+    void dispatchBatch_ShouldOnlyPushNewestChangePerUser() {
+        // Arrange
+        RoleChangeOutbox older = pending(1L, "kc-1", "doctor");
+        RoleChangeOutbox newer = pending(2L, "kc-1", "admin");
+        when(outboxRepository.findDue(eq(RoleChangeStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(older, newer));
+        when(keycloakService.getAdminAccessToken()).thenReturn("token");
+
+        // Act
+        dispatcher.dispatchBatch();
+
+        // Assert
+        verify(keycloakService, never()).updateUserRole("kc-1", "doctor", "token");
+        verify(keycloakService).updateUserRole("kc-1", "admin", "token");
+        assertEquals(RoleChangeStatus.SUPERSEDED, older.getStatus());
+        assertEquals(RoleChangeStatus.DONE, newer.getStatus());
+        verify(outboxRepository).supersedeOlder("kc-1", 2L, RoleChangeStatus.PENDING, RoleChangeStatus.SUPERSEDED);
+    }
+
+    @Test
+    void dispatchBatch_ShouldBackOff_WhenKeycloakFails() {
+        // Arrange
+        RoleChangeOutbox entry = pending(1L, "kc-1", "doctor");
+        when(outboxRepository.findDue(eq(RoleChangeStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(entry));
+        when(keycloakService.getAdminAccessToken()).thenReturn("token");
+        doThrow(new ResourceAccessException("Connection refused"))
+                .when(keycloakService).updateUserRole(anyString(), anyString(), anyString());
+        LocalDateTime before = LocalDateTime.now();
+
+        // Act
+        dispatcher.dispatchBatch();
+
+        // Assert
+        assertEquals(RoleChangeStatus.PENDING, entry.getStatus());
+        assertEquals(1, entry.getAttempts());
+        assertEquals("Connection refused", entry.getLastError());
+        assertTrue(entry.getNextAttemptAt().isAfter(before));
+    }
+
+    @Test
+    void dispatchBatch_ShouldGiveUp_AfterMaxAttempts() {
+        // Arrange
+        RoleChangeOutbox entry = pending(1L, "kc-1", "doctor");
+        entry.setAttempts(2);
+        when(outboxRepository.findDue(eq(RoleChangeStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of(entry));
+        when(keycloakService.getAdminAccessToken()).thenThrow(new ResourceAccessException("Connection refused"));
+
+        // Act
+        dispatcher.dispatchBatch();
+
+        // Assert
+        assertEquals(RoleChangeStatus.FAILED, entry.getStatus());
+        assertEquals(3, entry.getAttempts());
+        verify(keycloakService, never()).updateUserRole(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void dispatchBatch_ShouldReturnZero_WhenNothingIsDue() {
+        when(outboxRepository.findDue(eq(RoleChangeStatus.PENDING), any(LocalDateTime.class), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        assertEquals(0, dispatcher.dispatchBatch());
+        verifyNoInteractions(keycloakService);
+        verify(transactionTemplate, times(1)).execute(any());
+    }
+
+    private static RoleChangeOutbox pending(Long id, String userId, String role) {
+        RoleChangeOutbox entry = new RoleChangeOutbox();
+        entry.setId(id);
+        entry.setKeycloakUserId(userId);
+        entry.setRole(role);
+        entry.setStatus(RoleChangeStatus.PENDING);
+        entry.setNextAttemptAt(LocalDateTime.now());
+        return entry;
+    }
+}
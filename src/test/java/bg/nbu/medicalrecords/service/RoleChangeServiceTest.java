@@ -0,0 +1,66 @@
+package bg.nbu.medicalrecords.service;
+
+import bg.nbu.medicalrecords.domain.RoleChangeOutbox;
+import bg.nbu.medicalrecords.domain.RoleChangeStatus;
+import bg.nbu.medicalrecords.exception.LocalSyncException;
+import bg.nbu.medicalrecords.repository.RoleChangeOutboxRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RoleChangeServiceTest {
+
+    @Mock
+    private LocalSyncService localSyncService;
+
+    @Mock
+    private RoleChangeOutboxRepository outboxRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private RoleChangeService roleChangeService;
+
+    @Test
+    void requestRoleChange_ShouldApplyLocallyAndQueueKeycloakUpdate() {
+        // Arrange
+        when(outboxRepository.save(any(RoleChangeOutbox.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Act
+        roleChangeService.requestRoleChange("kc-1", "doctor");
+
+        // Assert
+        verify(localSyncService).handleRoleChange("kc-1", "doctor");
+        ArgumentCaptor<RoleChangeOutbox> captor = ArgumentCaptor.forClass(RoleChangeOutbox.class);
+        verify(outboxRepository).save(captor.capture());
+        RoleChangeOutbox queued = captor.getValue();
+        assertEquals("kc-1", queued.getKeycloakUserId());
+        assertEquals("doctor", queued.getRole());
+        assertEquals(RoleChangeStatus.PENDING, queued.getStatus());
+        assertNotNull(queued.getNextAttemptAt());
+        ArgumentCaptor<RoleChangedEvent> event = ArgumentCaptor.forClass(RoleChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertEquals("doctor", event.getValue().role());
+    }
+
+    @Test
+    void requestRoleChange_ShouldNotQueue_WhenLocalChangeFails() {
+        // Arrange
+        doThrow(new LocalSyncException("boom")).when(localSyncService).handleRoleChange("kc-1", "doctor");
+
+        // Act & Assert
+        assertThrows(LocalSyncException.class, () -> roleChangeService.requestRoleChange("kc-1", "doctor"));
+        verify(outboxRepository, never()).save(any());
+        verifyNoInteractions(eventPublisher);
+    }
+}
@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -35,6 +36,9 @@ public class SickLeaveServiceTest {
     @Mock
     private AppointmentService appointmentService;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private SickLeaveService sickLeaveService;
 
@@ -49,6 +53,7 @@ public class SickLeaveServiceTest {
                 LocalDate.now().minusDays(1),
                 LocalDate.now().plusDays(5),
                 null,
+                null,
                 null
         );
 
@@ -82,7 +87,7 @@ public class SickLeaveServiceTest {
         // Assert
         assertNotNull(result);
         assertEquals(sickLeave.getReason(), result.getReason());
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointmentId);
     }
 
     @Test
@@ -96,6 +101,7 @@ public class SickLeaveServiceTest {
                 LocalDate.now().minusDays(1),
                 LocalDate.now().plusDays(5),
                 null,
+                null,
                 null
         );
 
@@ -152,7 +158,7 @@ public class SickLeaveServiceTest {
         when(appointmentService.findById(appointmentId)).thenReturn(appointment);
         when(doctorService.findByPrincipal()).thenReturn(doctor);
         when(sickLeaveRepository.findById(sickLeaveId)).thenReturn(Optional.of(sickLeave));
-        when(sickLeaveRepository.save(any(SickLeave.class))).thenReturn(sickLeave);
+        when(sickLeaveRepository.saveAndFlush(any(SickLeave.class))).thenReturn(sickLeave);
 
         // Act
         SickLeave result = sickLeaveService.updateSickLeave(appointmentId, updateSickLeaveDto, sickLeaveId);
@@ -160,7 +166,7 @@ public class SickLeaveServiceTest {
         // Assert
         assertNotNull(result);
         assertEquals(updateSickLeaveDto.getReason(), result.getReason());
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointmentId);
     }
 
     @Test
@@ -193,7 +199,7 @@ public class SickLeaveServiceTest {
 
         // Assert
         verify(sickLeaveRepository, times(1)).delete(sickLeave);
-        verify(appointmentService, times(1)).save(appointment);
+        verify(appointmentService, times(1)).touch(appointmentId);
     }
 
     @Test
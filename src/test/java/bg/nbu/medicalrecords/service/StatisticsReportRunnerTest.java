@@ -0,0 +1,103 @@
+package bg.nbu.medicalrecords.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsReportRunnerTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private StatisticsReportRunner runner;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        runner.destroy();
+    }
+
+    @Test
+    void run_ShouldCompleteWithReportResult() throws Exception {
+        // Arrange
+        runner = new StatisticsReportRunner(1, 1, 1, 5_000);
+
+        // Act
+        CompletableFuture<String> result = runner.run(() -> Thread.currentThread().getName());
+
+        // Assert
+        assertTrue(result.get(5, TimeUnit.SECONDS).startsWith("statistics-"));
+    }
+
+    @Test
+    void run_ShouldRejectImmediately_WhenPoolAndQueueAreFull() {
+        // Arrange
+        runner = new StatisticsReportRunner(1, 1, 1, 5_000);
+        runner.run(this::blockUntilReleased);
+        runner.run(this::blockUntilReleased);
+
+        // Act & Assert
+        assertThrows(TaskRejectedException.class, () -> runner.run(this::blockUntilReleased));
+    }
+
+    @Test
+    void run_ShouldCompleteExceptionally_WhenReportExceedsTimeout() {
+        // Arrange
+        runner = new StatisticsReportRunner(1, 1, 1, 50);
+
+        // Act
+        CompletableFuture<String> result = runner.run(this::blockUntilReleased);
+
+        // Assert
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+    }
+
+    @Test
+    void run_ShouldInterruptTheReport_AndFreeItsThread_WhenReportExceedsTimeout() throws Exception {
+        // Arrange
+        runner = new StatisticsReportRunner(1, 1, 0, 50);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        // Act
+        runner.run(() -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return "done";
+        });
+
+        // Assert
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals("next", runAfterThreadIsFree().get(5, TimeUnit.SECONDS));
+    }
+
+    // The single pool thread goes back to the pool just after the interrupted report returns
+    private CompletableFuture<String> runAfterThreadIsFree() throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                return runner.run(() -> "next");
+            } catch (TaskRejectedException e) {
+                Thread.sleep(20);
+            }
+        }
+        throw new AssertionError("the pool thread was never freed");
+    }
+
+    private String blockUntilReleased() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+}
@@ -3,6 +3,7 @@ package bg.nbu.medicalrecords.service;
 import bg.nbu.medicalrecords.domain.*;
 import bg.nbu.medicalrecords.dto.*;
 import bg.nbu.medicalrecords.exception.StatisticsServiceException;
+import bg.nbu.medicalrecords.repository.DiagnosisCodeStatistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -87,29 +88,11 @@ public class StatisticsServiceTest {
     @Test
     void getDiagnosisLeaderboard_Success() {
         // Arrange
-        List<String> uniqueDiagnoses = Arrays.asList("Flu", "Cold");
-        when(diagnosisService.getUniqueDiagnosis()).thenReturn(uniqueDiagnoses);
-
-        Diagnosis diagnosis1 = new Diagnosis();
-        diagnosis1.setStatement("Flu");
-        diagnosis1.setDiagnosedDate(LocalDateTime.of(2023, 1, 10, 10, 0));
-        Appointment appointment1 = new Appointment();
-        Doctor doctor1 = new Doctor();
-        doctor1.setName("Dr. Smith");
-        appointment1.setDoctor(doctor1);
-        diagnosis1.setAppointment(appointment1);
-
-        Diagnosis diagnosis2 = new Diagnosis();
-        diagnosis2.setStatement("Flu");
-        diagnosis2.setDiagnosedDate(LocalDateTime.of(2023, 2, 15, 11, 0));
-        Appointment appointment2 = new Appointment();
-        Doctor doctor2 = new Doctor();
-        doctor2.setName("Dr. Johnson");
-        appointment2.setDoctor(doctor2);
-        diagnosis2.setAppointment(appointment2);
-
-        List<Diagnosis> fluDiagnoses = Arrays.asList(diagnosis1, diagnosis2);
-        when(diagnosisService.findByStatement("Flu")).thenReturn(fluDiagnoses);
+        DiagnosisCodeStatistics flu = codeStatistics(1, "J11", "Flu", 2L, 1L,
+                LocalDateTime.of(2023, 1, 10, 10, 0), LocalDateTime.of(2023, 2, 15, 11, 0));
+        DiagnosisCodeStatistics cold = codeStatistics(2, null, "Cold", 0L, 0L, null, null);
+        when(diagnosisService.getCodeStatistics()).thenReturn(Arrays.asList(cold, flu));
+        when(diagnosisService.findFirstDiagnosisDoctorNames()).thenReturn(Map.of(1, "Dr. Smith"));
         when(diagnosisService.count()).thenReturn(2L);
         when(patientService.count()).thenReturn(1L);
 
@@ -121,6 +104,8 @@ public class StatisticsServiceTest {
         assertEquals(2, result.getDiagnosisDetails().size());
 
         DiagnosisDetailsDto details = result.getDiagnosisDetails().get(0);
+        assertEquals(1, details.getDiagnosisCodeId());
+        assertEquals("J11", details.getCode());
         assertEquals("Flu", details.getStatement());
         assertEquals(2L, details.getCount());
         assertEquals(100L, details.getPercentageOfAllDiagnoses());
@@ -129,10 +114,10 @@ public class StatisticsServiceTest {
         assertEquals(LocalDateTime.of(2023, 1, 10, 10, 0), details.getDateOfFirstDiagnosis());
         assertEquals(LocalDateTime.of(2023, 2, 15, 11, 0), details.getDateOfLastDiagnosis());
 
-        verify(diagnosisService, times(1)).getUniqueDiagnosis();
-        verify(diagnosisService, times(1)).findByStatement("Flu");
-        verify(diagnosisService, times(2)).count();
-        verify(patientService, times(2)).count();
+        verify(diagnosisService, times(1)).getCodeStatistics();
+        verify(diagnosisService, never()).findByStatement(anyString());
+        verify(diagnosisService, times(1)).count();
+        verify(patientService, times(1)).count();
     }
 
     /**
@@ -141,7 +126,7 @@ public class StatisticsServiceTest {
     @Test
     void getDiagnosisLeaderboard_Failure() {
         // Arrange
-        when(diagnosisService.getUniqueDiagnosis()).thenThrow(new RuntimeException("Service failure"));
+        when(diagnosisService.getCodeStatistics()).thenThrow(new RuntimeException("Service failure"));
 
         // Act & Assert
         StatisticsServiceException exception = assertThrows(StatisticsServiceException.class, () -> {
@@ -149,7 +134,7 @@ public class StatisticsServiceTest {
         });
 
         assertEquals("Failed to get diagnosis leaderboard", exception.getMessage());
-        verify(diagnosisService, times(1)).getUniqueDiagnosis();
+        verify(diagnosisService, times(1)).getCodeStatistics();
     }
 
 //    /**
@@ -357,24 +342,12 @@ public class StatisticsServiceTest {
 
         when(doctorService.findAll()).thenReturn(Arrays.asList(doctor1, doctor2));
 
-        Appointment appointment1 = new Appointment();
-        appointment1.setDoctor(doctor1);
-        appointment1.setAppointmentDateTime(LocalDateTime.of(2023, 5, 10, 10, 0));
-
-        Appointment appointment2 = new Appointment();
-        appointment2.setDoctor(doctor1);
-        appointment2.setAppointmentDateTime(LocalDateTime.of(2023, 5, 15, 11, 0));
-
-        Appointment appointment3 = new Appointment();
-        appointment3.setDoctor(doctor2);
-        appointment3.setAppointmentDateTime(LocalDateTime.of(2023, 6, 20, 12, 0));
-
-        when(appointmentService.findAllByDoctorId(1L)).thenReturn(Arrays.asList(appointment1, appointment2));
-        when(appointmentService.findAllByDoctorId(2L)).thenReturn(Collections.singletonList(appointment3));
-
         LocalDateTime startDate = LocalDateTime.of(2023, 5, 1, 0, 0);
         LocalDateTime endDate = LocalDateTime.of(2023, 5, 31, 23, 59);
 
+        // Only Dr. Smith has appointments in May
+        when(appointmentService.findDoctorIdsWithAppointmentsInPeriod(startDate, endDate)).thenReturn(List.of(1L));
+
         // Act
         List<DoctorsThatHaveAppointmentsInPeriod> result = statisticsService.getDoctorsWithAppointmentsInPeriod(startDate, endDate);
 
@@ -389,8 +362,8 @@ public class StatisticsServiceTest {
         assertEquals(LocalDate.of(2023, 5, 31), dto.getEndDate());
 
         verify(doctorService, times(1)).findAll();
-        verify(appointmentService, times(1)).findAllByDoctorId(1L);
-        verify(appointmentService, times(1)).findAllByDoctorId(2L);
+        verify(appointmentService, times(1)).findDoctorIdsWithAppointmentsInPeriod(startDate, endDate);
+        verify(appointmentService, never()).findAllByDoctorId(anyLong());
     }
 
     /**
@@ -558,4 +531,17 @@ public class StatisticsServiceTest {
         verify(doctorService, times(1)).findAll();
         verify(appointmentService, times(1)).findAll();
     }
+
+    private static DiagnosisCodeStatistics codeStatistics(Integer codeId, String code, String label, Long diagnosisCount,
+                                                          Long patientCount, LocalDateTime first, LocalDateTime last) {
+        DiagnosisCodeStatistics statistics = mock(DiagnosisCodeStatistics.class);
+        when(statistics.getCodeId()).thenReturn(codeId);
+        when(statistics.getCode()).thenReturn(code);
+        when(statistics.getLabel()).thenReturn(label);
+        when(statistics.getDiagnosisCount()).thenReturn(diagnosisCount);
+        when(statistics.getPatientCount()).thenReturn(patientCount);
+        when(statistics.getFirstDiagnosedDate()).thenReturn(first);
+        when(statistics.getLastDiagnosedDate()).thenReturn(last);
+        return statistics;
+    }
 }
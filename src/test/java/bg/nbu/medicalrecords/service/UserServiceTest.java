@@ -23,6 +23,9 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private PatientSearchIndex patientSearchIndex;
+
     @InjectMocks
     private UserService userService;
 
@@ -79,7 +82,6 @@ class UserServiceTest {
     void findByEgn_Success() {
         // Arrange
         when(userRepository.findByEgn("1234567890")).thenReturn(user);
-        when(userRepository.findByKeycloakUserId("kc-12345")).thenReturn(user);
 
         // Act
         User foundUser = userService.findByEgn("1234567890");
@@ -88,6 +90,7 @@ class UserServiceTest {
         assertNotNull(foundUser);
         assertEquals("1234567890", foundUser.getEgn());
         verify(userRepository, times(1)).findByEgn("1234567890");
+        verify(userRepository, never()).findByKeycloakUserId(anyString());
     }
 
     @Test